@@ -8,8 +8,11 @@ import org.fao.geonet.utils.CachedTransformer;
 import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import javax.xml.transform.Source;
 import javax.xml.transform.Templates;
@@ -22,25 +25,46 @@ import javax.xml.transform.stream.StreamSource;
  * Caching implementation of JAXP transformer factory. This implementation caches templates that
  * were loaded from local files so that consequent calls to local stylesheets require stylesheet
  * reparsing only if stylesheet was changed.
+ *
+ * The cache can be read concurrently without locking. A stylesheet requested by several threads
+ * at the same time is compiled only once, the other threads wait for the compilation to complete.
+ * The date of last modification of a cached stylesheet is checked at most once per
+ * {@link #CHECK_INTERVAL_PROPERTY} milliseconds (1000 by default). Use 0 to check it on each call
+ * or a negative value to never check it (eg. in production, {@link #clearCache()} still reloads
+ * all stylesheets).
+ *
+ * Hit, miss and compilation statistics are available from {@link #getStatistics()} and published
+ * over JMX by {@link TemplatesCacheStatisticsExporter}.
  */
 public class CachingTransformerFactory extends TransformerFactoryImpl implements CachedTransformer {
+    /**
+     * System property defining the minimum interval in milliseconds between two checks of the date
+     * of last modification of a cached stylesheet.
+     */
+    public static final String CHECK_INTERVAL_PROPERTY = "geonetwork.xslt.cache.checkInterval";
     /**
      * Factory logger.
      */
     protected static final Logger logger =
         Logger.getLogger(CachingTransformerFactory.class);
     /**
-     * Active readers count.
+     * Map to hold templates cache.
      */
-    static int activeReaders = 0;
+    private static final ConcurrentMap<String, TemplatesCacheEntry> templatesCache =
+        new ConcurrentHashMap<String, TemplatesCacheEntry>();
     /**
-     * Active writers count.
+     * Cache statistics.
      */
-    static int activeWriters = 0;
+    private static final TemplatesCacheStatistics statistics = new TemplatesCacheStatistics(templatesCache);
+
+    private static final long checkInterval = Long.getLong(CHECK_INTERVAL_PROPERTY, 1000L);
+
     /**
-     * Map to hold templates cache.
+     * @return the statistics of the templates cache shared by all factory instances.
      */
-    private static Map<String, TemplatesCacheEntry> templatesCache = new HashMap<String, TemplatesCacheEntry>();
+    public static TemplatesCacheStatistics getStatistics() {
+        return statistics;
+    }
 
     /**
      * Clear the stylesheet cache. This is not part of the JAXP TransformerFactoryImpl so users
@@ -48,16 +72,13 @@ public class CachingTransformerFactory extends TransformerFactoryImpl implements
      * broken.
      */
     public void clearCache() {
-        beforeWrite();
         templatesCache.clear();
-        afterWrite();
     }
 
     /**
      * Process the source into a Transformer object. If source is a StreamSource with
      * <code>systemID</code> pointing to a file, transformer is produced from a cached templates
-     * object. Cache is done in soft references; cached objects are reloaded, when file's date of
-     * last modification changes.
+     * object. Cached objects are reloaded, when file's date of last modification changes.
      *
      * @param source An object that holds a URI, input stream, etc.
      * @return A Transformer object that may be used to perform a transformation in a single thread,
@@ -67,21 +88,47 @@ public class CachingTransformerFactory extends TransformerFactoryImpl implements
      */
     public Transformer newTransformer(final Source source)
         throws TransformerConfigurationException {
+        final File file = getFile(source);
+        if (file != null) {
+            return newTransformer(file);
+        }
+        return super.newTransformer(source);
+    }
+
+    /**
+     * Process the source into a Templates object. If source is a StreamSource with
+     * <code>systemID</code> pointing to a file, the cached templates object is returned.
+     *
+     * @param source An object that holds a URI, input stream, etc.
+     * @return A Templates object that may be used concurrently by several threads, never null.
+     * @throws TransformerConfigurationException - May throw this during the parse when it is
+     *                                           constructing the Templates object and fails.
+     */
+    public Templates newTemplates(final Source source)
+        throws TransformerConfigurationException {
+        final File file = getFile(source);
+        if (file != null) {
+            return getTemplates(file);
+        }
+        return super.newTemplates(source);
+    }
+
+    /**
+     * @return the file a stream source points to or null if it is not a local file.
+     */
+    private File getFile(final Source source) throws TransformerConfigurationException {
         // Check that source in a StreamSource
-        if (source instanceof StreamSource) {
+        if (source instanceof StreamSource && source.getSystemId() != null) {
             try {
                 // Create URI of the source
-                String srcId = source.getSystemId();
-                final URI uri = new URI(srcId);
-                // If URI points to a file, load transformer from the file
-                // (or from the cache)
+                final URI uri = new URI(source.getSystemId());
                 if ("file".equalsIgnoreCase(uri.getScheme()))
-                    return newTransformer(new File(uri.getPath()));
+                    return new File(uri.getPath());
             } catch (URISyntaxException urise) {
                 throw new TransformerConfigurationException(urise);
             }
         }
-        return super.newTransformer(source);
+        return null;
     }
 
     /**
@@ -94,133 +141,160 @@ public class CachingTransformerFactory extends TransformerFactoryImpl implements
      */
     protected Transformer newTransformer(final File file)
         throws TransformerConfigurationException {
-        // Search the cache for the templates entry
-        TemplatesCacheEntry templatesCacheEntry = read(file.getAbsolutePath());
-
-        // If entry found
-        if (templatesCacheEntry != null) {
-            // Check timestamp of modification
-            if (templatesCacheEntry.lastModified
-                < templatesCacheEntry.templatesFile.lastModified())
-                templatesCacheEntry = null;
-        }
-        // If no templatesEntry is found or this entry was obsolete
-        if (templatesCacheEntry == null) {
-            //System.out.println("Loading transformation [" + file.getAbsolutePath() + "].");
-            // If this file does not exists, throw the exception
-            if (!file.exists()) {
-                throw new TransformerConfigurationException(
-                    "Requested transformation ["
-                        + file.getAbsolutePath()
-                        + "] does not exist.");
-            }
-
-            // Create new cache entry
-            templatesCacheEntry =
-                new TemplatesCacheEntry(newTemplates(new StreamSource(file)), file);
-
-            // Save this entry to the cache
-            write(file.getAbsolutePath(), templatesCacheEntry);
-        } else {
-            //System.out.println("Using cached transformation [" + file.getAbsolutePath() + "].");
-        }
-        return templatesCacheEntry.templates.newTransformer();
-    }
-
-    /**
-     * Returns a templates cache entry for the specified absolute path.
-     *
-     * @param absolutePath absolute path of the entry.
-     * @return Templates cache entry for the specified path.
-     */
-    protected TemplatesCacheEntry read(String absolutePath) {
-        beforeRead();
-        final TemplatesCacheEntry templatesCacheEntry = templatesCache.get(absolutePath);
-        afterRead();
-        return templatesCacheEntry;
+        return getTemplates(file).newTransformer();
     }
 
     /**
-     * Saves templates cache entry for the specified absolute path.
+     * Returns the cached templates of a file, compiling them if they are not cached yet or if the
+     * file was modified.
      *
-     * @param absolutePath        absolute path of the entry.
-     * @param templatesCacheEntry templates cache entry to save.
-     */
-    protected void write(String absolutePath, TemplatesCacheEntry templatesCacheEntry) {
-        beforeWrite();
-        templatesCache.put(absolutePath, templatesCacheEntry);
-        afterWrite();
-    }
-
-    /**
-     * Invoked just before reading, waits until reading is allowed.
-     */
-    protected synchronized void beforeRead() {
-        while (activeWriters > 0)
-            try {
-                wait();
-            } catch (InterruptedException iex) {
-            }
-        ++activeReaders;
-    }
-
-    /**
-     * Invoked just after reading.
+     * @param file file to load templates from.
+     * @return Templates, built from given file.
+     * @throws TransformerConfigurationException if there was a problem loading templates from the
+     *                                           file.
      */
-    protected synchronized void afterRead() {
-        --activeReaders;
-        notifyAll();
-    }
+    protected Templates getTemplates(final File file)
+        throws TransformerConfigurationException {
+        final String absolutePath = file.getAbsolutePath();
+        TemplatesCacheEntry templatesCacheEntry = templatesCache.get(absolutePath);
 
-    /**
-     * Invoked just before writing, waits until writing is allowed.
-     */
-    protected synchronized void beforeWrite() {
-        while (activeReaders > 0 || activeWriters > 0)
-            try {
-                wait();
-            } catch (InterruptedException iex) {
+        // If no templatesEntry is found or this entry was obsolete
+        if (templatesCacheEntry == null || templatesCacheEntry.isObsolete()) {
+            TemplatesCacheEntry newEntry = new TemplatesCacheEntry(file);
+            boolean added = templatesCacheEntry == null
+                ? templatesCache.putIfAbsent(absolutePath, newEntry) == null
+                : templatesCache.replace(absolutePath, templatesCacheEntry, newEntry);
+            if (added) {
+                statistics.miss();
+                newEntry.compile();
+                templatesCacheEntry = newEntry;
+            } else {
+                // Another thread is loading the same stylesheet
+                templatesCacheEntry = templatesCache.get(absolutePath);
+                if (templatesCacheEntry == null) {
+                    return getTemplates(file);
+                }
+                statistics.hit();
             }
-        ++activeWriters;
+        } else {
+            statistics.hit();
+        }
+        return templatesCacheEntry.getTemplates();
     }
 
     /**
-     * Invoked just after writing.
+     * Compiles the stylesheet of a cache entry.
      */
-    protected synchronized void afterWrite() {
-        --activeWriters;
-        notifyAll();
+    private Templates compile(File file) throws TransformerConfigurationException {
+        // If this file does not exists, throw the exception
+        if (!file.exists()) {
+            throw new TransformerConfigurationException(
+                "Requested transformation ["
+                    + file.getAbsolutePath()
+                    + "] does not exist.");
+        }
+        long start = System.nanoTime();
+        Templates templates = super.newTemplates(new StreamSource(file));
+        long duration = System.nanoTime() - start;
+        statistics.compiled(duration);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Compiled transformation [" + file.getAbsolutePath() + "] in "
+                + (duration / 1000000) + " ms.");
+        }
+        return templates;
     }
 
     /**
      * Private class to hold templates cache entry.
      */
-    private static final class TemplatesCacheEntry {
+    private final class TemplatesCacheEntry {
         /**
          * When was the cached entry last modified.
          */
-        private long lastModified;
+        private final long lastModified;
 
         /**
-         * Cached templates object.
+         * Compilation of the templates object, run by the thread that created the entry.
          */
-        private Templates templates;
+        private final FutureTask<Templates> templates;
 
         /**
          * Templates file object.
          */
-        private File templatesFile;
+        private final File templatesFile;
+
+        /**
+         * When the date of last modification of the file should be checked next.
+         */
+        private volatile long nextCheck;
 
         /**
          * Constructs a new cache entry.
          *
-         * @param templates     templates to cache.
-         * @param templatesFile file, from which this transformer was loaded.
+         * @param templatesFile file, from which this transformer is loaded.
          */
-        private TemplatesCacheEntry(final Templates templates, final File templatesFile) {
-            this.templates = templates;
+        private TemplatesCacheEntry(final File templatesFile) {
             this.templatesFile = templatesFile;
             this.lastModified = templatesFile.lastModified();
+            this.nextCheck = System.currentTimeMillis() + checkInterval;
+            this.templates = new FutureTask<Templates>(new Callable<Templates>() {
+                @Override
+                public Templates call() throws Exception {
+                    return CachingTransformerFactory.this.compile(templatesFile);
+                }
+            });
+        }
+
+        private void compile() throws TransformerConfigurationException {
+            templates.run();
+            // Do not cache failures, the stylesheet may be fixed
+            try {
+                getTemplates();
+            } catch (TransformerConfigurationException e) {
+                templatesCache.remove(templatesFile.getAbsolutePath(), this);
+                throw e;
+            }
+        }
+
+        private boolean isObsolete() {
+            if (checkInterval < 0) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            if (now < nextCheck) {
+                return false;
+            }
+            nextCheck = now + checkInterval;
+            return lastModified < templatesFile.lastModified();
+        }
+
+        private Templates getTemplates() throws TransformerConfigurationException {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return templates.get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof TransformerConfigurationException) {
+                    throw (TransformerConfigurationException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new TransformerConfigurationException(cause);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
     }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package de.fzi.dbs.xml.transform;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of the templates cache of {@link CachingTransformerFactory}. They are published over
+ * JMX by {@link TemplatesCacheStatisticsExporter}.
+ */
+public class TemplatesCacheStatistics implements TemplatesCacheStatisticsMBean {
+    public static final String OBJECT_NAME = "geonetwork:name=xslt-templates-cache";
+
+    private final Map<String, ?> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong compilations = new AtomicLong();
+    private final AtomicLong compileTimeNanos = new AtomicLong();
+
+    TemplatesCacheStatistics(Map<String, ?> cache) {
+        this.cache = cache;
+    }
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void compiled(long durationNanos) {
+        compilations.incrementAndGet();
+        compileTimeNanos.addAndGet(durationNanos);
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getCompilations() {
+        return compilations.get();
+    }
+
+    @Override
+    public long getTotalCompileTimeMillis() {
+        return compileTimeNanos.get() / 1000000;
+    }
+
+    @Override
+    public long getAverageCompileTimeMillis() {
+        long count = compilations.get();
+        return count == 0 ? 0 : getTotalCompileTimeMillis() / count;
+    }
+
+    @Override
+    public int getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("XSLT templates cache: %d stylesheets, %d hits, %d misses, %d compilations (%d ms avg)",
+            getSize(), getHits(), getMisses(), getCompilations(), getAverageCompileTimeMillis());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package de.fzi.dbs.xml.transform;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.MBeanExporter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the statistics of the {@link CachingTransformerFactory} templates cache with the JMX
+ * exporter of the application context, as {@link TemplatesCacheStatistics#OBJECT_NAME}, and
+ * removes them when the context is closed so that a redeployed application does not leave them
+ * behind.
+ */
+public class TemplatesCacheStatisticsExporter {
+
+    private static final Logger logger = Logger.getLogger(TemplatesCacheStatisticsExporter.class);
+
+    @Autowired
+    private MBeanExporter exporter;
+
+    private ObjectName objectName;
+
+    public void setExporter(MBeanExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    @PostConstruct
+    public synchronized void register() {
+        try {
+            objectName = new ObjectName(TemplatesCacheStatistics.OBJECT_NAME);
+            exporter.registerManagedResource(CachingTransformerFactory.getStatistics(), objectName);
+        } catch (Exception e) {
+            objectName = null;
+            logger.warn("Unable to register XSLT templates cache statistics: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void unregister() {
+        if (objectName != null) {
+            exporter.unregisterManagedResource(objectName);
+            objectName = null;
+        }
+    }
+}
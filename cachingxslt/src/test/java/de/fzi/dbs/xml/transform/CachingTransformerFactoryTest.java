@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package de.fzi.dbs.xml.transform;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class CachingTransformerFactoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CachingTransformerFactory factory;
+    private TemplatesCacheStatistics statistics;
+
+    @Before
+    public void setUp() {
+        factory = new CachingTransformerFactory();
+        factory.clearCache();
+        statistics = CachingTransformerFactory.getStatistics();
+    }
+
+    @Test
+    public void testTemplatesAreCached() throws Exception {
+        File xsl = writeStylesheet("cached.xsl", "first");
+        long hits = statistics.getHits();
+        long misses = statistics.getMisses();
+        long compilations = statistics.getCompilations();
+
+        Templates templates = factory.newTemplates(source(xsl));
+        assertSame(templates, factory.newTemplates(source(xsl)));
+        assertEquals("first", transform(xsl));
+
+        assertEquals(hits + 2, statistics.getHits());
+        assertEquals(misses + 1, statistics.getMisses());
+        assertEquals(compilations + 1, statistics.getCompilations());
+        assertEquals(1, statistics.getSize());
+    }
+
+    @Test
+    public void testModifiedStylesheetIsCompiledAgain() throws Exception {
+        File xsl = writeStylesheet("modified.xsl", "first");
+        Templates templates = factory.newTemplates(source(xsl));
+
+        writeStylesheet("modified.xsl", "second");
+        xsl.setLastModified(System.currentTimeMillis() + 10000);
+        // The date of last modification is only checked once per second by default
+        Thread.sleep(1100);
+
+        assertNotSame(templates, factory.newTemplates(source(xsl)));
+        assertEquals("second", transform(xsl));
+    }
+
+    @Test
+    public void testClearCache() throws Exception {
+        File xsl = writeStylesheet("cleared.xsl", "first");
+        Templates templates = factory.newTemplates(source(xsl));
+
+        factory.clearCache();
+
+        assertEquals(0, statistics.getSize());
+        assertNotSame(templates, factory.newTemplates(source(xsl)));
+    }
+
+    @Test
+    public void testFailuresAreNotCached() throws Exception {
+        File xsl = folder.newFile("invalid.xsl");
+        Files.write(xsl.toPath(), "<xsl:stylesheet".getBytes(StandardCharsets.UTF_8));
+        try {
+            factory.newTemplates(source(xsl));
+            fail("Invalid stylesheet compiled");
+        } catch (TransformerConfigurationException e) {
+            // expected
+        }
+        assertEquals(0, statistics.getSize());
+
+        writeStylesheet("invalid.xsl", "fixed");
+        assertEquals("fixed", transform(xsl));
+    }
+
+    @Test(expected = TransformerConfigurationException.class)
+    public void testMissingStylesheet() throws Exception {
+        factory.newTemplates(source(new File(folder.getRoot(), "missing.xsl")));
+    }
+
+    @Test
+    public void testConcurrentRequestsCompileOnce() throws Exception {
+        final File xsl = writeStylesheet("concurrent.xsl", "first");
+        long compilations = statistics.getCompilations();
+
+        int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Templates>> results = new ArrayList<Future<Templates>>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(new Callable<Templates>() {
+                    @Override
+                    public Templates call() throws Exception {
+                        start.await();
+                        return factory.newTemplates(source(xsl));
+                    }
+                }));
+            }
+            start.countDown();
+            Templates templates = results.get(0).get();
+            for (Future<Templates> result : results) {
+                assertSame(templates, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(compilations + 1, statistics.getCompilations());
+    }
+
+    @Test
+    public void testOtherSourcesAreNotCached() throws Exception {
+        String xsl = stylesheet("inline");
+        Templates templates = factory.newTemplates(new StreamSource(new StringReader(xsl)));
+
+        assertNotSame(templates, factory.newTemplates(new StreamSource(new StringReader(xsl))));
+        assertEquals(0, statistics.getSize());
+    }
+
+    private File writeStylesheet(String name, String text) throws Exception {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), stylesheet(text).getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String stylesheet(String text) {
+        return "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"2.0\">" +
+            "<xsl:output method=\"text\"/>" +
+            "<xsl:template match=\"/\">" + text + "</xsl:template>" +
+            "</xsl:stylesheet>";
+    }
+
+    private static StreamSource source(File file) {
+        return new StreamSource(file.toURI().toString());
+    }
+
+    private String transform(File xsl) throws Exception {
+        StringWriter writer = new StringWriter();
+        factory.newTransformer(source(xsl)).transform(new StreamSource(new StringReader("<root/>")),
+            new StreamResult(writer));
+        return writer.toString();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package de.fzi.dbs.xml.transform;
+
+import org.junit.Test;
+import org.springframework.jmx.export.MBeanExporter;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TemplatesCacheStatisticsExporterTest {
+
+    @Test
+    public void testRegisterAndUnregister() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        MBeanExporter exporter = new MBeanExporter();
+        exporter.setServer(server);
+        ObjectName name = new ObjectName(TemplatesCacheStatistics.OBJECT_NAME);
+
+        TemplatesCacheStatisticsExporter statisticsExporter = new TemplatesCacheStatisticsExporter();
+        statisticsExporter.setExporter(exporter);
+        statisticsExporter.register();
+        assertTrue(server.isRegistered(name));
+        assertEquals(CachingTransformerFactory.getStatistics().getHits(), server.getAttribute(name, "Hits"));
+
+        statisticsExporter.unregister();
+        assertFalse(server.isRegistered(name));
+    }
+}
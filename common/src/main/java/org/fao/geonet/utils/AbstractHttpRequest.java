@@ -39,6 +39,7 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.auth.BasicScheme;
@@ -52,6 +53,7 @@ import org.fao.geonet.exceptions.BadSoapResponseEx;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.Namespace;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.client.ClientHttpResponse;
 
 import java.io.IOException;
@@ -59,6 +61,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import javax.annotation.Nonnull;
@@ -92,6 +95,10 @@ public class AbstractHttpRequest {
     private UsernamePasswordCredentials proxyCredentials;
     private String fragment;
     private String userInfo;
+    private Date ifModifiedSince;
+    private String ifNoneMatch;
+    private String eTag;
+    private long lastModified = -1;
 
     public AbstractHttpRequest(String protocol, String host, int port, GeonetHttpRequestFactory requestFactory) {
         if (!(protocol.equals("http") || protocol.equals("https"))) {
@@ -239,6 +246,59 @@ public class AbstractHttpRequest {
         this.credentials = new UsernamePasswordCredentials(username, password);
     }
 
+    /**
+     * Make the next requests conditional: the remote server answers 304 Not Modified instead of
+     * sending the document again if it did not change since the given date.
+     *
+     * @param ifModifiedSince the date the document was last retrieved or null to always get it.
+     */
+    public void setIfModifiedSince(@Nullable Date ifModifiedSince) {
+        this.ifModifiedSince = ifModifiedSince;
+    }
+
+    /**
+     * Make the next requests conditional: the remote server answers 304 Not Modified instead of
+     * sending the document again if its entity tag is still the given one.
+     *
+     * @param eTag the entity tag of the document when it was last retrieved or null to always get
+     *             it.
+     */
+    public void setIfNoneMatch(@Nullable String eTag) {
+        this.ifNoneMatch = eTag;
+    }
+
+    /**
+     * @return the entity tag of the document sent by the last request or null if the server did
+     * not send one.
+     */
+    @Nullable
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * @return the last modification date of the document sent by the last request or null if the
+     * server did not send one.
+     */
+    @Nullable
+    public Date getLastModified() {
+        return lastModified < 0 ? null : new Date(lastModified);
+    }
+
+    /**
+     * Keep the validators of a response, to be used in the conditional requests of the next
+     * harvest.
+     */
+    protected void readValidators(ClientHttpResponse httpResponse) {
+        HttpHeaders headers = httpResponse.getHeaders();
+        eTag = headers.getETag();
+        try {
+            lastModified = headers.getLastModified();
+        } catch (IllegalArgumentException e) {
+            lastModified = -1;
+        }
+    }
+
     protected ClientHttpResponse doExecute(final HttpRequestBase httpMethod) throws IOException {
         return requestFactory.execute(httpMethod, new Function<HttpClientBuilder, Void>() {
             @Nullable
@@ -331,6 +391,13 @@ public class AbstractHttpRequest {
             httpMethod = post;
         }
 
+        if (ifModifiedSince != null) {
+            httpMethod.addHeader("If-Modified-Since", DateUtils.formatDate(ifModifiedSince));
+        }
+        if (ifNoneMatch != null) {
+            httpMethod.addHeader("If-None-Match", ifNoneMatch);
+        }
+
         try {
             URI uri = new URI(protocol, userInfo, host, port, address, queryString, fragment);
             httpMethod.setURI(uri);
@@ -27,7 +27,6 @@ import com.google.common.base.Function;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
-import org.apache.http.HeaderElement;
 import org.apache.http.HttpClientConnection;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
@@ -285,10 +284,8 @@ public class GeonetHttpRequestFactory {
             final Header[] headers = _response.getAllHeaders();
 
             for (Header header : headers) {
-                final HeaderElement[] elements = header.getElements();
-                for (HeaderElement element : elements) {
-                    httpHeaders.add(header.getName(), element.getValue());
-                }
+                // Values like dates contain commas, don't split them in elements
+                httpHeaders.add(header.getName(), header.getValue());
             }
             return httpHeaders;
         }
@@ -29,8 +29,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import net.sf.json.JSON;
 import net.sf.json.xml.XMLSerializer;
 import net.sf.saxon.Configuration;
-import net.sf.saxon.Controller;
 import net.sf.saxon.FeatureKeys;
+import net.sf.saxon.TransformerFactoryImpl;
+import net.sf.saxon.tinytree.TinyBuilder;
 import org.apache.commons.io.IOUtils;
 import org.apache.fop.apps.Fop;
 import org.apache.fop.apps.FopFactory;
@@ -71,7 +72,9 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.URIResolver;
@@ -102,6 +105,7 @@ import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -109,6 +113,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -127,6 +132,8 @@ public final class Xml {
 
     public static final Namespace xsiNS = Namespace.getNamespace("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
     public static final NioPathAwareEntityResolver PATH_RESOLVER = new NioPathAwareEntityResolver();
+    private static volatile TransformerFactory configuredTransformerFactory;
+    private static volatile TransformerFactory docPreEvaluatingTransformerFactory;
 
     //--------------------------------------------------------------------------
 
@@ -256,6 +263,46 @@ public final class Xml {
 
     //--------------------------------------------------------------------------
 
+    /**
+     * Return the stylesheet and the local stylesheets it includes or imports, recursively, eg. to
+     * find out whether a transformation changed. Remote and unreadable stylesheets are left out.
+     */
+    public static Set<Path> getStylesheetDependencies(Path styleSheetPath) {
+        Set<Path> dependencies = new LinkedHashSet<Path>();
+        addStylesheetDependencies(styleSheetPath.toAbsolutePath().normalize(), dependencies);
+        return dependencies;
+    }
+
+    private static void addStylesheetDependencies(Path styleSheetPath, Set<Path> dependencies) {
+        if (!dependencies.add(styleSheetPath) || !Files.isRegularFile(styleSheetPath)) {
+            return;
+        }
+        Element xslt;
+        try {
+            xslt = loadFile(styleSheetPath);
+        } catch (Exception e) {
+            Log.warning(Log.ENGINE, "Can not read the stylesheets used by " + styleSheetPath + ": " + e.getMessage());
+            return;
+        }
+        Namespace xslNamespace = Namespace.getNamespace("http://www.w3.org/1999/XSL/Transform");
+        for (Object child : xslt.getChildren()) {
+            Element element = (Element) child;
+            if (!xslNamespace.equals(element.getNamespace()) ||
+                !("include".equals(element.getName()) || "import".equals(element.getName()))) {
+                continue;
+            }
+            String href = element.getAttributeValue("href");
+            if (href == null || href.contains(":")) {
+                continue;
+            }
+            Path parent = styleSheetPath.getParent();
+            addStylesheetDependencies((parent == null ? styleSheetPath.getFileSystem().getPath(href) : parent.resolve(href)).normalize(),
+                dependencies);
+        }
+    }
+
+    //--------------------------------------------------------------------------
+
     /**
      * Reads file into byte array, detects charset and converts from this charset to UTF8
      *
@@ -435,28 +482,11 @@ public final class Xml {
                                              String xmlParamName, String xmlParam) throws Exception {
         Source srcXml = new JDOMSource(new Document((Element) xml.detach()));
 
-        // Dear old saxon likes to yell loudly about each and every XSLT 1.0
-        // stylesheet so switch it off but trap any exceptions because this
-        // code is run on transformers other than saxon
-        TransformerFactory transFact;
-        transFact = TransformerFactoryFactory.getTransformerFactory();
-
-        try {
-            transFact.setAttribute(FeatureKeys.VERSION_WARNING, false);
-            transFact.setAttribute(FeatureKeys.LINE_NUMBERING, true);
-            transFact.setAttribute(FeatureKeys.PRE_EVALUATE_DOC_FUNCTION, true);
-            transFact.setAttribute(FeatureKeys.RECOVERY_POLICY, Configuration.RECOVER_SILENTLY);
-            // Add the following to get timing info on xslt transformations
-            //transFact.setAttribute(FeatureKeys.TIMING,true);
-        } catch (IllegalArgumentException e) {
-            Log.warning(Log.ENGINE, "WARNING: transformerfactory doesnt like saxon attributes!", e);
-        } finally {
-            Transformer t = transFact.newTransformer(xslt);
-            if (xmlParam != null) {
-                t.setParameter(xmlParamName, new StreamSource(new StringReader(xmlParam)));
-            }
-            t.transform(srcXml, result);
+        Transformer t = getDocPreEvaluatingTransformerFactory().newTransformer(xslt);
+        if (xmlParam != null) {
+            t.setParameter(xmlParamName, new StreamSource(new StringReader(xmlParam)));
         }
+        t.transform(srcXml, result);
     }
 
     //--------------------------------------------------------------------------
@@ -477,44 +507,167 @@ public final class Xml {
      */
     public static void
     transform(Element xml, Path styleSheetPath, Result result, Map<String, Object> params) throws Exception {
+        transform(new JDOMSource(new Document((Element) xml.detach())), styleSheetPath, result, params);
+    }
+
+    /**
+     * Transforms a source (see {@link #prepareSource(Element)}) using a stylesheet on disk and pass
+     * parameters.
+     */
+    public static Element transform(Source xml, Path styleSheetPath, Map<String, Object> params) throws Exception {
+        JDOMResult resXml = new JDOMResult();
+        transform(xml, styleSheetPath, resXml, params);
+        return (Element) resXml.getDocument().getRootElement().detach();
+    }
+
+    /**
+     * Transforms a source (see {@link #prepareSource(Element)}) putting the result to a stream with
+     * optional parameters.
+     */
+    public static void
+    transform(Source xml, Path styleSheetPath, Result result, Map<String, Object> params) throws Exception {
+        Templates templates = getTemplates(styleSheetPath);
         NioPathHolder.setBase(styleSheetPath);
-        Source srcXml = new JDOMSource(new Document((Element) xml.detach()));
+        Transformer t = templates.newTransformer();
+        setParameters(t, params);
+        t.transform(xml, result);
+    }
+
+    /**
+     * Applies several stylesheets on disk, each one transforming the output of the previous one,
+     * putting the result of the last one to a stream. With Saxon, the intermediate results are
+     * built as TinyTrees instead of JDOM trees. Each stylesheet is run with its own path as base so
+     * that its relative document() calls are resolved from its own directory. The parameters are
+     * passed to all stylesheets.
+     */
+    public static void transform(Element xml, List<Path> styleSheetPaths, Result result,
+                                 Map<String, Object> params) throws Exception {
+        if (styleSheetPaths.isEmpty()) {
+            throw new IllegalArgumentException("At least one stylesheet is required");
+        }
+        boolean saxon = getConfiguredTransformerFactory() instanceof TransformerFactoryImpl;
+        Source source = new JDOMSource(new Document((Element) xml.detach()));
+        int last = styleSheetPaths.size() - 1;
+        for (int i = 0; i < last; i++) {
+            if (saxon) {
+                TinyBuilder builder = new TinyBuilder();
+                transform(source, styleSheetPaths.get(i), builder, params);
+                source = builder.getCurrentRoot();
+            } else {
+                JDOMResult resXml = new JDOMResult();
+                transform(source, styleSheetPaths.get(i), resXml, params);
+                source = new JDOMSource(resXml.getDocument());
+            }
+        }
+        transform(source, styleSheetPaths.get(last), result, params);
+    }
+
+    /**
+     * Builds a source that can be transformed several times, possibly concurrently, without
+     * walking the JDOM tree again. With Saxon, the record is converted once to a TinyTree. Other
+     * transformer factories get a JDOM source which can only be used by one thread at a time.
+     * As for the other transformations, the element is detached from its parent.
+     */
+    public static Source prepareSource(Element xml) throws Exception {
+        Source source = new JDOMSource(new Document((Element) xml.detach()));
+        TransformerFactory transFact = getConfiguredTransformerFactory();
+        if (transFact instanceof TransformerFactoryImpl) {
+            return ((TransformerFactoryImpl) transFact).getConfiguration().buildDocument(source);
+        }
+        return source;
+    }
+
+    /**
+     * Returns the compiled stylesheet. With the caching transformer factory, stylesheets of the
+     * default file system are only compiled once (and again when they are modified).
+     */
+    public static Templates getTemplates(Path styleSheetPath) throws Exception {
+        TransformerFactory transFact = getConfiguredTransformerFactory();
+        NioPathHolder.setBase(styleSheetPath);
+        String systemId = styleSheetPath.toUri().toASCIIString();
+        if (styleSheetPath.getFileSystem() == FileSystems.getDefault()) {
+            // Only opened if the stylesheet is not cached
+            return transFact.newTemplates(new StreamSource(systemId));
+        }
         try (InputStream in = IO.newInputStream(styleSheetPath)) {
-            Source srcSheet = new StreamSource(in, styleSheetPath.toUri().toASCIIString());
+            return transFact.newTemplates(new StreamSource(in, systemId));
+        }
+    }
 
-            // Dear old saxon likes to yell loudly about each and every XSLT 1.0
-            // stylesheet so switch it off but trap any exceptions because this
-            // code is run on transformers other than saxon
-            TransformerFactory transFact = TransformerFactoryFactory.getTransformerFactory();
-            transFact.setURIResolver(new JeevesURIResolver());
-            try {
-                transFact.setAttribute(FeatureKeys.VERSION_WARNING, false);
-                transFact.setAttribute(FeatureKeys.LINE_NUMBERING, true);
-                transFact.setAttribute(FeatureKeys.PRE_EVALUATE_DOC_FUNCTION, false);
-                transFact.setAttribute(FeatureKeys.RECOVERY_POLICY, Configuration.RECOVER_SILENTLY);
-
-                // Add the following to get timing info on xslt transformations
-                //transFact.setAttribute(FeatureKeys.TIMING,true);
-            } catch (IllegalArgumentException e) {
-                Log.warning(Log.ENGINE, "WARNING: transformerfactory doesnt like saxon attributes!", e);
-            } finally {
-                transFact.setURIResolver(new JeevesURIResolver());
-                Transformer t = transFact.newTransformer(srcSheet);
-                if (params != null) {
-                    for (Map.Entry<String, Object> param : params.entrySet()) {
-                        t.setParameter(param.getKey(), param.getValue());
-                    }
+    private static void setParameters(Transformer t, Map<String, Object> params) {
+        if (params != null) {
+            for (Map.Entry<String, Object> param : params.entrySet()) {
+                t.setParameter(param.getKey(), param.getValue());
+            }
+
+            if (params.containsKey("geonet-force-xml")) {
+                t.setOutputProperty("indent", "yes");
+                t.setOutputProperty("method", "xml");
+                t.setOutputProperty("{http://saxon.sf.net/}indent-spaces", "3");
+            }
+        }
+    }
 
-                if (params.containsKey("geonet-force-xml")) {
-                    ((Controller) t).setOutputProperty("indent", "yes");
-                    ((Controller) t).setOutputProperty("method", "xml");
-                    ((Controller) t).setOutputProperty("{http://saxon.sf.net/}indent-spaces", "3");
+    /**
+     * Returns the shared transformer factory. It is configured once, the first time it is used,
+     * instead of on each transformation so that all stylesheets are compiled with the same
+     * configuration and compiled stylesheets can be reused.
+     */
+    private static TransformerFactory getConfiguredTransformerFactory() throws TransformerConfigurationException {
+        TransformerFactory transFact = TransformerFactoryFactory.getTransformerFactory();
+        if (transFact != configuredTransformerFactory) {
+            synchronized (Xml.class) {
+                if (transFact != configuredTransformerFactory) {
+                    configure(transFact, false);
+                    configuredTransformerFactory = transFact;
                 }
+            }
+        }
+        return transFact;
+    }
 
+    /**
+     * Returns a transformer factory configured like the shared one except that document() calls
+     * are evaluated when a stylesheet is compiled, as {@link #transformWithXmlParam} always did. It
+     * is a separate factory so that the shared one is not reconfigured while other stylesheets are
+     * compiled with it.
+     */
+    private static TransformerFactory getDocPreEvaluatingTransformerFactory() throws TransformerConfigurationException {
+        TransformerFactory shared = getConfiguredTransformerFactory();
+        TransformerFactory transFact = docPreEvaluatingTransformerFactory;
+        if (transFact == null || transFact.getClass() != shared.getClass()) {
+            synchronized (Xml.class) {
+                transFact = docPreEvaluatingTransformerFactory;
+                if (transFact == null || transFact.getClass() != shared.getClass()) {
+                    try {
+                        transFact = shared.getClass().newInstance();
+                    } catch (ReflectiveOperationException e) {
+                        throw new TransformerConfigurationException(e);
+                    }
+                    configure(transFact, true);
+                    docPreEvaluatingTransformerFactory = transFact;
                 }
-                t.transform(srcXml, result);
             }
         }
+        return transFact;
+    }
+
+    private static void configure(TransformerFactory transFact, boolean preEvaluateDocFunction) {
+        transFact.setURIResolver(new JeevesURIResolver());
+        // Dear old saxon likes to yell loudly about each and every XSLT 1.0
+        // stylesheet so switch it off but trap any exceptions because this
+        // code is run on transformers other than saxon
+        try {
+            transFact.setAttribute(FeatureKeys.VERSION_WARNING, false);
+            transFact.setAttribute(FeatureKeys.LINE_NUMBERING, true);
+            transFact.setAttribute(FeatureKeys.PRE_EVALUATE_DOC_FUNCTION, preEvaluateDocFunction);
+            transFact.setAttribute(FeatureKeys.RECOVERY_POLICY, Configuration.RECOVER_SILENTLY);
+
+            // Add the following to get timing info on xslt transformations
+            //transFact.setAttribute(FeatureKeys.TIMING,true);
+        } catch (IllegalArgumentException e) {
+            Log.warning(Log.ENGINE, "WARNING: transformerfactory doesnt like saxon attributes!", e);
+        }
     }
 
     //--------------------------------------------------------------------------
@@ -554,29 +707,20 @@ public final class Xml {
             Fop fop = fopFactory.newFop(MimeConstants.MIME_PDF, bufferedOut);
 
             // Step 4: Setup JAXP using identity transformer
-            TransformerFactory factory = TransformerFactoryFactory.getTransformerFactory();
-            factory.setURIResolver(new JeevesURIResolver());
+            TransformerFactory factory = getConfiguredTransformerFactory();
             Source xslt = new StreamSource(new File(styleSheetPath));
-            try {
-                factory.setAttribute(FeatureKeys.VERSION_WARNING, false);
-                factory.setAttribute(FeatureKeys.LINE_NUMBERING, true);
-                factory.setAttribute(FeatureKeys.RECOVERY_POLICY, Configuration.RECOVER_SILENTLY);
-            } catch (IllegalArgumentException e) {
-                Log.warning(Log.ENGINE, "WARNING: transformerfactory doesnt like saxon attributes!", e);
-            } finally {
-                Transformer transformer = factory.newTransformer(xslt);
-
-                // Step 5: Setup input and output for XSLT transformation
-                // Setup input stream
-                Source src = new JDOMSource(new Document((Element) xml.detach()));
-
-                // Resulting SAX events (the generated FO) must be piped through to
-                // FOP
-                Result res = new SAXResult(fop.getDefaultHandler());
-
-                // Step 6: Start XSLT transformation and FOP processing
-                transformer.transform(src, res);
-            }
+            Transformer transformer = factory.newTransformer(xslt);
+
+            // Step 5: Setup input and output for XSLT transformation
+            // Setup input stream
+            Source src = new JDOMSource(new Document((Element) xml.detach()));
+
+            // Resulting SAX events (the generated FO) must be piped through to
+            // FOP
+            Result res = new SAXResult(fop.getDefaultHandler());
+
+            // Step 6: Start XSLT transformation and FOP processing
+            transformer.transform(src, res);
 
         }
 
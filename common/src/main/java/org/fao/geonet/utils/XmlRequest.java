@@ -30,6 +30,7 @@ import org.fao.geonet.exceptions.BadSoapResponseEx;
 import org.fao.geonet.exceptions.BadXmlResponseEx;
 import org.jdom.Element;
 import org.jdom.JDOMException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.client.ClientHttpResponse;
 
 import java.io.ByteArrayInputStream;
@@ -38,6 +39,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 
+import javax.annotation.Nullable;
+
 //=============================================================================
 
 public class XmlRequest extends AbstractHttpRequest {
@@ -93,6 +96,27 @@ public class XmlRequest extends AbstractHttpRequest {
 
     //---------------------------------------------------------------------------
 
+    /**
+     * Sends a conditional request, see {@link #setIfModifiedSince} and {@link #setIfNoneMatch},
+     * and obtains an xml response.
+     *
+     * @return the response or null if the remote document was not modified.
+     */
+    @Nullable
+    public final Element executeIfModified() throws IOException, BadXmlResponseEx, BadSoapResponseEx {
+        HttpRequestBase httpMethod = setupHttpMethod();
+
+        Element response = executeAndReadResponse(httpMethod);
+
+        if (response != null && useSOAP) {
+            response = soapUnembed(response);
+        }
+
+        return response;
+    }
+
+    //---------------------------------------------------------------------------
+
     /**
      * Sends a request (using GET or POST) and save the content to a file. This method does not
      * store received data.
@@ -112,6 +136,10 @@ public class XmlRequest extends AbstractHttpRequest {
     //---
     //---------------------------------------------------------------------------
 
+    /**
+     * @return the response or null if the server answered 304 Not Modified to a conditional
+     * request.
+     */
     protected final Element executeAndReadResponse(HttpRequestBase httpMethod) throws IOException, BadXmlResponseEx {
 
 
@@ -124,6 +152,14 @@ public class XmlRequest extends AbstractHttpRequest {
                 " -- Response Code: " + httpResponse.getRawStatusCode());
         }
 
+        readValidators(httpResponse);
+
+        if (httpResponse.getRawStatusCode() == HttpStatus.NOT_MODIFIED.value()) {
+            httpMethod.releaseConnection();
+            sentData = getSentData(httpMethod);
+            return null;
+        }
+
         byte[] data = null;
 
         try {
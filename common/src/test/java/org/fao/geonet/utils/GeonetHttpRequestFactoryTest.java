@@ -39,6 +39,7 @@ import java.net.InetSocketAddress;
 import java.net.URL;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -161,6 +162,45 @@ public class GeonetHttpRequestFactoryTest {
         }
     }
 
+    @Test
+    public void testConditionalRequest() throws Exception {
+        final int port = 29485;
+        InetSocketAddress address = new InetSocketAddress(port);
+        HttpServer httpServer = HttpServer.create(address, 0);
+        final Element expectedResponse = new Element("resource").addContent(new Element("id").setText("test"));
+        HttpHandler requestHandler = new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (exchange.getRequestHeaders().containsKey("If-Modified-Since")) {
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+                } else {
+                    byte[] response = Xml.getString(expectedResponse).getBytes();
+                    exchange.getResponseHeaders().add("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT");
+                    exchange.getResponseHeaders().add("ETag", "\"1234\"");
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+                    exchange.getResponseBody().write(response);
+                }
+                exchange.close();
+            }
+        };
+        final String urlPath = "/conditional.xml";
+        httpServer.createContext(urlPath, requestHandler);
+        try {
+            httpServer.start();
+            final XmlRequest xmlRequest = new GeonetHttpRequestFactory().createXmlRequest(new URL("http://localhost:" + port + urlPath));
+            Element response = xmlRequest.executeIfModified();
+            assertEquals(Xml.getString(expectedResponse), Xml.getString(response));
+            assertEquals("\"1234\"", xmlRequest.getETag());
+            assertEquals(1445412480000L, xmlRequest.getLastModified().getTime());
+
+            xmlRequest.setIfModifiedSince(xmlRequest.getLastModified());
+            assertNull(xmlRequest.executeIfModified());
+        } finally {
+            httpServer.stop(0);
+        }
+    }
+
     @Test
     public void testCreateXmlRequestURL() throws Exception {
         final XmlRequest xmlRequest = new GeonetHttpRequestFactory().createXmlRequest(new URL
@@ -26,6 +26,7 @@ package org.fao.geonet.utils;
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
 
+import net.sf.saxon.FeatureKeys;
 import org.fao.geonet.ApplicationContextHolder;
 import org.fao.geonet.Constants;
 import org.fao.geonet.SystemInfo;
@@ -34,10 +35,13 @@ import org.jdom.Attribute;
 import org.jdom.Element;
 import org.jdom.Namespace;
 import org.jdom.Text;
+import org.jdom.transform.JDOMResult;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.springframework.context.support.GenericApplicationContext;
 
+import javax.xml.transform.Source;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
@@ -47,7 +51,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -122,10 +128,7 @@ public class XmlTest {
     }
 
     protected void doTestTransform() throws Exception {
-        final GenericApplicationContext applicationContext = new GenericApplicationContext();
-        applicationContext.refresh();
-        applicationContext.getBeanFactory().registerSingleton("systemInfo", SystemInfo.createForTesting(SystemInfo.STAGE_DEVELOPMENT));
-        ApplicationContextHolder.set(applicationContext);
+        setUpApplicationContext();
 
         Path path = Paths.get(XmlTest.class.getResource("xmltest/xsl/test.xsl").toURI());
         Element result = Xml.transform(new Element("el"), path);
@@ -140,6 +143,13 @@ public class XmlTest {
         assertEquals(openResources.toString(), 0, OpenResourceTracker.numberOfOpenResources());
     }
 
+    private void setUpApplicationContext() {
+        final GenericApplicationContext applicationContext = new GenericApplicationContext();
+        applicationContext.refresh();
+        applicationContext.getBeanFactory().registerSingleton("systemInfo", SystemInfo.createForTesting(SystemInfo.STAGE_DEVELOPMENT));
+        ApplicationContextHolder.set(applicationContext);
+    }
+
     @Test
     public void testTransformSaxonTransformer() throws Exception {
         TransformerFactoryFactory.init("net.sf.saxon.TransformerFactoryImpl");
@@ -150,6 +160,82 @@ public class XmlTest {
         }
     }
 
+    @Test
+    public void testTransformWithXmlParam() throws Exception {
+        TransformerFactoryFactory.init("net.sf.saxon.TransformerFactoryImpl");
+        setUpApplicationContext();
+        try {
+            Path testXsl = Paths.get(XmlTest.class.getResource("xmltest/xsl/test.xsl").toURI());
+            Element transformed = Xml.transformWithXmlParam((Element) TEST_METADATA.clone(), testXsl.toString(),
+                "param", "<param/>");
+            assertTransformedXml(transformed);
+            // document() calls are pre-evaluated by a factory of its own, not the shared one
+            assertEquals(Boolean.FALSE,
+                TransformerFactoryFactory.getTransformerFactory().getAttribute(FeatureKeys.PRE_EVALUATE_DOC_FUNCTION));
+        } finally {
+            TransformerFactoryFactory.init(null);
+        }
+    }
+
+    @Test
+    public void testTransformChain() throws Exception {
+        TransformerFactoryFactory.init("net.sf.saxon.TransformerFactoryImpl");
+        setUpApplicationContext();
+        try {
+            Path testXsl = Paths.get(XmlTest.class.getResource("xmltest/xsl/test.xsl").toURI());
+            Path countXsl = testXsl.resolveSibling("count.xsl");
+            Map<String, Object> params = new HashMap<>();
+            params.put("name", "children");
+
+            JDOMResult result = new JDOMResult();
+            Xml.transform(new Element("el"), Arrays.asList(testXsl, countXsl), result, params);
+
+            Element children = result.getDocument().getRootElement();
+            assertEquals("children", children.getName());
+            assertEquals("3", children.getText());
+        } finally {
+            TransformerFactoryFactory.init(null);
+        }
+    }
+
+    @Test
+    public void testTransformChainResolvesDocumentsFromEachStylesheet() throws Exception {
+        TransformerFactoryFactory.init("net.sf.saxon.TransformerFactoryImpl");
+        setUpApplicationContext();
+        try {
+            Path testXsl = Paths.get(XmlTest.class.getResource("xmltest/xsl/test.xsl").toURI());
+            Path documentXsl = testXsl.resolveSibling("nested").resolve("document.xsl");
+
+            JDOMResult result = new JDOMResult();
+            Xml.transform(new Element("el"), Arrays.asList(testXsl, documentXsl), result, null);
+
+            Element document = result.getDocument().getRootElement();
+            assertEquals("document", document.getName());
+            assertEquals("nested", document.getText());
+        } finally {
+            TransformerFactoryFactory.init(null);
+        }
+    }
+
+    @Test
+    public void testTransformPreparedSource() throws Exception {
+        TransformerFactoryFactory.init("net.sf.saxon.TransformerFactoryImpl");
+        setUpApplicationContext();
+        try {
+            Path testXsl = Paths.get(XmlTest.class.getResource("xmltest/xsl/test.xsl").toURI());
+            Path countXsl = testXsl.resolveSibling("count.xsl");
+
+            Source source = Xml.prepareSource((Element) TEST_METADATA.clone());
+            Element count = Xml.transform(source, countXsl, null);
+            assertEquals("count", count.getName());
+            assertEquals(String.valueOf(TEST_METADATA.getChildren().size()), count.getText());
+            // The same source can be transformed again
+            assertTransformedXml(Xml.transform(source, testXsl, null));
+        } finally {
+            TransformerFactoryFactory.init(null);
+        }
+    }
+
     protected void assertTransformedXml(Element result) {
         assertEquals("root", result.getName());
         assertEquals(3, result.getChildren().size());
@@ -121,6 +121,36 @@ public class ServiceContext extends BasicContext {
         ApplicationContextHolder.set(this.getApplicationContext());
     }
 
+    /**
+     * Removes the service context of this thread, eg. once a worker of a pool is done with the
+     * context it was given.
+     */
+    public static void clearThreadLocal() {
+        THREAD_LOCAL_INSTANCE.remove();
+    }
+
+    /**
+     * Creates a context for another thread working on behalf of this one, eg. a worker of a pool,
+     * with the same service, user session, language and client information. A context must not be
+     * shared between threads because its response headers and status are not thread safe.
+     */
+    public ServiceContext createThreadContext() {
+        final ServiceContext context = new ServiceContext(_service, getApplicationContext(), htContexts, getEntityManager());
+        context.setBaseUrl(getBaseUrl());
+        context.setLanguage(_language);
+        context.setUserSession(_userSession);
+        context.setIpAddress(_ipAddress);
+        context.setMaxUploadSize(_maxUploadSize);
+        context.setServlet(_servlet);
+        context.setInputMethod(_input);
+        context.setOutputMethod(_output);
+        if (_headers != null) {
+            context.setHeaders(new HashMap<String, String>(_headers));
+        }
+        context.setLogger(logger);
+        return context;
+    }
+
     //--------------------------------------------------------------------------
     //---
     //--- API methods
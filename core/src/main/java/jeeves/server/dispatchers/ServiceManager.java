@@ -41,6 +41,7 @@ import jeeves.server.dispatchers.guiservices.XmlFile;
 import jeeves.server.sources.ServiceRequest;
 import jeeves.server.sources.ServiceRequest.InputMethod;
 import jeeves.server.sources.ServiceRequest.OutputMethod;
+import jeeves.server.sources.StreamingResponse;
 import jeeves.server.sources.http.HttpServiceRequest;
 import jeeves.server.sources.http.JeevesServlet;
 import org.apache.commons.lang.StringUtils;
@@ -586,6 +587,12 @@ public class ServiceManager {
                                   Element response, OutputPage outPage, boolean cache) throws Exception {
         info("   -> dispatching to output for : " + req.getService());
 
+        //--- only plain xml output is streamed
+        if (response instanceof StreamingResponse && (outPage != null || req.hasJSONOutput()
+            || req.getInputMethod() == InputMethod.SOAP || req.getOutputMethod() == OutputMethod.SOAP)) {
+            ((StreamingResponse) response).materialize();
+        }
+
         //------------------------------------------------------------------------
         //--- check if the output page is a foward
 
@@ -197,7 +197,11 @@ public class ServiceRequest {
     }
 
     public void write(Element response) throws IOException {
-        Xml.writeResponse(new Document(response), outStream);
+        if (response instanceof StreamingResponse) {
+            ((StreamingResponse) response).write(outStream);
+        } else {
+            Xml.writeResponse(new Document(response), outStream);
+        }
         endStream();
     }
 
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package jeeves.server.sources;
+
+import org.jdom.Comment;
+import org.jdom.Content;
+
+import java.io.IOException;
+
+/**
+ * Placeholder for the part of a {@link StreamingResponse} that is only produced while the response
+ * is written. Each produced content is written and then released so that large responses are not
+ * held in memory.
+ */
+public abstract class StreamedContent extends Comment {
+
+    public StreamedContent() {
+        super("streamed content");
+    }
+
+    /**
+     * Produces the content, in document order.
+     *
+     * @param handler called for each produced content, which must not be attached to a parent.
+     */
+    public abstract void produce(Handler handler) throws IOException;
+
+    public interface Handler {
+        void handle(Content content) throws IOException;
+    }
+}
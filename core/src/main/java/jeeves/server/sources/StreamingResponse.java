@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package jeeves.server.sources;
+
+import org.jdom.Comment;
+import org.jdom.Content;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.Text;
+import org.jdom.filter.ContentFilter;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Service response whose {@link StreamedContent} descendants are produced while the response is
+ * written to the output stream instead of being built in memory by the service.
+ *
+ * Only plain XML output is streamed: the streamed content is added to the response with {@link
+ * #materialize()} before it goes through an output page, a JSON conversion or a SOAP envelope.
+ */
+public class StreamingResponse extends Element {
+
+    public StreamingResponse(String name, Namespace namespace) {
+        super(name, namespace);
+    }
+
+    /**
+     * Writes the response, in the same format as {@link org.fao.geonet.utils.Xml#writeResponse}.
+     */
+    public void write(OutputStream out) throws IOException {
+        final Format format = Format.getPrettyFormat();
+        final Writer writer = new OutputStreamWriter(out, format.getEncoding());
+
+        writer.write("<?xml version=\"1.0\" encoding=\"" + format.getEncoding() + "\"?>");
+        writer.write(format.getLineSeparator());
+        new StreamingOutputter(format).output(this, writer);
+        writer.write(format.getLineSeparator());
+        writer.flush();
+    }
+
+    /**
+     * Replaces the streamed content placeholders by the content they produce.
+     *
+     * @return this response.
+     */
+    public StreamingResponse materialize() throws IOException {
+        for (StreamedContent placeholder : getStreamedContents()) {
+            final List<Content> contents = new ArrayList<Content>();
+            placeholder.produce(new StreamedContent.Handler() {
+                @Override
+                public void handle(Content content) {
+                    contents.add(content);
+                }
+            });
+            Element parent = placeholder.getParentElement();
+            parent.addContent(parent.indexOf(placeholder), contents);
+            placeholder.detach();
+        }
+        return this;
+    }
+
+    private List<StreamedContent> getStreamedContents() {
+        List<StreamedContent> placeholders = new ArrayList<StreamedContent>();
+        @SuppressWarnings("unchecked")
+        Iterator<Content> comments = getDescendants(new ContentFilter(ContentFilter.COMMENT));
+        while (comments.hasNext()) {
+            Content comment = comments.next();
+            if (comment instanceof StreamedContent) {
+                placeholders.add((StreamedContent) comment);
+            }
+        }
+        return placeholders;
+    }
+
+    /**
+     * Outputter producing each {@link StreamedContent} placeholder where it is met while the
+     * response tree is written.
+     */
+    private static class StreamingOutputter extends XMLOutputter {
+
+        StreamingOutputter(Format format) {
+            super(format);
+        }
+
+        @Override
+        protected void printComment(final Writer out, Comment comment) throws IOException {
+            if (!(comment instanceof StreamedContent)) {
+                super.printComment(out, comment);
+                return;
+            }
+            ((StreamedContent) comment).produce(new StreamedContent.Handler() {
+                @Override
+                public void handle(Content content) throws IOException {
+                    output(content, out);
+                    out.write(getFormat().getLineSeparator());
+                    out.flush();
+                }
+            });
+        }
+
+        private void output(Content content, Writer out) throws IOException {
+            if (content instanceof Element) {
+                output((Element) content, out);
+            } else if (content instanceof Comment) {
+                output((Comment) content, out);
+            } else if (content instanceof Text) {
+                output((Text) content, out);
+            } else {
+                throw new IllegalArgumentException("Unsupported streamed content: " + content);
+            }
+        }
+    }
+}
@@ -175,6 +175,18 @@ public final class Processor {
 
     //--------------------------------------------------------------------------
 
+    /**
+     * Return the remote fragment of an XLink from the cache.
+     *
+     * @return the fragment or null if it is not in the cache.
+     */
+    public static Element getCachedXLink(String uri) throws CacheException {
+        uri = uri.replaceAll("&+", "&");
+        return (Element) JeevesJCS.getInstance(XLINK_JCS).getFromGroup(uri.toLowerCase(), mapURI(uri));
+    }
+
+    //--------------------------------------------------------------------------
+
     /**
      * Resolves an xlink
      */
@@ -29,6 +29,7 @@ import com.google.common.collect.Lists;
 
 import org.apache.commons.lang.StringUtils;
 import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.MetadataDataCodec;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.schema.iso19139.ISO19139Namespaces;
 import org.fao.geonet.utils.Log;
@@ -181,13 +182,13 @@ public class MetadataResourceDatabaseMigration extends DatabaseMigrationTask {
                 final SettingManager settingManager = applicationContext.getBean(SettingManager.class);
 
                 while (resultSet.next()) {
-                    final Element xml = Xml.loadString(resultSet.getString(1), false);
+                    final Element xml = Xml.loadString(MetadataDataCodec.decode(resultSet.getString(1)), false);
                     final int id = resultSet.getInt(2);
                     final String uuid = resultSet.getString(3);
                     boolean changed = updateMetadataResourcesLink(xml, uuid, settingManager);
                     if (changed) {
                         String updatedData = Xml.getString(xml);
-                        update.setString(1, updatedData);
+                        update.setString(1, MetadataDataCodec.encode(updatedData));
                         update.setInt(2, id);
                         update.addBatch();
                         numInBatch++;
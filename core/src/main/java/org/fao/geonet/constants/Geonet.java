@@ -136,7 +136,6 @@ public final class Geonet {
          * Stylesheet to convert a CQL parameter to a filter.
          */
         public static final String CQL_TO_FILTER = "cql-to-filter.xsl";
-        public static final String FILTER_TO_LUCENE = "filter-to-lucene.xsl";
         public static final String LICENSE_ANNEX = "license-annex.html";
         public static final String LICENSE_ANNEX_XSL = "metadata-license-annex.xsl";
         public static final String METADATA_BRIEF = "metadata-brief.xsl";
@@ -496,6 +495,11 @@ public final class Geonet {
         public static final String REQUESTED_LANGUAGE = "requestedLanguage";
         public static final String SUMMARY_ITEMS = "summaryItems";
         public static final java.lang.String EXTRA_DUMP_FIELDS = "extraDumpFields";
+        /**
+         * Parameter name: {@value #CURSOR} - Deep paging cursor returned by the previous page of
+         * a search or {@link org.fao.geonet.kernel.search.SearchCursor#START} for the first page.
+         */
+        public static final String CURSOR = "cursor";
 
         /**
          * TODO javadoc.
@@ -30,10 +30,13 @@ import static org.springframework.data.jpa.domain.Specifications.where;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.fao.geonet.ApplicationContextHolder;
@@ -47,17 +50,17 @@ import org.fao.geonet.domain.Pair;
 import org.fao.geonet.domain.Profile;
 import org.fao.geonet.domain.ReservedGroup;
 import org.fao.geonet.domain.ReservedOperation;
-import org.fao.geonet.domain.Setting;
 import org.fao.geonet.domain.User;
 import org.fao.geonet.domain.UserGroup;
+import org.fao.geonet.domain.UserGroupId;
 import org.fao.geonet.domain.User_;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
+import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.kernel.setting.Settings;
 import org.fao.geonet.repository.GroupRepository;
 import org.fao.geonet.repository.GroupRepositoryCustom;
 import org.fao.geonet.repository.OperationAllowedRepository;
 import org.fao.geonet.repository.OperationRepository;
-import org.fao.geonet.repository.SettingRepository;
 import org.fao.geonet.repository.SortUtils;
 import org.fao.geonet.repository.UserGroupRepository;
 import org.fao.geonet.repository.UserRepository;
@@ -66,20 +69,30 @@ import org.fao.geonet.utils.Log;
 import org.jdom.Element;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
-import org.springframework.context.ConfigurableApplicationContext;
-import org.springframework.data.jpa.domain.Specification;
-import org.springframework.data.jpa.domain.Specifications;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import jeeves.server.UserSession;
 import jeeves.server.context.ServiceContext;
 
 /**
  * Handles the access to a metadata depending on the metadata/group.
+ * <p>
+ * The groups of an authenticated user are cached in its {@link UserSession} until groups or group
+ * memberships change, as notified by {@link AccessManagerGroupsListener} or by a call to {@link
+ * #groupsChanged()} after a bulk update, and at most {@link #setSessionGroupsMaxAge(int)
+ * sessionGroupsMaxAge} seconds so that the changes made by other nodes sharing the database are
+ * picked up.
  */
 public class AccessManager {
 
+    /**
+     * Name of the {@link UserSession} property holding the {@link SessionGroups} of the user.
+     */
+    private static final String SESSION_GROUPS = "accessManager.groups";
+
     @Autowired
-    SettingRepository settingRepository;
+    SettingManager settingManager;
 
     @Autowired
     IMetadataUtils metadataUtils;
@@ -99,6 +112,24 @@ public class AccessManager {
     @Autowired
     UserRepository userRepository;
 
+    /**
+     * Incremented each time groups or group memberships change so that the groups cached in the
+     * sessions are reloaded.
+     */
+    private final AtomicLong groupsVersion = new AtomicLong();
+
+    private int sessionGroupsMaxAge = 60;
+
+    /**
+     * @param sessionGroupsMaxAge the number of seconds the groups of a user are cached in its
+     *                            session, so that the changes made by other nodes sharing the
+     *                            database are visible. 60 by default, 0 to only reload the groups
+     *                            when they are changed by this node.
+     */
+    public void setSessionGroupsMaxAge(int sessionGroupsMaxAge) {
+        this.sessionGroupsMaxAge = sessionGroupsMaxAge;
+    }
+
     /**
      * Given a user(session) a list of groups and a metadata returns all operations that user can
      * perform on that metadata (an set of OPER_XXX as keys). If the user is authenticated the
@@ -164,8 +195,6 @@ public class AccessManager {
      * @param editingGroupsOnly TODO
      */
     public Set<Integer> getUserGroups(UserSession usrSess, String ip, boolean editingGroupsOnly) throws Exception {
-        final ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
-
         Set<Integer> hs = new HashSet<Integer>();
 
         // add All (1) network group
@@ -179,22 +208,83 @@ public class AccessManager {
             // add (-1) GUEST group
             hs.add(ReservedGroup.guest.getId());
 
-            if (Profile.Administrator == usrSess.getProfile()) {
-                List<Integer> allGroupIds = groupRepository.findIds();
-
-                hs.addAll(allGroupIds);
+            final SessionGroups sessionGroups = getSessionGroups(usrSess);
+            if (Profile.Administrator == usrSess.getProfile() || !editingGroupsOnly) {
+                hs.addAll(sessionGroups.getGroups());
             } else {
-                Specification<UserGroup> spec = UserGroupSpecs.hasUserId(usrSess.getUserIdAsInt());
-                if (editingGroupsOnly) {
-                    spec = Specifications.where(spec).and(UserGroupSpecs.hasProfile(Profile.Editor));
-                }
-
-                hs.addAll(userGroupRepository.findGroupIds(spec));
+                hs.addAll(sessionGroups.getGroups(Profile.Editor));
             }
         }
         return hs;
     }
 
+    /**
+     * Returns the groups in which the user has the given profile.
+     */
+    public Set<Integer> getUserGroups(UserSession usrSess, Profile profile) {
+        if (!usrSess.isAuthenticated()) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(getSessionGroups(usrSess).getGroups(profile));
+    }
+
+    /**
+     * Returns the groups of the authenticated user of the session, loading them if they are not
+     * cached in the session or if they have changed since.
+     */
+    private SessionGroups getSessionGroups(UserSession usrSess) {
+        final int userId = usrSess.getUserIdAsInt();
+        final Profile profile = usrSess.getProfile();
+        final long version = groupsVersion.get();
+        final long notBefore = sessionGroupsMaxAge > 0 ?
+            System.currentTimeMillis() - sessionGroupsMaxAge * 1000L : Long.MIN_VALUE;
+        final Object cached = usrSess.getProperty(SESSION_GROUPS);
+        if (cached instanceof SessionGroups &&
+            ((SessionGroups) cached).isValid(userId, profile, version, notBefore)) {
+            return (SessionGroups) cached;
+        }
+
+        final Set<Integer> groups = new HashSet<>();
+        final Map<Profile, Set<Integer>> groupsByProfile = new EnumMap<>(Profile.class);
+        for (UserGroup userGroup : userGroupRepository.findAll(UserGroupSpecs.hasUserId(userId))) {
+            final UserGroupId id = userGroup.getId();
+            groups.add(id.getGroupId());
+            Set<Integer> profileGroups = groupsByProfile.get(id.getProfile());
+            if (profileGroups == null) {
+                profileGroups = new HashSet<>();
+                groupsByProfile.put(id.getProfile(), profileGroups);
+            }
+            profileGroups.add(id.getGroupId());
+        }
+        if (Profile.Administrator == profile) {
+            groups.clear();
+            groups.addAll(groupRepository.findIds());
+        }
+
+        final SessionGroups sessionGroups = new SessionGroups(userId, profile, version, groups, groupsByProfile);
+        usrSess.setProperty(SESSION_GROUPS, sessionGroups);
+        return sessionGroups;
+    }
+
+    /**
+     * Invalidates the groups cached in the sessions now and, as groups loaded by another thread in
+     * the meantime do not see uncommitted changes, once the current transaction completes.
+     * <p>
+     * Changes made through the entity manager are notified by {@link AccessManagerGroupsListener}
+     * but bulk deletes of group memberships, which skip entity callbacks, must call this method.
+     */
+    public void groupsChanged() {
+        groupsVersion.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    groupsVersion.incrementAndGet();
+                }
+            });
+        }
+    }
+
     /**
      *  Retrieves the user's groups ids
      * @param session
@@ -204,12 +294,7 @@ public class AccessManager {
      */
     public static List<Integer> getGroups(UserSession session, Profile profile) throws SQLException {
         ApplicationContext applicationContext = ApplicationContextHolder.get();
-        final UserGroupRepository userGroupRepository = applicationContext.getBean(UserGroupRepository.class);
-
-        Specifications<UserGroup> spec = Specifications.where(UserGroupSpecs.hasUserId(session.getUserIdAsInt()));
-        spec = spec.and(UserGroupSpecs.hasProfile(profile));
-
-        return userGroupRepository.findGroupIds(spec);
+        return new ArrayList<>(applicationContext.getBean(AccessManager.class).getUserGroups(session, profile));
     }
 
     public Set<Integer> getReviewerGroups(UserSession usrSess) throws Exception {
@@ -217,13 +302,7 @@ public class AccessManager {
 
         // get other groups
         if (usrSess.isAuthenticated()) {
-            Specification<UserGroup> spec =
-                UserGroupSpecs.hasUserId(usrSess.getUserIdAsInt());
-            spec = Specifications
-                .where(spec)
-                .and(UserGroupSpecs.hasProfile(Profile.Reviewer));
-
-            hs.addAll(userGroupRepository.findGroupIds(spec));
+            hs.addAll(getSessionGroups(usrSess).getGroups(Profile.Reviewer));
         }
         return hs;
     }
@@ -236,6 +315,13 @@ public class AccessManager {
     public Set<Integer> getVisibleGroups(final int userId) throws Exception {
         Set<Integer> hs = new HashSet<Integer>();
 
+        final ServiceContext context = ServiceContext.get();
+        final UserSession session = context == null ? null : context.getUserSession();
+        if (session != null && session.isAuthenticated() && session.getUserIdAsInt() == userId) {
+            hs.addAll(getSessionGroups(session).getGroups());
+            return hs;
+        }
+
         User user = userRepository.findOne(userId);
 
         if (user == null) {
@@ -497,14 +583,7 @@ public class AccessManager {
         }
 
         // Check if the user is a reviewer in the metadata owners group.
-        Specification<UserGroup> hasUserIdAndGroupAndProfile = where(UserGroupSpecs.hasProfile(Profile.Reviewer))
-            .and(UserGroupSpecs.hasGroupId(metadata.getSourceInfo().getGroupOwner()))
-            .and(UserGroupSpecs.hasUserId(us.getUserIdAsInt()));
-
-        UserGroupRepository userGroupRepo = context.getBean(UserGroupRepository.class);
-        long count = userGroupRepo.count(hasUserIdAndGroupAndProfile);
-
-        return  (count > 0);
+        return getSessionGroups(us).getGroups(Profile.Reviewer).contains(metadata.getSourceInfo().getGroupOwner());
     }
 
     /**
@@ -526,15 +605,13 @@ public class AccessManager {
             return false;
         }
 
-        Specifications spec = where(UserGroupSpecs.hasProfile(profile)).and(UserGroupSpecs.hasUserId(us.getUserIdAsInt()));
-
-        List<Integer> opAlloweds = new ArrayList<Integer>();
+        final Set<Integer> profileGroups = getSessionGroups(us).getGroups(profile);
         for (OperationAllowed opAllowed : allOpAlloweds) {
-            opAlloweds.add(opAllowed.getId().getGroupId());
+            if (profileGroups.contains(opAllowed.getId().getGroupId())) {
+                return true;
+            }
         }
-        spec = spec.and(UserGroupSpecs.hasGroupIds(opAlloweds));
-
-        return (!userGroupRepository.findAll(spec).isEmpty());
+        return false;
 
     }
 
@@ -549,17 +626,10 @@ public class AccessManager {
             return false;
         }
 
-        UserGroupRepository userGroupRepository = context.getBean(UserGroupRepository.class);
         IMetadataUtils metadataUtils = context.getBean(IMetadataUtils.class);
 
-        Specifications spec = where(UserGroupSpecs.hasProfile(Profile.Reviewer)).and(UserGroupSpecs.hasUserId(us.getUserIdAsInt()));
-
-        List<Integer> opAlloweds = new ArrayList<Integer>();
-        opAlloweds.add(metadataUtils.findOne(id).getSourceInfo().getGroupOwner());
-
-        spec = spec.and(UserGroupSpecs.hasGroupIds(opAlloweds));
-
-        return (!userGroupRepository.findAll(spec).isEmpty());
+        Integer groupOwner = metadataUtils.findOne(id).getSourceInfo().getGroupOwner();
+        return getSessionGroups(us).getGroups(Profile.Reviewer).contains(groupOwner);
     }
 
     public int getPrivilegeId(final String name) {
@@ -591,14 +661,13 @@ public class AccessManager {
         }
 
         // IPv4
-        Setting network = settingRepository.findOne(Settings.SYSTEM_INTRANET_NETWORK);
-        Setting netmask = settingRepository.findOne(Settings.SYSTEM_INTRANET_NETMASK);
+        String network = settingManager.getValue(Settings.SYSTEM_INTRANET_NETWORK, true);
+        String netmask = settingManager.getValue(Settings.SYSTEM_INTRANET_NETMASK, true);
 
         try {
-            if (network != null && netmask != null &&
-                StringUtils.isNotEmpty(network.getValue()) && StringUtils.isNotEmpty(netmask.getValue())) {
-                long lIntranetNet = getAddress(network.getValue());
-                long lIntranetMask = getAddress(netmask.getValue());
+            if (StringUtils.isNotEmpty(network) && StringUtils.isNotEmpty(netmask)) {
+                long lIntranetNet = getAddress(network);
+                long lIntranetMask = getAddress(netmask);
                 long lAddress = getAddress(ip.split(",")[0]);
                 return (lAddress & lIntranetMask) == (lIntranetNet & lIntranetMask);
             }
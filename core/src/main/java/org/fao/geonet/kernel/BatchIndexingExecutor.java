@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel;
+
+import jeeves.server.context.ServiceContext;
+
+import org.fao.geonet.Util;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.User;
+import org.fao.geonet.kernel.datamanager.IMetadataIndexer;
+import org.fao.geonet.kernel.search.SearchManager;
+import org.fao.geonet.utils.Log;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Indexes batches of metadata records with a fixed number of threads shared by all the batches.
+ *
+ * Batches are indexed one after the other. A batch submitted while another one is running is
+ * queued; batches submitted while one is already queued are merged into it, so repeated requests
+ * to rebuild the index do not pile up. The records of a merged batch are still indexed with the
+ * service context of the request which submitted them.
+ *
+ * The threads working on a batch claim small chunks of records from a shared cursor instead of
+ * getting a fixed share of the batch up front. A thread slowed down by large records or XLinks
+ * simply claims fewer chunks and the others keep working until the batch is done. Chunks get
+ * smaller as the end of the batch approaches.
+ */
+@ManagedResource(description = "Batch indexing of metadata records")
+public class BatchIndexingExecutor {
+
+    /**
+     * Maximum number of records claimed at once by a thread.
+     */
+    private static final int MAX_CHUNK_SIZE = 100;
+    /**
+     * Number of records indexed before forcing index changes.
+     */
+    private static final int FORCE_INDEX_CHANGES_INTERVAL = 500;
+
+    private final IMetadataIndexer metadataIndexer;
+    private final SearchManager searchManager;
+    private final int threads;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService coordinator;
+
+    private final Object lock = new Object();
+    /**
+     * The batch waiting for the running one to complete. Guarded by lock.
+     */
+    private Batch queued;
+    private volatile Batch current;
+
+    public BatchIndexingExecutor(IMetadataIndexer metadataIndexer, SearchManager searchManager, int threads) {
+        this.metadataIndexer = metadataIndexer;
+        this.searchManager = searchManager;
+        this.threads = Math.max(1, threads);
+        this.workers = new ThreadPoolExecutor(this.threads, this.threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("batch-indexing-worker"));
+        this.workers.allowCoreThreadTimeOut(true);
+        this.coordinator = Executors.newSingleThreadExecutor(new NamedThreadFactory("batch-indexing"));
+    }
+
+    /**
+     * Schedule the indexing of records.
+     *
+     * @param context           context object
+     * @param metadataIds       the metadata ids to index (either integers or strings)
+     * @param transactionStatus if non-null, wait for the transaction to complete before indexing
+     */
+    public void submit(@Nonnull ServiceContext context, @Nonnull Collection<?> metadataIds,
+                       @Nullable TransactionStatus transactionStatus) {
+        if (metadataIds.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            if (queued == null) {
+                queued = new Batch();
+                coordinator.execute(queued);
+            } else if (Log.isDebugEnabled(Geonet.INDEX_ENGINE)) {
+                Log.debug(Geonet.INDEX_ENGINE, "Adding " + metadataIds.size() + " records to the queued indexing batch.");
+            }
+            queued.add(context, metadataIds, transactionStatus);
+        }
+    }
+
+    /**
+     * @return true if a batch is running or queued.
+     */
+    @ManagedAttribute(description = "Is a batch running or queued")
+    public boolean isIndexing() {
+        synchronized (lock) {
+            return queued != null || current != null && current.isRunning();
+        }
+    }
+
+    public BatchIndexingProgress getProgress() {
+        int pending;
+        synchronized (lock) {
+            pending = queued == null ? 0 : queued.size();
+        }
+        Batch batch = current;
+        if (batch == null) {
+            return new BatchIndexingProgress(false, 0, 0, 0, pending, 0);
+        }
+        return batch.getProgress(pending);
+    }
+
+    @ManagedAttribute(description = "Number of records of the current batch")
+    public int getTotal() {
+        return getProgress().getTotal();
+    }
+
+    @ManagedAttribute(description = "Number of records of the current batch already processed")
+    public int getProcessed() {
+        return getProgress().getProcessed();
+    }
+
+    @ManagedAttribute(description = "Number of records of the current batch that failed")
+    public int getFailed() {
+        return getProgress().getFailed();
+    }
+
+    @ManagedAttribute(description = "Number of records waiting for the current batch to complete")
+    public int getPending() {
+        return getProgress().getPending();
+    }
+
+    @ManagedAttribute(description = "Records indexed per second in the current batch")
+    public double getRecordsPerSecond() {
+        return getProgress().getRecordsPerSecond();
+    }
+
+    @ManagedAttribute(description = "Estimated number of seconds before the current batch completes")
+    public long getEtaSeconds() {
+        return getProgress().getEtaSeconds();
+    }
+
+    @ManagedAttribute(description = "Number of indexing threads")
+    public int getThreads() {
+        return threads;
+    }
+
+    public void shutdown() {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * The records submitted with the same service context.
+     */
+    private static final class Request {
+        private final ServiceContext context;
+        private final User user;
+        private final List<String> ids = new ArrayList<String>();
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        Request(ServiceContext context) {
+            this.context = context;
+            this.user = context.getUserSession() == null ? null : context.getUserSession().getPrincipal();
+        }
+    }
+
+    private final class Batch implements Runnable {
+        private final List<Request> requests = new ArrayList<Request>();
+        private final Set<String> ids = new LinkedHashSet<String>();
+        private final List<TransactionStatus> transactions = new ArrayList<TransactionStatus>();
+
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger sinceLastForce = new AtomicInteger();
+        private volatile int total;
+        private volatile boolean running;
+        private volatile long startTime;
+        private volatile long endTime;
+
+        // Called with lock held
+        void add(ServiceContext context, Collection<?> metadataIds, TransactionStatus transactionStatus) {
+            Request request = null;
+            for (Request existing : requests) {
+                if (existing.context == context) {
+                    request = existing;
+                    break;
+                }
+            }
+            if (request == null) {
+                request = new Request(context);
+                requests.add(request);
+            }
+            // A record submitted by several requests is indexed once, with the first context
+            for (Object metadataId : metadataIds) {
+                if (ids.add(metadataId.toString())) {
+                    request.ids.add(metadataId.toString());
+                }
+            }
+            if (transactionStatus != null) {
+                transactions.add(transactionStatus);
+            }
+        }
+
+        // Called with lock held
+        int size() {
+            return ids.size();
+        }
+
+        boolean isRunning() {
+            return running;
+        }
+
+        BatchIndexingProgress getProgress(int pending) {
+            long end = running ? System.currentTimeMillis() : endTime;
+            return new BatchIndexingProgress(running, total, processed.get(), failed.get(), pending,
+                Math.max(0, end - startTime));
+        }
+
+        @Override
+        public void run() {
+            ServiceContext context;
+            synchronized (lock) {
+                context = requests.get(0).context;
+            }
+            context.setAsThreadLocal();
+            // Records may be added to the batch while waiting, possibly with new transactions
+            boolean started = false;
+            while (!started) {
+                if (!awaitTransactionsAndServlet(context)) {
+                    return;
+                }
+                synchronized (lock) {
+                    if (transactionsCompleted()) {
+                        queued = null;
+                        total = ids.size();
+                        startTime = System.currentTimeMillis();
+                        running = true;
+                        current = this;
+                        started = true;
+                    }
+                }
+            }
+            try {
+                if (Log.isDebugEnabled(Geonet.INDEX_ENGINE)) {
+                    Log.debug(Geonet.INDEX_ENGINE, "Indexing " + total + " records.");
+                }
+                int workerCount = Math.min(threads, total);
+                List<Future<?>> results = new ArrayList<Future<?>>();
+                for (int i = 0; i < workerCount; i++) {
+                    results.add(workers.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            indexChunks();
+                        }
+                    }));
+                }
+                for (Future<?> result : results) {
+                    result.get();
+                }
+                searchManager.forceIndexChanges();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                Log.error(Geonet.INDEX_ENGINE, "Error occurred indexing metadata", e);
+            } finally {
+                endTime = System.currentTimeMillis();
+                running = false;
+                for (Request request : requests) {
+                    if (request.user != null && request.context.getUserSession().getUserId() == null) {
+                        request.context.getUserSession().loginAs(request.user);
+                    }
+                }
+                Log.info(Geonet.INDEX_ENGINE, "Batch indexing completed: " + getProgress(0));
+            }
+        }
+
+        private boolean awaitTransactionsAndServlet(ServiceContext context) {
+            try {
+                for (TransactionStatus transactionStatus : snapshotTransactions()) {
+                    while (!transactionStatus.isCompleted()) {
+                        Thread.sleep(100);
+                    }
+                }
+                // poll context to see whether servlet is up yet
+                while (!context.isServletInitialized()) {
+                    if (Log.isDebugEnabled(Geonet.DATA_MANAGER)) {
+                        Log.debug(Geonet.DATA_MANAGER, "Waiting for servlet to finish initializing..");
+                    }
+                    Thread.sleep(10000); // sleep 10 seconds
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        // Called with lock held
+        private boolean transactionsCompleted() {
+            for (TransactionStatus transactionStatus : transactions) {
+                if (!transactionStatus.isCompleted()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private List<TransactionStatus> snapshotTransactions() {
+            synchronized (lock) {
+                return new ArrayList<TransactionStatus>(transactions);
+            }
+        }
+
+        /**
+         * Claim the next records to index, all from the same request. The size of the chunk
+         * decreases with the number of records left so that all threads finish at about the same
+         * time.
+         *
+         * @return the request of the records or null if all records are claimed.
+         */
+        @Nullable
+        private Request nextChunk(List<String> chunk) {
+            for (Request request : requests) {
+                while (true) {
+                    int start = request.cursor.get();
+                    int remaining = request.ids.size() - start;
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    int size = Math.max(1, Math.min(MAX_CHUNK_SIZE, remaining / (threads * 4)));
+                    if (request.cursor.compareAndSet(start, start + size)) {
+                        chunk.addAll(request.ids.subList(start, start + size));
+                        return request;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void indexChunks() {
+            List<String> chunk = new ArrayList<String>(MAX_CHUNK_SIZE);
+            Request request;
+            while (!Thread.currentThread().isInterrupted() && (request = nextChunk(chunk)) != null) {
+                request.context.setAsThreadLocal();
+                try {
+                    failed.addAndGet(metadataIndexer.indexMetadataBatch(chunk));
+                } catch (Exception e) {
+                    failed.addAndGet(chunk.size());
+                    Log.error(Geonet.INDEX_ENGINE, "Error indexing metadata " + chunk + ": " + e.getMessage()
+                        + "\n" + Util.getStackTrace(e));
+                }
+                processed.addAndGet(chunk.size());
+
+                int count = sinceLastForce.addAndGet(chunk.size());
+                if (count >= FORCE_INDEX_CHANGES_INTERVAL && sinceLastForce.compareAndSet(count, 0)) {
+                    try {
+                        searchManager.forceIndexChanges();
+                    } catch (Exception e) {
+                        Log.error(Geonet.INDEX_ENGINE, "Error forcing index changes", e);
+                    }
+                }
+                chunk.clear();
+            }
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel;
+
+import java.io.Serializable;
+
+/**
+ * Progress of the batch indexing run by {@link BatchIndexingExecutor}: the current batch if one is
+ * running, the last one otherwise.
+ */
+public class BatchIndexingProgress implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean running;
+    private final int total;
+    private final int processed;
+    private final int failed;
+    private final int pending;
+    private final long elapsedMillis;
+
+    public BatchIndexingProgress(boolean running, int total, int processed, int failed, int pending,
+                                 long elapsedMillis) {
+        this.running = running;
+        this.total = total;
+        this.processed = processed;
+        this.failed = failed;
+        this.pending = pending;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return true if a batch is being indexed.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return the number of records of the batch.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the number of records of the batch already indexed, including failures.
+     */
+    public int getProcessed() {
+        return processed;
+    }
+
+    /**
+     * @return the number of records of the batch that could not be indexed.
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the number of records waiting for the current batch to complete.
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getRecordsPerSecond() {
+        return elapsedMillis == 0 ? 0 : processed * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * @return the estimated number of seconds before the batch is indexed or -1 if unknown.
+     */
+    public long getEtaSeconds() {
+        if (!running) {
+            return 0;
+        }
+        double rate = getRecordsPerSecond();
+        return rate == 0 ? -1 : Math.round((total - processed) / rate);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d records indexed (%d failed) in %d s, %.1f records/s",
+            processed, total, failed, elapsedMillis / 1000, getRecordsPerSecond());
+    }
+}
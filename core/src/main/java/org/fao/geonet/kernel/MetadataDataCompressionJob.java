@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel;
+
+import com.google.common.collect.Lists;
+
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.domain.MetadataDataCodec;
+import org.fao.geonet.repository.MetadataRepository;
+import org.fao.geonet.utils.Log;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.quartz.QuartzJobBean;
+
+import java.util.List;
+
+/**
+ * Compresses the data of the records stored before compression was enabled (see
+ * {@link MetadataDataCodec}). Records are processed in small batches and their change date is not
+ * modified. A record changed between its reading and its compression is skipped; it is compressed
+ * when saved or by the next run. Nothing is done if compression is not enabled.
+ */
+@DisallowConcurrentExecution
+public class MetadataDataCompressionJob extends QuartzJobBean {
+    private static final int BATCH_SIZE = 50;
+
+    @Autowired
+    private MetadataRepository metadataRepository;
+
+    @Override
+    protected void executeInternal(JobExecutionContext jobContext) throws JobExecutionException {
+        if (!MetadataDataCodec.isCompressionEnabled()) {
+            return;
+        }
+        try {
+            compressAll();
+        } catch (Exception e) {
+            Log.error(Geonet.DATA_MANAGER, "Error running " + MetadataDataCompressionJob.class.getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Compresses the data of the records which is not compressed yet, whether compression is
+     * enabled or not.
+     */
+    public void compressAll() {
+        final List<Integer> ids = metadataRepository.findAllIdsWithUncompressedData();
+        if (ids.isEmpty()) {
+            return;
+        }
+        Log.info(Geonet.DATA_MANAGER, "Compressing the data of " + ids.size() + " records");
+
+        long start = System.currentTimeMillis();
+        int compressed = 0;
+        int skipped = 0;
+        long charsBefore = 0;
+        long charsAfter = 0;
+        for (List<Integer> batch : Lists.partition(ids, BATCH_SIZE)) {
+            for (Metadata metadata : metadataRepository.findAll(batch)) {
+                final String data = metadata.getData();
+                if (data == null || MetadataDataCodec.isEncoded(data)) {
+                    continue;
+                }
+                final String encoded = MetadataDataCodec.compress(data);
+                if (!MetadataDataCodec.isEncoded(encoded)) {
+                    continue;
+                }
+                final String changeDate = metadata.getDataInfo().getChangeDate().getDateAndTime();
+                if (metadataRepository.updateStoredData(metadata.getId(), changeDate, encoded) == 0) {
+                    // changed or deleted since it was read
+                    skipped++;
+                    continue;
+                }
+                compressed++;
+                charsBefore += data.length();
+                charsAfter += encoded.length();
+            }
+        }
+        Log.info(Geonet.DATA_MANAGER, String.format(
+            "Compressed the data of %d records in %d s: %d KB stored instead of %d KB, %d records changed meanwhile skipped",
+            compressed, (System.currentTimeMillis() - start) / 1000, charsAfter / 1024, charsBefore / 1024, skipped));
+    }
+}
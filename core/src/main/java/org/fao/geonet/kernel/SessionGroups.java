@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel;
+
+import org.fao.geonet.domain.Profile;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The groups of an authenticated user, cached in its {@link jeeves.server.UserSession} by
+ * {@link AccessManager}. Immutable.
+ *
+ * A cached value is only valid for the user and profile of the session it has been computed for,
+ * as long as no group or group membership has changed since, which is tracked with the version of
+ * {@link AccessManager}, and until it is older than the maximum age set in {@link AccessManager}.
+ */
+final class SessionGroups {
+    private final int userId;
+    private final Profile profile;
+    private final long version;
+    private final long loadTime;
+    private final Set<Integer> groups;
+    private final Map<Profile, Set<Integer>> groupsByProfile;
+
+    /**
+     * @param groups          the groups of the user or all groups for an administrator.
+     * @param groupsByProfile the groups of the user by the profile the user has in the group.
+     */
+    SessionGroups(int userId, Profile profile, long version, Set<Integer> groups,
+                  Map<Profile, Set<Integer>> groupsByProfile) {
+        this.userId = userId;
+        this.profile = profile;
+        this.version = version;
+        this.loadTime = System.currentTimeMillis();
+        this.groups = Collections.unmodifiableSet(new HashSet<>(groups));
+        Map<Profile, Set<Integer>> byProfile = new EnumMap<>(Profile.class);
+        for (Map.Entry<Profile, Set<Integer>> entry : groupsByProfile.entrySet()) {
+            byProfile.put(entry.getKey(), Collections.unmodifiableSet(new HashSet<>(entry.getValue())));
+        }
+        this.groupsByProfile = Collections.unmodifiableMap(byProfile);
+    }
+
+    /**
+     * @param notBefore the time in milliseconds before which cached groups are considered stale.
+     */
+    boolean isValid(int userId, Profile profile, long version, long notBefore) {
+        return this.userId == userId && this.profile == profile && this.version == version &&
+            loadTime >= notBefore;
+    }
+
+    Set<Integer> getGroups() {
+        return groups;
+    }
+
+    Set<Integer> getGroups(Profile profile) {
+        Set<Integer> result = groupsByProfile.get(profile);
+        return result == null ? Collections.<Integer>emptySet() : result;
+    }
+}
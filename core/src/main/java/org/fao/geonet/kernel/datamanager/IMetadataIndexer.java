@@ -28,6 +28,7 @@ import java.util.Calendar;
 import java.util.List;
 
 import org.fao.geonet.domain.AbstractMetadata;
+import org.fao.geonet.kernel.BatchIndexingProgress;
 import org.fao.geonet.kernel.search.ISearchManager;
 import org.jdom.Element;
 import org.springframework.data.jpa.domain.Specification;
@@ -90,6 +91,13 @@ public interface IMetadataIndexer {
      */
     boolean isIndexing();
 
+    /**
+     * Progress of the records indexed by {@link #batchIndexInThreadPool(ServiceContext, List)}.
+     *
+     * @return the progress of the batch being indexed, or of the last one.
+     */
+    BatchIndexingProgress getBatchIndexingProgress();
+
     /**
      * Index the list of records passed as parameter in order.
      * 
@@ -98,6 +106,17 @@ public interface IMetadataIndexer {
      */
     void indexMetadata(List<String> metadataIds) throws Exception;
 
+    /**
+     * Index the list of records passed as parameter in order, without forcing index changes.
+     * The information indexed along with the records (owner, groups, privileges, status, ...) is
+     * loaded for several records at once instead of record by record.
+     *
+     * @param metadataIds
+     * @return the number of records that could not be indexed
+     * @throws Exception
+     */
+    int indexMetadataBatch(List<String> metadataIds) throws Exception;
+
     /**
      * Index one record defined by metadataId
      * 
@@ -27,7 +27,8 @@ import jeeves.server.UserSession;
 import jeeves.server.context.ServiceContext;
 import jeeves.xlink.Processor;
 import org.apache.commons.lang.StringUtils;
-import org.eclipse.jetty.util.ConcurrentHashSet;
+import org.fao.geonet.ApplicationContextHolder;
+import org.fao.geonet.NodeInfo;
 import org.fao.geonet.api.records.attachments.Store;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.AbstractMetadata;
@@ -47,9 +48,11 @@ import org.fao.geonet.domain.ReservedOperation;
 import org.fao.geonet.domain.StatusValueType;
 import org.fao.geonet.domain.User;
 import org.fao.geonet.domain.userfeedback.RatingsSetting;
+import org.fao.geonet.domain.userfeedback.UserFeedback;
 import org.fao.geonet.events.md.MetadataIndexCompleted;
 import org.fao.geonet.kernel.GeonetworkDataDirectory;
-import org.fao.geonet.kernel.IndexMetadataTask;
+import org.fao.geonet.kernel.BatchIndexingExecutor;
+import org.fao.geonet.kernel.BatchIndexingProgress;
 import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.kernel.SelectionManager;
 import org.fao.geonet.kernel.SvnManager;
@@ -78,32 +81,48 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jmx.export.MBeanExporter;
 import org.springframework.transaction.NoTransactionException;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import javax.annotation.PreDestroy;
+import javax.management.ObjectName;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.Vector;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
+import static org.fao.geonet.repository.specification.OperationAllowedSpecs.hasMetadataIdIn;
+
 public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPublisherAware {
 
+    /**
+     * Number of records for which the indexed information is loaded at once.
+     */
+    private static final int INDEXING_BATCH_SIZE = 100;
+
+    /**
+     * The contexts of the batches being indexed.
+     */
+    private final Set<MetadataIndexingContext> openIndexingContexts =
+        Collections.newSetFromMap(new ConcurrentHashMap<MetadataIndexingContext, Boolean>());
+
     Lock waitLoopLock = new ReentrantLock();
     Lock indexingLock = new ReentrantLock();
 
@@ -167,7 +186,8 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
 
     Set<String> waitForIndexing = new HashSet<String>();
     Set<String> indexing = new HashSet<String>();
-    Set<IndexMetadataTask> batchIndex = new ConcurrentHashSet<IndexMetadataTask>();
+    private volatile BatchIndexingExecutor batchIndexingExecutor;
+    private ObjectName batchIndexingProbeName;
 
     @Override
     public void forceIndexChanges() throws IOException {
@@ -294,71 +314,191 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
         } catch (NoTransactionException e) {
             // not in a transaction so we can go ahead.
         }
-        // split reindexing task according to number of processors we can assign
-        int threadCount = ThreadUtils.getNumberOfThreads();
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-
-        int perThread;
-        if (metadataIds.size() < threadCount)
-            perThread = metadataIds.size();
-        else
-            perThread = metadataIds.size() / threadCount;
-        int index = 0;
         if (Log.isDebugEnabled(Geonet.INDEX_ENGINE)) {
-            Log.debug(Geonet.INDEX_ENGINE, "Indexing " + metadataIds.size() + " records.");
+            Log.debug(Geonet.INDEX_ENGINE, "Scheduling the indexing of " + metadataIds.size() + " records.");
             Log.debug(Geonet.INDEX_ENGINE, metadataIds.toString());
         }
-        AtomicInteger numIndexedTracker = new AtomicInteger();
-        while (index < metadataIds.size()) {
-            int start = index;
-            int count = Math.min(perThread, metadataIds.size() - start);
-            int nbRecords = start + count;
+        getBatchIndexingExecutor().submit(context, metadataIds, transactionStatus);
+    }
 
-            if (Log.isDebugEnabled(Geonet.INDEX_ENGINE)) {
-                Log.debug(Geonet.INDEX_ENGINE, "Indexing records from " + start + " to " + nbRecords);
-            }
+    /**
+     * @return the executor shared by all the batch indexing requests, created on first use.
+     */
+    protected synchronized BatchIndexingExecutor getBatchIndexingExecutor() {
+        if (batchIndexingExecutor == null) {
+            batchIndexingExecutor = new BatchIndexingExecutor(this, searchManager, ThreadUtils.getNumberOfThreads());
+            registerBatchIndexingProbe();
+        }
+        return batchIndexingExecutor;
+    }
 
-            List<?> subList = metadataIds.subList(start, nbRecords);
+    private void registerBatchIndexingProbe() {
+        ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+        if (applicationContext == null) {
+            return;
+        }
+        try {
+            String nodeId = applicationContext.getBean(NodeInfo.class).getId();
+            batchIndexingProbeName = new ObjectName(String.format("geonetwork:name=batch-indexing,node=%s", nodeId));
+            applicationContext.getBean(MBeanExporter.class).registerManagedResource(batchIndexingExecutor,
+                batchIndexingProbeName);
+        } catch (Exception e) {
+            batchIndexingProbeName = null;
+            Log.warning(Geonet.INDEX_ENGINE, "Batch indexing progress not available through JMX: " + e.getMessage());
+        }
+    }
 
-            if (Log.isDebugEnabled(Geonet.INDEX_ENGINE)) {
-                Log.debug(Geonet.INDEX_ENGINE, subList.toString());
+    @PreDestroy
+    public synchronized void shutdownBatchIndexing() {
+        if (batchIndexingExecutor != null) {
+            batchIndexingExecutor.shutdown();
+            ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+            if (batchIndexingProbeName != null && applicationContext != null) {
+                applicationContext.getBean(MBeanExporter.class).unregisterManagedResource(batchIndexingProbeName);
             }
-
-            // create threads to process this chunk of ids
-            Runnable worker = new IndexMetadataTask(context, subList, batchIndex, transactionStatus, numIndexedTracker);
-            executor.execute(worker);
-            index += count;
+            batchIndexingExecutor = null;
         }
+    }
 
-        executor.shutdown();
+    @Override
+    public BatchIndexingProgress getBatchIndexingProgress() {
+        BatchIndexingExecutor executor = batchIndexingExecutor;
+        return executor == null ? new BatchIndexingProgress(false, 0, 0, 0, 0, 0) : executor.getProgress();
     }
 
     @Override
     public boolean isIndexing() {
         indexingLock.lock();
         try {
-            return !indexing.isEmpty() || !batchIndex.isEmpty();
+            if (!indexing.isEmpty()) {
+                return true;
+            }
         } finally {
             indexingLock.unlock();
         }
+        BatchIndexingExecutor executor = batchIndexingExecutor;
+        return executor != null && executor.isIndexing();
     }
 
     @Override
     public void indexMetadata(final List<String> metadataIds) throws Exception {
-        for (String metadataId : metadataIds) {
-            indexMetadata(metadataId, false, null);
-        }
+        indexMetadataBatch(metadataIds);
 
         searchManager.forceIndexChanges();
     }
 
+    @Override
+    public int indexMetadataBatch(final List<String> metadataIds) throws Exception {
+        int failed = 0;
+        for (int start = 0; start < metadataIds.size(); start += INDEXING_BATCH_SIZE) {
+            List<String> batch = metadataIds.subList(start, Math.min(start + INDEXING_BATCH_SIZE, metadataIds.size()));
+            Set<Integer> ids = new HashSet<Integer>();
+            for (String metadataId : batch) {
+                ids.add(Integer.valueOf(metadataId));
+            }
+            MetadataIndexingContext indexingContext = newIndexingContext();
+            // registered before loading so that any record loaded again from now on is marked as stale
+            openIndexingContexts.add(indexingContext);
+            try {
+                loadIndexingContext(indexingContext, ids);
+                for (String metadataId : batch) {
+                    if (!indexMetadata(metadataId, false, null, indexingContext)) {
+                        failed++;
+                    }
+                }
+            } finally {
+                openIndexingContexts.remove(indexingContext);
+            }
+        }
+        return failed;
+    }
+
     @Override
     public void indexMetadata(final String metadataId, boolean forceRefreshReaders, ISearchManager searchManager)
         throws Exception {
+        indexMetadata(metadataId, forceRefreshReaders, searchManager, null);
+    }
+
+    private MetadataIndexingContext newIndexingContext() {
+        return new MetadataIndexingContext(settingManager.getValueAsBool(Settings.SYSTEM_PREFER_GROUP_LOGO, true));
+    }
+
+    /**
+     * Load the information indexed along with the records in a few queries. The records are
+     * marked as stale in the contexts of the batches being indexed.
+     *
+     * @param metadataIds the ids of the records to index. Not too many of them as they end up in
+     *                    SQL IN clauses.
+     */
+    protected void loadIndexingContext(MetadataIndexingContext indexingContext, Set<Integer> metadataIds) {
+        if (metadataIds.isEmpty()) {
+            return;
+        }
+        for (MetadataIndexingContext openIndexingContext : openIndexingContexts) {
+            if (openIndexingContext != indexingContext) {
+                openIndexingContext.markStale(metadataIds);
+            }
+        }
+
+        Set<Integer> userIds = new HashSet<Integer>();
+        Set<Integer> groupIds = new HashSet<Integer>();
+        Set<String> uuids = new HashSet<String>();
+        for (AbstractMetadata md : metadataUtils.findAll(metadataIds)) {
+            indexingContext.addMetadata(md);
+            uuids.add(md.getUuid());
+            if (md.getSourceInfo().getOwner() != null) {
+                userIds.add(md.getSourceInfo().getOwner());
+            }
+            if (md.getSourceInfo().getGroupOwner() != null) {
+                groupIds.add(md.getSourceInfo().getGroupOwner());
+            }
+        }
+
+        for (OperationAllowed operationAllowed : operationAllowedRepository.findAll(hasMetadataIdIn(metadataIds))) {
+            indexingContext.addOperationAllowed(operationAllowed);
+            if (operationAllowed.getId().getOperationId() == ReservedOperation.view.getId()) {
+                groupIds.add(operationAllowed.getId().getGroupId());
+            }
+        }
+        if (!userIds.isEmpty()) {
+            for (User user : userRepository.findAll(userIds)) {
+                indexingContext.addUser(user);
+            }
+        }
+        if (!groupIds.isEmpty()) {
+            for (Group group : groupRepository.findAll(groupIds)) {
+                indexingContext.addGroup(group);
+            }
+        }
+
+        Sort statusSort = new Sort(Sort.Direction.DESC, MetadataStatus_.changeDate.getName());
+        for (MetadataStatus status : statusRepository.findAllByMetadataIdInAndStatusValue_Type(metadataIds,
+            StatusValueType.workflow, statusSort)) {
+            indexingContext.addWorkflowStatus(status);
+        }
+        for (MetadataValidation validation : metadataValidationRepository.findAllById_MetadataIdIn(metadataIds)) {
+            indexingContext.addValidation(validation);
+        }
+        for (InspireAtomFeed feed : inspireAtomFeedRepository.findAllByMetadataIdIn(metadataIds)) {
+            indexingContext.addAtomFeed(feed);
+        }
+        if (!uuids.isEmpty()
+            && RatingsSetting.ADVANCED.equals(settingManager.getValue(Settings.SYSTEM_LOCALRATING_ENABLE))) {
+            for (UserFeedback feedback : userFeedbackRepository.findByMetadata_UuidIn(uuids)) {
+                indexingContext.addFeedback(feedback.getMetadata().getUuid());
+            }
+        }
+    }
+
+    /**
+     * @return false if the record could not be indexed.
+     */
+    private boolean indexMetadata(final String metadataId, boolean forceRefreshReaders, ISearchManager searchManager,
+                                  MetadataIndexingContext indexingContext) throws Exception {
         waitLoopLock.lock();
         try {
             if (waitForIndexing.contains(metadataId)) {
-                return;
+                return true;
             }
             while (indexing.contains(metadataId)) {
                 try {
@@ -368,7 +508,7 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
                         wait(200);
                     }
                 } catch (InterruptedException e) {
-                    return;
+                    return true;
                 } finally {
                     waitForIndexing.remove(metadataId);
                 }
@@ -388,8 +528,17 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             Vector<Element> moreFields = new Vector<Element>();
             int id$ = Integer.parseInt(metadataId);
 
+            if (indexingContext == null || indexingContext.isStale(id$)) {
+                indexingContext = newIndexingContext();
+                loadIndexingContext(indexingContext, Collections.singleton(id$));
+            }
+            fullMd = indexingContext.getMetadata(id$);
+            if (fullMd == null) {
+                throw new IllegalArgumentException("Metadata with id " + metadataId + " not found");
+            }
+
             // get metadata, extracting and indexing any xlinks
-            Element md = getXmlSerializer().selectNoXLinkResolver(metadataId, true, false);
+            Element md = getXmlSerializer().removeHiddenElements(true, fullMd, false);
             if (getXmlSerializer().resolveXLinks()) {
                 List<Attribute> xlinks = Processor.getXLinks(md);
                 if (xlinks.size() > 0) {
@@ -406,8 +555,6 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
                 moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.HASXLINKS, "0", true, true));
             }
 
-            fullMd = metadataUtils.findOne(id$);
-
             final String schema = fullMd.getDataInfo().getSchemaId();
             final String createDate = fullMd.getDataInfo().getCreateDate().getDateAndTime();
             final String changeDate = fullMd.getDataInfo().getChangeDate().getDateAndTime();
@@ -446,7 +593,7 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.POPULARITY, popularity, true, true));
             moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.RATING, rating, true, true));
             if (RatingsSetting.ADVANCED.equals(settingManager.getValue(Settings.SYSTEM_LOCALRATING_ENABLE))) {
-                int nbOfFeedback = userFeedbackRepository.findByMetadata_Uuid(uuid).size();
+                int nbOfFeedback = indexingContext.getFeedbackCount(uuid);
                 moreFields.add(
                     SearchManager.makeField(Geonet.IndexFieldNames.FEEDBACKCOUNT, nbOfFeedback + "", true, true));
             }
@@ -454,7 +601,7 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.EXTRA, extra, false, true));
 
             // If the metadata has an atom document, index related information
-            InspireAtomFeed feed = inspireAtomFeedRepository.findByMetadataId(id$);
+            InspireAtomFeed feed = indexingContext.getAtomFeed(id$);
 
             if ((feed != null) && StringUtils.isNotEmpty(feed.getAtom())) {
                 moreFields.add(SearchManager.makeField("has_atom", "y", true, true));
@@ -462,7 +609,8 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             }
 
             if (owner != null) {
-                User user = userRepository.findOne(fullMd.getSourceInfo().getOwner());
+                User user = fullMd.getSourceInfo().getOwner() == null ? null
+                    : indexingContext.getUser(fullMd.getSourceInfo().getOwner());
                 if (user != null) {
                     moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.USERINFO, user.getUsername() + "|"
                         + user.getSurname() + "|" + user.getName() + "|" + user.getProfile(), true, false));
@@ -475,11 +623,11 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
 
             String logoUUID = null;
             if (groupOwner != null) {
-                final Group group = groupRepository.findOne(groupOwner);
+                final Group group = indexingContext.getGroup(groupOwner);
                 if (group != null) {
                     moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.GROUP_OWNER,
                         String.valueOf(groupOwner), true, true));
-                    final boolean preferGroup = settingManager.getValueAsBool(Settings.SYSTEM_PREFER_GROUP_LOGO, true);
+                    final boolean preferGroup = indexingContext.isPreferGroupLogo();
                     if (group.getWebsite() != null && !group.getWebsite().isEmpty() && preferGroup) {
                         moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.GROUP_WEBSITE, group.getWebsite(),
                             true, false));
@@ -491,32 +639,21 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             }
 
             // Group logo are in the harvester folder and contains extension in file name
-            boolean added = false;
+            String logo = null;
             if (StringUtils.isNotEmpty(logoUUID)) {
-                final Path harvesterLogosDir = resources.locateHarvesterLogosDir(getServiceContext());
-                try (Resources.ResourceHolder logo = resources.getImage(getServiceContext(), logoUUID, harvesterLogosDir)) {
-                    if (logo != null) {
-                        added = true;
-                        moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.LOGO,
-                                                               "/images/harvesting/" + logo.getPath().getFileName(),
-                                                               true, false));
-                    }
-                }
+                logo = getGroupLogo(indexingContext, logoUUID);
             }
 
             // If not available, use the local catalog logo
-            if (!added) {
-                logoUUID = source + ".png";
-                final Path logosDir = resources.locateLogosDir(getServiceContext());
-                try (Resources.ResourceHolder image = resources.getImage(getServiceContext(), logoUUID, logosDir)) {
-                    if (image != null) {
-                        moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.LOGO, "/images/logos/" + logoUUID, true, false));
-                    }
-                }
+            if (logo == null) {
+                logo = getSourceLogo(indexingContext, source + ".png");
+            }
+            if (logo != null) {
+                moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.LOGO, logo, true, false));
             }
 
             // get privileges
-            List<OperationAllowed> operationsAllowed = operationAllowedRepository.findAllById_MetadataId(id$);
+            List<OperationAllowed> operationsAllowed = indexingContext.getOperationsAllowed(id$);
 
             boolean isPublishedToAll = false;
 
@@ -528,7 +665,7 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
                 moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.OP_PREFIX + operationId,
                     String.valueOf(groupId), true, true));
                 if (operationId == ReservedOperation.view.getId()) {
-                    Group g = groupRepository.findOne(groupId);
+                    Group g = indexingContext.getGroup(groupId);
                     if (g != null) {
                         moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.GROUP_PUBLISHED, g.getName(),
                             true, true));
@@ -550,10 +687,8 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             }
 
             // get status
-            Sort statusSort = new Sort(Sort.Direction.DESC, MetadataStatus_.changeDate.getName());
-            List<MetadataStatus> statuses = statusRepository.findAllByMetadataIdAndByType(id$, StatusValueType.workflow, statusSort);
-            if (!statuses.isEmpty()) {
-                MetadataStatus stat = statuses.get(0);
+            MetadataStatus stat = indexingContext.getWorkflowStatus(id$);
+            if (stat != null) {
                 String status = String.valueOf(stat.getStatusValue().getId());
                 moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.STATUS, status, true, true));
                 String statusChangeDate = stat.getChangeDate().getDateAndTime();
@@ -565,7 +700,7 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
             // -1 : not evaluated
             // 0 : invalid
             // 1 : valid
-            List<MetadataValidation> validationInfo = metadataValidationRepository.findAllById_MetadataId(id$);
+            List<MetadataValidation> validationInfo = indexingContext.getValidations(id$);
             if (validationInfo.isEmpty()) {
                 moreFields.add(SearchManager.makeField(Geonet.IndexFieldNames.VALID, "-1", true, true));
             } else {
@@ -620,10 +755,48 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
         }
         if (fullMd != null) {
             this.publisher.publishEvent(new MetadataIndexCompleted(fullMd));
+            return true;
         }
+        return false;
     }
 
 
+    /**
+     * @return the URL of a group logo in the harvester logos folder or null if it does not exist.
+     */
+    private String getGroupLogo(MetadataIndexingContext indexingContext, String logoUUID) throws IOException {
+        String key = "harvesting/" + logoUUID;
+        if (!indexingContext.isLogoResolved(key)) {
+            String url = null;
+            final Path harvesterLogosDir = resources.locateHarvesterLogosDir(getServiceContext());
+            try (Resources.ResourceHolder logo = resources.getImage(getServiceContext(), logoUUID, harvesterLogosDir)) {
+                if (logo != null) {
+                    url = "/images/harvesting/" + logo.getPath().getFileName();
+                }
+            }
+            indexingContext.setLogo(key, url);
+        }
+        return indexingContext.getLogo(key);
+    }
+
+    /**
+     * @return the URL of a catalog logo in the logos folder or null if it does not exist.
+     */
+    private String getSourceLogo(MetadataIndexingContext indexingContext, String logoUUID) throws IOException {
+        String key = "logos/" + logoUUID;
+        if (!indexingContext.isLogoResolved(key)) {
+            String url = null;
+            final Path logosDir = resources.locateLogosDir(getServiceContext());
+            try (Resources.ResourceHolder image = resources.getImage(getServiceContext(), logoUUID, logosDir)) {
+                if (image != null) {
+                    url = "/images/logos/" + logoUUID;
+                }
+            }
+            indexingContext.setLogo(key, url);
+        }
+        return indexingContext.getLogo(key);
+    }
+
     /**
      * Function to be overrided by children to add extra fields cleanly.
      * Don't forget to call always super.addExtraFields, just in case
@@ -334,7 +334,7 @@ public class BaseMetadataUtils implements IMetadataUtils {
         if (metadata == null)
             return null;
 
-        Element md = Xml.loadString(metadata.getData(), false);
+        Element md = metadata.getXmlData(false);
 
         return extractTitles(metadata.getDataInfo().getSchemaId(), md);
     }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.datamanager.base;
+
+import org.fao.geonet.domain.AbstractMetadata;
+import org.fao.geonet.domain.Group;
+import org.fao.geonet.domain.InspireAtomFeed;
+import org.fao.geonet.domain.MetadataStatus;
+import org.fao.geonet.domain.MetadataValidation;
+import org.fao.geonet.domain.OperationAllowed;
+import org.fao.geonet.domain.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Information indexed along with a set of records: the records themselves, their owner and
+ * groups, privileges, last workflow status, validation status, INSPIRE atom feeds and
+ * feedback counts.
+ *
+ * It is loaded by {@link BaseMetadataIndexer} with one query per type of information for the
+ * whole set instead of several queries per record. A context is meant to be used by one thread
+ * while indexing one batch of records. Logo lookups are memoized for the lifetime of the context.
+ *
+ * Records loaded again for indexing while the batch is indexed, usually because they changed, are
+ * {@link #markStale(Collection) marked as stale} by the other threads so that the batch does not
+ * index them with the information loaded before.
+ */
+public class MetadataIndexingContext {
+
+    private final boolean preferGroupLogo;
+    private final Map<Integer, AbstractMetadata> metadata = new HashMap<>();
+    private final Map<Integer, User> users = new HashMap<>();
+    private final Map<Integer, Group> groups = new HashMap<>();
+    private final Map<Integer, List<OperationAllowed>> operationsAllowed = new HashMap<>();
+    private final Map<Integer, MetadataStatus> workflowStatus = new HashMap<>();
+    private final Map<Integer, List<MetadataValidation>> validations = new HashMap<>();
+    private final Map<Integer, InspireAtomFeed> atomFeeds = new HashMap<>();
+    private final Map<String, Integer> feedbackCounts = new HashMap<>();
+    private final Map<String, String> logos = new HashMap<>();
+    private final Set<Integer> staleMetadataIds = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    MetadataIndexingContext(boolean preferGroupLogo) {
+        this.preferGroupLogo = preferGroupLogo;
+    }
+
+    void addMetadata(AbstractMetadata md) {
+        // Records come first when a draft has the same id
+        if (!metadata.containsKey(md.getId())) {
+            metadata.put(md.getId(), md);
+        }
+    }
+
+    void addUser(User user) {
+        users.put(user.getId(), user);
+    }
+
+    void addGroup(Group group) {
+        groups.put(group.getId(), group);
+    }
+
+    void addOperationAllowed(OperationAllowed operationAllowed) {
+        int metadataId = operationAllowed.getId().getMetadataId();
+        List<OperationAllowed> list = operationsAllowed.get(metadataId);
+        if (list == null) {
+            list = new ArrayList<>();
+            operationsAllowed.put(metadataId, list);
+        }
+        list.add(operationAllowed);
+    }
+
+    /**
+     * Statuses must be added from the most recent to the oldest.
+     */
+    void addWorkflowStatus(MetadataStatus status) {
+        if (!workflowStatus.containsKey(status.getMetadataId())) {
+            workflowStatus.put(status.getMetadataId(), status);
+        }
+    }
+
+    void addValidation(MetadataValidation validation) {
+        int metadataId = validation.getId().getMetadataId();
+        List<MetadataValidation> list = validations.get(metadataId);
+        if (list == null) {
+            list = new ArrayList<>();
+            validations.put(metadataId, list);
+        }
+        list.add(validation);
+    }
+
+    void addAtomFeed(InspireAtomFeed feed) {
+        atomFeeds.put(feed.getMetadataId(), feed);
+    }
+
+    void addFeedback(String metadataUuid) {
+        Integer count = feedbackCounts.get(metadataUuid);
+        feedbackCounts.put(metadataUuid, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Marks the information loaded for some records as outdated. Can be called by any thread.
+     */
+    void markStale(Collection<Integer> metadataIds) {
+        staleMetadataIds.addAll(metadataIds);
+    }
+
+    /**
+     * @return true if the information of the record was loaded again since this context was
+     * created and must not be used.
+     */
+    public boolean isStale(int metadataId) {
+        return staleMetadataIds.contains(metadataId);
+    }
+
+    public boolean isPreferGroupLogo() {
+        return preferGroupLogo;
+    }
+
+    @Nullable
+    public AbstractMetadata getMetadata(int id) {
+        return metadata.get(id);
+    }
+
+    @Nullable
+    public User getUser(int id) {
+        return users.get(id);
+    }
+
+    @Nullable
+    public Group getGroup(int id) {
+        return groups.get(id);
+    }
+
+    public List<OperationAllowed> getOperationsAllowed(int metadataId) {
+        List<OperationAllowed> list = operationsAllowed.get(metadataId);
+        return list == null ? Collections.<OperationAllowed>emptyList() : list;
+    }
+
+    /**
+     * @return the most recent workflow status of the record or null if it has none.
+     */
+    @Nullable
+    public MetadataStatus getWorkflowStatus(int metadataId) {
+        return workflowStatus.get(metadataId);
+    }
+
+    public List<MetadataValidation> getValidations(int metadataId) {
+        List<MetadataValidation> list = validations.get(metadataId);
+        return list == null ? Collections.<MetadataValidation>emptyList() : list;
+    }
+
+    @Nullable
+    public InspireAtomFeed getAtomFeed(int metadataId) {
+        return atomFeeds.get(metadataId);
+    }
+
+    public int getFeedbackCount(String metadataUuid) {
+        Integer count = feedbackCounts.get(metadataUuid);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @return true if the logo identified by key has already been looked up.
+     */
+    boolean isLogoResolved(String key) {
+        return logos.containsKey(key);
+    }
+
+    /**
+     * @return the logo URL identified by key or null if there is no such logo.
+     */
+    @Nullable
+    String getLogo(String key) {
+        return logos.get(key);
+    }
+
+    void setLogo(String key, @Nullable String url) {
+        logos.put(key, url);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.oaipmh;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.fao.geonet.constants.Geonet;
+import org.fao.oaipmh.exceptions.BadResumptionTokenException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of a record in a list of records sorted by change date and id.
+ *
+ * Pages of an OAI-PMH list are searched after the cursor of the last record of the previous page,
+ * so no search state is kept between requests and the same cursor can be used on any node of a
+ * cluster. Records changed while a list is harvested move to its end.
+ */
+public final class ChangeDateCursor {
+    /**
+     * The order of the records of a list, index terms order of the change date then the id.
+     */
+    public static final Sort SORT = new Sort(
+        new SortField(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE, SortField.Type.STRING),
+        new SortField(Geonet.IndexFieldNames.ID, SortField.Type.STRING));
+
+    private static final char SEPARATOR = ' ';
+
+    private final String changeDate;
+    private final String id;
+
+    public ChangeDateCursor(String changeDate, String id) {
+        this.changeDate = changeDate;
+        this.id = id;
+    }
+
+    public static ChangeDateCursor decode(String value) throws BadResumptionTokenException {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new BadResumptionTokenException("Invalid cursor: " + value);
+        }
+        int separator = decoded.lastIndexOf(SEPARATOR);
+        if (separator < 0) {
+            throw new BadResumptionTokenException("Invalid cursor: " + value);
+        }
+        return new ChangeDateCursor(decoded.substring(0, separator), decoded.substring(separator + 1));
+    }
+
+    /**
+     * @return the cursor as a string safe for URLs and resumption tokens.
+     */
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+            (changeDate + SEPARATOR + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return a query matching the records sorted after this cursor.
+     */
+    public Query getAfterQuery() {
+        BooleanQuery sameDate = new BooleanQuery();
+        sameDate.add(new TermQuery(new Term(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE, changeDate)),
+            BooleanClause.Occur.MUST);
+        sameDate.add(TermRangeQuery.newStringRange(Geonet.IndexFieldNames.ID, id, null, false, false),
+            BooleanClause.Occur.MUST);
+
+        BooleanQuery query = new BooleanQuery();
+        query.add(TermRangeQuery.newStringRange(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE, changeDate, null, false,
+            false), BooleanClause.Occur.SHOULD);
+        query.add(sameDate, BooleanClause.Occur.SHOULD);
+        return query;
+    }
+
+    public String getChangeDate() {
+        return changeDate;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return changeDate + SEPARATOR + id;
+    }
+}
@@ -27,9 +27,17 @@ import jeeves.constants.Jeeves;
 import jeeves.server.ServiceConfig;
 import jeeves.server.context.ServiceContext;
 
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
 import org.fao.geonet.GeonetContext;
-import org.fao.geonet.constants.Edit;
 import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.search.DuplicateDocFilter;
+import org.fao.geonet.kernel.search.IndexAndTaxonomy;
+import org.fao.geonet.kernel.search.LuceneSearcher;
 import org.fao.geonet.kernel.search.MetaSearcher;
 import org.fao.geonet.kernel.search.SearchManager;
 import org.fao.geonet.kernel.search.SearcherType;
@@ -40,7 +48,13 @@ import org.jdom.Element;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
 
 //=============================================================================
 
@@ -53,6 +67,8 @@ public class Lib {
     //---
     //---------------------------------------------------------------------------
     private static ServiceConfig dummyConfig = new ServiceConfig();
+    private static final Set<String> CURSOR_FIELDS = Collections.unmodifiableSet(new HashSet<String>(
+        Arrays.asList(Geonet.IndexFieldNames.ID, Geonet.IndexFieldNames.DATABASE_CHANGE_DATE)));
 
     //--------------------------------------------------------------------------
 
@@ -97,38 +113,48 @@ public class Lib {
 
     //---------------------------------------------------------------------------
 
-    public static List<Integer> search(ServiceContext context, Element params) throws Exception {
+    /**
+     * Searches a page of the records matching the params, sorted by change date and id.
+     *
+     * @param after the cursor of the last record of the previous page or null for the first page.
+     * @param size  the maximum number of records of the page.
+     * @return the records of the page.
+     */
+    public static SearchPage search(ServiceContext context, Element params,
+                                    @Nullable ChangeDateCursor after, int size) throws Exception {
         GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
         SearchManager sm = gc.getBean(SearchManager.class);
 
-        try (MetaSearcher searcher = sm.newSearcher(SearcherType.LUCENE, Geonet.File.SEARCH_LUCENE)) {
-
-            if (context.isDebugEnabled())
-                context.debug("Searching with params:\n" + Xml.getString(params));
-
-            searcher.search(context, params, dummyConfig);
-
-            params.addContent(new Element("fast").setText("true"));
-            params.addContent(new Element("from").setText("1"));
-            params.addContent(new Element("to").setText(searcher.getSize() + ""));
-
-            context.info("Records found : " + searcher.getSize());
+        if (context.isDebugEnabled())
+            context.debug("Searching with params:\n" + Xml.getString(params) + "\nafter: " + after);
 
-            Element records = searcher.present(context, params, dummyConfig);
+        Query query;
+        try (MetaSearcher searcher = sm.newSearcher(SearcherType.LUCENE, Geonet.File.SEARCH_LUCENE)) {
+            query = ((LuceneSearcher) searcher).makeQuery(context, params, dummyConfig);
+        }
+        if (after != null) {
+            BooleanQuery afterQuery = new BooleanQuery();
+            afterQuery.add(query, BooleanClause.Occur.MUST);
+            afterQuery.add(after.getAfterQuery(), BooleanClause.Occur.MUST);
+            query = afterQuery;
+        }
 
-            records.getChild("summary").detach();
+        try (IndexAndTaxonomy indexAndTaxonomy = sm.getIndexReader(null, -1)) {
+            IndexSearcher searcher = new IndexSearcher(indexAndTaxonomy.indexReader);
+            // One more hit tells if there is a next page
+            TopDocs hits = searcher.search(query, new DuplicateDocFilter(query), size + 1, ChangeDateCursor.SORT);
 
             List<Integer> result = new ArrayList<Integer>();
-
-            for (Object o : records.getChildren()) {
-                Element rec = (Element) o;
-                Element info = rec.getChild("info", Edit.NAMESPACE);
-
-                result.add(Integer.parseInt(info.getChildText("id")));
+            ChangeDateCursor last = null;
+            for (int i = 0; i < hits.scoreDocs.length && i < size; i++) {
+                Document doc = searcher.doc(hits.scoreDocs[i].doc, CURSOR_FIELDS);
+                String id = doc.get(Geonet.IndexFieldNames.ID);
+                result.add(Integer.parseInt(id));
+                last = new ChangeDateCursor(doc.get(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE), id);
             }
-            return result;
+            context.info("Records found : " + result.size() + (hits.scoreDocs.length > size ? " and more" : ""));
+            return new SearchPage(result, hits.scoreDocs.length > size ? last : null, hits.totalHits);
         }
-
     }
 
     //---------------------------------------------------------------------------
@@ -158,6 +184,45 @@ public class Lib {
 
         return error;
     }
+
+    //---------------------------------------------------------------------------
+
+    /**
+     * A page of records found by {@link #search(ServiceContext, Element, ChangeDateCursor, int)}.
+     */
+    public static final class SearchPage {
+        private final List<Integer> ids;
+        private final ChangeDateCursor next;
+        private final int remaining;
+
+        SearchPage(List<Integer> ids, @Nullable ChangeDateCursor next, int remaining) {
+            this.ids = ids;
+            this.next = next;
+            this.remaining = remaining;
+        }
+
+        /**
+         * @return the ids of the records of the page.
+         */
+        public List<Integer> getIds() {
+            return ids;
+        }
+
+        /**
+         * @return the cursor of the last record of the page or null if it is the last page.
+         */
+        @Nullable
+        public ChangeDateCursor getNext() {
+            return next;
+        }
+
+        /**
+         * @return the number of records of this page and of the pages after it.
+         */
+        public int getRemaining() {
+            return remaining;
+        }
+    }
 }
 
 //=============================================================================
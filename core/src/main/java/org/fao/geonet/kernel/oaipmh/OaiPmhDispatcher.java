@@ -58,7 +58,6 @@ public class OaiPmhDispatcher {
 
     public static final int MODE_MODIFIDATE = 2;
     public static final int MODE_TEMPEXTEND = 1;
-    private ResumptionTokenCache cache;
 
     //---------------------------------------------------------------------------
     //---
@@ -70,13 +69,11 @@ public class OaiPmhDispatcher {
     //---------------------------------------------------------------------------
 
     public OaiPmhDispatcher(SettingManager sm, SchemaManager scm) {
-        cache = new ResumptionTokenCache(sm);
-
         register(new GetRecord());
         register(new Identify());
-        register(new ListIdentifiers(cache, sm, scm));
+        register(new ListIdentifiers(sm, scm));
         register(new ListMetadataFormats());
-        register(new ListRecords(cache, sm, scm));
+        register(new ListRecords(sm, scm));
         register(new ListSets());
     }
 
@@ -159,8 +156,6 @@ public class OaiPmhDispatcher {
     @PreDestroy
     public void shutdown() {
         Log.info(Log.ENGINE, "OaiPmhDispatcher#shutdown");
-        cache.stopRunning();
-        cache = null;
     }
 }
 
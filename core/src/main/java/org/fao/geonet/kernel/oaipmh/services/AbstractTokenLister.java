@@ -23,13 +23,15 @@
 
 package org.fao.geonet.kernel.oaipmh.services;
 
+import com.google.common.base.Joiner;
+
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.kernel.SchemaManager;
+import org.fao.geonet.kernel.oaipmh.ChangeDateCursor;
 import org.fao.geonet.kernel.oaipmh.Lib;
 import org.fao.geonet.kernel.oaipmh.OaiPmhDispatcher;
 import org.fao.geonet.kernel.oaipmh.OaiPmhService;
-import org.fao.geonet.kernel.oaipmh.ResumptionTokenCache;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.kernel.setting.Settings;
 import org.fao.geonet.utils.Log;
@@ -45,6 +47,7 @@ import org.fao.oaipmh.util.SearchResult;
 import org.jdom.Element;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import jeeves.server.context.ServiceContext;
@@ -52,13 +55,10 @@ import jeeves.server.context.ServiceContext;
 
 public abstract class AbstractTokenLister implements OaiPmhService {
 
-    protected ResumptionTokenCache cache;
-
     private SettingManager settingMan;
     private SchemaManager schemaMan;
 
-    public AbstractTokenLister(ResumptionTokenCache cache, SettingManager sm, SchemaManager scm) {
-        this.cache = cache;
+    public AbstractTokenLister(SettingManager sm, SchemaManager scm) {
         this.settingMan = sm;
         this.schemaMan = scm;
     }
@@ -114,97 +114,95 @@ public abstract class AbstractTokenLister implements OaiPmhService {
 
         TokenListRequest req = (TokenListRequest) request;
 
-        //UserSession  session = context.getUserSession();
-        SearchResult result;
-
-        //String token = req.getResumptionToken();
         String strToken = req.getResumptionToken();
-        GeonetworkResumptionToken token = null;
-
-
-        int pos = 0;
+        GeonetworkResumptionToken token;
+        ChangeDateCursor after = null;
 
         if (strToken == null) {
             if (Log.isDebugEnabled(Geonet.OAI_HARVESTER))
                 Log.debug(Geonet.OAI_HARVESTER, "OAI " + this.getClass().getSimpleName() + " : new request (no resumptionToken)");
-            Element params = new Element("request");
 
             ISODate from = req.getFrom();
             ISODate until = req.getUntil();
-            String set = req.getSet();
-            String prefix = req.getMetadataPrefix();
 
+            if (from != null && until != null && from.timeDifferenceInSeconds(until) > 0)
+                throw new BadArgumentException("From is greater than until");
+
+            String sFrom = null;
             if (from != null) {
-                String sFrom = from.isDateOnly() ? from.getDateAsString() : from.toString();
-                params.addContent(new Element(getDateFrom()).setText(sFrom));
+                sFrom = from.isDateOnly() ? from.getDateAsString() : from.toString();
             }
 
+            String sTo = null;
             if (until != null) {
-                String sTo = until.isDateOnly() ? until.getDateAsString() : until.toString();
-                params.addContent(new Element(getDateUntil()).setText(sTo));
+                sTo = until.isDateOnly() ? until.getDateAsString() : until.toString();
             }
 
-            if (from != null && until != null && from.timeDifferenceInSeconds(until) > 0)
-                throw new BadArgumentException("From is greater than until");
+            token = new GeonetworkResumptionToken(req.getSet(), req.getMetadataPrefix(), sFrom, sTo);
+        } else {
+            if (Log.isDebugEnabled(Geonet.OAI_HARVESTER))
+                Log.debug(Geonet.OAI_HARVESTER, "OAI " + this.getClass().getSimpleName() + " : using ResumptionToken :" + strToken);
 
-            if (set != null)
-                params.addContent(new Element("category").setText(set));
-
-            params.addContent(new Element("_schema").setText(prefix));
-
-            // now do the search
-            result = new SearchResult(prefix);
-            if (schemaMan.existsSchema(prefix)) {
-                result.setIds(Lib.search(context, params));
-            } else {
-                // collect up all the schemas that we can convert to create prefix,
-                // search ids and add to the result set
-                List<String> schemas = getSchemasThatCanConvertTo(prefix);
-                for (String schema : schemas) {
-                    params.removeChild("_schema");
-                    params.addContent(new Element("_schema").setText(schema));
-                    result.addIds(Lib.search(context, (Element) params.clone()));
-                }
-                if (schemas.size() == 0) result.setIds(new ArrayList<Integer>());
-            }
+            // the token holds the whole list request, nothing is kept on the server between pages
+            token = new GeonetworkResumptionToken(req);
+            if (token.getAfter().isEmpty())
+                throw new BadResumptionTokenException("No position in token : " + strToken);
+            after = ChangeDateCursor.decode(token.getAfter());
+        }
 
-            if (result.getIds().size() == 0)
-                throw new NoRecordsMatchException("No results");
+        Element params = new Element("request");
 
-            // we only need a new token if the result set is big enough
-            if (result.getIds().size() > getMaxRecords()) {
-                token = new GeonetworkResumptionToken(req, result);
-                cache.storeResumptionToken(token);
-            }
+        if (!token.getFrom().isEmpty())
+            params.addContent(new Element(getDateFrom()).setText(token.getFrom()));
 
-        } else {
-            //result = (SearchResult) session.getProperty(Lib.SESSION_OBJECT);
-            token = cache.getResumptionToken(GeonetworkResumptionToken.buildKey(req));
-            if (Log.isDebugEnabled(Geonet.OAI_HARVESTER))
-                Log.debug(Geonet.OAI_HARVESTER, "OAI ListRecords : using ResumptionToken :" + GeonetworkResumptionToken.buildKey(req));
+        if (!token.getUntil().isEmpty())
+            params.addContent(new Element(getDateUntil()).setText(token.getUntil()));
 
-            if (token == null)
-                throw new BadResumptionTokenException("No session for token : " + GeonetworkResumptionToken.buildKey(req));
+        if (!token.getSet().isEmpty())
+            params.addContent(new Element("category").setText(token.getSet()));
 
-            result = token.getRes();
+        // now do the search
+        String prefix = token.getPrefix();
+        SearchResult result = new SearchResult(prefix);
+        ChangeDateCursor next = null;
+        int remaining = 0;
 
-            //pos = result.parseToken(token);
-            pos = GeonetworkResumptionToken.getPos(req);
+        List<String> schemas;
+        if (schemaMan.existsSchema(prefix)) {
+            schemas = Collections.singletonList(prefix);
+        } else {
+            // collect up all the schemas that we can convert to create prefix
+            schemas = getSchemasThatCanConvertTo(prefix);
         }
 
-        ListResponse res = processRequest(req, pos, result, context);
-        pos = pos + res.getSize();
+        if (schemas.isEmpty()) {
+            result.setIds(new ArrayList<Integer>());
+        } else {
+            params.addContent(new Element("_schema").setText(Joiner.on(" or ").join(schemas)));
+
+            Lib.SearchPage page = Lib.search(context, params, after, getMaxRecords());
+            result.setIds(page.getIds());
+            next = page.getNext();
+            remaining = page.getRemaining();
+        }
 
-        if (token == null && res.getSize() == 0)
+        if (strToken == null && result.getIds().size() == 0)
             throw new NoRecordsMatchException("No results");
 
-        //result.setupToken(res, pos);
-        if (token != null) token.setupToken(pos);
-        res.setResumptionToken(token);
+        ListResponse res = processRequest(req, 0, result, context);
 
-        return res;
+        if (strToken == null && res.getSize() == 0 && next == null)
+            throw new NoRecordsMatchException("No results");
 
+        if (strToken != null || next != null) {
+            // the records returned before this page and the ones left from this page on
+            token.setCursor(token.getPos());
+            token.setCompleteListSize(token.getPos() + remaining);
+            token.setupToken(next == null ? null : next.encode(), token.getPos() + result.getIds().size());
+            res.setResumptionToken(token);
+        }
 
+        return res;
     }
 
     //---------------------------------------------------------------------------
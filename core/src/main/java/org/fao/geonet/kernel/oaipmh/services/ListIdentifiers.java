@@ -31,7 +31,6 @@ import org.fao.geonet.domain.MetadataCategory;
 import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
 import org.fao.geonet.kernel.oaipmh.Lib;
-import org.fao.geonet.kernel.oaipmh.ResumptionTokenCache;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.oaipmh.requests.ListIdentifiersRequest;
 import org.fao.oaipmh.requests.TokenListRequest;
@@ -45,8 +44,8 @@ import jeeves.server.context.ServiceContext;
 //=============================================================================
 
 public class ListIdentifiers extends AbstractTokenLister {
-    public ListIdentifiers(ResumptionTokenCache cache, SettingManager sm, SchemaManager scm) {
-        super(cache, sm, scm);
+    public ListIdentifiers(SettingManager sm, SchemaManager scm) {
+        super(sm, scm);
     }
 
     public String getVerb() {
@@ -28,7 +28,6 @@ import static org.fao.geonet.repository.specification.MetadataSpecs.hasMetadataI
 
 import org.fao.geonet.domain.Metadata;
 import org.fao.geonet.kernel.SchemaManager;
-import org.fao.geonet.kernel.oaipmh.ResumptionTokenCache;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.oaipmh.exceptions.CannotDisseminateFormatException;
 import org.fao.oaipmh.exceptions.IdDoesNotExistException;
@@ -46,8 +45,8 @@ import jeeves.server.context.ServiceContext;
 public class ListRecords extends AbstractTokenLister {
 
 
-    public ListRecords(ResumptionTokenCache cache, SettingManager sm, SchemaManager scm) {
-        super(cache, sm, scm);
+    public ListRecords(SettingManager sm, SchemaManager scm) {
+        super(sm, scm);
     }
 
     public String getVerb() {
@@ -60,6 +60,7 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -68,6 +69,7 @@ import java.util.Map;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamResult;
 
 
 //==============================================================================
@@ -420,9 +422,9 @@ public class MetadataSchema {
 
                     try (OutputStream schematronXsl = Files.newOutputStream(schematronXslFilePath)) {
                         Element schematronRule = Xml.loadFile(schemaSchematronDir.resolve(rule));
-                        // Expand schematron abstract rules
-                        Element schematronExpandXml = Xml.transform(schematronRule, schematronExpandFile);
-                        Xml.transform(schematronExpandXml, schematronCompilationFile, schematronXsl);
+                        // Expand schematron abstract rules and compile the expanded rules
+                        Xml.transform(schematronRule, Arrays.asList(schematronExpandFile, schematronCompilationFile),
+                            new StreamResult(schematronXsl), null);
                     } catch (FileNotFoundException e) {
                         Log.error(Geonet.SCHEMA_MANAGER, "     Schematron rule file not found " + schematronXslFilePath
                             + ". Error is " + e.getMessage());
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects the values of a field indexed as sorted set doc values (see
+ * {@link LuceneConfig#getDocValuesFields()}) and the number of hits having each value.
+ *
+ * Hits are counted by ordinal for each segment and values are only looked up once per segment
+ * so that the stored fields of the hits are never loaded.
+ */
+public class DomainValuesCollector extends Collector {
+    private final String field;
+    private final Map<String, Integer> counts = new HashMap<>();
+    private SortedSetDocValues values;
+    private int[] segmentCounts;
+
+    /**
+     * @param field the name of the field, not the name of the doc values field.
+     */
+    public DomainValuesCollector(String field) {
+        this.field = LuceneConfig.docValuesFieldName(field);
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        // Scores are not needed
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        if (values == null) {
+            return;
+        }
+        values.setDocument(doc);
+        for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+            segmentCounts[(int) ord]++;
+        }
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) throws IOException {
+        flushSegment();
+        values = context.reader().getSortedSetDocValues(field);
+        segmentCounts = values == null ? null : new int[(int) values.getValueCount()];
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+    private void flushSegment() {
+        if (values == null) {
+            return;
+        }
+        for (int ord = 0; ord < segmentCounts.length; ord++) {
+            if (segmentCounts[ord] > 0) {
+                String value = values.lookupOrd(ord).utf8ToString();
+                Integer count = counts.get(value);
+                counts.put(value, count == null ? segmentCounts[ord] : count + segmentCounts[ord]);
+            }
+        }
+        values = null;
+        segmentCounts = null;
+    }
+
+    /**
+     * @return the values of the field for the collected hits and the number of hits having each
+     * value.
+     */
+    public Map<String, Integer> getCounts() {
+        flushSegment();
+        return Collections.unmodifiableMap(counts);
+    }
+}
@@ -71,6 +71,7 @@ public class LuceneConfig {
     private Path configurationFile;
     private LinkedHashSet<String> fuzzyMatching;
     private Set<String> tokenizedFields = new LinkedHashSet<String>();
+    private Set<String> docValuesFields = new LinkedHashSet<String>();
     private Map<String, LuceneConfigNumericField> numericFields = new HashMap<String, LuceneConfigNumericField>();
     private Map<String, String> dumpFields = new HashMap<String, String>();
     private String defaultAnalyzerClass;
@@ -91,7 +92,11 @@ public class LuceneConfig {
     private boolean trackDocScores = false;
     private boolean trackMaxScore = false;
     private boolean docsScoredInOrder = false;
+    private boolean spatialEnvelopePrefilter = false;
     private long commitInterval = 30 * 1000;
+    private boolean pipelinedIndexing = false;
+    private int pipelinedIndexingThreads = 0;
+    private int pipelinedIndexingQueueSize = 64;
     private boolean useNRTManagerReopenThread = true;
     private double nrtManagerReopenThreadMaxStaleSec = 5;
     private double nrtManagerReopenThreadMinStaleSec = 0.1f;
@@ -108,6 +113,14 @@ public class LuceneConfig {
         return fieldName + "|" + locale;
     }
 
+    /**
+     * @return the name of the sorted set doc values field holding the values of a field listed
+     * in the docValues section of the configuration.
+     */
+    public static String docValuesFieldName(String fieldName) {
+        return fieldName + "|values";
+    }
+
     /**
      * Creates a new Lucene configuration from an XML configuration file.
      */
@@ -200,6 +213,28 @@ public class LuceneConfig {
                         "Invalid boolean value for useNRTManagerReopenThread. Using default value.");
                 }
             }
+            String pipelined = elem.getChildText("pipelinedIndexing");
+            if (pipelined != null) {
+                pipelinedIndexing = Boolean.parseBoolean(pipelined);
+            }
+            String pipelinedThreads = elem.getChildText("pipelinedIndexingThreads");
+            if (pipelinedThreads != null) {
+                try {
+                    pipelinedIndexingThreads = Integer.parseInt(pipelinedThreads);
+                } catch (NumberFormatException e) {
+                    Log.warning(Geonet.SEARCH_ENGINE,
+                        "Invalid integer value for pipelinedIndexingThreads. Using default value.");
+                }
+            }
+            String pipelinedQueueSize = elem.getChildText("pipelinedIndexingQueueSize");
+            if (pipelinedQueueSize != null) {
+                try {
+                    pipelinedIndexingQueueSize = Integer.parseInt(pipelinedQueueSize);
+                } catch (NumberFormatException e) {
+                    Log.warning(Geonet.SEARCH_ENGINE,
+                        "Invalid integer value for pipelinedIndexingQueueSize. Using default value.");
+                }
+            }
             String maxStaleNS = elem.getChildText("nrtManagerReopenThreadMaxStaleSec");
             if (maxStaleNS != null) {
                 try {
@@ -237,6 +272,24 @@ public class LuceneConfig {
                 }
             }
 
+            // Doc values fields
+            elem = luceneConfig.getChild("docValues");
+            docValuesFields = new LinkedHashSet<String>();
+            if (elem != null) {
+                for (Object o : elem.getChildren()) {
+                    if (o instanceof Element) {
+                        String name = ((Element) o).getAttributeValue("name");
+                        if (name == null) {
+                            Log.warning(
+                                Geonet.SEARCH_ENGINE,
+                                "docValues element must have a name attribute, check Lucene configuration file.");
+                        } else {
+                            docValuesFields.add(name);
+                        }
+                    }
+                }
+            }
+
             // similarity fields
             elem = luceneConfig.getChild("fuzzyMatching");
             if (elem != null && "true".equalsIgnoreCase(elem.getAttributeValue("enabled"))) {
@@ -382,6 +435,12 @@ public class LuceneConfig {
             if (elem != null && elem.getText().equals("true")) {
                 setDocsScoredInOrder(true);
             }
+
+            // Spatial
+            elem = searchConfig.getChild("spatialEnvelopePrefilter");
+            if (elem != null && elem.getText().equals("true")) {
+                setSpatialEnvelopePrefilter(true);
+            }
         } catch (FileNotFoundException e) {
             Log.error(
                 Geonet.SEARCH_ENGINE,
@@ -543,6 +602,21 @@ public class LuceneConfig {
         return this.tokenizedFields.contains(name);
     }
 
+    /**
+     * @return The list of fields which values are also indexed as doc values (see
+     * {@link #docValuesFieldName(String)}).
+     */
+    public Set<String> getDocValuesFields() {
+        return this.docValuesFields;
+    }
+
+    /**
+     * @return True if the values of the field are also indexed as doc values
+     */
+    public boolean isDocValuesField(String name) {
+        return this.docValuesFields.contains(name);
+    }
+
     /**
      * @return The list of numeric fields which could not determined using Lucene API.
      */
@@ -703,6 +777,7 @@ public class LuceneConfig {
         sb.append(" * Version: " + getLuceneVersion().toString() + "\n");
         sb.append(" * RAMBufferSize: " + getRAMBufferSize() + "\n");
         sb.append(" * MergeFactor: " + getMergeFactor() + "\n");
+        sb.append(" * Pipelined indexing: " + isPipelinedIndexing() + "\n");
         sb.append(" * Default analyzer: " + getDefaultAnalyzerClass() + "\n");
         sb.append(" * Field analyzers: "
             + getFieldSpecificAnalyzers().toString() + "\n");
@@ -715,9 +790,12 @@ public class LuceneConfig {
             + "\n");
         sb.append(" * Numeric fields: "
             + getNumericFields().keySet().toString() + "\n");
+        sb.append(" * Doc values fields: " + getDocValuesFields().toString()
+            + "\n");
         sb.append(" * Dump fields: " + getDumpFields().toString()
             + "\n");
         sb.append(" * Search boost query: " + getBoostQueryClass() + "\n");
+        sb.append(" * Spatial envelope prefilter: " + isSpatialEnvelopePrefilter() + "\n");
         sb.append(" * Score: \n");
         sb.append("  * trackDocScores: " + isTrackDocScores() + " \n");
         sb.append("  * trackMaxScore: " + isTrackMaxScore() + " \n");
@@ -768,10 +846,45 @@ public class LuceneConfig {
         this.docsScoredInOrder = docsScoredInOrder;
     }
 
+    /**
+     * @return whether spatial filters first select the documents whose indexed envelope
+     * intersects the filter envelope.
+     * @see org.fao.geonet.kernel.search.spatial.SpatialFilter#setEnvelopePrefilter(boolean)
+     */
+    public boolean isSpatialEnvelopePrefilter() {
+        return spatialEnvelopePrefilter;
+    }
+
+    private void setSpatialEnvelopePrefilter(boolean spatialEnvelopePrefilter) {
+        this.spatialEnvelopePrefilter = spatialEnvelopePrefilter;
+    }
+
     public FacetsConfig getTaxonomyConfiguration() {
         return facets.getAsLuceneFacetsConfig();
     }
 
+    /**
+     * @return true if XSL field extraction, Lucene document creation and index writes are run by
+     * separate thread pools.
+     */
+    public boolean isPipelinedIndexing() {
+        return this.pipelinedIndexing;
+    }
+
+    /**
+     * @return the number of threads of each indexing stage (0 means the number of processors).
+     */
+    public int getPipelinedIndexingThreads() {
+        return this.pipelinedIndexingThreads;
+    }
+
+    /**
+     * @return the capacity of the queue of each indexing stage.
+     */
+    public int getPipelinedIndexingQueueSize() {
+        return this.pipelinedIndexingQueueSize;
+    }
+
     /**
      * How often to check if a commit is required
      */
@@ -91,6 +91,13 @@ public class LuceneIndexField {
     public static final String SERVICE_TYPE = "serviceType";
     public static final String SOURCE = "_source";
     public static final String SOUTH = "southBL";
+    /**
+     * Envelope of the geometries of the record in the spatial index (not stored).
+     */
+    public static final String SPATIAL_MAX_X = "_spatialMaxX";
+    public static final String SPATIAL_MAX_Y = "_spatialMaxY";
+    public static final String SPATIAL_MIN_X = "_spatialMinX";
+    public static final String SPATIAL_MIN_Y = "_spatialMinY";
     public static final String SPATIALREPRESENTATIONTYPE = "spatialRepresentationType";
     public static final String SUBJECT = "subject";
     public static final String TAXON = "taxon:name";
@@ -59,6 +59,7 @@ import org.apache.lucene.queryparser.flexible.standard.config.NumericConfig;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
@@ -88,7 +89,8 @@ import org.fao.geonet.domain.Profile;
 import org.fao.geonet.domain.ReservedGroup;
 import org.fao.geonet.domain.ReservedOperation;
 import org.fao.geonet.domain.Source;
-import org.fao.geonet.domain.UserGroup;
+import org.fao.geonet.exceptions.BadParameterEx;
+import org.fao.geonet.exceptions.SearchExpiredEx;
 import org.fao.geonet.exceptions.UnAuthorizedException;
 import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.DataManager;
@@ -107,8 +109,6 @@ import org.fao.geonet.kernel.setting.SettingInfo;
 import org.fao.geonet.languages.LanguageDetector;
 import org.fao.geonet.repository.OperationAllowedRepository;
 import org.fao.geonet.repository.SourceRepository;
-import org.fao.geonet.repository.UserGroupRepository;
-import org.fao.geonet.repository.specification.UserGroupSpecs;
 import org.fao.geonet.utils.Log;
 import org.fao.geonet.utils.Xml;
 import org.jdom.Content;
@@ -117,13 +117,10 @@ import org.jdom.JDOMException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.jpa.domain.Specification;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import static org.springframework.data.jpa.domain.Specifications.where;
-
 import java.io.IOException;
 import java.io.StringReader;
 import java.lang.reflect.Constructor;
@@ -174,6 +171,16 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
     private SummaryType _summaryConfig;
     private boolean _logSearch = true;
 
+    /**
+     * True if the search was requested with a {@link Geonet.SearchResult#CURSOR} parameter.
+     */
+    private boolean _cursorMode;
+    /**
+     * The cursor the current page starts at or null for the first page.
+     */
+    private SearchCursor _cursor;
+    private SearchCursor _nextCursor;
+
     /**
      * constructor TODO javadoc.
      */
@@ -626,13 +633,30 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
     public static Pair<TopDocs, Element> doSearchAndMakeSummary(int numHits, int startHit, int endHit, String langCode,
                                                                 SummaryType summaryConfig, LuceneConfig luceneConfig, IndexReader reader,
                                                                 Query query, Filter cFilter, Sort sort, TaxonomyReader taxonomyReader, boolean buildSummary) throws Exception {
+        return doSearchAndMakeSummary(numHits, startHit, endHit, langCode, summaryConfig, luceneConfig, reader, query,
+            cFilter, sort, null, taxonomyReader, buildSummary);
+    }
+
+    /**
+     * Do Lucene search and optionally build a summary for the search.
+     *
+     * When after is set, only the hits sorted after it are collected (see
+     * {@link SearchCursor}) so that startHit and endHit are relative to it. The count of the
+     * summary is still the total number of hits.
+     *
+     * @param after the last hit of the previous page or null to collect from the first hit.
+     */
+    public static Pair<TopDocs, Element> doSearchAndMakeSummary(int numHits, int startHit, int endHit, String langCode,
+                                                                SummaryType summaryConfig, LuceneConfig luceneConfig, IndexReader reader,
+                                                                Query query, Filter cFilter, Sort sort, @Nullable FieldDoc after,
+                                                                TaxonomyReader taxonomyReader, boolean buildSummary) throws Exception {
         FacetsConfig facetConfiguration = luceneConfig.getTaxonomyConfiguration();
         boolean trackDocScores = luceneConfig.isTrackDocScores();
         boolean trackMaxScore = luceneConfig.isTrackMaxScore();
         boolean docsScoredInOrder = luceneConfig.isDocsScoredInOrder();
         LOGGER.debug("Build summary: {}", buildSummary);
-        LOGGER.debug("Setting up the TFC with numHits {}", numHits);
-        TopFieldCollector tfc = TopFieldCollector.create(sort, numHits, true, trackDocScores, trackMaxScore, docsScoredInOrder);
+        LOGGER.debug("Setting up the TFC with numHits {} after {}", numHits, after);
+        TopFieldCollector tfc = TopFieldCollector.create(sort, numHits, after, true, trackDocScores, trackMaxScore, docsScoredInOrder);
 
         LOGGER.debug("Lucene query: ", query);
         // too dangerous to do this only for logging, as it may throw NPE if Query was not constructed correctly
@@ -1102,12 +1126,29 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
         boolean buildSummary = sBuildSummary == null || sBuildSummary.equals("true");
         _language = determineLanguage(srvContext, request, _sm.getSettingInfo());
 
+        String cursor = request.getChildText(Geonet.SearchResult.CURSOR);
+        _cursorMode = StringUtils.isNotEmpty(cursor);
+        _cursor = null;
+        _nextCursor = null;
+        if (_cursorMode && !SearchCursor.START.equals(cursor)) {
+            _cursor = SearchCursor.decode(cursor);
+            _versionToken = _cursor.getVersion();
+        }
+
         LOGGER.debug("LuceneSearcher initializing search range");
         initSearchRange(srvContext);
 
         LOGGER.debug("LuceneSearcher computing query");
         computeQuery(srvContext, request, config);
 
+        if (_cursorMode) {
+            if (_cursor != null && !_cursor.matches(_query, _sort)) {
+                // the query or sort changed since the cursor was created
+                throw new BadParameterEx(Geonet.SearchResult.CURSOR, cursor);
+            }
+            setCursorRange(request);
+        }
+
         LOGGER.debug("LuceneSearcher performing query");
         performQuery(srvContext, getFrom() - 1, getTo(), buildSummary);
         updateSearchRange(request);
@@ -1117,6 +1158,31 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
         }
     }
 
+    /**
+     * Computes the query of a search without running it.
+     *
+     * @return the query matching the request, including the privileges of the user and the
+     * portal filter.
+     */
+    public Query makeQuery(ServiceContext srvContext, Element request, ServiceConfig config) throws Exception {
+        _language = determineLanguage(srvContext, request, _sm.getSettingInfo());
+        computeQuery(srvContext, request, config);
+        return _query;
+    }
+
+    /**
+     * In cursor mode the page starts after the hits of the previous pages whatever the from
+     * parameter is, the to parameter is updated to keep the requested page size.
+     */
+    private void setCursorRange(Element request) {
+        int pageSize = Math.max(1, readTo(request) - readFrom(request) + 1);
+        int from = _cursor == null ? 1 : _cursor.getPosition() + 1;
+        request.removeChildren("from");
+        request.removeChildren("to");
+        addElement(request, "from", Integer.toString(from));
+        addElement(request, "to", Integer.toString(from + pageSize - 1));
+    }
+
     /**
      * TODO javadoc.
      */
@@ -1227,6 +1293,11 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
             }
         }
 
+        if (_cursorMode) {
+            // An empty cursor means the last page was reached
+            response.setAttribute(Geonet.SearchResult.CURSOR, _nextCursor == null ? "" : _nextCursor.encode());
+        }
+
         return response;
     }
 
@@ -1317,6 +1388,15 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
         return _numHits;
     }
 
+    /**
+     * @return the cursor of the page following the last page searched or presented, null if
+     * the search is not in cursor mode or if there is no more hits.
+     */
+    @Nullable
+    public SearchCursor getNextCursor() {
+        return _nextCursor;
+    }
+
     /**
      * TODO javadoc.
      */
@@ -1407,14 +1487,10 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
                     request.addContent(new Element(SearchParameter.OWNER).addContent(owner));
 
                     //If the user is editor or more, fill the editorGroup
-                    Specification<UserGroup> hasUserIdAndProfile =
-                    		where(
-                    				where(UserGroupSpecs.hasProfile(Profile.Reviewer))
-                    					.or(UserGroupSpecs.hasProfile(Profile.Editor))
-                    					.or(UserGroupSpecs.hasProfile(Profile.UserAdmin)))
-                            .and(UserGroupSpecs.hasUserId(userSession.getUserIdAsInt()));
-
-                    List<Integer> editableGroups = srvContext.getBean(UserGroupRepository.class).findGroupIds(hasUserIdAndProfile);
+                    final AccessManager accessManager = srvContext.getBean(AccessManager.class);
+                    Set<Integer> editableGroups = accessManager.getUserGroups(userSession, Profile.Reviewer);
+                    editableGroups.addAll(accessManager.getUserGroups(userSession, Profile.Editor));
+                    editableGroups.addAll(accessManager.getUserGroups(userSession, Profile.UserAdmin));
 
                     LOGGER.trace(" > User has " + editableGroups.size() + " groups with editing privileges.");
 					for (Integer group : editableGroups) {
@@ -1653,14 +1729,19 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
     private TopDocs performQuery(ServiceContext context, int startHit, int endHit, boolean buildSummary) throws Exception {
         IndexAndTaxonomy indexAndTaxonomy = _sm.getIndexReader(_language.presentationLanguage, _versionToken);
         _versionToken = indexAndTaxonomy.version;
+        // In cursor mode, hits are collected after the last hit of the previous page
+        int offset = _cursor == null ? 0 : _cursor.getPosition();
         Pair<TopDocs, Element> results;
         try {
-            results = doSearchAndMakeSummary(endHit, startHit, endHit,
+            if (_cursor != null && _versionToken != _cursor.getVersion()) {
+                throw new SearchExpiredEx("Search has expired/timed out - start a new search");
+            }
+            results = doSearchAndMakeSummary(Math.max(1, endHit - offset), startHit - offset, endHit - offset,
                 _language.presentationLanguage,
                 _summaryConfig, _luceneConfig,
                 indexAndTaxonomy.indexReader,
-                _query, _filter, _sort, indexAndTaxonomy.taxonomyReader,
-                buildSummary);
+                _query, _filter, _sort, _cursor == null ? null : _cursor.getAfter(),
+                indexAndTaxonomy.taxonomyReader, buildSummary);
         } finally {
             _sm.releaseIndexReader(indexAndTaxonomy);
         }
@@ -1671,6 +1752,11 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
 
         LOGGER.debug("Hits found : {}", _numHits );
 
+        if (_cursorMode) {
+            _nextCursor = offset + hits.scoreDocs.length < _numHits ?
+                SearchCursor.next(_versionToken, offset, _query, _sort, hits.scoreDocs) : null;
+        }
+
         return hits;
     }
 
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.util.BytesRef;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.exceptions.BadParameterEx;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * Position in the results of a search used for deep paging.
+ *
+ * Instead of collecting all the hits up to the requested page and skipping the first ones, the
+ * next page is collected with {@link org.apache.lucene.search.IndexSearcher#searchAfter} starting
+ * after the last hit of the previous page. Lucene document ids are only stable for a given index
+ * reader so a cursor is bound to the version of the searcher it was created with (see
+ * {@link org.fao.geonet.kernel.search.index.SearcherVersionTracker}) and to the query and sort
+ * it was created for.
+ *
+ * Cursors are exchanged with clients as opaque URL safe strings.
+ */
+public final class SearchCursor {
+    /**
+     * Value of the cursor parameter to request the first page of a search in cursor mode.
+     */
+    public static final String START = "*";
+
+    private static final byte FORMAT = 1;
+
+    private static final byte NULL = 0;
+    private static final byte BYTES = 1;
+    private static final byte STRING = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte FLOAT = 5;
+    private static final byte DOUBLE = 6;
+
+    private final long version;
+    private final int position;
+    private final int fingerprint;
+    private final FieldDoc after;
+
+    /**
+     * @param version     version of the searcher the hits were collected with.
+     * @param position    number of hits before the next page.
+     * @param fingerprint fingerprint of the query and sort, see {@link #fingerprint(Query, Sort)}.
+     * @param after       last hit of the previous page.
+     */
+    public SearchCursor(long version, int position, int fingerprint, FieldDoc after) {
+        this.version = version;
+        this.position = position;
+        this.fingerprint = fingerprint;
+        this.after = after;
+    }
+
+    /**
+     * Create the cursor of the page following the given hits.
+     *
+     * @return the cursor or null if there is no hit or the hits were not collected with their
+     * sort values.
+     */
+    public static SearchCursor next(long version, int position, Query query, Sort sort, ScoreDoc[] hits) {
+        if (hits.length == 0 || !(hits[hits.length - 1] instanceof FieldDoc)) {
+            return null;
+        }
+        return new SearchCursor(version, position + hits.length, fingerprint(query, sort),
+            (FieldDoc) hits[hits.length - 1]);
+    }
+
+    /**
+     * @return a value identifying the query and sort, used to check that a cursor is not used
+     * with another search.
+     */
+    public static int fingerprint(Query query, Sort sort) {
+        return (String.valueOf(query) + '|' + String.valueOf(sort)).hashCode();
+    }
+
+    /**
+     * @throws BadParameterEx if the value is not a valid cursor.
+     */
+    public static SearchCursor decode(String value) {
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(value);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readByte() != FORMAT) {
+                throw new IOException("Unsupported cursor format");
+            }
+            long version = in.readLong();
+            int position = in.readInt();
+            int fingerprint = in.readInt();
+            int doc = in.readInt();
+            float score = in.readFloat();
+            Object[] fields = new Object[in.readUnsignedByte()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = readValue(in);
+            }
+            if (in.available() > 0 || position < 0) {
+                throw new IOException("Invalid cursor");
+            }
+            return new SearchCursor(version, position, fingerprint, new FieldDoc(doc, score, fields));
+        } catch (IOException | IllegalArgumentException e) {
+            // not base64 or not a cursor
+            throw new BadParameterEx(Geonet.SearchResult.CURSOR, value);
+        }
+    }
+
+    public String encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT);
+            out.writeLong(version);
+            out.writeInt(position);
+            out.writeInt(fingerprint);
+            out.writeInt(after.doc);
+            out.writeFloat(after.score);
+            Object[] fields = after.fields == null ? new Object[0] : after.fields;
+            out.writeByte(fields.length);
+            for (Object field : fields) {
+                writeValue(out, field);
+            }
+            out.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+        } catch (IOException e) {
+            // Can not happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof BytesRef) {
+            BytesRef bytesRef = (BytesRef) value;
+            out.writeByte(BYTES);
+            out.writeInt(bytesRef.length);
+            out.write(bytesRef.bytes, bytesRef.offset, bytesRef.length);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else {
+            throw new IllegalStateException("Unsupported sort value: " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case BYTES:
+                int length = in.readInt();
+                if (length < 0 || length > in.available()) {
+                    throw new IOException("Invalid sort value length: " + length);
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                return new BytesRef(bytes);
+            case STRING:
+                return in.readUTF();
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            default:
+                throw new IOException("Unsupported sort value type: " + type);
+        }
+    }
+
+    /**
+     * @return true if the cursor was created for the given query and sort.
+     */
+    public boolean matches(Query query, Sort sort) {
+        return fingerprint == fingerprint(query, sort);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of hits before the page starting at this cursor.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public FieldDoc getAfter() {
+        return after;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchCursor{version=" + version + ", position=" + position + ", after=" + after + "}";
+    }
+}
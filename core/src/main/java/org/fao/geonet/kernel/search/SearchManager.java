@@ -46,11 +46,13 @@ import org.apache.lucene.document.FieldType.NumericType;
 import org.apache.lucene.document.FloatField;
 import org.apache.lucene.document.IntField;
 import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.facet.FacetField;
 import org.apache.lucene.facet.taxonomy.CategoryPath;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.FieldInfo.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.SlowCompositeReaderWrapper;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
@@ -77,6 +79,8 @@ import org.fao.geonet.kernel.search.facet.Dimension;
 import org.fao.geonet.kernel.search.function.DocumentBoosting;
 import org.fao.geonet.kernel.search.index.GeonetworkMultiReader;
 import org.fao.geonet.kernel.search.index.IndexInformation;
+import org.fao.geonet.kernel.search.index.IndexingPipeline;
+import org.fao.geonet.kernel.search.index.IndexingStage;
 import org.fao.geonet.kernel.search.index.LuceneIndexLanguageTracker;
 import org.fao.geonet.kernel.search.spatial.ContainsFilter;
 import org.fao.geonet.kernel.search.spatial.CrossesFilter;
@@ -108,6 +112,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.ConfigurableApplicationContext;
 
 import javax.annotation.PreDestroy;
+import javax.xml.transform.Source;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.nio.file.DirectoryStream;
@@ -128,9 +133,16 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -175,6 +187,20 @@ public class SearchManager implements ISearchManager {
     private Path _htmlCacheDir;
     private Spatial _spatial;
     private LuceneOptimizerManager _luceneOptimizerManager;
+    /**
+     * Stages used to index records when pipelined indexing is enabled, null otherwise.
+     */
+    private IndexingPipeline _indexingPipeline;
+    /**
+     * Records being indexed in the background by the pipeline, by id.
+     */
+    private final ConcurrentMap<String, CompletableFuture<Void>> _pendingWrites =
+        new ConcurrentHashMap<String, CompletableFuture<Void>>();
+    /**
+     * First failure of the records indexed in the background since the last time the pending
+     * writes were awaited.
+     */
+    private final AtomicReference<IOException> _writeFailure = new AtomicReference<IOException>();
 
     /**
      * Creates GeoNetworkAnalyzer, using Admin-defined stopwords if there are any.
@@ -504,7 +530,17 @@ public class SearchManager implements ISearchManager {
         Files.createDirectories(htmlCacheDirTest);
         _htmlCacheDir = htmlCacheDirTest.toAbsolutePath();
 
-        _spatial = new Spatial(applicationContext.getBean(DataStore.class), maxWritesInTransaction);
+        LuceneConfig luceneConfig = applicationContext.getBean(LuceneConfig.class);
+        _spatial = new Spatial(applicationContext.getBean(DataStore.class), luceneConfig, maxWritesInTransaction);
+
+        if (_indexingPipeline != null) {
+            _indexingPipeline.shutdown();
+            _indexingPipeline = null;
+        }
+        if (luceneConfig.isPipelinedIndexing()) {
+            _indexingPipeline = new IndexingPipeline(luceneConfig.getPipelinedIndexingThreads(),
+                luceneConfig.getPipelinedIndexingQueueSize());
+        }
 
         initLucene();
 
@@ -522,6 +558,21 @@ public class SearchManager implements ISearchManager {
 
         _spatial.end();
         _luceneOptimizerManager.shutdown();
+        if (_indexingPipeline != null) {
+            try {
+                awaitPendingWrites();
+            } finally {
+                IE_LOGGER.info("{}", _indexingPipeline);
+                _indexingPipeline.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @return the indexing pipeline or null if pipelined indexing is disabled.
+     */
+    public IndexingPipeline getIndexingPipeline() {
+        return _indexingPipeline;
     }
 
     @Override
@@ -610,41 +661,111 @@ public class SearchManager implements ISearchManager {
         ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
         LuceneIndexLanguageTracker tracker = applicationContext.getBean(LuceneIndexLanguageTracker.class);
 
+        awaitPendingWrites();
         tracker.commit();
         tracker.maybeRefreshBlocking();
+
+        if (_indexingPipeline != null && IE_LOGGER.isDebugEnabled()) {
+            IE_LOGGER.debug("{}", _indexingPipeline);
+        }
     }
 
     /**
      * Indexes a metadata record.
      *
+     * When pipelined indexing is enabled, the index fields and documents are built and written in
+     * the background so that the caller can read the next record meanwhile. Indexing the same
+     * record again waits for the previous indexing of the record, and deleting records or
+     * forcing the index changes waits for all the records being indexed and throws the first
+     * failure to index one of them.
+     *
      * @param forceRefreshReaders if true then block all searches until they can obtain a up-to-date
      *                            reader
      */
-    public void index(Path schemaDir, Element metadata, String id, List<Element> moreFields,
-                      MetadataType metadataType, String root, boolean forceRefreshReaders)
+    public void index(final Path schemaDir, final Element metadata, final String id, List<Element> moreFields,
+                      final MetadataType metadataType, final String root, boolean forceRefreshReaders)
         throws Exception {
         ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
-        LuceneIndexLanguageTracker tracker = applicationContext.getBean(LuceneIndexLanguageTracker.class);
+        final LuceneIndexLanguageTracker tracker = applicationContext.getBean(LuceneIndexLanguageTracker.class);
 
         // Update spatial index first and if error occurs, record it to Lucene index
-        indexGeometry(schemaDir, metadata, id, moreFields);
+        final Envelope envelope = indexGeometry(schemaDir, metadata, id, moreFields);
 
         // Update Lucene index
-        List<IndexInformation> docs = buildIndexDocument(schemaDir, metadata, id, moreFields, metadataType, root);
-        tracker.deleteDocuments(new Term(Geonet.IndexFieldNames.ID, id));
-        for (IndexInformation document : docs) {
-            tracker.addDocument(document);
+        final Term idTerm = new Term(Geonet.IndexFieldNames.ID, id);
+        if (_indexingPipeline == null) {
+            writeDocuments(tracker, idTerm,
+                buildIndexDocument(schemaDir, metadata, id, moreFields, metadataType, root, envelope));
+        } else {
+            final List<Element> fields = new ArrayList<Element>(moreFields);
+            final CompletableFuture<Void> pending = new CompletableFuture<Void>();
+            CompletableFuture<Void> previous;
+            // Apply the writes of a record in order
+            while ((previous = _pendingWrites.putIfAbsent(id, pending)) != null) {
+                previous.join();
+            }
+            try {
+                _indexingPipeline.writer().submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            writeDocuments(tracker, idTerm,
+                                buildIndexDocument(schemaDir, metadata, id, fields, metadataType, root, envelope));
+                            return null;
+                        } catch (Exception e) {
+                            IE_LOGGER.error("Failed to index metadata {}. Error: {}", id, e.getMessage());
+                            _writeFailure.compareAndSet(null,
+                                new IOException("Failed to index metadata " + id + ": " + e.getMessage(), e));
+                            throw e;
+                        } finally {
+                            _pendingWrites.remove(id, pending);
+                            pending.complete(null);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                _pendingWrites.remove(id, pending);
+                pending.complete(null);
+                throw e;
+            }
         }
         if (forceRefreshReaders) {
             forceIndexChanges();
         }
     }
 
-    private void indexGeometry(Path schemaDir, Element metadata, String id,
-                               List<Element> moreFields) throws Exception {
+    /**
+     * Waits until the records being indexed in the background are written to the index.
+     *
+     * @throws IOException the first failure to index a record since the last call.
+     */
+    private void awaitPendingWrites() throws IOException {
+        for (CompletableFuture<Void> pending : _pendingWrites.values()) {
+            pending.join();
+        }
+        IOException failure = _writeFailure.getAndSet(null);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void writeDocuments(LuceneIndexLanguageTracker tracker, Term idTerm,
+                                List<IndexInformation> docs) throws IOException {
+        tracker.deleteDocuments(idTerm);
+        for (IndexInformation document : docs) {
+            tracker.addDocument(document);
+        }
+    }
+
+    /**
+     * @return the envelope of the geometries added to the spatial index, if any.
+     */
+    private Envelope indexGeometry(Path schemaDir, Element metadata, String id,
+                                   List<Element> moreFields) throws Exception {
+        Envelope envelope = null;
         try {
             _spatial.writer().delete(id);
-            _spatial.writer().index(schemaDir, id, metadata);
+            envelope = _spatial.writer().index(schemaDir, id, metadata);
         } catch (Exception e) {
             IE_LOGGER.error("Failed to properly index geometry of metadata {}. Error: {}", id, e.getMessage());
             moreFields.add(SearchManager.makeField(INDEXING_ERROR_FIELD, "1", true, true));
@@ -657,12 +778,14 @@ public class SearchManager implements ISearchManager {
                 moreFields.add(SearchManager.makeField(INDEXING_ERROR_MSG, "GNIDX-GEO|" + e.getKey() + "|" + e.getValue(), true, false));
             }
         }
+        return envelope;
     }
 
     public void deleteGroup(String fld, String txt) throws Exception {
         ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
         LuceneIndexLanguageTracker tracker = applicationContext.getBean(LuceneIndexLanguageTracker.class);
 
+        awaitPendingWrites();
         // possibly remove old document
         IE_LOGGER.debug("Deleting document ");
         tracker.deleteDocuments(new Term(fld, txt));
@@ -672,10 +795,11 @@ public class SearchManager implements ISearchManager {
 
     /**
      * @param root @return
+     * @param envelope envelope of the geometries of the record in the spatial index (may be null)
      */
     private List<IndexInformation> buildIndexDocument(Path schemaDir, Element metadata, String id,
                                                       List<Element> moreFields, MetadataType metadataType,
-                                                      String root) throws Exception {
+                                                      String root, final Envelope envelope) throws Exception {
 
         if (IE_LOGGER.isDebugEnabled()) {
             IE_LOGGER.debug("Metadata to index:\n{}", Xml.getString(metadata));
@@ -698,10 +822,11 @@ public class SearchManager implements ISearchManager {
 
         @SuppressWarnings(value = "unchecked")
         List<Element> documentElements = xmlDoc.getContent();
-        Collection<Field> multilingualSortFields = findMultilingualSortElements(documentElements);
+        final Collection<Field> multilingualSortFields = findMultilingualSortElements(documentElements);
 
         List<IndexInformation> documents = Lists.newArrayList();
-        for (Element doc : documentElements) {
+        List<Future<IndexInformation>> pendingDocuments = Lists.newArrayList();
+        for (final Element doc : documentElements) {
             // add _id field
             SearchManager.addField(doc, LuceneIndexField.ID, id, true, true);
 
@@ -710,8 +835,20 @@ public class SearchManager implements ISearchManager {
                 doc.addContent((Content) moreField.clone());
             }
 
-            String locale = getLocaleFromIndexDoc(doc);
-            documents.add(newDocument(locale, doc, multilingualSortFields));
+            final String locale = getLocaleFromIndexDoc(doc);
+            if (_indexingPipeline == null) {
+                documents.add(newDocument(locale, doc, multilingualSortFields, envelope));
+            } else {
+                pendingDocuments.add(_indexingPipeline.documents().submit(new Callable<IndexInformation>() {
+                    @Override
+                    public IndexInformation call() throws Exception {
+                        return newDocument(locale, doc, multilingualSortFields, envelope);
+                    }
+                }));
+            }
+        }
+        for (Future<IndexInformation> pendingDocument : pendingDocuments) {
+            documents.add(IndexingStage.await(pendingDocument));
         }
         if (IE_LOGGER.isDebugEnabled())
             IE_LOGGER.debug("Lucene document:\n{}", Xml.getString(xmlDoc));
@@ -804,6 +941,7 @@ public class SearchManager implements ISearchManager {
     public void delete(String fld, String txt) throws Exception {
         ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
         LuceneIndexLanguageTracker tracker = applicationContext.getBean(LuceneIndexLanguageTracker.class);
+        awaitPendingWrites();
         // possibly remove old document
         tracker.deleteDocuments(new Term(fld, txt));
         _spatial.writer().delete(txt);
@@ -816,6 +954,7 @@ public class SearchManager implements ISearchManager {
         ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
         LuceneIndexLanguageTracker tracker = applicationContext.getBean(LuceneIndexLanguageTracker.class);
 
+        awaitPendingWrites();
         // possibly remove old document
         for (String txt : txts) {
             tracker.deleteDocuments(new Term(fld, txt));
@@ -1034,10 +1173,32 @@ public class SearchManager implements ISearchManager {
             params.put("inspire", Boolean.toString(isInspireEnabled()));
             params.put("thesauriDir", geonetworkDataDirectory.getThesauriDir().toAbsolutePath().toString());
 
-            Element defaultLang = Xml.transform(xml, defaultLangStyleSheet, params);
-            if (Files.exists(otherLocalesStyleSheet)) {
+            boolean hasOtherLocales = Files.exists(otherLocalesStyleSheet);
+            // The record is converted once for both stylesheets, which may run concurrently
+            Source source = Xml.prepareSource(xml);
+            Element defaultLang;
+            Element otherLocales = null;
+            if (_indexingPipeline == null) {
+                defaultLang = Xml.transform(source, defaultLangStyleSheet, params);
+                if (hasOtherLocales) {
+                    otherLocales = Xml.transform(source, otherLocalesStyleSheet, params);
+                }
+            } else {
+                Future<Element> otherLocalesResult = null;
+                if (hasOtherLocales) {
+                    otherLocalesResult = _indexingPipeline.fields().submit(
+                        transformTask(source, otherLocalesStyleSheet, params));
+                }
+                Future<Element> defaultLangResult = _indexingPipeline.fields().submit(
+                    transformTask(source, defaultLangStyleSheet, params));
+                defaultLang = IndexingStage.await(defaultLangResult);
+                if (otherLocalesResult != null) {
+                    otherLocales = IndexingStage.await(otherLocalesResult);
+                }
+            }
+            if (otherLocales != null) {
                 @SuppressWarnings(value = "unchecked")
-                List<Element> otherLanguages = Xml.transform(xml, otherLocalesStyleSheet, params).removeContent();
+                List<Element> otherLanguages = otherLocales.removeContent();
                 mergeDefaultLang(defaultLang, otherLanguages);
                 documents.addContent(otherLanguages);
             }
@@ -1048,6 +1209,16 @@ public class SearchManager implements ISearchManager {
         return documents;
     }
 
+    private static Callable<Element> transformTask(final Source xml, final Path styleSheet,
+                                                   final Map<String, Object> params) {
+        return new Callable<Element>() {
+            @Override
+            public Element call() throws Exception {
+                return Xml.transform(xml, styleSheet, params);
+            }
+        };
+    }
+
     /**
      * Used only for indexing subtemplate, use a single XSL that do the all
      * thing. Must contain a <Documents></Documents> root element.
@@ -1260,8 +1431,11 @@ public class SearchManager implements ISearchManager {
      * field's attributes for configuration.
      *
      * @param xml The list of field to be indexed.
+     * @param envelope The envelope of the record geometries indexed as numeric fields to prefilter
+     *                 spatial searches (may be null).
      */
-    private IndexInformation newDocument(String language, Element xml, Collection<Field> multilingualSortFields) {
+    private IndexInformation newDocument(String language, Element xml, Collection<Field> multilingualSortFields,
+                                         Envelope envelope) {
         Document doc = new Document();
         Collection<CategoryPath> categories = new HashSet<CategoryPath>();
 
@@ -1349,6 +1523,15 @@ public class SearchManager implements ISearchManager {
                 }
                 doc.add(f);
 
+                if (luceneConfig.isDocValuesField(name)) {
+                    BytesRef value = new BytesRef(string);
+                    if (value.length <= IndexWriter.MAX_TERM_LENGTH) {
+                        doc.add(new SortedSetDocValuesField(LuceneConfig.docValuesFieldName(name), value));
+                    } else {
+                        IE_LOGGER.debug("Value of field {} is too long to be indexed as doc values", name);
+                    }
+                }
+
                 for (Field fFacet : fFacets) {
                     IE_LOGGER.debug("Facet field: {}", fFacet.toString());
                     doc.add(fFacet);
@@ -1360,6 +1543,13 @@ public class SearchManager implements ISearchManager {
             doc.add(new Field(Geonet.LUCENE_LOCALE_KEY, Geonet.DEFAULT_LANGUAGE, storeNotTokenizedFieldType));
         }
 
+        if (envelope != null && !envelope.isNull()) {
+            doc.add(new DoubleField(LuceneIndexField.SPATIAL_MIN_X, envelope.getMinX(), Field.Store.NO));
+            doc.add(new DoubleField(LuceneIndexField.SPATIAL_MIN_Y, envelope.getMinY(), Field.Store.NO));
+            doc.add(new DoubleField(LuceneIndexField.SPATIAL_MAX_X, envelope.getMaxX(), Field.Store.NO));
+            doc.add(new DoubleField(LuceneIndexField.SPATIAL_MAX_Y, envelope.getMaxY(), Field.Store.NO));
+        }
+
         return new IndexInformation(language, doc, categories);
     }
 
@@ -1546,11 +1736,12 @@ public class SearchManager implements ISearchManager {
     public class Spatial {
         private static final long TIME_BETWEEN_SPATIAL_COMMITS_IN_SECONDS = 10;
         private final DataStore _datastore;
+        private final LuceneConfig _luceneConfig;
         private final Map<String, Constructor<? extends SpatialFilter>> _types;
         private final Transaction _transaction;
         private final int _maxWritesInTransaction;
         private final Lock _lock;
-        private SpatialIndexWriter _writer;
+        private volatile SpatialIndexWriter _writer;
         private volatile Committer _committerTask;
 
         {
@@ -1575,14 +1766,17 @@ public class SearchManager implements ISearchManager {
         }
 
         /**
+         * @param luceneConfig           - Configuration telling whether the filters use the envelope
+         *                               prefilter.
          * @param maxWritesInTransaction - Number of features to write to before commit - set 1 and
          *                               the transaction will be autocommit which results in faster
          *                               loading for some (all?) configurations and does not keep a
          *                               long running transaction open.
          */
-        public Spatial(DataStore dataStore, int maxWritesInTransaction) throws Exception {
+        public Spatial(DataStore dataStore, LuceneConfig luceneConfig, int maxWritesInTransaction) throws Exception {
             _lock = new ReentrantLock();
             _datastore = dataStore;
+            _luceneConfig = luceneConfig;
 
             if (maxWritesInTransaction > 1) {
                 _transaction = new DefaultTransaction("SpatialIndexWriter");
@@ -1641,48 +1835,49 @@ public class SearchManager implements ISearchManager {
             }
         }
 
+        /**
+         * Filters only read the immutable snapshot of the spatial index so they never wait for
+         * the writer lock.
+         */
         public Filter filter(org.apache.lucene.search.Query query, int numHits, Element filterExpr, String filterVersion)
             throws Exception {
-            _lock.lock();
             try {
                 Parser filterParser = getFilterParser(filterVersion);
                 Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> accessor = new SpatialIndexAccessor();
-                return OgcGenericFilters.create(query, numHits, filterExpr, accessor, filterParser);
+                return withPrefilter(OgcGenericFilters.create(query, numHits, filterExpr, accessor, filterParser));
             } catch (Exception e) {
                 // TODO Handle NPE creating spatial filter (due to constraint language version).
                 throw new IllegalArgumentException("Error when parsing spatial filter (version: " + filterVersion + "):" +
                     Xml.getString(filterExpr) + ". Error is: " + e.toString());
-            } finally {
-                _lock.unlock();
             }
         }
 
         public SpatialFilter filter(org.apache.lucene.search.Query query, int numHits,
                                     Collection<Geometry> geom, Element request) throws Exception {
-            _lock.lock();
-            try {
-                String relation = Util.getParam(request, Geonet.SearchResult.RELATION,
-                    Geonet.SearchResult.Relation.INTERSECTION);
-                if (geom.size() == 1) {
-                    return _types.get(relation.toLowerCase()).newInstance(query, numHits, geom.iterator().next(), new SpatialIndexAccessor());
-                } else {
-                    Collection<SpatialFilter> filters = new ArrayList<SpatialFilter>(geom.size());
-                    Envelope bounds = null;
-                    for (Geometry geometry : geom) {
-                        if (bounds == null) {
-                            bounds = geometry.getEnvelopeInternal();
-                        } else {
-                            bounds.expandToInclude(geometry.getEnvelopeInternal());
-                        }
-                        filters.add(_types.get(relation).newInstance(query, numHits, geometry, new SpatialIndexAccessor()));
+            String relation = Util.getParam(request, Geonet.SearchResult.RELATION,
+                Geonet.SearchResult.Relation.INTERSECTION);
+            if (geom.size() == 1) {
+                return withPrefilter(_types.get(relation.toLowerCase()).newInstance(query, numHits, geom.iterator().next(), new SpatialIndexAccessor()));
+            } else {
+                Collection<SpatialFilter> filters = new ArrayList<SpatialFilter>(geom.size());
+                Envelope bounds = null;
+                for (Geometry geometry : geom) {
+                    if (bounds == null) {
+                        bounds = geometry.getEnvelopeInternal();
+                    } else {
+                        bounds.expandToInclude(geometry.getEnvelopeInternal());
                     }
-                    return new OrSpatialFilter(query, numHits, bounds, new SpatialIndexAccessor(), filters);
+                    filters.add(_types.get(relation).newInstance(query, numHits, geometry, new SpatialIndexAccessor()));
                 }
-            } finally {
-                _lock.unlock();
+                return withPrefilter(new OrSpatialFilter(query, numHits, bounds, new SpatialIndexAccessor(), filters));
             }
         }
 
+        private SpatialFilter withPrefilter(SpatialFilter filter) {
+            filter.setEnvelopePrefilter(_luceneConfig.isSpatialEnvelopePrefilter());
+            return filter;
+        }
+
         public SpatialIndexWriter writer() throws Exception {
             _lock.lock();
             try {
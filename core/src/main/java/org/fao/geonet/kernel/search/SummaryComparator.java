@@ -199,8 +199,12 @@ public class SummaryComparator implements Comparator<SummaryComparator.SummaryEl
         public final int count;
 
         public SummaryElement(ObjectKeyIntMapIterator next) {
-            this.name = (String) next.getKey();
-            this.count = next.getValue();
+            this((String) next.getKey(), next.getValue());
+        }
+
+        public SummaryElement(String name, int count) {
+            this.name = name;
+            this.count = count;
         }
     }
 
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.search;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.fao.geonet.domain.ReservedOperation;
+
+import java.util.Collection;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Shared queries restricting a search to the records visible by a set of groups and an owner.
+ *
+ * Users with the same groups, like all anonymous users, share the same query. Its documents are
+ * cached per index segment by a {@link CachingWrapperFilter}: the cache of a segment is computed
+ * the first time it is searched and dropped with the segment, and deletions are applied when
+ * searching, so the cached documents stay valid when the index changes.
+ */
+public class VisibilityFilterCache {
+    public static final int MAX_ENTRIES = 1000;
+
+    private final Cache<String, Query> cache = CacheBuilder.newBuilder()
+        .maximumSize(MAX_ENTRIES)
+        .expireAfterAccess(1, TimeUnit.HOURS)
+        .build();
+
+    /**
+     * @param groups the groups the records must be visible to.
+     * @param owner  the id of a user whose records are also visible or null.
+     * @return a query matching the records that can be viewed. It is shared and must not be
+     * modified.
+     */
+    @Nonnull
+    public Query getQuery(@Nonnull Collection<Integer> groups, @Nullable String owner) {
+        SortedSet<Integer> sortedGroups = new TreeSet<>(groups);
+        String key = sortedGroups + "|" + owner;
+        Query query = cache.getIfPresent(key);
+        if (query == null) {
+            query = new ConstantScoreQuery(new CachingWrapperFilter(new QueryWrapperFilter(
+                createQuery(sortedGroups, owner))));
+            cache.put(key, query);
+        }
+        return query;
+    }
+
+    /**
+     * Drop all the queries and their cached documents.
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    static BooleanQuery createQuery(Collection<Integer> groups, @Nullable String owner) {
+        BooleanQuery query = new BooleanQuery();
+        BooleanClause.Occur occur = LuceneUtils.convertRequiredAndProhibitedToOccur(false, false);
+        for (Integer groupId : groups) {
+            query.add(new TermQuery(new Term(ReservedOperation.view.getLuceneIndexCode(), groupId.toString())), occur);
+        }
+
+        // If user is authenticated, add the current user to the query because
+        // if an editor unchecked all
+        // visible options in privileges panel for all groups, then the metadata
+        // records could not be found anymore, even by its editor.
+        if (owner != null) {
+            query.add(new TermQuery(new Term(LuceneIndexField.OWNER, owner)), occur);
+        }
+        return query;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search.index;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stages used by the search manager when pipelined indexing is enabled in the Lucene
+ * configuration:
+ *
+ * <ul>
+ *     <li>fields: run the index-fields stylesheets (default language and other locales run
+ *     concurrently)</li>
+ *     <li>documents: build the Lucene document of each locale</li>
+ *     <li>writer: index a record in the background, using the two stages above, and replace its
+ *     documents in the index</li>
+ * </ul>
+ *
+ * Each stage has its own threads and bounded queue so that records indexed by concurrent threads
+ * (eg. batch reindexing) overlap in the different stages. As the records are written in the
+ * background, the indexing threads read the next records while the previous ones are indexed.
+ */
+public class IndexingPipeline {
+
+    private final IndexingStage fields;
+    private final IndexingStage documents;
+    private final IndexingStage writer;
+
+    /**
+     * @param threads   number of threads of each stage. If 0 or less, the number of available
+     *                  processors is used.
+     * @param queueSize capacity of the queue of each stage.
+     */
+    public IndexingPipeline(int threads, int queueSize) {
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        this.fields = new IndexingStage("fields", threads, queueSize);
+        this.documents = new IndexingStage("documents", threads, queueSize);
+        this.writer = new IndexingStage("writer", threads, queueSize);
+    }
+
+    public IndexingStage fields() {
+        return fields;
+    }
+
+    public IndexingStage documents() {
+        return documents;
+    }
+
+    public IndexingStage writer() {
+        return writer;
+    }
+
+    public List<IndexingStage> getStages() {
+        return Collections.unmodifiableList(Arrays.asList(fields, documents, writer));
+    }
+
+    public void shutdown() {
+        for (IndexingStage stage : getStages()) {
+            stage.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Indexing pipeline");
+        for (IndexingStage stage : getStages()) {
+            sb.append("\n  ").append(stage);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search.index;
+
+import jeeves.server.context.ServiceContext;
+
+import org.fao.geonet.ApplicationContextHolder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stage of the {@link IndexingPipeline}.
+ *
+ * Tasks are run by a fixed number of threads fed by a bounded queue. When the queue is full the
+ * submitting thread runs the task itself, so a slow stage throttles the stages feeding it instead
+ * of buffering an unbounded number of records in memory.
+ *
+ * The application context and a copy of the service context of the submitting thread are made
+ * available to the task because indexing stylesheets and analyzers rely on them. Each task gets
+ * its own service context, which is not thread safe, and the thread gets its previous one back
+ * once the task is done.
+ */
+public class IndexingStage {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+    private final AtomicLong firstTaskNanos = new AtomicLong();
+    private final AtomicLong lastTaskNanos = new AtomicLong();
+
+    public IndexingStage(final String name, int threads, int queueSize) {
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // not the context of the request which happened to start the thread
+                        ServiceContext.clearThreadLocal();
+                        r.run();
+                    }
+                }, "index-" + name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Wait for the result of a task submitted to a stage, rethrowing the exception thrown by the
+     * task if any.
+     */
+    public static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @throws RejectedExecutionException if the stage is shut down.
+     */
+    public <T> Future<T> submit(final Callable<T> task) {
+        // The caller-runs policy silently discards the tasks once the executor is shut down
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Indexing stage " + name + " is shut down");
+        }
+        final ServiceContext requestContext = ServiceContext.get();
+        final ServiceContext serviceContext = requestContext == null ? null : requestContext.createThreadContext();
+        final ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+        final long submitted = System.nanoTime();
+        firstTaskNanos.compareAndSet(0, submitted);
+
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                ServiceContext previousServiceContext = ServiceContext.get();
+                ConfigurableApplicationContext previous = ApplicationContextHolder.get();
+                if (serviceContext != null) {
+                    serviceContext.setAsThreadLocal();
+                } else {
+                    ApplicationContextHolder.set(applicationContext);
+                }
+                long start = System.nanoTime();
+                boolean success = false;
+                try {
+                    T result = task.call();
+                    success = true;
+                    return result;
+                } finally {
+                    record(submitted, start, System.nanoTime(), success);
+                    if (previousServiceContext == null) {
+                        ServiceContext.clearThreadLocal();
+                    } else {
+                        previousServiceContext.setAsThreadLocal();
+                    }
+                    if (previous == null) {
+                        ApplicationContextHolder.clear();
+                    } else {
+                        ApplicationContextHolder.set(previous);
+                    }
+                }
+            }
+        });
+    }
+
+    private void record(long submitted, long start, long end, boolean success) {
+        long run = end - start;
+        completed.incrementAndGet();
+        if (!success) {
+            failed.incrementAndGet();
+        }
+        totalRunNanos.addAndGet(run);
+        totalWaitNanos.addAndGet(start - submitted);
+        lastTaskNanos.set(end);
+        long max = maxRunNanos.get();
+        while (run > max && !maxRunNanos.compareAndSet(max, run)) {
+            max = maxRunNanos.get();
+        }
+    }
+
+    public long getCompletedTasks() {
+        return completed.get();
+    }
+
+    public long getFailedTasks() {
+        return failed.get();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the mean time in milliseconds spent running a task.
+     */
+    public double getAverageLatencyMillis() {
+        long count = completed.get();
+        return count == 0 ? 0 : totalRunNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return the mean time in milliseconds a task waited in the queue before running.
+     */
+    public double getAverageWaitMillis() {
+        long count = completed.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1e6 / count;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxRunNanos.get() / 1e6;
+    }
+
+    /**
+     * @return the number of tasks completed per second between the first submission and the last
+     * completion.
+     */
+    public double getThroughput() {
+        long elapsed = lastTaskNanos.get() - firstTaskNanos.get();
+        return elapsed <= 0 ? 0 : completed.get() * 1e9 / elapsed;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d tasks (%d failed), %.1f tasks/s, latency avg %.1f ms / max %.1f ms, " +
+                "queue wait avg %.1f ms, %d queued",
+            name, getCompletedTasks(), getFailedTasks(), getThroughput(), getAverageLatencyMillis(),
+            getMaxLatencyMillis(), getAverageWaitMillis(), getQueueSize());
+    }
+}
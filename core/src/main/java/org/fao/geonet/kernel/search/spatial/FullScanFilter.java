@@ -27,9 +27,8 @@ import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.IndexSearcher;
@@ -79,7 +78,7 @@ public class FullScanFilter extends SpatialFilter {
 
         new IndexSearcher(context.reader()).search(_query, new Collector() {
             private int docBase;
-            private AtomicReader reader;
+            private BinaryDocValues ids;
 
             // ignore scorer
             public void setScorer(Scorer scorer) {
@@ -91,10 +90,8 @@ public class FullScanFilter extends SpatialFilter {
             }
 
             public final void collect(int doc) {
-                Document document;
                 try {
-                    document = reader.document(doc, _fieldsToLoad);
-                    if (matches.contains(document.get("_id"))) {
+                    if (matches.contains(ids.get(doc).utf8ToString())) {
                         bits.set(docBase + doc);
                     }
                 } catch (Exception e) {
@@ -105,7 +102,7 @@ public class FullScanFilter extends SpatialFilter {
             @Override
             public void setNextReader(AtomicReaderContext context) throws IOException {
                 this.docBase = context.docBase;
-                this.reader = context.reader();
+                this.ids = metadataIds(context.reader());
             }
         });
         return bits;
@@ -31,13 +31,17 @@ import org.locationtech.jts.geom.TopologyException;
 import org.locationtech.jts.index.SpatialIndex;
 import org.apache.jcs.access.GroupCacheAccess;
 import org.apache.jcs.access.exception.CacheException;
-import org.apache.lucene.document.Document;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.util.Bits;
@@ -45,6 +49,7 @@ import org.apache.lucene.util.OpenBitSet;
 import org.fao.geonet.JeevesJCS;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.Pair;
+import org.fao.geonet.kernel.search.LuceneIndexField;
 import org.geotools.data.FeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.util.factory.GeoTools;
@@ -86,7 +91,6 @@ public abstract class SpatialFilter extends Filter {
 
     protected Geometry _geom;
     protected final FilterFactory2 _filterFactory;
-    protected final Set<String> _fieldsToLoad;
     protected Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> sourceAccessor;
     protected Query _query;
     private org.opengis.filter.Filter _spatialFilter;
@@ -94,13 +98,13 @@ public abstract class SpatialFilter extends Filter {
     private boolean warned = false;
     protected int _numHits;
     protected int _hits = 0;
+    protected boolean _envelopePrefilter = false;
 
     protected SpatialFilter(Query query, int numHits, Geometry geom, Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> sourceAccessor) throws IOException {
         this._query = query;
         this._numHits = numHits;
         this.sourceAccessor = sourceAccessor;
         this._filterFactory = CommonFactoryFinder.getFilterFactory2(GeoTools.getDefaultHints());
-        this._fieldsToLoad = Collections.singleton("_id");
         this._geom = geom;
         this._spatialFilter = createFilter(sourceAccessor.one());
         // _index.query returns geometries that intersect with provided envelope. To use later a spatial filter that
@@ -125,6 +129,44 @@ public abstract class SpatialFilter extends Filter {
         return jcs;
     }
 
+    /**
+     * Enable the envelope prefilter: only the documents whose envelope, indexed by
+     * SearchManager, intersects the envelope of the filter geometry are looked up in the
+     * spatial index. The index must have been built with the envelope fields.
+     */
+    public void setEnvelopePrefilter(boolean envelopePrefilter) {
+        this._envelopePrefilter = envelopePrefilter;
+    }
+
+    /**
+     * @return the query selecting the documents to look up in the spatial index.
+     */
+    protected Query candidatesQuery() {
+        if (!_envelopePrefilter) {
+            return _query;
+        }
+        Envelope env = _geom.getEnvelopeInternal();
+        BooleanQuery query = new BooleanQuery();
+        query.add(_query, BooleanClause.Occur.MUST);
+        query.add(NumericRangeQuery.newDoubleRange(LuceneIndexField.SPATIAL_MIN_X, null, env.getMaxX(), true, true),
+            BooleanClause.Occur.MUST);
+        query.add(NumericRangeQuery.newDoubleRange(LuceneIndexField.SPATIAL_MAX_X, env.getMinX(), null, true, true),
+            BooleanClause.Occur.MUST);
+        query.add(NumericRangeQuery.newDoubleRange(LuceneIndexField.SPATIAL_MIN_Y, null, env.getMaxY(), true, true),
+            BooleanClause.Occur.MUST);
+        query.add(NumericRangeQuery.newDoubleRange(LuceneIndexField.SPATIAL_MAX_Y, env.getMinY(), null, true, true),
+            BooleanClause.Occur.MUST);
+        return query;
+    }
+
+    /**
+     * Metadata ids of the documents of a segment. The values are uninverted once per segment by
+     * the field cache so collectors do not load stored fields.
+     */
+    protected static BinaryDocValues metadataIds(AtomicReader reader) throws IOException {
+        return FieldCache.DEFAULT.getTerms(reader, LuceneIndexField.ID, false);
+    }
+
     public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
         final OpenBitSet bits = new OpenBitSet(context.reader().maxDoc());
 
@@ -134,10 +176,9 @@ public abstract class SpatialFilter extends Filter {
 
         if (unrefinedSpatialMatches.isEmpty() || _hits >= _numHits) return bits;
 
-        new IndexSearcher(context.reader()).search(_query, new Collector() {
+        new IndexSearcher(context.reader()).search(candidatesQuery(), new Collector() {
             private int docBase;
-            private Document document;
-            private AtomicReader reader;
+            private BinaryDocValues ids;
 
             // ignore scorer
             public void setScorer(Scorer scorer) {
@@ -149,10 +190,9 @@ public abstract class SpatialFilter extends Filter {
             }
 
             public void collect(int doc) {
-                doc = doc + docBase;
                 try {
-                    document = reader.document(doc, _fieldsToLoad);
-                    String key = document.get("_id");
+                    String key = ids.get(doc).utf8ToString();
+                    doc = doc + docBase;
                     FeatureId featureId = unrefinedSpatialMatches.get(key);
                     if (featureId != null && _hits < _numHits) {
                         _hits++;
@@ -167,7 +207,7 @@ public abstract class SpatialFilter extends Filter {
             @Override
             public void setNextReader(AtomicReaderContext context) throws IOException {
                 this.docBase = context.docBase;
-                this.reader = context.reader();
+                this.ids = metadataIds(context.reader());
             }
         });
         JeevesJCS jcs = getJCSCache();
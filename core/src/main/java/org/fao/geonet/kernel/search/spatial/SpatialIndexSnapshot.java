@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search.spatial;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.SpatialIndex;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable view of the spatial index published by {@link SpatialIndexWriter}.
+ *
+ * A snapshot is made of a packed {@link STRtree} (the base) and a small delta: the metadata ids
+ * whose base entries are shadowed and the entries added since the base was built. Applying
+ * changes returns a new snapshot and never modifies an existing one, so searches can keep using
+ * the snapshot they obtained while the writer keeps indexing. When the delta becomes too large
+ * the writer compacts it by building a new base.
+ */
+public final class SpatialIndexSnapshot implements SpatialIndex {
+
+    private static final SpatialIndexSnapshot EMPTY = build(Collections.<List<SpatialIndexWriter.Data>>emptyList());
+
+    private final STRtree base;
+    private final int baseSize;
+    private final Set<String> shadowed;
+    private final Map<String, List<SpatialIndexWriter.Data>> added;
+
+    private SpatialIndexSnapshot(STRtree base, int baseSize, Set<String> shadowed,
+                                 Map<String, List<SpatialIndexWriter.Data>> added) {
+        this.base = base;
+        this.baseSize = baseSize;
+        this.shadowed = shadowed;
+        this.added = added;
+    }
+
+    public static SpatialIndexSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Build a snapshot with no delta from all the entries of the index.
+     */
+    public static SpatialIndexSnapshot build(Collection<List<SpatialIndexWriter.Data>> entries) {
+        STRtree tree = new STRtree();
+        int size = 0;
+        for (List<SpatialIndexWriter.Data> dataList : entries) {
+            for (SpatialIndexWriter.Data data : dataList) {
+                tree.insert(data.getEnv(), data);
+                size++;
+            }
+        }
+        // Build now so that concurrent queries never trigger the lazy build of the tree.
+        tree.build();
+        return new SpatialIndexSnapshot(tree, size, Collections.<String>emptySet(),
+            Collections.<String, List<SpatialIndexWriter.Data>>emptyMap());
+    }
+
+    /**
+     * Return a new snapshot with the given changes applied on top of this one.
+     *
+     * @param changes the entries of each changed metadata id. An empty list means that the
+     *                metadata has been removed from the index.
+     */
+    public SpatialIndexSnapshot withChanges(Map<String, List<SpatialIndexWriter.Data>> changes) {
+        if (changes.isEmpty()) {
+            return this;
+        }
+        Set<String> newShadowed = new HashSet<>(shadowed);
+        Map<String, List<SpatialIndexWriter.Data>> newAdded = new HashMap<>(added);
+        for (Map.Entry<String, List<SpatialIndexWriter.Data>> change : changes.entrySet()) {
+            newShadowed.add(change.getKey());
+            if (change.getValue().isEmpty()) {
+                newAdded.remove(change.getKey());
+            } else {
+                newAdded.put(change.getKey(), Collections.unmodifiableList(new ArrayList<>(change.getValue())));
+            }
+        }
+        return new SpatialIndexSnapshot(base, baseSize, Collections.unmodifiableSet(newShadowed),
+            Collections.unmodifiableMap(newAdded));
+    }
+
+    /**
+     * @return the number of metadata ids that are not served by the base tree.
+     */
+    public int deltaSize() {
+        return shadowed.size();
+    }
+
+    /**
+     * @return the number of entries in the base tree.
+     */
+    public int baseSize() {
+        return baseSize;
+    }
+
+    @Override
+    public List query(Envelope searchEnv) {
+        final List<Object> result = new ArrayList<>();
+        query(searchEnv, new ItemVisitor() {
+            @Override
+            public void visitItem(Object item) {
+                result.add(item);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void query(Envelope searchEnv, final ItemVisitor visitor) {
+        if (shadowed.isEmpty()) {
+            base.query(searchEnv, visitor);
+        } else {
+            base.query(searchEnv, new ItemVisitor() {
+                @Override
+                public void visitItem(Object item) {
+                    if (!shadowed.contains(((SpatialIndexWriter.Data) item).getMetadataId())) {
+                        visitor.visitItem(item);
+                    }
+                }
+            });
+            for (List<SpatialIndexWriter.Data> dataList : added.values()) {
+                for (SpatialIndexWriter.Data data : dataList) {
+                    if (searchEnv.intersects(data.getEnv())) {
+                        visitor.visitItem(data);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void insert(Envelope itemEnv, Object item) {
+        throw new UnsupportedOperationException("A spatial index snapshot is immutable");
+    }
+
+    @Override
+    public boolean remove(Envelope itemEnv, Object item) {
+        throw new UnsupportedOperationException("A spatial index snapshot is immutable");
+    }
+}
@@ -29,8 +29,8 @@ import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.index.SpatialIndex;
-import org.locationtech.jts.index.strtree.STRtree;
 import org.apache.jcs.access.exception.CacheException;
+import org.fao.geonet.JeevesJCS;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.util.GMLParsers;
 import org.fao.geonet.utils.Log;
@@ -69,10 +69,13 @@ import java.io.StringReader;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 
@@ -80,6 +83,11 @@ import java.util.logging.Level;
  * This class is responsible for extracting geographic information from metadata and writing that
  * information to a storage mechanism.
  *
+ * The in-memory spatial index is loaded once from the storage and then maintained incrementally
+ * by {@link #index(Path, String, Element)} and {@link #delete(String)}. Searches get an immutable
+ * {@link SpatialIndexSnapshot} and never wait for the writer lock. The changes made in a
+ * transaction are only published once it is committed.
+ *
  * @author jeichar
  */
 @SuppressWarnings("unchecked")
@@ -89,12 +97,40 @@ public class SpatialIndexWriter implements FeatureListener {
     public static final String _SPATIAL_INDEX_TYPENAME = "spatialindex";
     public static final int MAX_WRITES_IN_TRANSACTION = 1000;
     static final String SPATIAL_FILTER_JCS = "SpatialFilterCache";
+    /**
+     * Number of changed metadata records that can be kept in the delta of the published snapshot
+     * before the base tree is rebuilt from memory on commit.
+     */
+    static final int MAX_SNAPSHOT_DELTA = 5000;
     private static int _writes;
     private final Transaction _transaction;
     private final Lock _lock;
     private int _maxWrites;
     private FeatureStore<SimpleFeatureType, SimpleFeature> _featureStore;
-    private STRtree _index;
+    /**
+     * Snapshot used by searches. null until the index has been loaded from the storage.
+     */
+    private volatile SpatialIndexSnapshot _snapshot;
+    private volatile boolean _unpublishedChanges;
+    /**
+     * Index entries by metadata id, kept in sync with the storage once the index is loaded.
+     */
+    private final Map<String, List<Data>> _entries = new HashMap<>();
+    /**
+     * Committed entries changed since the last published snapshot. An empty list marks a removed
+     * metadata.
+     */
+    private final Map<String, List<Data>> _changes = new HashMap<>();
+    /**
+     * Entries changed in the current transaction. They are only published once the transaction
+     * is committed and the final feature ids of the added features are known.
+     */
+    private final Map<String, List<Data>> _transactionChanges = new HashMap<>();
+    /**
+     * Metadata ids added in the current transaction. Their feature ids may be reassigned by
+     * the datastore on commit.
+     */
+    private final Set<String> _provisionalIds = new HashSet<>();
     private Map<String, String> errorMessage;
     private Name _idColumn;
     private boolean _autocommit;
@@ -249,12 +285,12 @@ public class SpatialIndexWriter implements FeatureListener {
      * Add a metadata record to the index
      *
      * @param schemaDir the base directory that contains the different metadata schemas
+     * @return the envelope of the indexed geometries or null if the record has no geometry.
      */
-    public void index(Path schemaDir, String id,
-                      Element metadata) throws Exception {
+    public Envelope index(Path schemaDir, String id,
+                          Element metadata) throws Exception {
         _lock.lock();
         try {
-            _index = null;
             errorMessage = new HashMap<>();
             Geometry geometry = extractGeometriesFrom(
                 schemaDir, metadata, errorMessage);
@@ -269,15 +305,31 @@ public class SpatialIndexWriter implements FeatureListener {
                 template.setAttribute(getIdColumn(), id);
                 features.add(template);
 
-                _featureStore.addFeatures(features);
+                List<FeatureId> featureIds = _featureStore.addFeatures(features);
+
+                if (_snapshot != null) {
+                    if (featureIds.isEmpty()) {
+                        // Unable to track the new feature, reload the whole index on next search
+                        _snapshot = null;
+                    } else {
+                        putEntries(id, toData(id, featureIds.get(0), geometry));
+                        if (!_autocommit) {
+                            _provisionalIds.add(id);
+                        }
+                    }
+                }
 
                 _writes++;
 
                 if (!_autocommit && _writes > _maxWrites) {
                     _transaction.commit();
                     _writes = 0;
+                    transactionCommitted();
+                    publishSnapshot(true);
                 }
+                return geometry.getEnvelopeInternal();
             }
+            return null;
         } finally {
             _lock.unlock();
         }
@@ -301,9 +353,10 @@ public class SpatialIndexWriter implements FeatureListener {
             if (_writes > 0) {
                 _transaction.commit();
                 _writes = 0;
+                transactionCommitted();
             }
+            publishSnapshot(false);
             _transaction.close();
-            _index = null;
             _featureStore.setTransaction(Transaction.AUTO_COMMIT);
             // Done by JCSServletContextListener: SpatialFilter.getJCSCache().clear();
         } catch (Exception e) {
@@ -325,14 +378,8 @@ public class SpatialIndexWriter implements FeatureListener {
             Filter filter = factory.equals(
                 factory.property(getIdColumn()), factory.literal(id));
 
-            _index = null;
-
             _featureStore.removeFeatures(filter);
-            try {
-                SpatialFilter.getJCSCache().clear();
-            } catch (Throwable e) {
-                Log.error(Geonet.INDEX_ENGINE,"SpatialIndexWriter JCSCache clear error: " + e.getMessage(), e);
-            }
+            removeEntries(Collections.singletonList(id));
             _writes++;
         } finally {
             _lock.unlock();
@@ -352,14 +399,8 @@ public class SpatialIndexWriter implements FeatureListener {
                     factory.property(idColumn), factory.literal(id)));
             }
 
-            _index = null;
-
             _featureStore.removeFeatures(factory.or(filters));
-            try {
-                SpatialFilter.getJCSCache().clear();
-            } catch (Throwable e) {
-                Log.error(Geonet.INDEX_ENGINE,"SpatialIndexWriter JCSCache clear error: " + e.getMessage(), e);
-            }
+            removeEntries(ids);
             _writes++;
         } finally {
             _lock.unlock();
@@ -373,9 +414,9 @@ public class SpatialIndexWriter implements FeatureListener {
             if (!_autocommit && _writes > 0) {
                 _writes = 0;
                 _transaction.commit();
-                _index = null;
-                SpatialFilter.getJCSCache().clear();
+                transactionCommitted();
             }
+            publishSnapshot(true);
         } catch (Throwable e) {
             Log.error(Geonet.INDEX_ENGINE,"SpatialIndexWriter JCSCache commit error: " + e.getMessage(), e);
         } finally {
@@ -384,14 +425,33 @@ public class SpatialIndexWriter implements FeatureListener {
 
     }
 
+    /**
+     * Return the current snapshot of the spatial index. Once the index is loaded this never waits
+     * for the writer: pending changes are only published if the writer lock is free, otherwise the
+     * previous snapshot is returned.
+     */
     public SpatialIndex getIndex() throws IOException {
+        SpatialIndexSnapshot snapshot = _snapshot;
+        if (snapshot != null) {
+            if (_unpublishedChanges && _lock.tryLock()) {
+                try {
+                    publishSnapshot(false);
+                    snapshot = _snapshot;
+                } finally {
+                    _lock.unlock();
+                }
+            }
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+
         _lock.lock();
         try {
-
-            if (_index == null) {
+            if (_snapshot == null) {
                 populateIndex();
             }
-            return _index;
+            return _snapshot;
         } finally {
             _lock.unlock();
         }
@@ -404,9 +464,19 @@ public class SpatialIndexWriter implements FeatureListener {
         _lock.lock();
         try {
             _featureStore.setTransaction(Transaction.AUTO_COMMIT);
-            _index = null;
             _featureStore.removeFeatures(Filter.INCLUDE);
             _featureStore.setTransaction(_transaction);
+            _entries.clear();
+            _changes.clear();
+            _transactionChanges.clear();
+            _provisionalIds.clear();
+            _unpublishedChanges = false;
+            _snapshot = SpatialIndexSnapshot.empty();
+            try {
+                SpatialFilter.getJCSCache().clear();
+            } catch (CacheException e) {
+                Log.error(Geonet.INDEX_ENGINE,"SpatialIndexWriter JCSCache clear error: " + e.getMessage(), e);
+            }
         } finally {
             _lock.unlock();
         }
@@ -418,7 +488,16 @@ public class SpatialIndexWriter implements FeatureListener {
         } catch (CacheException e) {
             Log.error(Geonet.INDEX_ENGINE,"SpatialIndexWriter JCSCache clear error: " + e.getMessage(), e);
         }
-        _index = new STRtree();
+        // Make sure all feature ids read from the store are final
+        if (!_autocommit && _writes > 0) {
+            _transaction.commit();
+            _writes = 0;
+        }
+        _entries.clear();
+        _changes.clear();
+        _transactionChanges.clear();
+        _provisionalIds.clear();
+        _unpublishedChanges = false;
 
         FeatureIterator<SimpleFeature> features = null;
         try {
@@ -429,8 +508,16 @@ public class SpatialIndexWriter implements FeatureListener {
                     _idColumn = findIdColumn(_featureStore);
                 }
 
-                if (feature.getDefaultGeometry() != null) {
-                    insertFeatureInIndex(feature);
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry != null) {
+                    String metadataId = feature.getAttribute(_idColumn == null ? _IDS_ATTRIBUTE_NAME : _idColumn.toString()).toString();
+                    List<Data> dataList = toData(metadataId, feature.getIdentifier(), geometry);
+                    List<Data> existing = _entries.get(metadataId);
+                    if (existing != null) {
+                        existing.addAll(dataList);
+                    } else {
+                        _entries.put(metadataId, dataList);
+                    }
                 }
             }
 
@@ -439,6 +526,137 @@ public class SpatialIndexWriter implements FeatureListener {
                 features.close();
             }
         }
+        _snapshot = SpatialIndexSnapshot.build(_entries.values());
+    }
+
+    private void putEntries(String metadataId, List<Data> dataList) {
+        _entries.put(metadataId, dataList);
+        putChange(metadataId, dataList);
+    }
+
+    private void putChange(String metadataId, List<Data> dataList) {
+        if (_autocommit) {
+            _changes.put(metadataId, dataList);
+            _unpublishedChanges = true;
+        } else {
+            _transactionChanges.put(metadataId, dataList);
+        }
+    }
+
+    private void removeEntries(List<String> metadataIds) {
+        if (_snapshot == null) {
+            return;
+        }
+        for (String metadataId : metadataIds) {
+            _provisionalIds.remove(metadataId);
+            List<Data> removed = _entries.remove(metadataId);
+            if (removed != null) {
+                evictFromCache(removed);
+                putChange(metadataId, Collections.<Data>emptyList());
+            }
+        }
+    }
+
+    /**
+     * Publish the pending changes in a new snapshot.
+     *
+     * @param compact rebuild the base tree if the delta of the snapshot is too large.
+     */
+    private void publishSnapshot(boolean compact) {
+        SpatialIndexSnapshot snapshot = _snapshot;
+        if (snapshot == null) {
+            return;
+        }
+        snapshot = snapshot.withChanges(_changes);
+        _changes.clear();
+        _unpublishedChanges = false;
+        if (compact && snapshot.deltaSize() > MAX_SNAPSHOT_DELTA) {
+            snapshot = SpatialIndexSnapshot.build(_entries.values());
+        }
+        _snapshot = snapshot;
+    }
+
+    /**
+     * Make the changes of the committed transaction available to the next published snapshot.
+     */
+    private void transactionCommitted() throws IOException {
+        resolveProvisionalFeatureIds();
+        if (!_transactionChanges.isEmpty()) {
+            _changes.putAll(_transactionChanges);
+            _transactionChanges.clear();
+            _unpublishedChanges = true;
+        }
+    }
+
+    /**
+     * Forget the changes of the rolled back transaction. The entries of the records it changed are
+     * not known anymore, so the index is loaded again from the storage on next search.
+     */
+    private void transactionRolledBack() {
+        _lock.lock();
+        try {
+            _transactionChanges.clear();
+            _provisionalIds.clear();
+            _snapshot = null;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Some datastores (eg. shapefile) assign temporary feature ids to the features added in a
+     * transaction. Once the transaction is committed, look up the final ids of the features added
+     * in it. Only the id attribute is read, the geometries are already known.
+     */
+    private void resolveProvisionalFeatureIds() throws IOException {
+        if (_provisionalIds.isEmpty()) {
+            return;
+        }
+        FilterFactory2 factory = CommonFactoryFinder
+            .getFilterFactory2(GeoTools.getDefaultHints());
+        String idColumn = getIdColumn();
+        List<Filter> filters = new ArrayList<Filter>(_provisionalIds.size());
+        for (String id : _provisionalIds) {
+            filters.add(factory.equals(
+                factory.property(idColumn), factory.literal(id)));
+        }
+        _provisionalIds.clear();
+
+        org.geotools.data.Query query = new org.geotools.data.Query(
+            _featureStore.getSchema().getTypeName(), factory.or(filters), new String[]{idColumn});
+        FeatureIterator<SimpleFeature> features = null;
+        try {
+            features = _featureStore.getFeatures(query).features();
+            while (features.hasNext()) {
+                SimpleFeature feature = features.next();
+                String metadataId = String.valueOf(feature.getAttribute(idColumn));
+                FeatureId featureId = feature.getIdentifier();
+                List<Data> current = _entries.get(metadataId);
+                if (current != null && !current.get(0).getFeatureId().getID().equals(featureId.getID())) {
+                    evictFromCache(current);
+                    List<Data> resolved = new ArrayList<>(current.size());
+                    for (Data data : current) {
+                        resolved.add(buildData(metadataId, featureId, data.getEnv(), data.getNumBrotherGeometries()));
+                    }
+                    putEntries(metadataId, resolved);
+                }
+            }
+        } finally {
+            if (features != null) {
+                features.close();
+            }
+        }
+    }
+
+    private void evictFromCache(List<Data> dataList) {
+        try {
+            JeevesJCS jcs = SpatialFilter.getJCSCache();
+            for (Data data : dataList) {
+                jcs.remove(data.getFeatureId().getID());
+            }
+        } catch (Throwable e) {
+            Log.error(Geonet.INDEX_ENGINE,"SpatialIndexWriter JCSCache remove error: " + e.getMessage(), e);
+        }
     }
 
     private FeatureStore<SimpleFeatureType, SimpleFeature> createFeatureStore(DataStore datastore) throws Exception {
@@ -529,13 +747,14 @@ public class SpatialIndexWriter implements FeatureListener {
                     SpatialFilter.getJCSCache().clear();
                     break;
                 case REMOVED:
-                    SpatialFilter.getJCSCache().clear();
+                    // Geometries of removed features are evicted by delete
                     break;
                 case COMMIT:
-                    SpatialFilter.getJCSCache().clear();
+                    // Feature ids changed by the commit are evicted by resolveProvisionalFeatureIds
                     break;
                 case ROLLBACK:
                     SpatialFilter.getJCSCache().clear();
+                    transactionRolledBack();
                     break;
                 default:
                     SpatialFilter.getJCSCache().clear();
@@ -546,33 +765,30 @@ public class SpatialIndexWriter implements FeatureListener {
         }
     }
 
-    private void insertFeatureInIndex(SimpleFeature feature) {
-        Geometry defaultGeometry = (Geometry) feature.getDefaultGeometry();
-        if (defaultGeometry instanceof MultiPolygon && defaultGeometry.getNumGeometries() > 1) {
-            for (int i = 0; i < defaultGeometry.getNumGeometries(); i++) {
-                Data data = buildData(feature, defaultGeometry.getNumGeometries());
-                Envelope envelope = defaultGeometry.getGeometryN(i).getEnvelopeInternal();
-                data.setEnv(envelope);
-                _index.insert(envelope, data);
+    static List<Data> toData(String metadataId, FeatureId featureId, Geometry geometry) {
+        List<Data> dataList = new ArrayList<>();
+        if (geometry instanceof MultiPolygon && geometry.getNumGeometries() > 1) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                Envelope envelope = geometry.getGeometryN(i).getEnvelopeInternal();
+                dataList.add(buildData(metadataId, featureId, envelope, geometry.getNumGeometries()));
             }
 
         } else {
-            Data data = buildData(feature, 1);
-            Envelope envelope = defaultGeometry.getEnvelopeInternal();
-            data.setEnv(envelope);
-            _index.insert(envelope, data);
+            dataList.add(buildData(metadataId, featureId, geometry.getEnvelopeInternal(), 1));
         }
+        return dataList;
     }
 
-    private Data buildData(SimpleFeature feature, int numBrotherGeometries) {
+    private static Data buildData(String metadataId, FeatureId featureId, Envelope envelope, int numBrotherGeometries) {
         Data data = new Data();
-        data.setMetadataId(feature.getAttribute(_idColumn == null ? _IDS_ATTRIBUTE_NAME : _idColumn.toString()).toString());
-        data.setFeatureId(feature.getIdentifier());
+        data.setMetadataId(metadataId);
+        data.setFeatureId(featureId);
+        data.setEnv(envelope);
         data.setNumBrotherGeometries(numBrotherGeometries);
         return data;
     }
 
-    public class Data {
+    public static class Data {
         private FeatureId featureId;
         private String metadataId;
         private Envelope env;
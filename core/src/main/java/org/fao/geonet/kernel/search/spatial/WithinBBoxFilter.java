@@ -26,9 +26,8 @@ import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.index.ItemVisitor;
 import org.locationtech.jts.index.SpatialIndex;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.IndexSearcher;
@@ -60,10 +59,9 @@ public class WithinBBoxFilter extends SpatialFilter {
 
         if (enclosed.isEmpty() || _hits >= _numHits) return bits;
 
-        new IndexSearcher(context.reader()).search(_query, new Collector() {
+        new IndexSearcher(context.reader()).search(candidatesQuery(), new Collector() {
             private int docBase;
-            private Document document;
-            private AtomicReader reader;
+            private BinaryDocValues ids;
 
             // ignore scorer
             public void setScorer(Scorer scorer) {
@@ -75,10 +73,9 @@ public class WithinBBoxFilter extends SpatialFilter {
             }
 
             public void collect(int doc) {
-                doc = doc + docBase;
                 try {
-                    document = reader.document(doc, _fieldsToLoad);
-                    String key = document.get("_id");
+                    String key = ids.get(doc).utf8ToString();
+                    doc = doc + docBase;
                     AtomicInteger notEnclosedBrotherCount = enclosed.get(key);
                     if (notEnclosedBrotherCount != null && notEnclosedBrotherCount.get() == 0 && _hits < _numHits) {
                         _hits++;
@@ -93,7 +90,7 @@ public class WithinBBoxFilter extends SpatialFilter {
             @Override
             public void setNextReader(AtomicReaderContext context) throws IOException {
                 this.docBase = context.docBase;
-                this.reader = context.reader();
+                this.ids = metadataIds(context.reader());
             }
         });
         return bits;
@@ -29,6 +29,7 @@ import javax.transaction.Transactional;
 import javax.transaction.Transactional.TxType;
 
 import org.fao.geonet.domain.*;
+import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.security.GeonetworkAuthenticationProvider;
 import org.fao.geonet.repository.GroupRepository;
 import org.fao.geonet.repository.UserGroupRepository;
@@ -53,6 +54,9 @@ public class KeycloakUserUtils {
     @Autowired
     private UserGroupRepository userGroupRepository;
 
+    @Autowired
+    private AccessManager accessManager;
+
     @Autowired
     private GeonetworkAuthenticationProvider geonetworkAuthenticationProvider;
 
@@ -149,6 +153,7 @@ public class KeycloakUserUtils {
     private void updateGroups(Set<String> roleGroupList, String separator, User user) {
         // First we remove all previous groups
         userGroupRepository.deleteAll(UserGroupSpecs.hasUserId(user.getId()));
+        accessManager.groupsChanged();
 
         // Now we add the groups
         int i = 0;
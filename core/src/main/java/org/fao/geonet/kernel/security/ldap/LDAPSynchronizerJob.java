@@ -43,6 +43,7 @@ import org.fao.geonet.domain.Group;
 import org.fao.geonet.domain.Language;
 import org.fao.geonet.domain.User;
 import org.fao.geonet.domain.UserGroupId_;
+import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
 import org.fao.geonet.repository.GroupRepository;
 import org.fao.geonet.repository.LanguageRepository;
@@ -188,6 +189,7 @@ public class LDAPSynchronizerJob extends QuartzJobBean {
         });
         if (!userIds.isEmpty()) {
             userGroupRepository.deleteAllByIdAttribute(UserGroupId_.userId, userIds);
+            applicationContext.getBean(AccessManager.class).groupsChanged();
         }
         for (User u : usersFound) {
             long nbOfUserRecord = metadataRepository.count(MetadataSpecs.isOwnedByUser(u.getId()));
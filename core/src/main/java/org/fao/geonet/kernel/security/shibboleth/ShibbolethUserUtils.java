@@ -33,6 +33,7 @@ import org.fao.geonet.domain.LDAPUser;
 import org.fao.geonet.domain.Profile;
 import org.fao.geonet.domain.User;
 import org.fao.geonet.domain.UserGroup;
+import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.security.GeonetworkAuthenticationProvider;
 import org.fao.geonet.kernel.security.WritableUserDetailsContextMapper;
 import org.fao.geonet.repository.GroupRepository;
@@ -155,6 +156,7 @@ public class ShibbolethUserUtils {
                 if (config.isUpdateGroup()) {
                     // First we remove all previous groups
                     userGroupRepository.deleteAll(UserGroupSpecs.hasUserId(user.getId()));
+                    ApplicationContextHolder.get().getBean(AccessManager.class).groupsChanged();
 
                     // Now we add the groups
                     assignGroups(groupRepository, userGroupRepository, roleGroups,
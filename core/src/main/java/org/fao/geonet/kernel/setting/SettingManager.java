@@ -32,6 +32,8 @@ import org.fao.geonet.domain.Setting;
 import org.fao.geonet.domain.SettingDataType;
 import org.fao.geonet.domain.Setting_;
 import org.fao.geonet.domain.Source;
+import org.fao.geonet.entitylistener.GeonetworkEntityListener;
+import org.fao.geonet.entitylistener.PersistentEventType;
 import org.fao.geonet.repository.LanguageRepository;
 import org.fao.geonet.repository.SettingRepository;
 import org.fao.geonet.repository.SortUtils;
@@ -39,16 +41,24 @@ import org.fao.geonet.repository.SourceRepository;
 import org.fao.geonet.utils.Log;
 import org.jdom.Element;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.servlet.ServletContext;
@@ -63,8 +73,13 @@ import static org.fao.geonet.kernel.setting.Settings.SYSTEM_SITE_NAME_PATH;
  * A convenience class for updating and accessing settings.  One of the primary needs of this class
  * at the moment is to maintain backwards compatibility so not all code and xsl files that make use
  * of the settings need to be modified.
+ * <p>
+ * Values are read from an immutable snapshot of the settings table which is replaced as a whole
+ * when a setting is saved, whether through this class or a {@link SettingRepository}, and when
+ * {@link #refresh()} is called. Settings changed by other nodes sharing the database are picked
+ * up by reloading the snapshot every {@link #setReloadInterval(int) reloadInterval} seconds.
  */
-public class SettingManager {
+public class SettingManager implements GeonetworkEntityListener<Setting> {
 
     @PersistenceContext
     private EntityManager _entityManager;
@@ -80,9 +95,125 @@ public class SettingManager {
     @Autowired
     SourceRepository sourceRepository;
 
+    private int reloadInterval = 60;
+    private ScheduledExecutorService reloadExecutor;
+
+    private final Object snapshotLock = new Object();
+    /**
+     * Incremented each time the settings change so that a snapshot loaded meanwhile is not kept.
+     */
+    private long snapshotVersion;
+    /**
+     * Setting values by name or null if the snapshot must be loaded.
+     */
+    private volatile Map<String, String> snapshot;
+
     @PostConstruct
     private void init() {
         this.pathFinder = new ServletPathFinder(servletContext);
+
+        if (reloadInterval > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory();
+            threadFactory.setDaemon(true);
+            threadFactory.setThreadNamePrefix("SettingManager-");
+            reloadExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            reloadExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reloadSnapshot();
+                    } catch (Throwable e) {
+                        // any uncaught exception would cause the scheduled execution to silently stop
+                        Log.error(Geonet.SETTINGS, "Error while reloading the settings: " + e.getMessage(), e);
+                    }
+                }
+            }, reloadInterval, reloadInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param reloadInterval the number of seconds between two reloads of the settings, so that
+     *                       the changes made by other nodes sharing the database are visible.
+     *                       60 by default, 0 to only reload the settings when they are changed by
+     *                       this node.
+     */
+    public void setReloadInterval(int reloadInterval) {
+        this.reloadInterval = reloadInterval;
+    }
+
+    private Map<String, String> getSnapshot() {
+        Map<String, String> current = snapshot;
+        if (current == null) {
+            current = reloadSnapshot();
+        }
+        return current;
+    }
+
+    private Map<String, String> reloadSnapshot() {
+        final long version;
+        synchronized (snapshotLock) {
+            version = snapshotVersion;
+        }
+
+        // the values are queried rather than the entities to bypass the second level cache which
+        // does not know about the changes made by other nodes
+        final List<Object[]> rows = _entityManager.createQuery(
+            "SELECT s.name, s.value FROM " + Setting.class.getSimpleName() + " s", Object[].class).getResultList();
+        final Map<String, String> values = new HashMap<>(rows.size() * 2);
+        for (Object[] row : rows) {
+            values.put((String) row[0], (String) row[1]);
+        }
+        final Map<String, String> loaded = Collections.unmodifiableMap(values);
+
+        synchronized (snapshotLock) {
+            if (version == snapshotVersion) {
+                snapshot = loaded;
+            }
+        }
+        return loaded;
+    }
+
+    private void invalidateSnapshot() {
+        synchronized (snapshotLock) {
+            snapshotVersion++;
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Invalidate the snapshot now and, as a snapshot loaded by another thread in the meantime
+     * does not see uncommitted changes, once the current transaction completes.
+     */
+    private void settingsChanged() {
+        invalidateSnapshot();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidateSnapshot();
+                }
+            });
+        }
+    }
+
+    @Override
+    public Class<Setting> getEntityClass() {
+        return Setting.class;
+    }
+
+    @Override
+    public void handleEvent(PersistentEventType type, Setting entity) {
+        if (type == PersistentEventType.PostPersist || type == PersistentEventType.PostUpdate ||
+            type == PersistentEventType.PostRemove) {
+            settingsChanged();
+        }
     }
 
     public List<Setting> getAll() {
@@ -175,8 +306,8 @@ public class SettingManager {
             Log.debug(Geonet.SETTINGS, "Requested setting with name: " + path);
         }
 
-        Setting se = repo.findOne(path);
-        if (se == null) {
+        final Map<String, String> settings = getSnapshot();
+        if (!settings.containsKey(path)) {
             // TODO : When a settings is not available in the settings table
             // we end here. It could be relevant to add a list of default
             // settings and populate the settings table when the settings is
@@ -184,7 +315,7 @@ public class SettingManager {
             Log.error(Geonet.SETTINGS, "  Requested setting with name: " + path + "  not found. Add it to the settings table.");
             return null;
         }
-        String value = se.getValue();
+        String value = settings.get(path);
         if (value == null && ! nullable) {
             Log.warning(Geonet.SETTINGS, "  Requested setting with name: " + path + " but null value found. Check the settings table.");
         }
@@ -217,13 +348,13 @@ public class SettingManager {
      */
     public Element getValues(String[] keys) {
         Element env = new Element("settings");
+        final Map<String, String> settings = getSnapshot();
         for (int i = 0; i < keys.length; i++) {
             String key = keys[i];
-            Setting se = repo.findOne(key);
-            if (se == null) {
+            if (!settings.containsKey(key)) {
                 Log.error(Geonet.SETTINGS, "  Requested setting with name: " + key + " not found. Add it to the settings table.");
             } else {
-                String value = se.getValue();
+                String value = settings.get(key);
                 if (value != null) {
                     Element setting = new Element("setting");
                     setting.setAttribute("name", key).setAttribute("value", value);
@@ -299,6 +430,7 @@ public class SettingManager {
         setting.setValue(value);
 
         repo.save(setting);
+        settingsChanged();
         return true;
     }
 
@@ -343,7 +475,10 @@ public class SettingManager {
      * without using this class. For example when using an SQL script.
      */
     public final boolean refresh() throws SQLException {
+        _entityManager.getEntityManagerFactory().getCache().evict(Setting.class);
         _entityManager.getEntityManagerFactory().getCache().evict(HarvesterSetting.class);
+        invalidateSnapshot();
+        reloadSnapshot();
         return true;
     }
 
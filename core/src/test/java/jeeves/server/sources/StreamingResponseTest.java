@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package jeeves.server.sources;
+
+import org.jdom.Comment;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.filter.ContentFilter;
+import org.jdom.input.SAXBuilder;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StreamingResponseTest {
+
+    private static final Namespace NS = Namespace.getNamespace("r", "http://example.org/response");
+    private static final Namespace RECORD_NS = Namespace.getNamespace("m", "http://example.org/record");
+
+    @Test
+    public void testWrite() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createResponse(3).write(out);
+
+        Element written = new SAXBuilder().build(new ByteArrayInputStream(out.toByteArray())).getRootElement();
+        Element results = written.getChild("results", NS);
+        assertEquals("3", results.getAttributeValue("count"));
+        @SuppressWarnings("unchecked")
+        List<Element> records = results.getChildren("record", RECORD_NS);
+        assertEquals(3, records.size());
+        assertEquals("record 2", records.get(2).getText());
+        assertEquals("done", written.getChildText("end", NS));
+    }
+
+    @Test
+    public void testWriteCommentLikePlaceholder() throws Exception {
+        StreamingResponse response = createResponse(2);
+        // serialized like the placeholder, must be written as it is
+        response.addContent(0, new Comment("streamed content"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.write(out);
+
+        Element written = new SAXBuilder().build(new ByteArrayInputStream(out.toByteArray())).getRootElement();
+        assertEquals("streamed content", ((Comment) written.getContent(new ContentFilter(ContentFilter.COMMENT)).get(0)).getText());
+        assertEquals(2, written.getChild("results", NS).getChildren("record", RECORD_NS).size());
+    }
+
+    @Test
+    public void testWriteEmpty() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createResponse(0).write(out);
+
+        Element written = new SAXBuilder().build(new ByteArrayInputStream(out.toByteArray())).getRootElement();
+        assertEquals(0, written.getChild("results", NS).getChildren().size());
+    }
+
+    @Test
+    public void testMaterialize() throws Exception {
+        StreamingResponse response = createResponse(2);
+        response.materialize();
+
+        Element results = response.getChild("results", NS);
+        assertEquals(3, results.getContentSize());
+        assertEquals("record 0", results.getChildText("record", RECORD_NS));
+        assertEquals("not found", ((Comment) results.getContent(1)).getText());
+
+        // Nothing left to produce
+        response.materialize();
+        assertEquals(3, results.getContentSize());
+    }
+
+    @Test
+    public void testNoStreamedContent() throws Exception {
+        StreamingResponse response = new StreamingResponse("response", NS);
+        response.addContent(new Element("end", NS).setText("done"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.write(out);
+
+        Element written = new SAXBuilder().build(new ByteArrayInputStream(out.toByteArray())).getRootElement();
+        assertEquals("done", written.getChildText("end", NS));
+        assertNull(written.getChild("results", NS));
+    }
+
+    private static StreamingResponse createResponse(final int count) {
+        StreamingResponse response = new StreamingResponse("response", NS);
+        Element results = new Element("results", NS).setAttribute("count", String.valueOf(count));
+        results.addContent(new StreamedContent() {
+            @Override
+            public void produce(Handler handler) throws IOException {
+                for (int i = 0; i < count; i++) {
+                    if (i == 1) {
+                        handler.handle(new Comment("not found"));
+                    }
+                    handler.handle(new Element("record", RECORD_NS).setText("record " + i));
+                }
+            }
+        });
+        response.addContent(results);
+        response.addContent(new Element("end", NS).setText("done"));
+        return response;
+    }
+}
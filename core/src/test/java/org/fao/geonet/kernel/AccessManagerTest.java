@@ -22,12 +22,28 @@
  */
 package org.fao.geonet.kernel;
 
+import jeeves.server.UserSession;
 import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.domain.Group;
+import org.fao.geonet.domain.Profile;
+import org.fao.geonet.domain.User;
+import org.fao.geonet.domain.UserGroup;
+import org.fao.geonet.domain.UserGroupId_;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.kernel.setting.Settings;
+import org.fao.geonet.repository.GroupRepository;
+import org.fao.geonet.repository.GroupRepositoryTest;
+import org.fao.geonet.repository.UserGroupRepository;
+import org.fao.geonet.repository.UserRepository;
+import org.fao.geonet.repository.UserRepositoryTest;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -39,6 +55,14 @@ public class AccessManagerTest extends AbstractCoreIntegrationTest {
     private SettingManager settingManager;
     @Autowired
     private AccessManager accessManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private GroupRepository groupRepository;
+    @Autowired
+    private UserGroupRepository userGroupRepository;
+
+    private final AtomicInteger inc = new AtomicInteger();
 
     /**
      * In previous versions network needed to end in a series of zeroes to be recognized as part
@@ -93,4 +117,75 @@ public class AccessManagerTest extends AbstractCoreIntegrationTest {
         }
         assertFalse("IP " + "192.168.2.1" +" is not in the intranet", accessManager.isIntranet("192.168.2.1"));
     }
+
+    @Test
+    public void testUserGroupsFollowMembershipChanges() throws Exception {
+        User user = UserRepositoryTest.newUser(inc);
+        user.setProfile(Profile.Editor);
+        user = userRepository.save(user);
+        final Group editorGroup = groupRepository.save(GroupRepositoryTest.newGroup(inc));
+        final Group reviewerGroup = groupRepository.save(GroupRepositoryTest.newGroup(inc));
+        userGroupRepository.saveAndFlush(new UserGroup().setUser(user).setGroup(editorGroup).setProfile(Profile.Editor));
+
+        final UserSession session = new UserSession();
+        session.loginAs(user);
+
+        Set<Integer> editingGroups = accessManager.getUserGroups(session, null, true);
+        assertTrue(editingGroups.contains(editorGroup.getId()));
+        assertTrue(accessManager.getReviewerGroups(session).isEmpty());
+
+        final UserGroup reviewer = userGroupRepository.saveAndFlush(
+            new UserGroup().setUser(user).setGroup(reviewerGroup).setProfile(Profile.Reviewer));
+        assertEquals(1, accessManager.getReviewerGroups(session).size());
+        assertTrue(accessManager.getReviewerGroups(session).contains(reviewerGroup.getId()));
+        assertTrue(accessManager.getUserGroups(session, null, false).contains(reviewerGroup.getId()));
+        assertFalse(accessManager.getUserGroups(session, null, true).contains(reviewerGroup.getId()));
+
+        userGroupRepository.delete(reviewer);
+        userGroupRepository.flush();
+        assertTrue(accessManager.getReviewerGroups(session).isEmpty());
+        assertFalse(accessManager.getUserGroups(session, null, false).contains(reviewerGroup.getId()));
+    }
+
+    @Test
+    public void testUserGroupsFollowBulkRevocations() throws Exception {
+        final UserSession session = newEditorSession();
+        final int groupId = accessManager.getUserGroups(session, Profile.Editor).iterator().next();
+
+        // Bulk deletes skip the entity callbacks, callers notify the change themselves
+        userGroupRepository.deleteAllByIdAttribute(UserGroupId_.userId, Arrays.asList(session.getUserIdAsInt()));
+        accessManager.groupsChanged();
+
+        assertFalse(accessManager.getUserGroups(session, Profile.Editor).contains(groupId));
+        assertFalse(accessManager.getUserGroups(session, null, true).contains(groupId));
+    }
+
+    @Test
+    public void testUserGroupsReloadedAfterMaxAge() throws Exception {
+        final UserSession session = newEditorSession();
+        final int groupId = accessManager.getUserGroups(session, Profile.Editor).iterator().next();
+
+        accessManager.setSessionGroupsMaxAge(1);
+        try {
+            // A revocation made by another node is not notified to this one
+            userGroupRepository.deleteAllByIdAttribute(UserGroupId_.userId, Arrays.asList(session.getUserIdAsInt()));
+            Thread.sleep(1100);
+
+            assertFalse(accessManager.getUserGroups(session, Profile.Editor).contains(groupId));
+        } finally {
+            accessManager.setSessionGroupsMaxAge(60);
+        }
+    }
+
+    private UserSession newEditorSession() {
+        User user = UserRepositoryTest.newUser(inc);
+        user.setProfile(Profile.Editor);
+        user = userRepository.save(user);
+        final Group group = groupRepository.save(GroupRepositoryTest.newGroup(inc));
+        userGroupRepository.saveAndFlush(new UserGroup().setUser(user).setGroup(group).setProfile(Profile.Editor));
+
+        final UserSession session = new UserSession();
+        session.loginAs(user);
+        return session;
+    }
 }
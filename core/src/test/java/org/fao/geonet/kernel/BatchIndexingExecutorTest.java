@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel;
+
+import jeeves.server.context.ServiceContext;
+
+import org.fao.geonet.kernel.datamanager.IMetadataIndexer;
+import org.fao.geonet.kernel.search.SearchManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BatchIndexingExecutorTest {
+
+    private final ThreadLocal<ServiceContext> currentContext = new ThreadLocal<ServiceContext>();
+    private final Map<String, ServiceContext> indexedWith = new ConcurrentHashMap<String, ServiceContext>();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private BatchIndexingExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        IMetadataIndexer metadataIndexer = mock(IMetadataIndexer.class);
+        doAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                @SuppressWarnings("unchecked")
+                List<String> ids = new ArrayList<String>((List<String>) invocation.getArguments()[0]);
+                for (String id : ids) {
+                    indexedWith.put(id, currentContext.get());
+                }
+                if (ids.contains("1")) {
+                    started.countDown();
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                return 0;
+            }
+        }).when(metadataIndexer).indexMetadataBatch(anyListOf(String.class));
+        executor = new BatchIndexingExecutor(metadataIndexer, mock(SearchManager.class), 2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testMergesQueuedBatchesKeepingTheirContext() throws Exception {
+        ServiceContext contextA = mockServiceContext();
+        ServiceContext contextB = mockServiceContext();
+        ServiceContext contextC = mockServiceContext();
+
+        executor.submit(contextA, Arrays.asList("1"), null);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // Both are queued while the first batch runs and merged into a single batch
+        executor.submit(contextB, Arrays.asList("2", "3"), null);
+        executor.submit(contextC, Arrays.asList(3, 4), null);
+
+        assertTrue(executor.isIndexing());
+        BatchIndexingProgress progress = executor.getProgress();
+        assertTrue(progress.isRunning());
+        assertEquals(1, progress.getTotal());
+        assertEquals(3, progress.getPending());
+
+        release.countDown();
+        long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (executor.isIndexing() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertFalse(executor.isIndexing());
+
+        progress = executor.getProgress();
+        assertEquals(3, progress.getTotal());
+        assertEquals(3, progress.getProcessed());
+        assertEquals(0, progress.getPending());
+
+        assertEquals(4, indexedWith.size());
+        assertSame(contextA, indexedWith.get("1"));
+        assertSame(contextB, indexedWith.get("2"));
+        // Indexed once, with the context of the first request
+        assertSame(contextB, indexedWith.get("3"));
+        assertSame(contextC, indexedWith.get("4"));
+    }
+
+    private ServiceContext mockServiceContext() {
+        final ServiceContext context = mock(ServiceContext.class);
+        when(context.isServletInitialized()).thenReturn(true);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                currentContext.set(context);
+                return null;
+            }
+        }).when(context).setAsThreadLocal();
+        return context;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel;
+
+import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.repository.MetadataRepository;
+import org.fao.geonet.repository.MetadataRepositoryTest;
+import org.junit.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyListOf;
+
+public class MetadataDataCompressionJobTest extends AbstractCoreIntegrationTest {
+    @Autowired
+    private MetadataRepository metadataRepository;
+
+    private final AtomicInteger inc = new AtomicInteger();
+
+    @Test
+    public void testCompressAll() throws Exception {
+        final Metadata metadata = metadataRepository.save(newLargeMetadata());
+        final String data = metadata.getData();
+        assertEquals(Collections.singletonList(metadata.getId()), metadataRepository.findAllIdsWithUncompressedData());
+
+        createJob(metadataRepository).compressAll();
+        _entityManager.flush();
+        _entityManager.clear();
+
+        assertEquals(0, metadataRepository.findAllIdsWithUncompressedData().size());
+        final Metadata compressed = metadataRepository.findOne(metadata.getId());
+        assertEquals(data, compressed.getData());
+        assertEquals(metadata.getDataInfo().getChangeDate().getDateAndTime(), compressed.getDataInfo().getChangeDate().getDateAndTime());
+    }
+
+    @Test
+    public void testRecordChangedMeanwhileIsSkipped() throws Exception {
+        final Metadata changed = metadataRepository.save(newLargeMetadata());
+        final Metadata unchanged = metadataRepository.save(newLargeMetadata());
+        _entityManager.flush();
+
+        // the record is changed by someone else right after the job read it
+        MetadataRepository repository = Mockito.mock(MetadataRepository.class, AdditionalAnswers.delegatesTo(metadataRepository));
+        Mockito.doAnswer(new Answer<List<Metadata>>() {
+            @Override
+            public List<Metadata> answer(InvocationOnMock invocation) throws Throwable {
+                @SuppressWarnings("unchecked")
+                List<Metadata> read = metadataRepository.findAll((Iterable<Integer>) invocation.getArguments()[0]);
+                _entityManager.createQuery("UPDATE " + Metadata.TABLENAME
+                    + " m SET m.dataInfo.changeDate.dateAndTime = :changeDate WHERE m.id = :id")
+                    .setParameter("changeDate", new ISODate("2100-01-01T00:00:00").getDateAndTime())
+                    .setParameter("id", changed.getId())
+                    .executeUpdate();
+                return read;
+            }
+        }).when(repository).findAll(anyListOf(Integer.class));
+
+        createJob(repository).compressAll();
+        _entityManager.flush();
+        _entityManager.clear();
+
+        assertEquals(Collections.singletonList(changed.getId()), metadataRepository.findAllIdsWithUncompressedData());
+        assertEquals(unchanged.getData(), metadataRepository.findOne(unchanged.getId()).getData());
+    }
+
+    private MetadataDataCompressionJob createJob(MetadataRepository repository) {
+        MetadataDataCompressionJob job = new MetadataDataCompressionJob();
+        ReflectionTestUtils.setField(job, "metadataRepository", repository);
+        return job;
+    }
+
+    private Metadata newLargeMetadata() {
+        Metadata metadata = MetadataRepositoryTest.newMetadata(inc);
+        StringBuilder xml = new StringBuilder("<md>");
+        for (int i = 0; i < 300; i++) {
+            xml.append("<keyword>keyword ").append(inc.get()).append(' ').append(i).append("</keyword>");
+        }
+        xml.append("</md>");
+        metadata.setData(xml.toString());
+        return metadata;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.datamanager.base;
+
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.constants.Params;
+import org.fao.geonet.domain.MetadataType;
+import org.fao.geonet.domain.ReservedGroup;
+import org.fao.geonet.utils.Xml;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link BaseMetadataIndexer}.
+ */
+public class BaseMetadataIndexerTest extends AbstractCoreIntegrationTest {
+
+    @Autowired
+    private BaseMetadataIndexer metadataIndexer;
+
+    @Test
+    public void testIndexMetadataBatchReloadsStaleRecords() throws Exception {
+        ServiceContext serviceContext = createServiceContext();
+        loginAsAdmin(serviceContext);
+        final int changedId = importMetadata(serviceContext);
+        final int otherId = importMetadata(serviceContext);
+
+        final BaseMetadataIndexer indexer = spy(metadataIndexer);
+        final AtomicBoolean changed = new AtomicBoolean();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                invocation.callRealMethod();
+                // The record changes and is indexed once the batch is loaded
+                if (changed.compareAndSet(false, true)) {
+                    indexer.indexMetadata(String.valueOf(changedId), false, null);
+                }
+                return null;
+            }
+        }).when(indexer).loadIndexingContext(any(MetadataIndexingContext.class), anySetOf(Integer.class));
+
+        assertEquals(0, indexer.indexMetadataBatch(Arrays.asList(String.valueOf(changedId), String.valueOf(otherId))));
+
+        // Once when the record changed and once more by the batch, instead of indexing the outdated information
+        verify(indexer, times(2)).loadIndexingContext(any(MetadataIndexingContext.class),
+            eq(Collections.singleton(changedId)));
+        verify(indexer, never()).loadIndexingContext(any(MetadataIndexingContext.class),
+            eq(Collections.singleton(otherId)));
+    }
+
+    @Test
+    public void testIndexingContextStale() {
+        MetadataIndexingContext indexingContext = new MetadataIndexingContext(true);
+        assertFalse(indexingContext.isStale(1));
+        indexingContext.markStale(Arrays.asList(1, 2));
+        assertTrue(indexingContext.isStale(1));
+        assertTrue(indexingContext.isStale(2));
+        assertFalse(indexingContext.isStale(3));
+    }
+
+    private int importMetadata(ServiceContext serviceContext) throws Exception {
+        final ByteArrayInputStream stream = new ByteArrayInputStream(
+            Xml.getString(getSampleMetadataXml()).getBytes("UTF-8"));
+        return importMetadataXML(serviceContext, "uuid", stream, MetadataType.METADATA,
+            ReservedGroup.all.getId(), Params.GENERATE_UUID);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.oaipmh;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.fao.geonet.constants.Geonet;
+import org.fao.oaipmh.exceptions.BadResumptionTokenException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChangeDateCursorTest {
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        ChangeDateCursor cursor = new ChangeDateCursor("2016-05-12T10:20:30", "123");
+
+        String encoded = cursor.encode();
+        assertEquals(-1, encoded.indexOf('/'));
+
+        ChangeDateCursor decoded = ChangeDateCursor.decode(encoded);
+        assertEquals("2016-05-12T10:20:30", decoded.getChangeDate());
+        assertEquals("123", decoded.getId());
+    }
+
+    @Test(expected = BadResumptionTokenException.class)
+    public void testDecodeInvalid() throws Exception {
+        ChangeDateCursor.decode("not a cursor");
+    }
+
+    @Test
+    public void testPagesAfterCursor() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory,
+            new IndexWriterConfig(Version.LUCENE_4_9, new KeywordAnalyzer()))) {
+            addDoc(writer, "2", "2016-01-02");
+            addDoc(writer, "1", "2016-01-02");
+            addDoc(writer, "3", "2016-01-01");
+            addDoc(writer, "4", "2016-01-03");
+            addDoc(writer, "5", "2016-01-02");
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            List<String> ids = new ArrayList<>();
+            ChangeDateCursor after = null;
+            do {
+                Query query = after == null ? new MatchAllDocsQuery() : after.getAfterQuery();
+                TopDocs hits = searcher.search(query, 2, ChangeDateCursor.SORT);
+                after = null;
+                for (ScoreDoc hit : hits.scoreDocs) {
+                    Document doc = searcher.doc(hit.doc);
+                    ids.add(doc.get(Geonet.IndexFieldNames.ID));
+                    after = new ChangeDateCursor(doc.get(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE),
+                        doc.get(Geonet.IndexFieldNames.ID));
+                }
+            } while (after != null);
+
+            assertEquals(Arrays.asList("3", "1", "2", "5", "4"), ids);
+        }
+    }
+
+    private void addDoc(IndexWriter writer, String id, String changeDate) throws Exception {
+        Document doc = new Document();
+        doc.add(new StringField(Geonet.IndexFieldNames.ID, id, Field.Store.YES));
+        doc.add(new StringField(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE, changeDate, Field.Store.YES));
+        writer.addDocument(doc);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.oaipmh;
+
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.constants.Params;
+import org.fao.geonet.domain.MetadataType;
+import org.fao.geonet.domain.ReservedGroup;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the paging of {@link Lib#search(ServiceContext, Element, ChangeDateCursor, int)}.
+ */
+public class LibIntegrationTest extends AbstractCoreIntegrationTest {
+
+    @Test
+    public void testSearchPages() throws Exception {
+        ServiceContext serviceContext = createServiceContext();
+        loginAsAdmin(serviceContext);
+        Set<Integer> imported = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            imported.add(importMetadata(serviceContext));
+        }
+
+        List<Integer> found = new ArrayList<>();
+        Lib.SearchPage page = Lib.search(serviceContext, request(), null, 2);
+        assertEquals(2, page.getIds().size());
+        assertEquals(5, page.getRemaining());
+        assertNotNull(page.getNext());
+        found.addAll(page.getIds());
+
+        // the cursor goes through the token as a string
+        ChangeDateCursor after = ChangeDateCursor.decode(page.getNext().encode());
+        page = Lib.search(serviceContext, request(), after, 2);
+        assertEquals(2, page.getIds().size());
+        assertEquals(3, page.getRemaining());
+        assertNotNull(page.getNext());
+        found.addAll(page.getIds());
+
+        page = Lib.search(serviceContext, request(), page.getNext(), 2);
+        assertEquals(1, page.getIds().size());
+        assertEquals(1, page.getRemaining());
+        assertNull(page.getNext());
+        found.addAll(page.getIds());
+
+        assertEquals(5, found.size());
+        assertEquals(imported, new HashSet<>(found));
+    }
+
+    @Test
+    public void testSearchExactPage() throws Exception {
+        ServiceContext serviceContext = createServiceContext();
+        loginAsAdmin(serviceContext);
+        importMetadata(serviceContext);
+        importMetadata(serviceContext);
+
+        // no next page when the last page is full
+        Lib.SearchPage page = Lib.search(serviceContext, request(), null, 2);
+        assertEquals(2, page.getIds().size());
+        assertNull(page.getNext());
+    }
+
+    private Element request() {
+        return new Element("request").addContent(new Element("_schema").setText("iso19139"));
+    }
+
+    private int importMetadata(ServiceContext serviceContext) throws Exception {
+        final ByteArrayInputStream stream = new ByteArrayInputStream(
+            Xml.getString(getSampleMetadataXml()).getBytes("UTF-8"));
+        return importMetadataXML(serviceContext, "uuid", stream, MetadataType.METADATA,
+            ReservedGroup.all.getId(), Params.GENERATE_UUID);
+    }
+}
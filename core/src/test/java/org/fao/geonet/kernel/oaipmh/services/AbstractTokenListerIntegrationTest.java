@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.oaipmh.services;
+
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.constants.Params;
+import org.fao.geonet.domain.MetadataType;
+import org.fao.geonet.domain.ReservedGroup;
+import org.fao.geonet.kernel.SchemaManager;
+import org.fao.geonet.kernel.oaipmh.OaiPmhDispatcher;
+import org.fao.geonet.kernel.setting.SettingManager;
+import org.fao.geonet.kernel.setting.Settings;
+import org.fao.geonet.repository.MetadataRepository;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+import org.fao.geonet.utils.Xml;
+import org.fao.oaipmh.OaiPmh;
+import org.fao.oaipmh.exceptions.BadResumptionTokenException;
+import org.fao.oaipmh.requests.ListIdentifiersRequest;
+import org.fao.oaipmh.responses.ListIdentifiersResponse;
+import org.fao.oaipmh.responses.ResumptionToken;
+import org.jdom.Element;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the resumption tokens of {@link AbstractTokenLister} through {@link ListIdentifiers}.
+ */
+public class AbstractTokenListerIntegrationTest extends AbstractCoreIntegrationTest {
+
+    @Autowired
+    private SchemaManager schemaManager;
+    @Autowired
+    private MetadataRepository metadataRepository;
+
+    private ServiceContext serviceContext;
+    private ListIdentifiers lister;
+
+    @Before
+    public void setUpLister() throws Exception {
+        serviceContext = createServiceContext();
+        loginAsAdmin(serviceContext);
+
+        SettingManager settingManager = mock(SettingManager.class);
+        when(settingManager.getValueAsInt(Settings.SYSTEM_OAI_MAXRECORDS)).thenReturn(2);
+        when(settingManager.getValueAsInt(Settings.SYSTEM_OAI_MDMODE)).thenReturn(OaiPmhDispatcher.MODE_MODIFIDATE);
+        lister = new ListIdentifiers(settingManager, schemaManager);
+    }
+
+    @Test
+    public void testPagesWithResumptionTokens() throws Exception {
+        Set<String> imported = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            imported.add(importMetadata());
+        }
+
+        List<String> identifiers = new ArrayList<>();
+        ListIdentifiersResponse response = (ListIdentifiersResponse) lister.execute(request(null), serviceContext);
+        ResumptionToken token = response.getResumptionToken();
+        assertEquals(2, response.getSize());
+        assertEquals(Integer.valueOf(0), token.getCursor());
+        assertEquals(Integer.valueOf(5), token.getCompleteListSize());
+        assertFalse(token.isTokenEmpty());
+        identifiers.addAll(identifiers(response));
+
+        response = (ListIdentifiersResponse) lister.execute(request(token.getToken()), serviceContext);
+        token = response.getResumptionToken();
+        assertEquals(2, response.getSize());
+        assertEquals(Integer.valueOf(2), token.getCursor());
+        assertEquals(Integer.valueOf(5), token.getCompleteListSize());
+        assertFalse(token.isTokenEmpty());
+        identifiers.addAll(identifiers(response));
+
+        response = (ListIdentifiersResponse) lister.execute(request(token.getToken()), serviceContext);
+        token = response.getResumptionToken();
+        assertEquals(1, response.getSize());
+        assertEquals(Integer.valueOf(4), token.getCursor());
+        assertEquals(Integer.valueOf(5), token.getCompleteListSize());
+        // an empty token ends the list
+        assertTrue(token.isTokenEmpty());
+        identifiers.addAll(identifiers(response));
+
+        assertEquals(5, identifiers.size());
+        assertEquals(imported, new HashSet<>(identifiers));
+    }
+
+    @Test
+    public void testSinglePageHasNoResumptionToken() throws Exception {
+        importMetadata();
+
+        ListIdentifiersResponse response = (ListIdentifiersResponse) lister.execute(request(null), serviceContext);
+        assertEquals(1, response.getSize());
+        assertNull(response.getResumptionToken());
+    }
+
+    @Test(expected = BadResumptionTokenException.class)
+    public void testInvalidResumptionToken() throws Exception {
+        importMetadata();
+        lister.execute(request("unknown"), serviceContext);
+    }
+
+    private ListIdentifiersRequest request(String resumptionToken) {
+        ListIdentifiersRequest request = new ListIdentifiersRequest(mock(GeonetHttpRequestFactory.class));
+        if (resumptionToken == null) {
+            request.setMetadataPrefix("iso19139");
+        } else {
+            request.setResumptionToken(resumptionToken);
+        }
+        return request;
+    }
+
+    private List<String> identifiers(ListIdentifiersResponse response) {
+        List<String> identifiers = new ArrayList<>();
+        for (Object header : response.toXml().getChildren("header", OaiPmh.Namespaces.OAI_PMH)) {
+            identifiers.add(((Element) header).getChildText("identifier", OaiPmh.Namespaces.OAI_PMH));
+        }
+        return identifiers;
+    }
+
+    private String importMetadata() throws Exception {
+        final ByteArrayInputStream stream = new ByteArrayInputStream(
+            Xml.getString(getSampleMetadataXml()).getBytes("UTF-8"));
+        int id = importMetadataXML(serviceContext, "uuid", stream, MetadataType.METADATA,
+            ReservedGroup.all.getId(), Params.GENERATE_UUID);
+        return metadataRepository.findOne(id).getUuid();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DomainValuesCollectorTest {
+
+    @Test
+    public void testCounts() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_4_9, new KeywordAnalyzer()))) {
+            writer.addDocument(record("n", "water", "sea"));
+            writer.addDocument(record("n", "water", "water"));
+            // Flush to have several segments
+            writer.commit();
+            writer.addDocument(record("n", "sea", "climate"));
+            writer.addDocument(record("y", "water"));
+            writer.addDocument(record("n"));
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertTrue(reader.leaves().size() > 1);
+            IndexSearcher searcher = new IndexSearcher(reader);
+
+            DomainValuesCollector collector = new DomainValuesCollector("keyword");
+            searcher.search(new TermQuery(new Term("_isTemplate", "n")), collector);
+
+            Map<String, Integer> expected = new HashMap<>();
+            expected.put("water", 2);
+            expected.put("sea", 2);
+            expected.put("climate", 1);
+            assertEquals(expected, collector.getCounts());
+
+            collector = new DomainValuesCollector("format");
+            searcher.search(new MatchAllDocsQuery(), collector);
+            assertTrue(collector.getCounts().isEmpty());
+        }
+    }
+
+    private Document record(String isTemplate, String... keywords) {
+        Document doc = new Document();
+        doc.add(new StringField("_isTemplate", isTemplate, Field.Store.YES));
+        for (String keyword : keywords) {
+            doc.add(new StringField("keyword", keyword, Field.Store.YES));
+            doc.add(new SortedSetDocValuesField(LuceneConfig.docValuesFieldName("keyword"), new BytesRef(keyword)));
+        }
+        return doc;
+    }
+}
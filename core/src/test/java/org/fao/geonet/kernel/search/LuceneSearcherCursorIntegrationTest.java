@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search;
+
+import jeeves.server.ServiceConfig;
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.constants.Edit;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.constants.Params;
+import org.fao.geonet.domain.MetadataType;
+import org.fao.geonet.domain.ReservedGroup;
+import org.fao.geonet.exceptions.BadParameterEx;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests the deep paging cursor of {@link LuceneSearcher}.
+ */
+public class LuceneSearcherCursorIntegrationTest extends AbstractCoreIntegrationTest {
+    @Autowired
+    private SearchManager searchManager;
+
+    private ServiceContext serviceContext;
+    private Set<String> imported;
+
+    @Before
+    public void importRecords() throws Exception {
+        serviceContext = createServiceContext();
+        loginAsAdmin(serviceContext);
+        imported = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            imported.add(String.valueOf(importMetadata()));
+        }
+    }
+
+    @Test
+    public void testPagesWithCursor() throws Exception {
+        Set<String> found = new HashSet<>();
+        int pages = 0;
+        String cursor = SearchCursor.START;
+        while (!cursor.isEmpty()) {
+            // each page is searched by a new searcher, as by a new request
+            try (MetaSearcher searcher = searchManager.newSearcher(SearcherType.LUCENE, Geonet.File.SEARCH_LUCENE)) {
+                Element request = request(cursor);
+                searcher.search(serviceContext, request, new ServiceConfig());
+                Element response = searcher.present(serviceContext, request, new ServiceConfig());
+                for (Object md : response.getChildren("metadata")) {
+                    String id = ((Element) md).getChild(Edit.RootChild.INFO, Edit.NAMESPACE).getChildText(Edit.Info.Elem.ID);
+                    assertFalse("Record " + id + " returned twice", found.contains(id));
+                    found.add(id);
+                }
+                cursor = response.getAttributeValue(Geonet.SearchResult.CURSOR);
+            }
+            pages++;
+        }
+
+        assertEquals(3, pages);
+        assertEquals(imported, found);
+    }
+
+    @Test(expected = BadParameterEx.class)
+    public void testInvalidCursor() throws Exception {
+        try (MetaSearcher searcher = searchManager.newSearcher(SearcherType.LUCENE, Geonet.File.SEARCH_LUCENE)) {
+            searcher.search(serviceContext, request("not a cursor"), new ServiceConfig());
+        }
+    }
+
+    @Test(expected = BadParameterEx.class)
+    public void testCursorOfAnotherSearch() throws Exception {
+        String cursor;
+        try (MetaSearcher searcher = searchManager.newSearcher(SearcherType.LUCENE, Geonet.File.SEARCH_LUCENE)) {
+            searcher.search(serviceContext, request(SearchCursor.START), new ServiceConfig());
+            cursor = ((LuceneSearcher) searcher).getNextCursor().encode();
+        }
+
+        try (MetaSearcher searcher = searchManager.newSearcher(SearcherType.LUCENE, Geonet.File.SEARCH_LUCENE)) {
+            Element request = request(cursor).addContent(new Element("sortBy").setText("_title"));
+            searcher.search(serviceContext, request, new ServiceConfig());
+        }
+    }
+
+    private Element request(String cursor) {
+        return new Element("request")
+            .addContent(new Element(Geonet.SearchResult.FAST).setText(Geonet.SearchResult.INDEX))
+            .addContent(new Element("from").setText("1"))
+            .addContent(new Element("to").setText("2"))
+            .addContent(new Element(Geonet.SearchResult.CURSOR).setText(cursor));
+    }
+
+    private int importMetadata() throws Exception {
+        final ByteArrayInputStream stream = new ByteArrayInputStream(
+            Xml.getString(getSampleMetadataXml()).getBytes("UTF-8"));
+        return importMetadataXML(serviceContext, "uuid", stream, MetadataType.METADATA,
+            ReservedGroup.all.getId(), Params.GENERATE_UUID);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Version;
+import org.fao.geonet.exceptions.BadParameterEx;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchCursorTest {
+
+    @Test
+    public void testEncodeDecode() {
+        Object[] fields = {new BytesRef("title"), null, 1.5f, 42L, 7, 2.5d, "text"};
+        SearchCursor cursor = new SearchCursor(12L, 100, 5, new FieldDoc(3, 0.25f, fields));
+
+        String token = cursor.encode();
+        assertTrue(token.matches("[A-Za-z0-9_-]+"));
+
+        SearchCursor decoded = SearchCursor.decode(token);
+        assertEquals(12L, decoded.getVersion());
+        assertEquals(100, decoded.getPosition());
+        assertEquals(3, decoded.getAfter().doc);
+        assertEquals(0.25f, decoded.getAfter().score, 0f);
+        assertArrayEquals(fields, decoded.getAfter().fields);
+    }
+
+    @Test(expected = BadParameterEx.class)
+    public void testDecodeInvalid() {
+        SearchCursor.decode("not a cursor");
+    }
+
+    @Test(expected = BadParameterEx.class)
+    public void testDecodeTruncated() {
+        String token = new SearchCursor(1L, 10, 0, new FieldDoc(1, 1f, new Object[]{new BytesRef("abc")})).encode();
+        SearchCursor.decode(token.substring(0, token.length() - 4));
+    }
+
+    @Test
+    public void testMatches() {
+        Query query = new TermQuery(new Term("_cat", "datasets"));
+        Sort sort = new Sort(new SortField("_title", SortField.Type.STRING));
+        SearchCursor cursor = new SearchCursor(1L, 10, SearchCursor.fingerprint(query, sort), new FieldDoc(1, 1f));
+
+        assertTrue(cursor.matches(query, sort));
+        assertFalse(cursor.matches(new TermQuery(new Term("_cat", "maps")), sort));
+        assertFalse(cursor.matches(query, Sort.RELEVANCE));
+    }
+
+    @Test
+    public void testPaging() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_4_9, new KeywordAnalyzer()))) {
+            for (int i = 0; i < 25; i++) {
+                Document doc = new Document();
+                // Duplicate titles to check ties are resolved by the document id
+                String title = "title" + (i % 7);
+                doc.add(new StringField("_id", Integer.toString(i), Field.Store.YES));
+                doc.add(new SortedDocValuesField("_title", new BytesRef(title)));
+                writer.addDocument(doc);
+            }
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            Query query = new MatchAllDocsQuery();
+            Sort sort = new Sort(new SortField("_title", SortField.Type.STRING));
+
+            List<Integer> expected = new ArrayList<>();
+            for (ScoreDoc hit : searcher.search(query, null, 25, sort).scoreDocs) {
+                expected.add(hit.doc);
+            }
+
+            List<Integer> paged = new ArrayList<>();
+            SearchCursor cursor = null;
+            do {
+                FieldDoc after = cursor == null ? null : SearchCursor.decode(cursor.encode()).getAfter();
+                TopDocs page = searcher.searchAfter(after, query, null, 10, sort);
+                for (ScoreDoc hit : page.scoreDocs) {
+                    paged.add(hit.doc);
+                }
+                int position = cursor == null ? 0 : cursor.getPosition();
+                cursor = position + page.scoreDocs.length < page.totalHits ?
+                    SearchCursor.next(1L, position, query, sort, page.scoreDocs) : null;
+            } while (cursor != null);
+
+            assertEquals(expected, paged);
+        }
+    }
+
+    @Test
+    public void testNextWithoutHits() {
+        assertNull(SearchCursor.next(1L, 0, new MatchAllDocsQuery(), Sort.RELEVANCE, new ScoreDoc[0]));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.search;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class VisibilityFilterCacheTest {
+
+    @Test
+    public void testSharedByGroups() {
+        VisibilityFilterCache cache = new VisibilityFilterCache();
+        Query query = cache.getQuery(Arrays.asList(1, 2), null);
+
+        assertSame(query, cache.getQuery(Arrays.asList(2, 1), null));
+        assertNotSame(query, cache.getQuery(Arrays.asList(1, 2), "5"));
+        assertNotSame(query, cache.getQuery(Collections.singleton(1), null));
+
+        cache.clear();
+        assertNotSame(query, cache.getQuery(Arrays.asList(1, 2), null));
+    }
+
+    @Test
+    public void testMatchesVisibleRecords() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_4_9, new KeywordAnalyzer()));
+        writer.addDocument(record("1", "5", "1", "2"));
+        writer.addDocument(record("2", "5", "2"));
+        writer.addDocument(record("3", "6", "3"));
+        writer.addDocument(record("4", "6"));
+        writer.commit();
+
+        VisibilityFilterCache cache = new VisibilityFilterCache();
+        Query anonymous = cache.getQuery(Collections.singleton(1), null);
+        Query user = cache.getQuery(Arrays.asList(1, 3), "6");
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            assertEquals(1, searcher.search(anonymous, 10).totalHits);
+            assertEquals(3, searcher.search(user, 10).totalHits);
+        }
+
+        // A new segment and a deletion are taken into account by the same query
+        writer.addDocument(record("5", "7", "1"));
+        writer.deleteDocuments(new Term("_id", "1"));
+        writer.close();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            assertEquals(1, searcher.search(anonymous, 10).totalHits);
+            assertEquals("5", searcher.doc(searcher.search(anonymous, 10).scoreDocs[0].doc).get("_id"));
+            assertEquals(3, searcher.search(user, 10).totalHits);
+        }
+    }
+
+    private static Document record(String id, String owner, String... groups) {
+        Document doc = new Document();
+        doc.add(new StringField("_id", id, Field.Store.YES));
+        doc.add(new StringField(LuceneIndexField.OWNER, owner, Field.Store.NO));
+        for (String group : groups) {
+            doc.add(new StringField(LuceneIndexField._OP0, group, Field.Store.NO));
+        }
+        return doc;
+    }
+}
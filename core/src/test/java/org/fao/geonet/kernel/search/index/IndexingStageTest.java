@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search.index;
+
+import jeeves.server.context.ServiceContext;
+
+import org.fao.geonet.ApplicationContextHolder;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IndexingStageTest {
+
+    private IndexingStage stage;
+
+    @After
+    public void tearDown() {
+        if (stage != null) {
+            stage.shutdown();
+        }
+        ApplicationContextHolder.clear();
+        ServiceContext.clearThreadLocal();
+    }
+
+    @Test
+    public void testPropagatesApplicationContext() throws Exception {
+        ConfigurableApplicationContext context = Mockito.mock(ConfigurableApplicationContext.class);
+        ApplicationContextHolder.set(context);
+        stage = new IndexingStage("test", 2, 4);
+
+        Future<ConfigurableApplicationContext> result = stage.submit(new Callable<ConfigurableApplicationContext>() {
+            @Override
+            public ConfigurableApplicationContext call() throws Exception {
+                return ApplicationContextHolder.get();
+            }
+        });
+
+        assertSame(context, IndexingStage.await(result));
+        assertEquals(1, stage.getCompletedTasks());
+    }
+
+    @Test
+    public void testServiceContextPerTask() throws Exception {
+        stage = new IndexingStage("test", 1, 4);
+        final ServiceContext requestContext = new ServiceContext("index", null, new HashMap<String, Object>(), null);
+        final List<Future<ServiceContext>> results = new ArrayList<>();
+        Callable<ServiceContext> getContext = new Callable<ServiceContext>() {
+            @Override
+            public ServiceContext call() throws Exception {
+                return ServiceContext.get();
+            }
+        };
+
+        // on a thread of its own which starts the thread of the stage
+        Thread request = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                requestContext.setAsThreadLocal();
+                results.add(stage.submit(getContext));
+                results.add(stage.submit(getContext));
+            }
+        });
+        request.start();
+        request.join();
+
+        ServiceContext first = IndexingStage.await(results.get(0));
+        ServiceContext second = IndexingStage.await(results.get(1));
+        assertNotSame(requestContext, first);
+        assertNotSame(first, second);
+        assertSame(requestContext.getUserSession(), first.getUserSession());
+        assertEquals("index", first.getService());
+
+        // not left on the thread for the tasks submitted without service context
+        assertNull(IndexingStage.await(stage.submit(getContext)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testAwaitRethrowsTaskException() throws Exception {
+        stage = new IndexingStage("test", 1, 1);
+        try {
+            IndexingStage.await(stage.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    throw new IOException("failed");
+                }
+            }));
+        } finally {
+            assertEquals(1, stage.getFailedTasks());
+        }
+    }
+
+    @Test
+    public void testCallerRunsWhenQueueIsFull() throws Exception {
+        stage = new IndexingStage("test", 1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Future<String>> results = new ArrayList<>();
+        Callable<String> blocking = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                release.await(10, TimeUnit.SECONDS);
+                return Thread.currentThread().getName();
+            }
+        };
+        // One running, one queued
+        results.add(stage.submit(blocking));
+        results.add(stage.submit(blocking));
+
+        Future<String> callerRun = stage.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return Thread.currentThread().getName();
+            }
+        });
+        assertTrue(callerRun.isDone());
+        assertEquals(Thread.currentThread().getName(), callerRun.get());
+
+        release.countDown();
+        for (Future<String> result : results) {
+            assertTrue(IndexingStage.await(result).startsWith("index-test-"));
+        }
+        assertEquals(3, stage.getCompletedTasks());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testRejectsTasksOnceShutDown() throws Exception {
+        stage = new IndexingStage("test", 1, 1);
+        stage.shutdown();
+        stage.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search.spatial;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.kernel.search.LuceneIndexField;
+import org.geotools.data.FeatureSource;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.index.SpatialIndex;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SpatialFilterTest {
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    public void testCandidatesQueryWithoutPrefilter() throws Exception {
+        Query query = new TermQuery(new Term("_isTemplate", "n"));
+        SpatialFilter filter = new EnvelopeFilter(query, new Envelope(0, 10, 0, 10));
+
+        assertSame(query, filter.candidatesQuery());
+    }
+
+    @Test
+    public void testCandidatesQueryWithPrefilter() throws Exception {
+        Query query = new TermQuery(new Term("_isTemplate", "n"));
+        SpatialFilter filter = new EnvelopeFilter(query, new Envelope(0, 10, 20, 30));
+        filter.setEnvelopePrefilter(true);
+
+        BooleanQuery candidates = (BooleanQuery) filter.candidatesQuery();
+        assertEquals(5, candidates.clauses().size());
+        for (BooleanClause clause : candidates.clauses()) {
+            assertEquals(BooleanClause.Occur.MUST, clause.getOccur());
+        }
+        assertSame(query, candidates.clauses().get(0).getQuery());
+        assertEquals(LuceneIndexField.SPATIAL_MIN_X + ":[* TO 10.0]", candidates.clauses().get(1).getQuery().toString());
+        assertEquals(LuceneIndexField.SPATIAL_MAX_X + ":[0.0 TO *]", candidates.clauses().get(2).getQuery().toString());
+        assertEquals(LuceneIndexField.SPATIAL_MIN_Y + ":[* TO 30.0]", candidates.clauses().get(3).getQuery().toString());
+        assertEquals(LuceneIndexField.SPATIAL_MAX_Y + ":[20.0 TO *]", candidates.clauses().get(4).getQuery().toString());
+    }
+
+    @Test
+    public void testCandidatesQueryMatchesIntersectingEnvelopes() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_4_9, new KeywordAnalyzer()))) {
+            writer.addDocument(record("1", new Envelope(0, 10, 0, 10)));
+            writer.addDocument(record("2", new Envelope(5, 15, 5, 15)));
+            writer.addDocument(record("3", new Envelope(20, 30, 20, 30)));
+            // touching the envelope of the filter on its edge
+            writer.addDocument(record("4", new Envelope(-10, 0, -10, 0)));
+            // no envelope indexed
+            writer.addDocument(record("5", null));
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            SpatialFilter filter = new EnvelopeFilter(new MatchAllDocsQuery(), new Envelope(0, 8, 0, 8));
+
+            assertEquals(set("1", "2", "3", "4", "5"), ids(searcher, filter.candidatesQuery()));
+
+            filter.setEnvelopePrefilter(true);
+            assertEquals(set("1", "2", "4"), ids(searcher, filter.candidatesQuery()));
+        }
+    }
+
+    @Test
+    public void testMetadataIds() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_4_9, new KeywordAnalyzer()))) {
+            writer.addDocument(record("1", null));
+            writer.addDocument(record("2", null));
+            // Flush to have several segments
+            writer.commit();
+            writer.addDocument(record("3", null));
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertTrue(reader.leaves().size() > 1);
+            Set<String> ids = new HashSet<>();
+            for (AtomicReaderContext leaf : reader.leaves()) {
+                BinaryDocValues values = SpatialFilter.metadataIds(leaf.reader());
+                for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+                    assertEquals(leaf.reader().document(doc).get(LuceneIndexField.ID), values.get(doc).utf8ToString());
+                    ids.add(values.get(doc).utf8ToString());
+                }
+            }
+            assertEquals(set("1", "2", "3"), ids);
+        }
+    }
+
+    private Document record(String id, Envelope envelope) {
+        Document doc = new Document();
+        doc.add(new StringField(LuceneIndexField.ID, id, Field.Store.YES));
+        if (envelope != null) {
+            doc.add(new DoubleField(LuceneIndexField.SPATIAL_MIN_X, envelope.getMinX(), Field.Store.NO));
+            doc.add(new DoubleField(LuceneIndexField.SPATIAL_MAX_X, envelope.getMaxX(), Field.Store.NO));
+            doc.add(new DoubleField(LuceneIndexField.SPATIAL_MIN_Y, envelope.getMinY(), Field.Store.NO));
+            doc.add(new DoubleField(LuceneIndexField.SPATIAL_MAX_Y, envelope.getMaxY(), Field.Store.NO));
+        }
+        return doc;
+    }
+
+    private Set<String> ids(IndexSearcher searcher, Query query) throws IOException {
+        Set<String> ids = new HashSet<>();
+        for (ScoreDoc scoreDoc : searcher.search(query, 100).scoreDocs) {
+            ids.add(searcher.doc(scoreDoc.doc).get(LuceneIndexField.ID));
+        }
+        return ids;
+    }
+
+    private Set<String> set(String... values) {
+        Set<String> set = new HashSet<>();
+        for (String value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+    /**
+     * Filter without spatial index, only the candidates query is used.
+     */
+    private class EnvelopeFilter extends SpatialFilter {
+        EnvelopeFilter(Query query, Envelope envelope) throws IOException {
+            super(query, 100, geometryFactory.toGeometry(envelope),
+                Pair.<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex>read(null, null));
+        }
+
+        @Override
+        protected org.opengis.filter.Filter createFilter(FeatureSource<SimpleFeatureType, SimpleFeature> source) {
+            return null;
+        }
+    }
+}
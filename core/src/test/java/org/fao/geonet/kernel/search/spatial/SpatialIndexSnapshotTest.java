@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search.spatial;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SpatialIndexSnapshotTest {
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    public void testBuild() {
+        Map<String, List<SpatialIndexWriter.Data>> entries = new HashMap<>();
+        entries.put("1", data("1", new Envelope(0, 10, 0, 10)));
+        entries.put("2", data("2", new Envelope(20, 30, 20, 30)));
+
+        SpatialIndexSnapshot snapshot = SpatialIndexSnapshot.build(entries.values());
+
+        assertEquals(2, snapshot.baseSize());
+        assertEquals(0, snapshot.deltaSize());
+        assertEquals(Collections.singleton("1"), ids(snapshot, new Envelope(5, 6, 5, 6)));
+        assertEquals(Collections.singleton("2"), ids(snapshot, new Envelope(25, 26, 25, 26)));
+        assertEquals(Collections.emptySet(), ids(snapshot, new Envelope(40, 50, 40, 50)));
+    }
+
+    @Test
+    public void testWithChanges() {
+        Map<String, List<SpatialIndexWriter.Data>> entries = new HashMap<>();
+        entries.put("1", data("1", new Envelope(0, 10, 0, 10)));
+        entries.put("2", data("2", new Envelope(20, 30, 20, 30)));
+        SpatialIndexSnapshot base = SpatialIndexSnapshot.build(entries.values());
+
+        Map<String, List<SpatialIndexWriter.Data>> changes = new HashMap<>();
+        changes.put("1", Collections.<SpatialIndexWriter.Data>emptyList());
+        changes.put("2", data("2", new Envelope(40, 50, 40, 50)));
+        changes.put("3", data("3", new Envelope(0, 10, 0, 10)));
+        SpatialIndexSnapshot updated = base.withChanges(changes);
+
+        assertEquals(3, updated.deltaSize());
+        assertEquals(Collections.singleton("3"), ids(updated, new Envelope(5, 6, 5, 6)));
+        assertEquals(Collections.emptySet(), ids(updated, new Envelope(25, 26, 25, 26)));
+        assertEquals(Collections.singleton("2"), ids(updated, new Envelope(45, 46, 45, 46)));
+
+        // The previous snapshot is left untouched
+        assertEquals(Collections.singleton("1"), ids(base, new Envelope(5, 6, 5, 6)));
+        assertEquals(Collections.singleton("2"), ids(base, new Envelope(25, 26, 25, 26)));
+
+        assertSame(updated, updated.withChanges(Collections.<String, List<SpatialIndexWriter.Data>>emptyMap()));
+    }
+
+    @Test
+    public void testMultiPolygonEntries() {
+        Envelope west = new Envelope(-20, -10, 0, 10);
+        Envelope east = new Envelope(10, 20, 0, 10);
+        List<SpatialIndexWriter.Data> dataList = SpatialIndexWriter.toData("1", null, geometryFactory.createMultiPolygon(
+            new Polygon[]{(Polygon) geometryFactory.toGeometry(west), (Polygon) geometryFactory.toGeometry(east)}));
+
+        assertEquals(2, dataList.size());
+        assertEquals(2, dataList.get(0).getNumBrotherGeometries());
+
+        SpatialIndexSnapshot snapshot = SpatialIndexSnapshot.empty()
+            .withChanges(Collections.singletonMap("1", dataList));
+        assertEquals(1, snapshot.query(new Envelope(-15, -14, 5, 6)).size());
+        assertEquals(2, snapshot.query(new Envelope(-15, 15, 5, 6)).size());
+        assertEquals(0, snapshot.query(new Envelope(-5, 5, 5, 6)).size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        SpatialIndexSnapshot.empty().insert(new Envelope(0, 1, 0, 1), data("1", new Envelope(0, 1, 0, 1)).get(0));
+    }
+
+    private List<SpatialIndexWriter.Data> data(String metadataId, Envelope envelope) {
+        List<SpatialIndexWriter.Data> dataList = new ArrayList<>();
+        dataList.addAll(SpatialIndexWriter.toData(metadataId, null, geometryFactory.toGeometry(envelope)));
+        return dataList;
+    }
+
+    private Set<String> ids(SpatialIndexSnapshot snapshot, Envelope envelope) {
+        Set<String> ids = new HashSet<>();
+        for (Object item : snapshot.query(envelope)) {
+            ids.add(((SpatialIndexWriter.Data) item).getMetadataId());
+        }
+        return ids;
+    }
+}
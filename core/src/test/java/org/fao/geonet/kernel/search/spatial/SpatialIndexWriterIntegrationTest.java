@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search.spatial;
+
+import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.kernel.SchemaManager;
+import org.geotools.data.DataStore;
+import org.geotools.data.DefaultTransaction;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpatialIndexWriterIntegrationTest extends AbstractCoreIntegrationTest {
+    private static final String METADATA_ID = "987654";
+
+    @Autowired
+    private DataStore dataStore;
+    @Autowired
+    private SchemaManager schemaManager;
+
+    @Test
+    public void testTransactionChangesArePublishedOnCommit() throws Exception {
+        SpatialIndexWriter writer = new SpatialIndexWriter(dataStore, new DefaultTransaction(), 10, new ReentrantLock());
+        try {
+            // load the index before the changes
+            writer.getIndex();
+
+            Path schemaDir = schemaManager.getSchemaDir("iso19139");
+            Envelope envelope = writer.index(schemaDir, METADATA_ID, getSampleMetadataXml());
+            assertNotNull(envelope);
+            assertFalse(getIndexedIds(writer, envelope).contains(METADATA_ID));
+
+            writer.commit();
+            assertTrue(getIndexedIds(writer, envelope).contains(METADATA_ID));
+
+            writer.delete(METADATA_ID);
+            assertTrue(getIndexedIds(writer, envelope).contains(METADATA_ID));
+
+            writer.commit();
+            assertFalse(getIndexedIds(writer, envelope).contains(METADATA_ID));
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testRolledBackChangesAreNotPublished() throws Exception {
+        DefaultTransaction transaction = new DefaultTransaction();
+        SpatialIndexWriter writer = new SpatialIndexWriter(dataStore, transaction, 10, new ReentrantLock());
+        try {
+            writer.getIndex();
+
+            Path schemaDir = schemaManager.getSchemaDir("iso19139");
+            Envelope envelope = writer.index(schemaDir, METADATA_ID, getSampleMetadataXml());
+            assertNotNull(envelope);
+            transaction.rollback();
+            assertFalse(getIndexedIds(writer, envelope).contains(METADATA_ID));
+
+            writer.commit();
+            assertFalse(getIndexedIds(writer, envelope).contains(METADATA_ID));
+        } finally {
+            writer.close();
+        }
+    }
+
+    private Set<String> getIndexedIds(SpatialIndexWriter writer, Envelope envelope) throws Exception {
+        Set<String> ids = new HashSet<>();
+        for (Object data : writer.getIndex().query(envelope)) {
+            ids.add(((SpatialIndexWriter.Data) data).getMetadataId());
+        }
+        return ids;
+    }
+}
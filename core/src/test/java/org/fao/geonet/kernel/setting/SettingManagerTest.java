@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.setting;
+
+import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.domain.Setting;
+import org.fao.geonet.repository.SettingRepository;
+import org.jdom.Element;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link SettingManager}.
+ */
+public class SettingManagerTest extends AbstractCoreIntegrationTest {
+    @Autowired
+    private SettingManager settingManager;
+    @Autowired
+    private SettingRepository settingRepository;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Test
+    public void testSetValue() {
+        settingManager.getValue(Settings.SYSTEM_SITE_NAME_PATH);
+        settingManager.setValue(Settings.SYSTEM_SITE_NAME_PATH, "Updated site");
+
+        assertEquals("Updated site", settingManager.getValue(Settings.SYSTEM_SITE_NAME_PATH));
+        assertEquals("Updated site", settingManager.getSiteName());
+    }
+
+    @Test
+    public void testChangesThroughRepository() {
+        settingManager.getValue(Settings.SYSTEM_SITE_NAME_PATH);
+        Setting setting = settingRepository.findOne(Settings.SYSTEM_SITE_NAME_PATH);
+        settingRepository.saveAndFlush(setting.setValue("Saved site"));
+        settingRepository.saveAndFlush(new Setting().setName("system/test/added").setValue("added"));
+
+        assertEquals("Saved site", settingManager.getValue(Settings.SYSTEM_SITE_NAME_PATH));
+        assertEquals("added", settingManager.getValue("system/test/added"));
+
+        settingRepository.delete("system/test/added");
+        settingRepository.flush();
+        assertNull(settingManager.getValue("system/test/added"));
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        settingManager.getValue(Settings.SYSTEM_SITE_NAME_PATH);
+        entityManager.createNativeQuery("UPDATE Settings SET value = 'SQL site' WHERE name = '" +
+            Settings.SYSTEM_SITE_NAME_PATH + "'").executeUpdate();
+
+        settingManager.refresh();
+
+        assertEquals("SQL site", settingManager.getValue(Settings.SYSTEM_SITE_NAME_PATH));
+    }
+
+    @Test
+    public void testGetValues() {
+        settingManager.setValue(Settings.SYSTEM_SITE_NAME_PATH, "Site");
+
+        Element values = settingManager.getValues(new String[]{Settings.SYSTEM_SITE_NAME_PATH, "system/test/missing"});
+
+        assertEquals(1, values.getChildren().size());
+        assertEquals("Site", ((Element) values.getChildren().get(0)).getAttributeValue("value"));
+    }
+}
@@ -30,6 +30,7 @@ import java.util.Map;
 import jeeves.server.context.ServiceContext;
 import jeeves.server.sources.ServiceRequest.InputMethod;
 import jeeves.server.sources.ServiceRequest.OutputMethod;
+import jeeves.server.sources.StreamingResponse;
 
 import org.fao.geonet.utils.Log;
 import org.fao.geonet.utils.SOAPUtil;
@@ -98,8 +99,12 @@ public class CatalogDispatcher {
 
             Element response = dispatchI(request, context, cswServiceSpecificContraint);
 
-            if (outSOAP)
+            if (outSOAP) {
+                if (response instanceof StreamingResponse) {
+                    ((StreamingResponse) response).materialize();
+                }
                 response = SOAPUtil.embed(response);
+            }
 
             return response;
         } catch (CatalogException e) {
@@ -23,20 +23,26 @@
 
 package org.fao.geonet.component.csw;
 
-import bak.pcj.map.ObjectKeyIntMapIterator;
-import bak.pcj.map.ObjectKeyIntOpenHashMap;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import jeeves.server.context.ServiceContext;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.FieldInfos;
-import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.fao.geonet.GeonetContext;
 import org.fao.geonet.constants.Geonet;
@@ -49,6 +55,7 @@ import org.fao.geonet.kernel.csw.CatalogConfiguration;
 import org.fao.geonet.kernel.csw.CatalogService;
 import org.fao.geonet.kernel.csw.services.AbstractOperation;
 import org.fao.geonet.kernel.csw.services.getrecords.CatalogSearcher;
+import org.fao.geonet.kernel.search.DomainValuesCollector;
 import org.fao.geonet.kernel.search.IndexAndTaxonomy;
 import org.fao.geonet.kernel.search.LuceneConfig;
 import org.fao.geonet.kernel.search.LuceneSearcher;
@@ -68,12 +75,14 @@ import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import static org.fao.geonet.kernel.search.LuceneSearcher.parseLuceneQuery;
 
@@ -87,6 +96,14 @@ public class GetDomain extends AbstractOperation implements CatalogService {
     //---------------------------------------------------------------------------
 
     static final String NAME = "GetDomain";
+
+    /**
+     * Domain values by index version, property, max records and query. Entries of previous
+     * index versions are not used anymore and are evicted when the cache is full.
+     */
+    private static final Cache<String, Optional<Map<String, Integer>>> DOMAIN_VALUES_CACHE =
+        CacheBuilder.newBuilder().maximumSize(200).build();
+
     @Autowired
     private LuceneConfig _luceneConfig;
 
@@ -136,35 +153,22 @@ public class GetDomain extends AbstractOperation implements CatalogService {
             IndexAndTaxonomy indexAndTaxonomy = sm.getNewIndexReader(null);
             try {
                 GeonetworkMultiReader reader = indexAndTaxonomy.indexReader;
-                BooleanQuery groupsQuery = (BooleanQuery) CatalogSearcher.getGroupsQuery(context);
-                BooleanQuery query = null;
+                Query groupsQuery = CatalogSearcher.getGroupsQuery(context);
+                BooleanQuery query = new BooleanQuery();
+
+                BooleanClause.Occur occur = LuceneUtils
+                    .convertRequiredAndProhibitedToOccur(true, false);
+
+                query.add(groupsQuery, occur);
 
                 // Apply CSW service specific constraint
                 if (StringUtils.isNotEmpty(cswServiceSpecificConstraint)) {
                     Query constraintQuery = parseLuceneQuery(cswServiceSpecificConstraint, luceneConfig);
-
-                    query = new BooleanQuery();
-
-                    BooleanClause.Occur occur = LuceneUtils
-                        .convertRequiredAndProhibitedToOccur(true, false);
-
-                    query.add(groupsQuery, occur);
                     query.add(constraintQuery, occur);
-
-                } else {
-                    query = groupsQuery;
                 }
 
-                List<Pair<String, Boolean>> sortFields = Collections.singletonList(Pair.read(Geonet.SearchResult.SortBy.RELEVANCE, true));
-                Sort sort = LuceneSearcher.makeSort(sortFields, context.getLanguage(), false);
-                CachingWrapperFilter filter = null;
-
-                Pair<TopDocs, Element> searchResults = LuceneSearcher.doSearchAndMakeSummary(
-                    maxRecords, 0, maxRecords, context.getLanguage(),
-                    null, luceneConfig, reader,
-                    query, filter, sort, null, false
-                );
-                TopDocs hits = searchResults.one();
+                // Skip templates and subTemplates
+                query.add(new TermQuery(new Term("_isTemplate", "n")), occur);
 
                 try {
                     // Get mapped lucene field in CSW configuration
@@ -173,10 +177,9 @@ public class GetDomain extends AbstractOperation implements CatalogService {
                     if (indexField != null)
                         property = indexField;
 
-                    // check if params asked is in the index using getFieldNames ?
-                    @SuppressWarnings("resource")
-                    FieldInfos fi = SlowCompositeReaderWrapper.wrap(reader).getFieldInfos();
-                    if (fi.fieldInfo(property) == null)
+                    Map<String, Integer> values = getDomainValues(context, reader, indexAndTaxonomy.version, query,
+                        property, maxRecords, luceneConfig);
+                    if (values == null)
                         continue;
 
                     boolean isRange = false;
@@ -189,47 +192,20 @@ public class GetDomain extends AbstractOperation implements CatalogService {
                     else
                         listOfValues = new Element("ListOfValues", Csw.NAMESPACE_CSW);
 
-                    Set<String> fields = new HashSet<String>();
-                    fields.add(property);
-                    fields.add("_isTemplate");
-
-
-                    // parse each document in the index
-                    String[] fieldValues;
                     Collator stringCollator = Collator.getInstance();
                     stringCollator.setStrength(Collator.PRIMARY);
                     SortedSet<String> sortedValues = new TreeSet<String>(stringCollator);
-                    ObjectKeyIntOpenHashMap duplicateValues = new ObjectKeyIntOpenHashMap();
-                    for (int j = 0; j < hits.scoreDocs.length; j++) {
-                        DocumentStoredFieldVisitor selector = new DocumentStoredFieldVisitor(fields);
-                        reader.document(hits.scoreDocs[j].doc, selector);
-                        Document doc = selector.getDocument();
-
-                        // Skip templates and subTemplates
-                        String[] isTemplate = doc.getValues("_isTemplate");
-                        if (isTemplate[0] != null && !isTemplate[0].equals("n"))
-                            continue;
-
-                        // Get doc values for specified property
-                        fieldValues = doc.getValues(property);
-                        if (fieldValues == null)
-                            continue;
-
-                        addtoSortedSet(sortedValues, fieldValues, duplicateValues);
-                    }
+                    sortedValues.addAll(values.keySet());
 
                     SummaryComparator valuesComparator = new SummaryComparator(SortOption.FREQUENCY, Type.STRING, context.getLanguage(), null);
                     TreeSet<SummaryComparator.SummaryElement> sortedValuesFrequency = new TreeSet<SummaryComparator.SummaryElement>(valuesComparator);
-                    ObjectKeyIntMapIterator entries = duplicateValues.entries();
-
-                    while (entries.hasNext()) {
-                        entries.next();
-                        sortedValuesFrequency.add(new SummaryComparator.SummaryElement(entries));
+                    for (Map.Entry<String, Integer> entry : values.entrySet()) {
+                        sortedValuesFrequency.add(new SummaryComparator.SummaryElement(entry.getKey(), entry.getValue()));
                     }
 
                     if (freq)
                         return createValuesByFrequency(sortedValuesFrequency);
-                    else
+                    else if (!sortedValues.isEmpty())
                         listOfValues.addContent(createValuesElement(sortedValues, isRange));
 
                 } finally {
@@ -252,23 +228,88 @@ public class GetDomain extends AbstractOperation implements CatalogService {
     //---------------------------------------------------------------------------
 
     /**
-     * @param sortedValues
-     * @param fieldValues
-     * @param duplicateValues
+     * Get the values of an index field for the records matching the query and the number of
+     * records having each value. Results are cached for each version of the index.
+     *
+     * When the field is indexed as doc values (see {@link LuceneConfig#getDocValuesFields()}),
+     * all the matching records are used. Otherwise, eg. until the catalog is reindexed after the
+     * field was added to the doc values fields, values are read from the stored fields of the
+     * first maxRecords matching records.
+     *
+     * @return the values and their frequency or null if the field is not in the index.
      */
-    private static void addtoSortedSet(SortedSet<String> sortedValues,
-                                       String[] fieldValues, ObjectKeyIntOpenHashMap duplicateValues) {
-        for (String value : fieldValues) {
-            sortedValues.add(value);
-            if (duplicateValues.containsKey(value)) {
-                int nb = duplicateValues.get(value);
-                duplicateValues.remove(value);
-                duplicateValues.put(value, nb + 1);
-            } else
-                duplicateValues.put(value, 1);
+    private static Map<String, Integer> getDomainValues(final ServiceContext context, final GeonetworkMultiReader reader,
+                                                        long version, final Query query, final String property,
+                                                        final int maxRecords, final LuceneConfig luceneConfig) throws Exception {
+        String key = version + "|" + property + "|" + maxRecords + "|" + query;
+        try {
+            Optional<Map<String, Integer>> values = DOMAIN_VALUES_CACHE.get(key, new Callable<Optional<Map<String, Integer>>>() {
+                @Override
+                public Optional<Map<String, Integer>> call() throws Exception {
+                    if (luceneConfig.isDocValuesField(property) && hasDocValues(reader, property)) {
+                        DomainValuesCollector collector = new DomainValuesCollector(property);
+                        new IndexSearcher(reader).search(query, collector);
+                        return Optional.of(collector.getCounts());
+                    }
+                    return Optional.fromNullable(getStoredDomainValues(context, reader, query, property, maxRecords, luceneConfig));
+                }
+            });
+            return values.orNull();
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), Exception.class);
+            throw e;
         }
     }
 
+    /**
+     * @return true if the doc values of the property are in the index.
+     */
+    private static boolean hasDocValues(GeonetworkMultiReader reader, String property) {
+        FieldInfo fieldInfo = MultiFields.getMergedFieldInfos(reader).fieldInfo(LuceneConfig.docValuesFieldName(property));
+        return fieldInfo != null && fieldInfo.hasDocValues();
+    }
+
+    /**
+     * @return the values of the property stored in the first maxRecords records matching the
+     * query or null if the field is not in the index.
+     */
+    private static Map<String, Integer> getStoredDomainValues(ServiceContext context, GeonetworkMultiReader reader,
+                                                              Query query, String property, int maxRecords,
+                                                              LuceneConfig luceneConfig) throws Exception {
+        // check if params asked is in the index using getFieldNames ?
+        FieldInfos fi = MultiFields.getMergedFieldInfos(reader);
+        if (fi.fieldInfo(property) == null)
+            return null;
+
+        List<Pair<String, Boolean>> sortFields = Collections.singletonList(Pair.read(Geonet.SearchResult.SortBy.RELEVANCE, true));
+        Sort sort = LuceneSearcher.makeSort(sortFields, context.getLanguage(), false);
+        CachingWrapperFilter filter = null;
+
+        Pair<TopDocs, Element> searchResults = LuceneSearcher.doSearchAndMakeSummary(
+            maxRecords, 0, maxRecords, context.getLanguage(),
+            null, luceneConfig, reader,
+            query, filter, sort, null, false
+        );
+        TopDocs hits = searchResults.one();
+
+        Set<String> fields = Collections.singleton(property);
+
+        // parse each document in the index
+        Map<String, Integer> values = new HashMap<String, Integer>();
+        for (int j = 0; j < hits.scoreDocs.length; j++) {
+            DocumentStoredFieldVisitor selector = new DocumentStoredFieldVisitor(fields);
+            reader.document(hits.scoreDocs[j].doc, selector);
+            Document doc = selector.getDocument();
+
+            // Get doc values for specified property
+            for (String value : doc.getValues(property)) {
+                Integer count = values.get(value);
+                values.put(value, count == null ? 1 : count + 1);
+            }
+        }
+        return values;
+    }
+
     //---------------------------------------------------------------------------
 
     /**
@@ -24,6 +24,7 @@
 package org.fao.geonet.component.csw;
 
 import jeeves.server.context.ServiceContext;
+import jeeves.server.sources.StreamingResponse;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.search.Sort;
@@ -226,6 +227,9 @@ public class GetRecords extends AbstractOperation implements CatalogService {
 
         Sort sort = getSortFields(request, context);
 
+        // Deep paging cursor - CSW GeoNetwork extension
+        String cursor = query.getAttributeValue(Geonet.SearchResult.CURSOR);
+
         Element response;
 
         if (resultType == ResultType.VALIDATE) {
@@ -248,7 +252,12 @@ public class GetRecords extends AbstractOperation implements CatalogService {
 
             response.addContent(echoedRequest);
         } else {
-            response = new Element(getName() + "Response", Csw.NAMESPACE_CSW);
+            boolean streamRecords = _catalogConfig.isStreamGetRecordsResponse();
+            if (streamRecords) {
+                response = new StreamingResponse(getName() + "Response", Csw.NAMESPACE_CSW);
+            } else {
+                response = new Element(getName() + "Response", Csw.NAMESPACE_CSW);
+            }
 
             Attribute schemaLocation = new Attribute("schemaLocation", "http://www.opengis.net/cat/csw/2.0.2 http://schemas.opengis.net/csw/2.0.2/CSW-discovery.xsd", Csw.NAMESPACE_XSI);
             response.setAttribute(schemaLocation);
@@ -261,7 +270,8 @@ public class GetRecords extends AbstractOperation implements CatalogService {
             String cswServiceSpecificContraint = request.getChildText(Geonet.Elem.FILTER);
 
             Pair<Element, Element> search = _searchController.search(context, startPos, maxRecords, resultType, outSchema,
-                setName, filterExpr, filterVersion, sort, elemNames, typeName, maxHitsInSummary, cswServiceSpecificContraint, elementnameStrategy);
+                setName, filterExpr, filterVersion, sort, elemNames, typeName, maxHitsInSummary, cswServiceSpecificContraint, elementnameStrategy,
+                cursor, streamRecords);
 
             // Only add GeoNetwork summary on results_with_summary option
             if (resultType == ResultType.RESULTS_WITH_SUMMARY) {
@@ -294,6 +304,7 @@ public class GetRecords extends AbstractOperation implements CatalogService {
         String constrLangVer = params.get("constraint_language_version");
         String sortby = params.get("sortby");
         String elementnameStrategy = params.get("elementnamestrategy");
+        String cursor = params.get(Geonet.SearchResult.CURSOR);
 
         //--- build POST request
 
@@ -329,6 +340,10 @@ public class GetRecords extends AbstractOperation implements CatalogService {
         if (typeNames != null) {
             setAttrib(query, "typeNames", typeNames.replace(',', ' '));
         }
+
+        if (cursor != null) {
+            setAttrib(query, Geonet.SearchResult.CURSOR, cursor);
+        }
         //--- these 2 are in mutual exclusion
 
         addElement(query, "ElementSetName", elemSetName);
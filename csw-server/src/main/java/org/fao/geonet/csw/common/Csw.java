@@ -130,6 +130,11 @@ public final class Csw {
                 public static final String MAX_NUMBER_OF_RECORDS_FOR_KEYWORDS = "maxNumberOfRecordsForKeywords";
                 public static final String MAX_NUMBER_OF_RECORDS_FOR_PROPERTY_NAMES = "maxNumberOfRecordsForPropertyNames";
                 public static final String INCREASE_POPULARITY = "increasePopularity";
+                public static final String STREAM_RESPONSE = "streamResponse";
+                public static final String PRESENTATION_THREADS = "presentationThreads";
+                public static final String MAX_CONCURRENT_PRESENTATIONS_PER_REQUEST = "maxConcurrentPresentationsPerRequest";
+                public static final String PRECOMPUTED_OUTPUT_SCHEMAS = "precomputedOutputSchemas";
+                public static final String PRECOMPUTED_LANGUAGES = "precomputedLanguages";
             }
         }
 
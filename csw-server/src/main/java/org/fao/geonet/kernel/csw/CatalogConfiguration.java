@@ -26,6 +26,7 @@ package org.fao.geonet.kernel.csw;
 import jeeves.constants.ConfigFile;
 import jeeves.server.overrides.ConfigurationOverrides;
 
+import org.apache.commons.lang.StringUtils;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.csw.common.Csw;
 import org.fao.geonet.kernel.GeonetworkDataDirectory;
@@ -62,6 +63,12 @@ public class CatalogConfiguration {
     private int _maxNumberOfRecordsForKeywords = Integer.MAX_VALUE;
     // GetDomain variables
     private int _maxNumberOfRecordsForPropertyNames = Integer.MAX_VALUE;
+    // GetRecords variables
+    private boolean _streamGetRecordsResponse = false;
+    private int _presentationThreads = Runtime.getRuntime().availableProcessors();
+    private int _maxConcurrentPresentationsPerRequest = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private List<String> _precomputedOutputSchemas = new ArrayList<String>();
+    private List<String> _precomputedLanguages = new ArrayList<String>();
     // GetRecordById variables
     private boolean _increasePopularity = false;
 
@@ -173,6 +180,14 @@ public class CatalogConfiguration {
             _maxNumberOfRecordsForPropertyNames = Integer.parseInt(kn.getText());
     }
 
+    private static List<String> splitList(String list) {
+        List<String> values = new ArrayList<String>();
+        for (String value : StringUtils.split(list, ", ")) {
+            values.add(value);
+        }
+        return values;
+    }
+
     /**
      * @param operation
      */
@@ -253,6 +268,34 @@ public class CatalogConfiguration {
             _fieldMappingXPath.put(name.toLowerCase(), xpathMap);
         }
 
+        Element streamResponseConfig = operation.getChild(Csw.ConfigFile.Operation.Child.STREAM_RESPONSE);
+        if (streamResponseConfig != null && "yes".equals(streamResponseConfig.getText())) {
+            _streamGetRecordsResponse = true;
+        }
+
+        Element kn = operation.getChild(Csw.ConfigFile.Operation.Child.PRESENTATION_THREADS);
+        if (kn != null && StringUtils.isNotBlank(kn.getText())) {
+            int threads = Integer.parseInt(kn.getTextTrim());
+            if (threads > 0) {
+                _presentationThreads = threads;
+            }
+        }
+
+        kn = operation.getChild(Csw.ConfigFile.Operation.Child.MAX_CONCURRENT_PRESENTATIONS_PER_REQUEST);
+        if (kn != null && StringUtils.isNotBlank(kn.getText())) {
+            _maxConcurrentPresentationsPerRequest = Integer.parseInt(kn.getTextTrim());
+        }
+
+        kn = operation.getChild(Csw.ConfigFile.Operation.Child.PRECOMPUTED_OUTPUT_SCHEMAS);
+        if (kn != null) {
+            _precomputedOutputSchemas = splitList(kn.getText());
+        }
+
+        kn = operation.getChild(Csw.ConfigFile.Operation.Child.PRECOMPUTED_LANGUAGES);
+        if (kn != null) {
+            _precomputedLanguages = splitList(kn.getText());
+        }
+
         // OutputFormat parameter
         _getRecordsOutputFormat.addAll(getOutputFormat(operation));
 
@@ -407,4 +450,49 @@ public class CatalogConfiguration {
         return _increasePopularity;
     }
 
+    /**
+     * @return true if the records of the GetRecords responses are retrieved and written one at a
+     * time instead of being built in memory.
+     */
+    public boolean isStreamGetRecordsResponse() {
+        init();
+        return _streamGetRecordsResponse;
+    }
+
+    /**
+     * @return the number of threads retrieving and transforming the records of all the GetRecords
+     * requests.
+     */
+    public int getPresentationThreads() {
+        init();
+        return _presentationThreads;
+    }
+
+    /**
+     * @return the maximum number of records of a GetRecords request retrieved and transformed at
+     * the same time.
+     */
+    public int getMaxConcurrentPresentationsPerRequest() {
+        init();
+        return _maxConcurrentPresentationsPerRequest;
+    }
+
+    /**
+     * @return the output schemas of the brief and summary presentations computed when a record is
+     * indexed.
+     */
+    public List<String> getPrecomputedOutputSchemas() {
+        init();
+        return _precomputedOutputSchemas;
+    }
+
+    /**
+     * @return the languages of the brief and summary presentations computed when a record is
+     * indexed.
+     */
+    public List<String> getPrecomputedLanguages() {
+        init();
+        return _precomputedLanguages;
+    }
+
 }
@@ -34,7 +34,6 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldType.NumericType;
 import org.apache.lucene.facet.taxonomy.TaxonomyReader;
 import org.apache.lucene.index.CorruptIndexException;
-import org.apache.lucene.index.Term;
 import org.apache.lucene.queries.ChainedFilter;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
@@ -47,7 +46,6 @@ import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
-import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.fao.geonet.Constants;
 import org.fao.geonet.GeonetContext;
@@ -59,7 +57,6 @@ import org.fao.geonet.csw.common.exceptions.CatalogException;
 import org.fao.geonet.csw.common.exceptions.InvalidParameterValueEx;
 import org.fao.geonet.csw.common.exceptions.NoApplicableCodeEx;
 import org.fao.geonet.domain.Pair;
-import org.fao.geonet.domain.ReservedOperation;
 import org.fao.geonet.exceptions.SearchExpiredEx;
 import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.region.Region;
@@ -72,7 +69,9 @@ import org.fao.geonet.kernel.search.LuceneIndexField;
 import org.fao.geonet.kernel.search.LuceneSearcher;
 import org.fao.geonet.kernel.search.LuceneUtils;
 import org.fao.geonet.kernel.search.MetadataRecordSelector;
+import org.fao.geonet.kernel.search.SearchCursor;
 import org.fao.geonet.kernel.search.SearchManager;
+import org.fao.geonet.kernel.search.VisibilityFilterCache;
 import org.fao.geonet.kernel.search.index.GeonetworkMultiReader;
 import org.fao.geonet.kernel.search.spatial.SpatialIndexWriter;
 import org.fao.geonet.kernel.setting.SettingInfo;
@@ -88,7 +87,6 @@ import org.springframework.context.ApplicationContext;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -102,6 +100,7 @@ import java.util.Set;
 import java.util.StringTokenizer;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import static org.fao.geonet.kernel.search.LuceneSearcher.parseLuceneQuery;
 
@@ -117,6 +116,7 @@ public class CatalogSearcher implements MetadataRecordSelector {
     private Sort _sort;
     private LuceneSearcher.LanguageSelection _lang;
     private long _searchToken;
+    private SearchCursor _nextCursor;
     private ApplicationContext _applicationContext;
     public CatalogSearcher(GMLConfiguration configuration,
                            Set<String> selector, Set<String> uuidselector, ApplicationContext applicationContext) {
@@ -130,33 +130,14 @@ public class CatalogSearcher implements MetadataRecordSelector {
     }
 
     /**
-     * Allow search on current user's groups only adding a BooleanClause to the search.
+     * Allow search on current user's groups only adding a BooleanClause to the search. The query
+     * is shared by all the users with the same groups.
      */
     public static Query getGroupsQuery(ServiceContext context) throws Exception {
         AccessManager am = context.getBean(AccessManager.class);
         Set<Integer> hs = am.getUserGroups(context.getUserSession(), context.getIpAddress(), false);
 
-        BooleanQuery query = new BooleanQuery();
-
-
-        BooleanClause.Occur occur = LuceneUtils
-            .convertRequiredAndProhibitedToOccur(false, false);
-        for (Integer groupId : hs) {
-            TermQuery tq = new TermQuery(new Term(ReservedOperation.view.getLuceneIndexCode(), groupId.toString()));
-            query.add(tq, occur);
-        }
-
-        // If user is authenticated, add the current user to the query because
-        // if an editor unchecked all
-        // visible options in privileges panel for all groups, then the metadata
-        // records could not be found anymore, even by its editor.
-        if (context.getUserSession().getUserId() != null) {
-            TermQuery tq = new TermQuery(new Term("_owner", context
-                .getUserSession().getUserId()));
-            query.add(tq, occur);
-        }
-
-        return query;
+        return context.getBean(VisibilityFilterCache.class).getQuery(hs, context.getUserSession().getUserId());
     }
 
     // ---------------------------------------------------------------------------
@@ -175,6 +156,23 @@ public class CatalogSearcher implements MetadataRecordSelector {
                                                   Element filterExpr, String filterVersion, String typeName,
                                                   Sort sort, ResultType resultType, int startPosition, int maxRecords,
                                                   int maxHitsInSummary, String cswServiceSpecificContraint) throws CatalogException {
+        return search(context, filterExpr, filterVersion, typeName, sort, resultType, startPosition, maxRecords,
+            maxHitsInSummary, cswServiceSpecificContraint, null);
+    }
+
+    /**
+     * Convert a filter to a lucene search and run the search.
+     *
+     * @param after the cursor returned by the search of the previous page or null. When set, the
+     *              start position is the position of the cursor and the search fails if the index
+     *              changed since the cursor was created.
+     * @return a list of id that match the given filter, ordered by sortFields
+     */
+    public Pair<Element, List<ResultItem>> search(ServiceContext context,
+                                                  Element filterExpr, String filterVersion, String typeName,
+                                                  Sort sort, ResultType resultType, int startPosition, int maxRecords,
+                                                  int maxHitsInSummary, String cswServiceSpecificContraint,
+                                                  @Nullable SearchCursor after) throws CatalogException {
         if (Log.isDebugEnabled(Geonet.CSW_SEARCH))
             Log.debug(Geonet.CSW_SEARCH, "CatalogSearch search");
         Element luceneExpr = filterToLucene(context, filterExpr);
@@ -212,6 +210,9 @@ public class CatalogSearcher implements MetadataRecordSelector {
             }
             _lang = LuceneSearcher.determineLanguage(context, filterExpr, sm.getSettingInfo());
 
+            if (after != null) {
+                _searchToken = after.getVersion();
+            }
             indexAndTaxonomy = sm.getIndexReader(_lang.presentationLanguage, _searchToken);
             Log.debug(Geonet.CSW_SEARCH, "Found searcher with " + indexAndTaxonomy.version + " comparing with " + _searchToken);
             if (_searchToken != -1L && indexAndTaxonomy.version != _searchToken) {
@@ -220,7 +221,9 @@ public class CatalogSearcher implements MetadataRecordSelector {
             _searchToken = indexAndTaxonomy.version;
             GeonetworkMultiReader reader = indexAndTaxonomy.indexReader;
             return performSearch(context, luceneExpr, filterExpr, filterVersion, sort, resultType, startPosition, maxRecords,
-                maxHitsInSummary, cswServiceSpecificContraint, reader, indexAndTaxonomy.taxonomyReader);
+                maxHitsInSummary, cswServiceSpecificContraint, reader, indexAndTaxonomy.taxonomyReader, after);
+        } catch (CatalogException e) {
+            throw e;
         } catch (Exception e) {
             Log.error(Geonet.CSW_SEARCH, "Error while searching metadata ");
             Log.error(Geonet.CSW_SEARCH, "  (C) StackTrace:\n" + Util.getStackTrace(e));
@@ -294,8 +297,7 @@ public class CatalogSearcher implements MetadataRecordSelector {
     }
 
     /**
-     * Use filter-to-lucene stylesheet to create a Lucene search query to be used by
-     * LuceneSearcher.
+     * Compile the filter to a Lucene search query to be used by LuceneSearcher.
      *
      * @return XML representation of Lucene query
      */
@@ -304,12 +306,10 @@ public class CatalogSearcher implements MetadataRecordSelector {
         if (filterExpr == null)
             return null;
 
-        Path styleSheet = context.getAppPath().resolve(Geonet.Path.CSW).resolve(Geonet.File.FILTER_TO_LUCENE);
-
         try {
-            Element result = Xml.transform(filterExpr, styleSheet);
-            removeEmptyBranches(result);
-            Log.info(Geonet.CSW_SEARCH, "filterToLucene result:\n" + Xml.getString(result));
+            Element result = _applicationContext.getBean(FilterToLuceneCompiler.class).compile(filterExpr);
+            if (Log.isDebugEnabled(Geonet.CSW_SEARCH))
+                Log.debug(Geonet.CSW_SEARCH, "filterToLucene result:\n" + Xml.getString(result));
             return result;
 
         } catch (Exception e) {
@@ -320,23 +320,6 @@ public class CatalogSearcher implements MetadataRecordSelector {
                 "Error during Filter to Lucene conversion : " + e);
         }
     }
-    // ---------------------------------------------------------------------------
-
-    @SuppressWarnings("unchecked")
-    private void removeEmptyBranches(Element element) {
-        List<Element> children = new ArrayList<Element>(element.getChildren());
-        for (Element e : children) {
-            removeEmptyBranches(e);
-        }
-
-        if (element.getChildren().isEmpty() &&
-            element.getTextTrim().isEmpty() &&
-            element.getAttribute("fld") == null &&
-            !element.getName().equals("MatchAllDocsQuery")) {
-            element.detach();
-        }
-    }
-
 
     // ---------------------------------------------------------------------------
 
@@ -442,7 +425,8 @@ public class CatalogSearcher implements MetadataRecordSelector {
                                                           @Nonnull Element filterExpr, String filterVersion, Sort sort,
                                                           ResultType resultType, int startPosition, int maxRecords,
                                                           int maxHitsInSummary, String cswServiceSpecificContraint,
-                                                          GeonetworkMultiReader reader, TaxonomyReader taxonomyReader)
+                                                          GeonetworkMultiReader reader, TaxonomyReader taxonomyReader,
+                                                          @Nullable SearchCursor after)
         throws Exception {
 
         if (Log.isDebugEnabled(Geonet.CSW_SEARCH)) {
@@ -536,16 +520,28 @@ public class CatalogSearcher implements MetadataRecordSelector {
         String geomWkt = null;
 
         _query = LuceneSearcher.appendPortalFilter(_query, luceneConfig);
-        Pair<TopDocs, Element> searchResults = LuceneSearcher.doSearchAndMakeSummary(numHits, startPosition - 1,
-            maxRecords + startPosition - 1, _lang.presentationLanguage,
+
+        // In cursor mode, only the page following the cursor is collected
+        int offset = 0;
+        if (after != null) {
+            if (!after.matches(_query, _sort)) {
+                throw new InvalidParameterValueEx(Geonet.SearchResult.CURSOR, "Cursor was not created for this search");
+            }
+            offset = after.getPosition();
+            numHits = Math.max(1, maxRecords);
+        }
+        Pair<TopDocs, Element> searchResults = LuceneSearcher.doSearchAndMakeSummary(numHits, startPosition - 1 - offset,
+            maxRecords + startPosition - 1 - offset, _lang.presentationLanguage,
             luceneConfig.getSummaryTypes().get(resultType.toString()), luceneConfig,
             reader, _query, wrapSpatialFilter(),
-            _sort, taxonomyReader, buildSummary
+            _sort, after == null ? null : after.getAfter(), taxonomyReader, buildSummary
         );
         TopDocs hits = searchResults.one();
         Element summary = searchResults.two();
 
         numHits = Integer.parseInt(summary.getAttributeValue("count"));
+        _nextCursor = startPosition - 1 + hits.scoreDocs.length < numHits ?
+            SearchCursor.next(_searchToken, startPosition - 1, _query, _sort, hits.scoreDocs) : null;
         if (Log.isDebugEnabled(Geonet.CSW_SEARCH)) {
             Log.debug(Geonet.CSW_SEARCH, "Records matched : " + numHits);
         }
@@ -572,6 +568,10 @@ public class CatalogSearcher implements MetadataRecordSelector {
             String id = doc.get("_id");
             ResultItem ri = new ResultItem(id);
             results.add(ri);
+            String changeDate = doc.get(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE);
+            if (changeDate != null) {
+                ri.add(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE, changeDate);
+            }
             for (String field : getFieldMapper().getMappedFields()) {
                 String value = doc.get(field);
                 if (value != null) {
@@ -584,6 +584,15 @@ public class CatalogSearcher implements MetadataRecordSelector {
         return Pair.read(summary, results);
     }
 
+    /**
+     * @return the cursor of the page following the last search or null if there are no more
+     * hits.
+     */
+    @Nullable
+    public SearchCursor getNextCursor() {
+        return _nextCursor;
+    }
+
     private Filter wrapSpatialFilter() {
         Filter duplicateRemovingFilter = new DuplicateDocFilter(_query);
         Filter cFilter = null;
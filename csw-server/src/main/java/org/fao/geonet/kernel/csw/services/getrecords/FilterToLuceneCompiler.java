@@ -0,0 +1,544 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.csw.services.getrecords;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.fao.geonet.csw.common.Csw;
+import org.jdom.Attribute;
+import org.jdom.Content;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.Text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles an OGC filter to the XML representation of a Lucene query used by {@link
+ * org.fao.geonet.kernel.search.LuceneSearcher#makeLocalisedQuery}.
+ *
+ * It produces the same result as the filter-to-lucene stylesheet it replaces without the cost of
+ * a transformation for each search. Compiled queries are cached by filter, the cache key ignores
+ * namespace prefixes and attribute order.
+ */
+public class FilterToLuceneCompiler {
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+
+    private static final Namespace OGC = Csw.NAMESPACE_OGC;
+    private static final String UNKNOWN_CONTENT = "Unknown content of expression";
+    private static final String SIMILARITY = "similarity";
+    private static final String GROUP = "group";
+    private static final String IS_TEMPLATE = "_isTemplate";
+    private static final String OP_VIEW = "_op0";
+    /**
+     * Fields searched with a TermQuery even when a similarity is set.
+     */
+    private static final Set<String> EXACT_FIELDS = new HashSet<String>(Arrays.asList(
+        "_groupOwner", "_owner", "_validsch", "_validxsd", IS_TEMPLATE, "_isHarvested", "_valid",
+        "_visibleForOwnerOnly"));
+    private static final Set<String> SPATIAL_OPERATORS = new HashSet<String>(Arrays.asList(
+        "BBOX", "Equals", "Disjoint", "Touches", "Within", "Overlaps", "Crosses", "Intersects",
+        "Contains", "DWithin", "Beyond"));
+    private static final Pattern NUMBER = Pattern.compile("[+-]?(\\d+(\\.\\d*)?|\\.\\d+)([eE][+-]?\\d+)?");
+
+    private final Cache<String, Element> cache;
+
+    public FilterToLuceneCompiler() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public FilterToLuceneCompiler(int cacheSize) {
+        cache = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    /**
+     * @return the query matching the filter. It is a copy which the caller can modify.
+     * @throws IllegalArgumentException if the filter does not compile to a single query.
+     */
+    public Element compile(Element filter) {
+        String key = key(filter);
+        Element query = cache.getIfPresent(key);
+        if (query == null) {
+            query = doCompile(filter);
+            cache.put(key, query);
+        }
+        return (Element) query.clone();
+    }
+
+    private Element doCompile(Element filter) {
+        List<Element> result = new ArrayList<Element>();
+        new Compilation(hasPropertyName(filter, IS_TEMPLATE)).apply(filter, result);
+        if (result.size() != 1) {
+            throw new IllegalArgumentException("Filter compiles to " + result.size() + " queries instead of one");
+        }
+        Element query = result.get(0);
+        removeEmptyBranches(query);
+        return query;
+    }
+
+    /**
+     * @return true if the element or one of its descendants has a property name equal to name.
+     */
+    private static boolean hasPropertyName(Element element, String name) {
+        if (anyChildValueEquals(element, "PropertyName", name)) {
+            return true;
+        }
+        for (Element child : children(element)) {
+            if (hasPropertyName(child, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void removeEmptyBranches(Element element) {
+        for (Element child : new ArrayList<Element>(children(element))) {
+            removeEmptyBranches(child);
+        }
+
+        if (element.getChildren().isEmpty() &&
+            element.getTextTrim().isEmpty() &&
+            element.getAttribute("fld") == null &&
+            !element.getName().equals("MatchAllDocsQuery")) {
+            element.detach();
+        }
+    }
+
+    /**
+     * The compilation of one filter, each method matches a template of the filter-to-lucene
+     * stylesheet.
+     */
+    private static final class Compilation {
+        private final boolean filtersTemplates;
+
+        private Compilation(boolean hasTemplateCriteria) {
+            this.filtersTemplates = !hasTemplateCriteria;
+        }
+
+        private void apply(Element element, List<Element> out) {
+            if (element.getNamespace().equals(OGC)) {
+                String name = element.getName();
+                if (name.equals("PropertyIsEqualTo")) {
+                    equalTo(element, out);
+                    return;
+                } else if (name.equals("PropertyIsNotEqualTo")) {
+                    notEqualTo(element, out);
+                    return;
+                } else if (name.equals("PropertyIsLessThan")) {
+                    range(element, "upperTxt", "false", out);
+                    return;
+                } else if (name.equals("PropertyIsLessThanOrEqualTo") || name.equals("PropertyIsLessThanEqualTo")) {
+                    range(element, "upperTxt", "true", out);
+                    return;
+                } else if (name.equals("PropertyIsGreaterThan")) {
+                    range(element, "lowerTxt", "false", out);
+                    return;
+                } else if (name.equals("PropertyIsGreaterThanOrEqualTo") || name.equals("PropertyIsGreaterThanEqualTo")) {
+                    range(element, "lowerTxt", "true", out);
+                    return;
+                } else if (name.equals("PropertyIsLike")) {
+                    like(element, out);
+                    return;
+                } else if (name.equals("PropertyIsBetween")) {
+                    between(element, out);
+                    return;
+                } else if (name.equals("PropertyIsNull")) {
+                    isNull(element, out);
+                    return;
+                } else if (name.equals("And")) {
+                    out.add(logical(element, "true", "false"));
+                    return;
+                } else if (name.equals("Or")) {
+                    out.add(logical(element, "false", "false"));
+                    return;
+                } else if (name.equals("Not") && !hasSpatialOperator(element)) {
+                    not(element, out);
+                    return;
+                } else if (SPATIAL_OPERATORS.contains(name)) {
+                    out.add(new Element("MatchAllDocsQuery"));
+                    return;
+                } else if (name.equals("Filter") && element.getChildren().isEmpty()) {
+                    out.add(termQuery(IS_TEMPLATE, "n"));
+                    return;
+                }
+            }
+            other(element, out);
+        }
+
+        private void applyChildren(Element element, List<Element> out) {
+            for (Element child : children(element)) {
+                apply(child, out);
+            }
+        }
+
+        private void equalTo(Element element, List<Element> out) {
+            if (anyChildValueIn(element, "PropertyName", EXACT_FIELDS)) {
+                out.add(termQuery(childValue(element, "PropertyName"), childValue(element, "Literal")));
+                return;
+            }
+            if (anyChildValueEquals(element, "PropertyName", GROUP)) {
+                out.add(termQuery(OP_VIEW, childValue(element, "Literal")));
+                return;
+            }
+
+            String similarity = "1";
+            for (Element sibling : precedingSiblings(element)) {
+                if (sibling.getName().equals("PropertyIsEqualTo") && sibling.getNamespace().equals(OGC) &&
+                    anyChildValueEquals(sibling, "PropertyName", SIMILARITY)) {
+                    similarity = childValue(sibling, "Literal");
+                }
+            }
+
+            if (element.getChild("Literal", OGC) == null) {
+                out.add(error(element));
+            } else if (toNumber(similarity) >= 1.0) {
+                out.add(termQuery(childValue(element, "PropertyName"), childValue(element, "Literal")));
+            } else {
+                Element query = new Element("FuzzyQuery");
+                query.setAttribute("fld", childValue(element, "PropertyName"));
+                query.setAttribute("txt", childValue(element, "Literal"));
+                query.setAttribute("sim", similarity);
+                out.add(query);
+            }
+        }
+
+        private void notEqualTo(Element element, List<Element> out) {
+            if (!hasPropertyNameAndLiteral(element)) {
+                out.add(error(element));
+                return;
+            }
+            out.add(new Element("BooleanQuery")
+                .addContent(clause("true", "false").addContent(matchAll()))
+                .addContent(clause("false", "true")
+                    .addContent(termQuery(childValue(element, "PropertyName"), childValue(element, "Literal")))));
+        }
+
+        private void range(Element element, String boundAttribute, String inclusive, List<Element> out) {
+            if (!hasPropertyNameAndLiteral(element)) {
+                out.add(error(element));
+                return;
+            }
+            Element query = new Element("RangeQuery");
+            query.setAttribute("fld", childValue(element, "PropertyName"));
+            query.setAttribute(boundAttribute, childValue(element, "Literal"));
+            query.setAttribute("inclusive", inclusive);
+            out.add(query);
+        }
+
+        private void like(Element element, List<Element> out) {
+            String wildCard = element.getAttributeValue("wildCard");
+            if (element.getChild("PropertyName", OGC) != null && wildCard != null &&
+                anyChildValueEquals(element, "Literal", wildCard)) {
+                // If search for all, nothing (empty query) is faster than WildcardQuery or MatchAllDocsQuery.
+                return;
+            }
+            if (!hasPropertyNameAndLiteral(element)) {
+                out.add(error(element));
+                return;
+            }
+
+            String field = childValue(element, "PropertyName");
+            String singleChar = element.getAttributeValue("singleChar");
+            Element query = new Element("BooleanQuery");
+            for (String token : tokenize(childValue(element, "Literal"))) {
+                String text = translate(translate(token, wildCard == null ? "" : wildCard, "*"),
+                    singleChar == null ? "" : singleChar, "?");
+                Element wildcardQuery = new Element("WildcardQuery");
+                wildcardQuery.setAttribute("fld", field);
+                wildcardQuery.setAttribute("txt", text);
+                query.addContent(clause("true", "false").addContent(wildcardQuery));
+            }
+            out.add(query);
+        }
+
+        private void between(Element element, List<Element> out) {
+            Element lower = firstBoundary(element, "LowerBoundary");
+            Element upper = firstBoundary(element, "UpperBoundary");
+            if (element.getChild("PropertyName", OGC) == null || lower == null || upper == null) {
+                out.add(error(element));
+                return;
+            }
+            Element query = new Element("RangeQuery");
+            query.setAttribute("fld", childValue(element, "PropertyName"));
+            query.setAttribute("lowerTxt", lower.getValue());
+            query.setAttribute("upperTxt", upper.getValue());
+            query.setAttribute("inclusive", "true");
+            out.add(query);
+        }
+
+        private void isNull(Element element, List<Element> out) {
+            Element wildcardQuery = new Element("WildcardQuery");
+            wildcardQuery.setAttribute("fld", childValue(element, "PropertyName"));
+            wildcardQuery.setAttribute("txt", "*");
+            out.add(new Element("BooleanQuery")
+                .addContent(clause("true", "false").addContent(matchAll()))
+                .addContent(clause("false", "true").addContent(wildcardQuery)));
+        }
+
+        private Element logical(Element element, String required, String prohibited) {
+            Element query = new Element("BooleanQuery");
+            for (Element operand : operands(element)) {
+                query.addContent(clause(required, prohibited).addContent(applyTo(operand)));
+            }
+            return query;
+        }
+
+        private void not(Element element, List<Element> out) {
+            Element query = new Element("BooleanQuery");
+            query.addContent(clause("true", "false").addContent(matchAll()));
+            for (Element operand : operands(element)) {
+                query.addContent(clause("false", "true").addContent(applyTo(operand)));
+            }
+            out.add(query);
+        }
+
+        /**
+         * Any other element: its children are compiled and, unless the filter has criteria on
+         * templates, templates are excluded from the results.
+         */
+        private void other(Element element, List<Element> out) {
+            if (!filtersTemplates) {
+                applyChildren(element, out);
+                return;
+            }
+            Element criteria = clause("true", "false");
+            List<Element> children = new ArrayList<Element>();
+            applyChildren(element, children);
+            criteria.addContent(children);
+            out.add(new Element("BooleanQuery")
+                .addContent(criteria)
+                .addContent(clause("true", "false").addContent(termQuery(IS_TEMPLATE, "n"))));
+        }
+
+        private List<Element> applyTo(Element element) {
+            List<Element> result = new ArrayList<Element>();
+            apply(element, result);
+            return result;
+        }
+    }
+
+    /**
+     * @return the operands of a logical operator, criteria on similarity and group excepted.
+     */
+    private static List<Element> operands(Element element) {
+        List<Element> operands = new ArrayList<Element>();
+        for (Element child : children(element)) {
+            List<Element> names = ogcChildren(child, "PropertyName");
+            if (names.isEmpty() || (anyValueDiffers(names, SIMILARITY) && anyValueDiffers(names, GROUP))) {
+                operands.add(child);
+            }
+        }
+        return operands;
+    }
+
+    private static boolean hasSpatialOperator(Element element) {
+        for (Element child : children(element)) {
+            if (child.getNamespace().equals(OGC) && SPATIAL_OPERATORS.contains(child.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasPropertyNameAndLiteral(Element element) {
+        return element.getChild("PropertyName", OGC) != null && element.getChild("Literal", OGC) != null;
+    }
+
+    /**
+     * @return the first literal of the boundaries named name or null if there is none.
+     */
+    private static Element firstBoundary(Element element, String name) {
+        for (Element boundary : ogcChildren(element, name)) {
+            Element literal = boundary.getChild("Literal", OGC);
+            if (literal != null) {
+                return literal;
+            }
+        }
+        return null;
+    }
+
+    private static List<Element> precedingSiblings(Element element) {
+        Element parent = element.getParentElement();
+        if (parent == null) {
+            return Collections.emptyList();
+        }
+        List<Element> siblings = children(parent);
+        return siblings.subList(0, siblings.indexOf(element));
+    }
+
+    private static Element termQuery(String field, String text) {
+        Element query = new Element("TermQuery");
+        query.setAttribute("fld", field);
+        query.setAttribute("txt", text);
+        return query;
+    }
+
+    private static Element matchAll() {
+        Element query = new Element("MatchAllDocsQuery");
+        query.setAttribute("required", "true");
+        query.setAttribute("prohibited", "false");
+        return query;
+    }
+
+    private static Element clause(String required, String prohibited) {
+        Element clause = new Element("BooleanClause");
+        clause.setAttribute("required", required);
+        clause.setAttribute("prohibited", prohibited);
+        return clause;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Element error(Element expression) {
+        Element error = new Element("error");
+        error.setAttribute("type", UNKNOWN_CONTENT);
+        Element copy = (Element) expression.clone();
+        // Keep the namespaces declared by the ancestors of the expression like xsl:copy-of
+        for (Element ancestor = expression.getParentElement(); ancestor != null; ancestor = ancestor.getParentElement()) {
+            copy.addNamespaceDeclaration(ancestor.getNamespace());
+            for (Namespace namespace : (List<Namespace>) ancestor.getAdditionalNamespaces()) {
+                copy.addNamespaceDeclaration(namespace);
+            }
+        }
+        error.addContent(copy);
+        return error;
+    }
+
+    /**
+     * @return the value of the first child named name or an empty string if there is none.
+     */
+    private static String childValue(Element element, String name) {
+        Element child = element.getChild(name, OGC);
+        return child == null ? "" : child.getValue();
+    }
+
+    private static boolean anyChildValueEquals(Element element, String name, String value) {
+        return anyChildValueIn(element, name, Collections.singleton(value));
+    }
+
+    private static boolean anyChildValueIn(Element element, String name, Set<String> values) {
+        for (Element child : ogcChildren(element, name)) {
+            if (values.contains(child.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean anyValueDiffers(List<Element> elements, String value) {
+        for (Element element : elements) {
+            if (!element.getValue().equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Element> children(Element element) {
+        return element.getChildren();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Element> ogcChildren(Element element, String name) {
+        return element.getChildren(name, OGC);
+    }
+
+    /**
+     * XPath number(): NaN if the value is not a number.
+     */
+    private static double toNumber(String value) {
+        String trimmed = value.trim();
+        return NUMBER.matcher(trimmed).matches() ? Double.parseDouble(trimmed) : Double.NaN;
+    }
+
+    /**
+     * XPath tokenize() on single spaces: empty tokens are kept but an empty value has no token.
+     */
+    private static List<String> tokenize(String value) {
+        if (value.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(value.split(" ", -1));
+    }
+
+    /**
+     * XPath translate(): characters of from are replaced by the character at the same position in
+     * to or removed if to is shorter.
+     */
+    private static String translate(String value, String from, String to) {
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            int index = from.indexOf(c);
+            if (index < 0) {
+                result.append(c);
+            } else if (index < to.length()) {
+                result.append(to.charAt(index));
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return a key identifying the filter regardless of namespace prefixes and attribute order.
+     */
+    static String key(Element filter) {
+        StringBuilder key = new StringBuilder();
+        appendKey(filter, key);
+        return key.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendKey(Element element, StringBuilder key) {
+        key.append("<{").append(element.getNamespaceURI()).append('}').append(element.getName());
+        List<String> attributes = new ArrayList<String>();
+        for (Attribute attribute : (List<Attribute>) element.getAttributes()) {
+            attributes.add("{" + attribute.getNamespaceURI() + "}" + attribute.getName() + "=" +
+                escape(attribute.getValue()));
+        }
+        Collections.sort(attributes);
+        for (String attribute : attributes) {
+            key.append(' ').append(attribute);
+        }
+        key.append('>');
+        for (Content content : (List<Content>) element.getContent()) {
+            if (content instanceof Element) {
+                appendKey((Element) content, key);
+            } else if (content instanceof Text) {
+                key.append(escape(((Text) content).getText()));
+            }
+        }
+        key.append("</>");
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+    }
+}
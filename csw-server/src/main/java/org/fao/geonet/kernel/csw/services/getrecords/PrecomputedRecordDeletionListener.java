@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.csw.services.getrecords;
+
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.events.md.MetadataRemove;
+import org.fao.geonet.utils.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+
+import java.io.IOException;
+
+/**
+ * Removes the precomputed presentations of the records being deleted.
+ */
+public class PrecomputedRecordDeletionListener implements ApplicationListener<MetadataRemove> {
+    @Autowired
+    private PrecomputedRecordStore store;
+
+    @Override
+    public void onApplicationEvent(MetadataRemove event) {
+        String id = String.valueOf(event.getMd().getId());
+        try {
+            store.removeAll(id);
+        } catch (IOException e) {
+            // Not worth failing the deletion, the presentations of a deleted record are never used
+            Log.error(Geonet.CSW, "Failed to remove the precomputed CSW presentations of metadata " + id + ": " + e.getMessage(), e);
+        }
+    }
+}
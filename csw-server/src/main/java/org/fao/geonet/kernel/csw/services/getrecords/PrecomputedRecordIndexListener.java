@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.csw.services.getrecords;
+
+import jeeves.server.context.ServiceContext;
+import jeeves.xlink.Processor;
+import jeeves.xlink.XLink;
+
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.csw.common.ElementSetName;
+import org.fao.geonet.csw.common.ResultType;
+import org.fao.geonet.csw.common.exceptions.InvalidParameterValueEx;
+import org.fao.geonet.domain.AbstractMetadata;
+import org.fao.geonet.domain.MetadataType;
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.domain.ReservedOperation;
+import org.fao.geonet.events.md.MetadataIndexCompleted;
+import org.fao.geonet.kernel.SchemaManager;
+import org.fao.geonet.kernel.csw.CatalogConfiguration;
+import org.fao.geonet.kernel.datamanager.IMetadataManager;
+import org.fao.geonet.kernel.datamanager.IMetadataUtils;
+import org.fao.geonet.kernel.schema.MetadataSchema;
+import org.fao.geonet.kernel.setting.SettingManager;
+import org.fao.geonet.kernel.setting.Settings;
+import org.fao.geonet.utils.Log;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Attribute;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * Computes the brief and summary presentations of a record in the configured output schemas and
+ * languages once it is indexed.
+ *
+ * The presentations are computed by a background thread so that indexing does not wait for the
+ * stylesheets. When more records are waiting than {@link #MAX_PENDING_RECORDS}, eg. while the
+ * catalog is reindexed, the others are left out and presented when they are requested.
+ *
+ * Records with elements withheld from some users (see {@link MetadataSchema#getOperationFilter})
+ * are not precomputed because their presentation depends on the privileges of the user, nor are
+ * records with XLinks to the catalog itself, which are not cached.
+ */
+public class PrecomputedRecordIndexListener implements ApplicationListener<MetadataIndexCompleted> {
+    private static final int MAX_PENDING_RECORDS = 10000;
+    private static final ReservedOperation[] FILTERED_OPERATIONS = {
+        ReservedOperation.editing, ReservedOperation.download, ReservedOperation.dynamic
+    };
+
+    @Autowired
+    private PrecomputedRecordStore store;
+    @Autowired
+    private CatalogConfiguration catalogConfig;
+    @Autowired
+    private SchemaManager schemaManager;
+
+    /**
+     * Ids of the records waiting to be computed. A record indexed again while it is waiting is
+     * computed once, from the record as it is when the task runs.
+     */
+    private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ExecutorService executor;
+
+    public PrecomputedRecordIndexListener() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory();
+        threadFactory.setDaemon(true);
+        threadFactory.setThreadNamePrefix("PrecomputedRecords-");
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(MAX_PENDING_RECORDS), threadFactory);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void onApplicationEvent(MetadataIndexCompleted event) {
+        ServiceContext context = ServiceContext.get();
+        if (catalogConfig.getPrecomputedOutputSchemas().isEmpty() || catalogConfig.getPrecomputedLanguages().isEmpty()
+            || context == null) {
+            return;
+        }
+
+        final String id = String.valueOf(event.getMd().getId());
+        if (!pending.add(id)) {
+            return;
+        }
+        final ServiceContext taskContext = context.createThreadContext();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    pending.remove(id);
+                    taskContext.setAsThreadLocal();
+                    precompute(taskContext, id);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(id);
+            Log.debug(Geonet.CSW, "Too many records waiting, the CSW presentations of metadata " + id + " are not precomputed");
+        }
+    }
+
+    void precompute(ServiceContext context, String id) {
+        try {
+            store.removeAll(id);
+            AbstractMetadata metadata = context.getBean(IMetadataUtils.class).findOne(id);
+            if (metadata == null || metadata.getDataInfo().getType() != MetadataType.METADATA) {
+                return;
+            }
+
+            String schema = metadata.getDataInfo().getSchemaId();
+            Set<String> xlinks = getRemoteXLinks(context, metadata.getXmlData(false));
+            if (xlinks == null) {
+                return;
+            }
+            Element md = context.getBean(IMetadataManager.class).getMetadata(context, id, false, false, false, false);
+            if (md == null || hasFilteredElements(schemaManager.getSchema(schema), md)) {
+                return;
+            }
+
+            String changeDate = metadata.getDataInfo().getChangeDate().getDateAndTime();
+            for (String outputSchema : catalogConfig.getPrecomputedOutputSchemas()) {
+                for (ElementSetName elementSetName : new ElementSetName[]{ElementSetName.BRIEF, ElementSetName.SUMMARY}) {
+                    for (String lang : catalogConfig.getPrecomputedLanguages()) {
+                        Element record;
+                        try {
+                            record = SearchController.presentMetadata(context, schemaManager, schema, md, outputSchema,
+                                elementSetName, ResultType.RESULTS, id, lang);
+                        } catch (InvalidParameterValueEx e) {
+                            // No presentation for this output schema
+                            continue;
+                        }
+                        store.put(id, schema, changeDate, outputSchema, elementSetName, lang, record, xlinks);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.error(Geonet.CSW, "Failed to precompute the CSW presentations of metadata " + id + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the remote XLinks resolved when the record is presented, or null if it has XLinks to
+     * the catalog itself.
+     */
+    private static Set<String> getRemoteXLinks(ServiceContext context, Element md) {
+        Set<String> xlinks = new LinkedHashSet<String>();
+        if (!context.getBean(SettingManager.class).getValueAsBool(Settings.SYSTEM_XLINKRESOLVER_ENABLE, false)) {
+            return xlinks;
+        }
+        for (Attribute xlink : Processor.getXLinks(md)) {
+            String href = xlink.getValue();
+            if (href.startsWith(XLink.LOCAL_PROTOCOL)) {
+                return null;
+            }
+            if (!href.isEmpty() && !href.startsWith("#")) {
+                xlinks.add(href);
+            }
+        }
+        return xlinks;
+    }
+
+    private static boolean hasFilteredElements(MetadataSchema metadataSchema, Element md) throws JDOMException {
+        for (ReservedOperation operation : FILTERED_OPERATIONS) {
+            Pair<String, Element> filter = metadataSchema.getOperationFilter(operation);
+            if (filter != null && !Xml.selectNodes(md, filter.one(), metadataSchema.getNamespaces()).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
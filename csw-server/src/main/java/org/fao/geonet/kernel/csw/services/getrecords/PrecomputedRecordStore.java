@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.csw.services.getrecords;
+
+
+import jeeves.xlink.Processor;
+
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.csw.common.ElementSetName;
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.kernel.GeonetworkDataDirectory;
+import org.fao.geonet.kernel.SchemaManager;
+import org.fao.geonet.lib.Lib;
+import org.fao.geonet.util.Sha1Encoder;
+import org.fao.geonet.utils.IO;
+import org.fao.geonet.utils.Log;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nullable;
+
+/**
+ * Brief and summary CSW presentations of the records computed when they are indexed, so that
+ * GetRecords does not run the element set stylesheets for each record of each response.
+ *
+ * The presentations are saved compressed in the html cache directory, one file per record, output
+ * schema, element set and language. An entry is only used if none of what it was computed from
+ * changed since: the change date of the record, the modification dates of the stylesheet and of
+ * the stylesheets it includes or imports, and the fragments of the remote XLinks of the record
+ * as found in the XLink cache.
+ */
+public class PrecomputedRecordStore {
+    private static final String BASE_CACHE_DIR = "csw-records";
+    private static final String EXTENSION = ".xml.gz";
+
+    @Autowired
+    private GeonetworkDataDirectory geonetworkDataDir;
+    @Autowired
+    private SchemaManager schemaManager;
+
+    /**
+     * Stylesheets included or imported by each presentation stylesheet, with the modification
+     * date of the presentation stylesheet they were read from.
+     */
+    private final ConcurrentMap<Path, Pair<Long, Set<Path>>> stylesheetDependencies =
+        new ConcurrentHashMap<Path, Pair<Long, Set<Path>>>();
+
+    /**
+     * @return true if the presentations of the element set can be precomputed.
+     */
+    public static boolean isPrecomputed(ElementSetName elementSetName) {
+        return elementSetName == ElementSetName.BRIEF || elementSetName == ElementSetName.SUMMARY;
+    }
+
+    /**
+     * @return the schema of the record and its precomputed presentation or null if there is no up to
+     * date presentation.
+     */
+    @Nullable
+    public Pair<String, Element> get(String id, String outputSchema, ElementSetName elementSetName, String lang,
+                                     @Nullable String changeDate) {
+        if (changeDate == null) {
+            return null;
+        }
+        Path file = getFile(id, outputSchema, elementSetName, lang);
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+            new BufferedInputStream(Files.newInputStream(file))))) {
+            String storedChangeDate = in.readUTF();
+            String schema = in.readUTF();
+            String stylesheetVersion = in.readUTF();
+            if (!changeDate.equals(storedChangeDate)
+                || !getStylesheetVersion(schema, outputSchema, elementSetName).equals(stylesheetVersion)) {
+                return null;
+            }
+            int xlinks = in.readInt();
+            for (int i = 0; i < xlinks; i++) {
+                String href = in.readUTF();
+                String hash = in.readUTF();
+                if (!hash.equals(getXLinkHash(href))) {
+                    return null;
+                }
+            }
+            return Pair.read(schema, Xml.loadStream(in));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (Exception e) {
+            Log.warning(Geonet.CSW_SEARCH, "Failed to read precomputed presentation " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Saves the presentation of a record.
+     *
+     * @param xlinks the remote XLinks resolved in the record the presentation was computed from.
+     *               Nothing is saved if one of them is not in the XLink cache, as the presentation
+     *               could not be checked to be up to date.
+     */
+    public void put(String id, String schema, String changeDate, String outputSchema, ElementSetName elementSetName,
+                    String lang, Element record, Collection<String> xlinks) throws IOException {
+        List<Pair<String, String>> xlinkHashes = new ArrayList<Pair<String, String>>(xlinks.size());
+        for (String href : xlinks) {
+            String hash = getXLinkHash(href);
+            if (hash == null) {
+                return;
+            }
+            xlinkHashes.add(Pair.read(href, hash));
+        }
+
+        Path file = getFile(id, outputSchema, elementSetName, lang);
+        Files.createDirectories(file.getParent());
+        Path tmpFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                DataOutputStream dataOut = new DataOutputStream(out);
+                dataOut.writeUTF(changeDate);
+                dataOut.writeUTF(schema);
+                dataOut.writeUTF(getStylesheetVersion(schema, outputSchema, elementSetName));
+                dataOut.writeInt(xlinkHashes.size());
+                for (Pair<String, String> xlinkHash : xlinkHashes) {
+                    dataOut.writeUTF(xlinkHash.one());
+                    dataOut.writeUTF(xlinkHash.two());
+                }
+                dataOut.flush();
+                new XMLOutputter(Format.getRawFormat()).output(record, out);
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Removes all the presentations of a record.
+     */
+    public void removeAll(String id) throws IOException {
+        Path dir = getMetadataDir(id);
+        if (Files.exists(dir)) {
+            IO.deleteFileOrDirectory(dir);
+        }
+    }
+
+    /**
+     * @return the hash of the fragment of a remote XLink in the XLink cache or null if it is not
+     * cached.
+     */
+    @Nullable
+    protected String getXLinkHash(String href) {
+        try {
+            Element fragment = Processor.getCachedXLink(href);
+            return fragment == null ? null : Sha1Encoder.encodeString(Xml.getString(fragment));
+        } catch (Exception e) {
+            Log.warning(Geonet.CSW_SEARCH, "Failed to read XLink " + href + " from the cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the modification dates of the presentation stylesheet and of the stylesheets it
+     * includes or imports.
+     */
+    private String getStylesheetVersion(String schema, String outputSchema, ElementSetName elementSetName)
+        throws IOException {
+        Path styleSheet = schemaManager.getSchemaCSWPresentDir(schema).resolve(outputSchema + "-" + elementSetName + ".xsl");
+        if (!Files.exists(styleSheet)) {
+            return "";
+        }
+        long lastModified = Files.getLastModifiedTime(styleSheet).toMillis();
+        Pair<Long, Set<Path>> dependencies = stylesheetDependencies.get(styleSheet);
+        if (dependencies == null || dependencies.one() != lastModified) {
+            dependencies = Pair.read(lastModified, Xml.getStylesheetDependencies(styleSheet));
+            stylesheetDependencies.put(styleSheet, dependencies);
+        }
+        StringBuilder version = new StringBuilder();
+        for (Path dependency : dependencies.two()) {
+            version.append(Files.exists(dependency) ? Files.getLastModifiedTime(dependency).toMillis() : -1).append(';');
+        }
+        return version.toString();
+    }
+
+    private Path getFile(String id, String outputSchema, ElementSetName elementSetName, String lang) {
+        return getMetadataDir(id).resolve(outputSchema + "-" + elementSetName + "-" + lang + EXTENSION);
+    }
+
+    private Path getMetadataDir(String id) {
+        return Lib.resource.getMetadataDir(geonetworkDataDir.getHtmlCacheDir().resolve(BASE_CACHE_DIR), id);
+    }
+}
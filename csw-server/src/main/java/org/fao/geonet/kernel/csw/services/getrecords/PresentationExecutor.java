@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.csw.services.getrecords;
+
+import jeeves.server.context.ServiceContext;
+
+import org.fao.geonet.ApplicationContextHolder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retrieves and transforms the records of search results concurrently on threads shared by all
+ * the requests.
+ *
+ * A request never has more than maxConcurrencyPerRequest records being processed at the same
+ * time, so that a client requesting large pages (eg. a harvester) does not starve the other
+ * ones, and the results are handed over in rank order as soon as they and all the previous ones
+ * are available.
+ *
+ * The application context and a copy of the service context of the requesting thread are made
+ * available to the tasks because presentation stylesheets rely on them. Each task gets its own
+ * service context, which is not thread safe, and the thread gets its previous one back once the
+ * task is done.
+ */
+public class PresentationExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final int maxConcurrencyPerRequest;
+
+    public PresentationExecutor(int threads, int maxConcurrencyPerRequest) {
+        this.maxConcurrencyPerRequest = Math.max(1, maxConcurrencyPerRequest);
+        if (threads > 1 && this.maxConcurrencyPerRequest > 1) {
+            this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            // not the context of the request which happened to start the thread
+                            ServiceContext.clearThreadLocal();
+                            r.run();
+                        }
+                    }, "csw-presentation-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.executor.allowCoreThreadTimeOut(true);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    public int getMaxConcurrencyPerRequest() {
+        return maxConcurrencyPerRequest;
+    }
+
+    /**
+     * Runs the tasks and hands their results over to the handler in the order of the tasks.
+     *
+     * If a task or the handler fails, the tasks not started yet are cancelled and the exception is
+     * rethrown.
+     */
+    public <T> void execute(List<? extends Callable<T>> tasks, ResultHandler<T> handler) throws Exception {
+        if (executor == null || tasks.size() < 2) {
+            for (Callable<T> task : tasks) {
+                handler.handle(task.call());
+            }
+            return;
+        }
+
+        final ServiceContext serviceContext = ServiceContext.get();
+        final ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+        Deque<Future<T>> running = new ArrayDeque<Future<T>>();
+        int next = 0;
+        try {
+            while (next < tasks.size() && running.size() < maxConcurrencyPerRequest) {
+                running.add(submit(tasks.get(next++), serviceContext, applicationContext));
+            }
+            while (!running.isEmpty()) {
+                T result = await(running.poll());
+                if (next < tasks.size()) {
+                    running.add(submit(tasks.get(next++), serviceContext, applicationContext));
+                }
+                handler.handle(result);
+            }
+        } finally {
+            for (Future<T> future : running) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private <T> Future<T> submit(final Callable<T> task, final ServiceContext serviceContext,
+                                 final ConfigurableApplicationContext applicationContext) {
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                ServiceContext previousServiceContext = ServiceContext.get();
+                ConfigurableApplicationContext previous = ApplicationContextHolder.get();
+                if (serviceContext != null) {
+                    serviceContext.createThreadContext().setAsThreadLocal();
+                } else {
+                    ApplicationContextHolder.set(applicationContext);
+                }
+                try {
+                    return task.call();
+                } finally {
+                    // pooled threads run tasks of other requests next
+                    if (previousServiceContext == null) {
+                        ServiceContext.clearThreadLocal();
+                    } else {
+                        previousServiceContext.setAsThreadLocal();
+                    }
+                    if (previous == null) {
+                        ApplicationContextHolder.clear();
+                    } else {
+                        ApplicationContextHolder.set(previous);
+                    }
+                }
+            }
+        });
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    public interface ResultHandler<T> {
+        void handle(T result) throws Exception;
+    }
+}
@@ -24,6 +24,7 @@
 package org.fao.geonet.kernel.csw.services.getrecords;
 
 import jeeves.server.context.ServiceContext;
+import jeeves.server.sources.StreamedContent;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.search.Sort;
@@ -40,10 +41,13 @@ import org.fao.geonet.csw.common.exceptions.CatalogException;
 import org.fao.geonet.csw.common.exceptions.InvalidParameterValueEx;
 import org.fao.geonet.csw.common.exceptions.NoApplicableCodeEx;
 import org.fao.geonet.domain.Pair;
+import org.fao.geonet.exceptions.BadParameterEx;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.SchemaManager;
+import org.fao.geonet.kernel.csw.CatalogConfiguration;
 import org.fao.geonet.kernel.schema.MetadataSchema;
 import org.fao.geonet.kernel.search.LuceneSearcher;
+import org.fao.geonet.kernel.search.SearchCursor;
 import org.fao.geonet.kernel.search.SearchManager;
 import org.fao.geonet.kernel.setting.SettingInfo;
 import org.fao.geonet.utils.Log;
@@ -52,14 +56,20 @@ import org.geotools.gml2.GMLConfiguration;
 import org.jdom.*;
 import org.springframework.context.ApplicationContext;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javax.annotation.Nullable;
 
 /**
  * TODO javadoc.
@@ -71,6 +81,7 @@ public class SearchController {
     private final Set<String> _uuidselector;
     private GMLConfiguration _gmlConfig;
     private ApplicationContext _applicationContext;
+    private PresentationExecutor _presentationExecutor;
 
     //---------------------------------------------------------------------------
     //---
@@ -79,7 +90,7 @@ public class SearchController {
     //---------------------------------------------------------------------------
 
     public SearchController(ApplicationContext applicationContext) {
-        _selector = Collections.singleton("_id");
+        _selector = new HashSet<String>(Arrays.asList("_id", Geonet.IndexFieldNames.DATABASE_CHANGE_DATE));
         _uuidselector = Collections.singleton("_uuid");
         _gmlConfig = new GMLConfiguration();
         this._applicationContext = applicationContext;
@@ -117,28 +128,7 @@ public class SearchController {
             Element info = res.getChild(Edit.RootChild.INFO, Edit.NAMESPACE);
             String schema = info.getChildText(Edit.Info.Elem.SCHEMA);
 
-            // Add schemaLocation from schema config if not present in the metadata
-            Attribute schemaLocAtt = scm.getSchemaLocation(
-                schema, context);
-
-            if (schemaLocAtt != null) {
-                if (res.getAttribute(
-                    schemaLocAtt.getName(),
-                    schemaLocAtt.getNamespace()) == null) {
-                    res.setAttribute(schemaLocAtt);
-                    // make sure namespace declaration for schemalocation is present -
-                    // remove it first (does nothing if not there) then add it
-                    res.removeNamespaceDeclaration(schemaLocAtt.getNamespace());
-                    res.addNamespaceDeclaration(schemaLocAtt.getNamespace());
-                }
-            }
-
-            // apply stylesheet according to setName and schema
-            //
-            // OGC 07-045 :
-            // Because for this application profile it is not possible that a query includes more than one
-            // typename, any value(s) of the typeNames attribute of the elementSetName element are ignored.
-            res = org.fao.geonet.csw.common.util.Xml.applyElementSetName(context, scm, schema, res, outSchema, setName, resultType, id, displayLanguage);
+            res = presentMetadata(context, scm, schema, res, outSchema, setName, resultType, id, displayLanguage);
 
             res = applyElementNames(context, elemNames, typeName, scm, schema, res, resultType, info, strategy);
 
@@ -167,6 +157,40 @@ public class SearchController {
         }
     }
 
+    /**
+     * Applies the stylesheet of the requested ElementSetName and OutputSchema to a metadata.
+     *
+     * @param md metadata as returned by {@link DataManager#getMetadata}
+     * @return the metadata in the requested output schema
+     * @throws InvalidParameterValueEx if there is no stylesheet for the requested output schema
+     */
+    public static Element presentMetadata(ServiceContext context, SchemaManager scm, String schema, Element md,
+                                          String outSchema, ElementSetName setName, ResultType resultType,
+                                          String id, String displayLanguage) throws InvalidParameterValueEx {
+        // Add schemaLocation from schema config if not present in the metadata
+        Attribute schemaLocAtt = scm.getSchemaLocation(
+            schema, context);
+
+        if (schemaLocAtt != null) {
+            if (md.getAttribute(
+                schemaLocAtt.getName(),
+                schemaLocAtt.getNamespace()) == null) {
+                md.setAttribute(schemaLocAtt);
+                // make sure namespace declaration for schemalocation is present -
+                // remove it first (does nothing if not there) then add it
+                md.removeNamespaceDeclaration(schemaLocAtt.getNamespace());
+                md.addNamespaceDeclaration(schemaLocAtt.getNamespace());
+            }
+        }
+
+        // apply stylesheet according to setName and schema
+        //
+        // OGC 07-045 :
+        // Because for this application profile it is not possible that a query includes more than one
+        // typename, any value(s) of the typeNames attribute of the elementSetName element are ignored.
+        return org.fao.geonet.csw.common.util.Xml.applyElementSetName(context, scm, schema, md, outSchema, setName, resultType, id, displayLanguage);
+    }
+
     /**
      * Applies requested ElementNames and typeNames.
      *
@@ -432,16 +456,66 @@ public class SearchController {
                                          Element filterExpr, String filterVersion, Sort sort,
                                          Set<String> elemNames, String typeName, int maxHitsFromSummary,
                                          String cswServiceSpecificContraint, String strategy) throws CatalogException {
+        return search(context, startPos, maxRecords, resultType, outSchema, setName, filterExpr, filterVersion, sort,
+            elemNames, typeName, maxHitsFromSummary, cswServiceSpecificContraint, strategy, null);
+    }
+
+    public Pair<Element, Element> search(ServiceContext context, int startPos, int maxRecords,
+                                         ResultType resultType, String outSchema, ElementSetName setName,
+                                         Element filterExpr, String filterVersion, Sort sort,
+                                         Set<String> elemNames, String typeName, int maxHitsFromSummary,
+                                         String cswServiceSpecificContraint, String strategy,
+                                         @Nullable String cursor) throws CatalogException {
+        return search(context, startPos, maxRecords, resultType, outSchema, setName, filterExpr, filterVersion, sort,
+            elemNames, typeName, maxHitsFromSummary, cswServiceSpecificContraint, strategy, cursor, false);
+    }
+
+    /**
+     * Performs the general search tasks, optionally in cursor mode.
+     *
+     * In cursor mode, the page starts after the hits returned by the previous requests whatever
+     * the start position is and the cursor of the next page is returned in the resultSetId
+     * attribute of the search results (empty on the last page). Walking through a large result
+     * set with a cursor does not collect and sort all the hits of the previous pages on each
+     * request.
+     *
+     * If streamRecords is true, the records are not retrieved by the search: the search results
+     * hold a {@link StreamedContent} which retrieves and transforms them one at a time while the
+     * {@link jeeves.server.sources.StreamingResponse} holding it is written.
+     *
+     * @param cursor        {@link SearchCursor#START} to get the first page in cursor mode, the
+     *                      cursor returned with the previous page or null to not use cursor mode.
+     * @param streamRecords true to retrieve the records while the response is written.
+     */
+    public Pair<Element, Element> search(ServiceContext context, int startPos, int maxRecords,
+                                         ResultType resultType, String outSchema, ElementSetName setName,
+                                         Element filterExpr, String filterVersion, Sort sort,
+                                         Set<String> elemNames, String typeName, int maxHitsFromSummary,
+                                         String cswServiceSpecificContraint, String strategy,
+                                         @Nullable String cursor, boolean streamRecords) throws CatalogException {
 
         Element results = new Element("SearchResults", Csw.NAMESPACE_CSW);
 
+        SearchCursor after = null;
+        if (StringUtils.isNotEmpty(cursor)) {
+            startPos = 1;
+            if (!SearchCursor.START.equals(cursor)) {
+                try {
+                    after = SearchCursor.decode(cursor);
+                } catch (BadParameterEx e) {
+                    throw new InvalidParameterValueEx(Geonet.SearchResult.CURSOR, cursor);
+                }
+                startPos = after.getPosition() + 1;
+            }
+        }
+
         CatalogSearcher searcher = new CatalogSearcher(_gmlConfig, _selector, _uuidselector, _applicationContext);
 
         context.getUserSession().setProperty(Geonet.Session.SEARCH_RESULT, searcher);
 
         // search for results, filtered and sorted
         Pair<Element, List<ResultItem>> summaryAndSearchResults = searcher.search(context, filterExpr, filterVersion,
-            typeName, sort, resultType, startPos, maxRecords, maxHitsFromSummary, cswServiceSpecificContraint);
+            typeName, sort, resultType, startPos, maxRecords, maxHitsFromSummary, cswServiceSpecificContraint, after);
 
         Element summary = summaryAndSearchResults.one();
         int numMatches = Integer.parseInt(summary.getAttributeValue("count"));
@@ -456,8 +530,17 @@ public class SearchController {
         final SettingInfo settingInfo = context.getBean(SearchManager.class).getSettingInfo();
         String displayLanguage = LuceneSearcher.determineLanguage(context, filterExpr, settingInfo).presentationLanguage;
         // retrieve actual metadata for results
-        int counter = retrieveMetadataMatchingResults(context, results, summaryAndSearchResults, maxRecords, setName,
-            outSchema, elemNames, typeName, resultType, strategy, displayLanguage);
+        RecordPresentation presentation = new RecordPresentation(context, setName, outSchema, elemNames, typeName,
+            resultType, strategy, displayLanguage, _applicationContext.getBean(PrecomputedRecordStore.class));
+        int counter;
+        if (streamRecords) {
+            List<ResultItem> resultsList = summaryAndSearchResults.two();
+            counter = Math.min(maxRecords, resultsList.size());
+            results.addContent(new MatchingRecords(getPresentationExecutor(), presentation,
+                resultsList.subList(0, counter)));
+        } else {
+            counter = retrieveMetadataMatchingResults(results, summaryAndSearchResults, maxRecords, presentation);
+        }
 
         //
         // properties of search result
@@ -477,61 +560,192 @@ public class SearchController {
             results.setAttribute("nextRecord", nextRecord + "");
         }
 
+        if (StringUtils.isNotEmpty(cursor)) {
+            SearchCursor next = searcher.getNextCursor();
+            results.setAttribute("resultSetId", next == null ? "" : next.encode());
+        }
+
         return Pair.read(summary, results);
     }
 
     /**
      * Retrieve actual metadata matching the results. Adds elements to results parameter as a side
-     * effect.
+     * effect. The metadata are retrieved and transformed concurrently by the {@link
+     * PresentationExecutor} and added in rank order.
      *
-     * @param context                 Service context
      * @param results                 retrieved results
      * @param summaryAndSearchResults results from search
      * @param maxRecords              equested max records to return
-     * @param elementSetName          requested ElementSetName
-     * @param outputSchema            requested OutputSchema
-     * @param elementNames            requested ElementNames
-     * @param typeName                requested typeName
-     * @param resultType              requested ResultType
-     * @param strategy                ElementNames strategy
+     * @param presentation            requested presentation of the metadata
      * @return number of results from search that could be retrieved
      * @throws CatalogException hmm
      */
-    private int retrieveMetadataMatchingResults(ServiceContext context,
-                                                Element results,
+    private int retrieveMetadataMatchingResults(final Element results,
                                                 Pair<Element, List<ResultItem>> summaryAndSearchResults,
-                                                int maxRecords, ElementSetName elementSetName,
-                                                String outputSchema, Set<String> elementNames,
-                                                String typeName, ResultType resultType, String strategy, String displayLanguage)
+                                                int maxRecords, RecordPresentation presentation)
         throws CatalogException {
 
         List<ResultItem> resultsList = summaryAndSearchResults.two();
-        int counter = 0;
-        for (int i = 0; (i < maxRecords) && (i < resultsList.size()); i++) {
-            ResultItem resultItem = resultsList.get(i);
-            String id = resultItem.getID();
-            Element md = null;
+        List<ResultItem> page = resultsList.subList(0, Math.min(maxRecords, resultsList.size()));
+        try {
+            getPresentationExecutor().execute(presentation.tasks(page, false),
+                new PresentationExecutor.ResultHandler<Content>() {
+                    @Override
+                    public void handle(Content result) {
+                        if (result != null) {
+                            results.addContent(result);
+                        }
+                    }
+                });
+        } catch (CatalogException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new NoApplicableCodeEx("Error while retrieving metadata: " + e.getMessage());
+        }
+        return page.size();
+    }
+
+    private synchronized PresentationExecutor getPresentationExecutor() {
+        if (_presentationExecutor == null) {
+            CatalogConfiguration catalogConfig = _applicationContext.getBean(CatalogConfiguration.class);
+            _presentationExecutor = new PresentationExecutor(catalogConfig.getPresentationThreads(),
+                catalogConfig.getMaxConcurrentPresentationsPerRequest());
+        }
+        return _presentationExecutor;
+    }
 
+    /**
+     * Presentation of the metadata matching a search requested by a GetRecords request.
+     */
+    static class RecordPresentation {
+        private final ServiceContext context;
+        private final ElementSetName elementSetName;
+        private final String outputSchema;
+        private final Set<String> elementNames;
+        private final String typeName;
+        private final ResultType resultType;
+        private final String strategy;
+        private final String displayLanguage;
+        private final PrecomputedRecordStore precomputedRecords;
+
+        RecordPresentation(ServiceContext context, ElementSetName elementSetName, String outputSchema,
+                           Set<String> elementNames, String typeName, ResultType resultType, String strategy,
+                           String displayLanguage, PrecomputedRecordStore precomputedRecords) {
+            this.context = context;
+            this.elementSetName = elementSetName;
+            this.outputSchema = outputSchema;
+            this.elementNames = elementNames;
+            this.typeName = typeName;
+            this.resultType = resultType;
+            this.strategy = strategy;
+            this.displayLanguage = displayLanguage;
+            this.precomputedRecords = precomputedRecords;
+        }
+
+        /**
+         * Retrieves a metadata matching the search, using its precomputed presentation if
+         * possible.
+         *
+         * @return the metadata, a comment if it cannot be retrieved or null if the metadata must
+         * not be included in the response.
+         */
+        @Nullable
+        Content retrieve(ServiceContext context, ResultItem resultItem) throws CatalogException {
+            String id = resultItem.getID();
             try {
+                Element md = null;
+                if (resultType == ResultType.RESULTS && elementNames == null
+                    && PrecomputedRecordStore.isPrecomputed(elementSetName)) {
+                    Pair<String, Element> precomputed = precomputedRecords.get(id, outputSchema, elementSetName,
+                        displayLanguage, resultItem.getValue(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE));
+                    if (precomputed != null) {
+                        md = applyPostProcessing(context, context.getBean(SchemaManager.class), precomputed.one(),
+                            precomputed.two(), outputSchema, elementSetName, resultType, id, displayLanguage);
+                        if (md != null) {
+                            return md;
+                        }
+                    }
+                }
                 md = retrieveMetadata(context, id, elementSetName, outputSchema, elementNames, typeName, resultType, strategy, displayLanguage);
                 // metadata cannot be retrieved
                 if (md == null) {
-                    results.addContent(new Comment(String.format("Metadata with id '%s' returned null.", id)));
                     context.warning("SearchController : Metadata not found or invalid schema : " + id);
+                    return new Comment(String.format("Metadata with id '%s' returned null.", id));
                 }
-                // metadata can be retrieved
-                else {
-                    // metadata must be included in response
-                    if ((resultType == ResultType.RESULTS || resultType == ResultType.RESULTS_WITH_SUMMARY)) {
-                        results.addContent(md);
-                    }
+                // metadata must be included in response
+                if ((resultType == ResultType.RESULTS || resultType == ResultType.RESULTS_WITH_SUMMARY)) {
+                    return md;
                 }
+                return null;
             } catch (InvalidParameterValueEx e) {
-                results.addContent(new Comment(e.getMessage()));
+                return new Comment(e.getMessage());
+            }
+        }
+
+        /**
+         * @param reportErrors true to report the errors as comments instead of failing.
+         * @return the tasks retrieving the metadata of the result items.
+         */
+        List<Callable<Content>> tasks(List<ResultItem> resultItems, final boolean reportErrors) {
+            List<Callable<Content>> tasks = new ArrayList<Callable<Content>>(resultItems.size());
+            for (final ResultItem resultItem : resultItems) {
+                final String id = resultItem.getID();
+                tasks.add(new Callable<Content>() {
+                    @Override
+                    public Content call() throws CatalogException {
+                        // the tasks run by the PresentationExecutor get their own copy of the context
+                        ServiceContext current = ServiceContext.get();
+                        if (current == null) {
+                            current = context;
+                        }
+                        if (!reportErrors) {
+                            return retrieve(current, resultItem);
+                        }
+                        try {
+                            return retrieve(current, resultItem);
+                        } catch (CatalogException e) {
+                            context.error("SearchController : Error while retrieving metadata " + id + ": " + e.getMessage());
+                            return new Comment(String.format("Metadata with id '%s' could not be retrieved.", id));
+                        }
+                    }
+                });
+            }
+            return tasks;
+        }
+    }
+
+    /**
+     * Metadata matching the search, retrieved while the response is written. The response is
+     * already being sent when they are retrieved so errors are reported as comments.
+     */
+    private static class MatchingRecords extends StreamedContent {
+        private final PresentationExecutor executor;
+        private final RecordPresentation presentation;
+        private final List<ResultItem> resultItems;
+
+        MatchingRecords(PresentationExecutor executor, RecordPresentation presentation, List<ResultItem> resultItems) {
+            this.executor = executor;
+            this.presentation = presentation;
+            this.resultItems = new ArrayList<ResultItem>(resultItems);
+        }
+
+        @Override
+        public void produce(final Handler handler) throws IOException {
+            try {
+                executor.execute(presentation.tasks(resultItems, true), new PresentationExecutor.ResultHandler<Content>() {
+                    @Override
+                    public void handle(Content result) throws IOException {
+                        if (result != null) {
+                            handler.handle(result);
+                        }
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
             }
-            counter++;
         }
-        return counter;
     }
 
     /**
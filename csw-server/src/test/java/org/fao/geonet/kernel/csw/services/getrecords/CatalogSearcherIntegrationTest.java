@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.csw.services.getrecords;
+
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.constants.Params;
+import org.fao.geonet.csw.common.Csw;
+import org.fao.geonet.csw.common.ResultType;
+import org.fao.geonet.csw.common.exceptions.InvalidParameterValueEx;
+import org.fao.geonet.domain.MetadataType;
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.domain.ReservedGroup;
+import org.fao.geonet.kernel.search.SearchCursor;
+import org.fao.geonet.utils.Xml;
+import org.geotools.gml2.GMLConfiguration;
+import org.jdom.Element;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the deep paging cursor of {@link CatalogSearcher}.
+ */
+@ContextConfiguration(inheritLocations = true, locations = "classpath:csw-integration-test-context.xml")
+public class CatalogSearcherIntegrationTest extends AbstractCoreIntegrationTest {
+    private static final String FILTER_VERSION = "1.1.0";
+
+    private ServiceContext serviceContext;
+    private Set<String> imported;
+
+    @Before
+    public void importRecords() throws Exception {
+        serviceContext = createServiceContext();
+        loginAsAdmin(serviceContext);
+        imported = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            imported.add(String.valueOf(importMetadata()));
+        }
+    }
+
+    @Test
+    public void testPagesWithCursor() throws Exception {
+        Set<String> found = new HashSet<>();
+        SearchCursor after = null;
+        int pages = 0;
+        do {
+            // each page is searched by a new searcher, as by a new request
+            CatalogSearcher searcher = newSearcher();
+            int startPosition = after == null ? 1 : after.getPosition() + 1;
+            Pair<Element, List<ResultItem>> result = searcher.search(serviceContext, matchAll(), FILTER_VERSION,
+                null, null, ResultType.RESULTS, startPosition, 2, 0, null, after);
+            for (ResultItem item : result.two()) {
+                assertFalse("Record " + item.getID() + " returned twice", found.contains(item.getID()));
+                found.add(item.getID());
+            }
+            assertEquals("5", result.one().getAttributeValue("count"));
+            after = searcher.getNextCursor();
+            pages++;
+        } while (after != null);
+
+        assertEquals(3, pages);
+        assertEquals(imported, found);
+    }
+
+    @Test
+    public void testLastPageHasNoCursor() throws Exception {
+        CatalogSearcher searcher = newSearcher();
+        searcher.search(serviceContext, matchAll(), FILTER_VERSION, null, null, ResultType.RESULTS, 1, 5, 0, null, null);
+        assertNull(searcher.getNextCursor());
+    }
+
+    @Test(expected = InvalidParameterValueEx.class)
+    public void testCursorOfAnotherSearch() throws Exception {
+        CatalogSearcher searcher = newSearcher();
+        searcher.search(serviceContext, matchAll(), FILTER_VERSION, null, null, ResultType.RESULTS, 1, 2, 0, null, null);
+        SearchCursor after = searcher.getNextCursor();
+        assertNotNull(after);
+
+        Element filter = new Element("Filter", Csw.NAMESPACE_OGC).addContent(
+            new Element("PropertyIsEqualTo", Csw.NAMESPACE_OGC)
+                .addContent(new Element("PropertyName", Csw.NAMESPACE_OGC).setText("title"))
+                .addContent(new Element("Literal", Csw.NAMESPACE_OGC).setText("other")));
+        newSearcher().search(serviceContext, filter, FILTER_VERSION, null, null, ResultType.RESULTS,
+            after.getPosition() + 1, 2, 0, null, after);
+    }
+
+    private CatalogSearcher newSearcher() {
+        return new CatalogSearcher(new GMLConfiguration(),
+            new HashSet<>(Arrays.asList("_id", Geonet.IndexFieldNames.DATABASE_CHANGE_DATE)),
+            Collections.singleton("_uuid"), _applicationContext);
+    }
+
+    /**
+     * An empty filter matches all the records.
+     */
+    private Element matchAll() {
+        return new Element("Filter", Csw.NAMESPACE_OGC);
+    }
+
+    private int importMetadata() throws Exception {
+        final ByteArrayInputStream stream = new ByteArrayInputStream(
+            Xml.getString(getSampleMetadataXml()).getBytes("UTF-8"));
+        return importMetadataXML(serviceContext, "uuid", stream, MetadataType.METADATA,
+            ReservedGroup.all.getId(), Params.GENERATE_UUID);
+    }
+}
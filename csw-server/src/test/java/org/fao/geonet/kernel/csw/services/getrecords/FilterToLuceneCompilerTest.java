@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.csw.services.getrecords;
+
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class FilterToLuceneCompilerTest {
+    private static final String OGC = "xmlns:ogc=\"http://www.opengis.net/ogc\"";
+    private static final String NOT_TEMPLATE =
+        "<BooleanClause required=\"true\" prohibited=\"false\"><TermQuery fld=\"_isTemplate\" txt=\"n\" /></BooleanClause>";
+
+    private final FilterToLuceneCompiler compiler = new FilterToLuceneCompiler();
+
+    @Test
+    public void testEmptyFilter() throws Exception {
+        assertEquals("<TermQuery fld=\"_isTemplate\" txt=\"n\" />", compile("<ogc:Filter " + OGC + "/>"));
+    }
+
+    @Test
+    public void testEqualTo() throws Exception {
+        assertEquals(excludingTemplates("<TermQuery fld=\"title\" txt=\"water\" />"),
+            compile(filter(equalTo("title", "water"))));
+        assertEquals(excludingTemplates("<TermQuery fld=\"_op0\" txt=\"2\" />"),
+            compile(filter(equalTo("group", "2"))));
+        assertEquals("<TermQuery fld=\"_isTemplate\" txt=\"y\" />", compile(filter(equalTo("_isTemplate", "y"))));
+    }
+
+    @Test
+    public void testSimilarity() throws Exception {
+        assertEquals(excludingTemplates("<BooleanQuery>" +
+                "<BooleanClause required=\"true\" prohibited=\"false\"><FuzzyQuery fld=\"title\" txt=\"water\" sim=\"0.8\" /></BooleanClause>" +
+                "</BooleanQuery>"),
+            compile(filter("<ogc:And>" + equalTo("similarity", "0.8") + equalTo("title", "water") +
+                equalTo("group", "2") + "</ogc:And>")));
+    }
+
+    @Test
+    public void testComparisons() throws Exception {
+        assertEquals(excludingTemplates("<RangeQuery fld=\"modified\" upperTxt=\"2010\" inclusive=\"false\" />"),
+            compile(filter(comparison("PropertyIsLessThan", "modified", "2010"))));
+        assertEquals(excludingTemplates("<RangeQuery fld=\"modified\" lowerTxt=\"2010\" inclusive=\"true\" />"),
+            compile(filter(comparison("PropertyIsGreaterThanEqualTo", "modified", "2010"))));
+        assertEquals(excludingTemplates("<RangeQuery fld=\"date\" lowerTxt=\"2000\" upperTxt=\"2010\" inclusive=\"true\" />"),
+            compile(filter("<ogc:PropertyIsBetween><ogc:PropertyName>date</ogc:PropertyName>" +
+                "<ogc:LowerBoundary><ogc:Literal>2000</ogc:Literal></ogc:LowerBoundary>" +
+                "<ogc:UpperBoundary><ogc:Literal>2010</ogc:Literal></ogc:UpperBoundary></ogc:PropertyIsBetween>")));
+    }
+
+    @Test
+    public void testLike() throws Exception {
+        assertEquals(excludingTemplates("<BooleanQuery>" +
+                "<BooleanClause required=\"true\" prohibited=\"false\"><WildcardQuery fld=\"AnyText\" txt=\"wat*\" /></BooleanClause>" +
+                "<BooleanClause required=\"true\" prohibited=\"false\"><WildcardQuery fld=\"AnyText\" txt=\"s?a\" /></BooleanClause>" +
+                "</BooleanQuery>"),
+            compile(filter(like("wat% s_a"))));
+        // Searching for anything only excludes templates
+        assertEquals("<BooleanQuery>" + NOT_TEMPLATE + "</BooleanQuery>", compile(filter(like("%"))));
+    }
+
+    @Test
+    public void testNotAndSpatialOperators() throws Exception {
+        assertEquals(excludingTemplates("<BooleanQuery>" +
+                "<BooleanClause required=\"true\" prohibited=\"false\"><MatchAllDocsQuery required=\"true\" prohibited=\"false\" /></BooleanClause>" +
+                "<BooleanClause required=\"false\" prohibited=\"true\"><TermQuery fld=\"title\" txt=\"water\" /></BooleanClause>" +
+                "</BooleanQuery>"),
+            compile(filter("<ogc:Not>" + equalTo("title", "water") + "</ogc:Not>")));
+        assertEquals(excludingTemplates("<MatchAllDocsQuery />"),
+            compile(filter("<ogc:BBOX><ogc:PropertyName>ows:BoundingBox</ogc:PropertyName></ogc:BBOX>")));
+    }
+
+    @Test
+    public void testUnknownExpression() throws Exception {
+        assertEquals(excludingTemplates("<error type=\"Unknown content of expression\">" +
+                "<ogc:PropertyIsNotEqualTo " + OGC + "><ogc:PropertyName>title</ogc:PropertyName></ogc:PropertyIsNotEqualTo>" +
+                "</error>"),
+            compile(filter("<ogc:PropertyIsNotEqualTo><ogc:PropertyName>title</ogc:PropertyName></ogc:PropertyIsNotEqualTo>")));
+    }
+
+    @Test
+    public void testCachedQueriesAreCopies() throws Exception {
+        Element filter = Xml.loadString(filter(equalTo("title", "water")), false);
+        Element first = compiler.compile(filter);
+        Element second = compiler.compile(filter);
+        assertNotSame(first, second);
+        assertEquals(toString(first), toString(second));
+
+        Element unprefixed = Xml.loadString("<Filter xmlns=\"http://www.opengis.net/ogc\"><PropertyIsEqualTo>" +
+            "<PropertyName>title</PropertyName><Literal>water</Literal></PropertyIsEqualTo></Filter>", false);
+        assertEquals(FilterToLuceneCompiler.key(filter), FilterToLuceneCompiler.key(unprefixed));
+    }
+
+    private String compile(String filter) throws Exception {
+        return toString(compiler.compile(Xml.loadString(filter, false)));
+    }
+
+    private static String toString(Element element) {
+        return new XMLOutputter(Format.getRawFormat()).outputString(element);
+    }
+
+    private static String filter(String content) {
+        return "<ogc:Filter " + OGC + ">" + content + "</ogc:Filter>";
+    }
+
+    private static String equalTo(String property, String literal) {
+        return comparison("PropertyIsEqualTo", property, literal);
+    }
+
+    private static String comparison(String operator, String property, String literal) {
+        return "<ogc:" + operator + "><ogc:PropertyName>" + property + "</ogc:PropertyName><ogc:Literal>" +
+            literal + "</ogc:Literal></ogc:" + operator + ">";
+    }
+
+    private static String like(String literal) {
+        return "<ogc:PropertyIsLike wildCard=\"%\" singleChar=\"_\" escapeChar=\"\\\">" +
+            "<ogc:PropertyName>AnyText</ogc:PropertyName><ogc:Literal>" + literal + "</ogc:Literal></ogc:PropertyIsLike>";
+    }
+
+    private static String excludingTemplates(String query) {
+        return "<BooleanQuery><BooleanClause required=\"true\" prohibited=\"false\">" + query + "</BooleanClause>" +
+            NOT_TEMPLATE + "</BooleanQuery>";
+    }
+}
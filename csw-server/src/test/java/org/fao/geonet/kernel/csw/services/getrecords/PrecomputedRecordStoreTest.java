@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.csw.services.getrecords;
+
+import org.fao.geonet.csw.common.ElementSetName;
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.kernel.GeonetworkDataDirectory;
+import org.fao.geonet.kernel.SchemaManager;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PrecomputedRecordStoreTest {
+    private static final String SCHEMA = "iso19139";
+    private static final String OUTPUT_SCHEMA = "ogc";
+    private static final String CHANGE_DATE = "2017-01-01T00:00:00";
+    private static final String XSL_START = "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"2.0\">";
+    private static final String XSL_END = "</xsl:stylesheet>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, String> xlinkHashes = new HashMap<String, String>();
+    private PrecomputedRecordStore store;
+    private Path styleSheet;
+    private Path includedStyleSheet;
+    private Element record;
+
+    @Before
+    public void setUp() throws Exception {
+        Path presentDir = folder.newFolder("present").toPath();
+        styleSheet = presentDir.resolve(OUTPUT_SCHEMA + "-" + ElementSetName.BRIEF + ".xsl");
+        includedStyleSheet = presentDir.resolve("common.xsl");
+        Files.write(includedStyleSheet, (XSL_START + XSL_END).getBytes(StandardCharsets.UTF_8));
+        Files.write(styleSheet, (XSL_START + "<xsl:include href=\"common.xsl\"/>" + XSL_END).getBytes(StandardCharsets.UTF_8));
+
+        GeonetworkDataDirectory dataDirectory = mock(GeonetworkDataDirectory.class);
+        when(dataDirectory.getHtmlCacheDir()).thenReturn(folder.newFolder("htmlcache").toPath());
+        SchemaManager schemaManager = mock(SchemaManager.class);
+        when(schemaManager.getSchemaCSWPresentDir(SCHEMA)).thenReturn(presentDir);
+
+        store = new PrecomputedRecordStore() {
+            @Override
+            protected String getXLinkHash(String href) {
+                return xlinkHashes.get(href);
+            }
+        };
+        ReflectionTestUtils.setField(store, "geonetworkDataDir", dataDirectory);
+        ReflectionTestUtils.setField(store, "schemaManager", schemaManager);
+
+        record = new Element("BriefRecord").addContent(new Element("title").setText("Title"));
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        assertNull(get(CHANGE_DATE));
+
+        put(Collections.<String>emptyList());
+        Pair<String, Element> precomputed = get(CHANGE_DATE);
+        assertNotNull(precomputed);
+        assertEquals(SCHEMA, precomputed.one());
+        assertEquals(Xml.getString(record), Xml.getString(precomputed.two()));
+
+        assertNull(store.get("1", OUTPUT_SCHEMA, ElementSetName.BRIEF, "fre", CHANGE_DATE));
+        assertNull(get(null));
+    }
+
+    @Test
+    public void testRecordChanged() throws Exception {
+        put(Collections.<String>emptyList());
+        assertNull(get("2017-01-02T00:00:00"));
+    }
+
+    @Test
+    public void testStylesheetChanged() throws Exception {
+        put(Collections.<String>emptyList());
+        touch(styleSheet);
+        assertNull(get(CHANGE_DATE));
+    }
+
+    @Test
+    public void testIncludedStylesheetChanged() throws Exception {
+        put(Collections.<String>emptyList());
+        touch(includedStyleSheet);
+        assertNull(get(CHANGE_DATE));
+    }
+
+    @Test
+    public void testXLinkChanged() throws Exception {
+        String href = "http://example.com/contact.xml";
+
+        put(Arrays.asList(href));
+        assertNull("Not stored as the XLink is not in the cache", get(CHANGE_DATE));
+
+        xlinkHashes.put(href, "1");
+        put(Arrays.asList(href));
+        assertNotNull(get(CHANGE_DATE));
+
+        xlinkHashes.put(href, "2");
+        assertNull(get(CHANGE_DATE));
+
+        xlinkHashes.remove(href);
+        assertNull(get(CHANGE_DATE));
+    }
+
+    @Test
+    public void testRemoveAll() throws Exception {
+        put(Collections.<String>emptyList());
+        store.removeAll("1");
+        assertNull(get(CHANGE_DATE));
+        store.removeAll("1");
+    }
+
+    private void put(Collection<String> xlinks) throws Exception {
+        store.put("1", SCHEMA, CHANGE_DATE, OUTPUT_SCHEMA, ElementSetName.BRIEF, "eng", record, xlinks);
+    }
+
+    private Pair<String, Element> get(String changeDate) {
+        return store.get("1", OUTPUT_SCHEMA, ElementSetName.BRIEF, "eng", changeDate);
+    }
+
+    private static void touch(Path file) throws Exception {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 10000));
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.csw.services.getrecords;
+
+import jeeves.server.context.ServiceContext;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PresentationExecutorTest {
+
+    @Test
+    public void testResultsInTaskOrder() throws Exception {
+        PresentationExecutor executor = new PresentationExecutor(4, 3);
+        final List<Integer> results = new ArrayList<Integer>();
+        executor.execute(createTasks(20, new AtomicInteger(), new AtomicInteger()),
+            new PresentationExecutor.ResultHandler<Integer>() {
+                @Override
+                public void handle(Integer result) {
+                    results.add(result);
+                }
+            });
+
+        assertEquals(20, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testConcurrencyPerRequest() throws Exception {
+        PresentationExecutor executor = new PresentationExecutor(8, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        executor.execute(createTasks(20, running, maxRunning), new PresentationExecutor.ResultHandler<Integer>() {
+            @Override
+            public void handle(Integer result) {
+            }
+        });
+
+        assertTrue("Max running: " + maxRunning.get(), maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testSerial() throws Exception {
+        PresentationExecutor executor = new PresentationExecutor(4, 1);
+        final List<String> threads = new ArrayList<String>();
+        List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() {
+                    return Thread.currentThread().getName();
+                }
+            });
+        }
+        executor.execute(tasks, new PresentationExecutor.ResultHandler<String>() {
+            @Override
+            public void handle(String result) {
+                threads.add(result);
+            }
+        });
+
+        for (String thread : threads) {
+            assertEquals(Thread.currentThread().getName(), thread);
+        }
+    }
+
+    @Test
+    public void testTaskFailure() throws Exception {
+        PresentationExecutor executor = new PresentationExecutor(4, 4);
+        List<Callable<Integer>> tasks = createTasks(10, new AtomicInteger(), new AtomicInteger());
+        tasks.set(5, new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                throw new IllegalStateException("failed");
+            }
+        });
+        final List<Integer> results = new ArrayList<Integer>();
+        try {
+            executor.execute(tasks, new PresentationExecutor.ResultHandler<Integer>() {
+                @Override
+                public void handle(Integer result) {
+                    results.add(result);
+                }
+            });
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(5, results.size());
+    }
+
+    @Test
+    public void testServiceContextPerTask() throws Exception {
+        final PresentationExecutor executor = new PresentationExecutor(4, 4);
+        final ServiceContext requestContext = new ServiceContext("csw", null, new HashMap<String, Object>(), null);
+        requestContext.setLanguage("fre");
+        final List<ServiceContext> contexts = new ArrayList<ServiceContext>();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        // on a thread of its own so that the context set as thread local does not leak to other tests
+        Thread request = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                requestContext.setAsThreadLocal();
+                List<Callable<ServiceContext>> tasks = new ArrayList<Callable<ServiceContext>>();
+                for (int i = 0; i < 8; i++) {
+                    tasks.add(new Callable<ServiceContext>() {
+                        @Override
+                        public ServiceContext call() throws Exception {
+                            Thread.sleep(10);
+                            return ServiceContext.get();
+                        }
+                    });
+                }
+                try {
+                    executor.execute(tasks, new PresentationExecutor.ResultHandler<ServiceContext>() {
+                        @Override
+                        public void handle(ServiceContext result) {
+                            contexts.add(result);
+                        }
+                    });
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        request.start();
+        request.join();
+
+        assertNull(error.get());
+        assertEquals(8, contexts.size());
+        Set<ServiceContext> distinct = Collections.newSetFromMap(new IdentityHashMap<ServiceContext, Boolean>());
+        for (ServiceContext context : contexts) {
+            assertNotSame(requestContext, context);
+            assertSame(requestContext.getUserSession(), context.getUserSession());
+            assertEquals("fre", context.getLanguage());
+            assertEquals("csw", context.getService());
+            distinct.add(context);
+        }
+        assertEquals(8, distinct.size());
+    }
+
+    @Test
+    public void testServiceContextNotLeftOnThreads() throws Exception {
+        final PresentationExecutor executor = new PresentationExecutor(2, 2);
+        final ServiceContext requestContext = new ServiceContext("csw", null, new HashMap<String, Object>(), null);
+        final List<ServiceContext> contexts = new ArrayList<ServiceContext>();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        // the first request starts the threads of the executor
+        Thread request = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                requestContext.setAsThreadLocal();
+                try {
+                    executor.execute(createContextTasks(4), new PresentationExecutor.ResultHandler<ServiceContext>() {
+                        @Override
+                        public void handle(ServiceContext result) {
+                        }
+                    });
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        request.start();
+        request.join();
+        assertNull(error.get());
+
+        // a later request without service context must not get the one of the first request
+        Thread otherRequest = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ServiceContext.clearThreadLocal();
+                try {
+                    executor.execute(createContextTasks(4), new PresentationExecutor.ResultHandler<ServiceContext>() {
+                        @Override
+                        public void handle(ServiceContext result) {
+                            contexts.add(result);
+                        }
+                    });
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        otherRequest.start();
+        otherRequest.join();
+
+        assertNull(error.get());
+        assertEquals(4, contexts.size());
+        for (ServiceContext context : contexts) {
+            assertNull(context);
+        }
+    }
+
+    private static List<Callable<ServiceContext>> createContextTasks(int count) {
+        List<Callable<ServiceContext>> tasks = new ArrayList<Callable<ServiceContext>>();
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Callable<ServiceContext>() {
+                @Override
+                public ServiceContext call() throws Exception {
+                    Thread.sleep(10);
+                    return ServiceContext.get();
+                }
+            });
+        }
+        return tasks;
+    }
+
+    private static List<Callable<Integer>> createTasks(int count, final AtomicInteger running,
+                                                      final AtomicInteger maxRunning) {
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int current = running.incrementAndGet();
+                    int max = maxRunning.get();
+                    while (current > max && !maxRunning.compareAndSet(max, current)) {
+                        max = maxRunning.get();
+                    }
+                    // Later tasks complete first
+                    Thread.sleep(20 - index % 20);
+                    running.decrementAndGet();
+                    return index;
+                }
+            });
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.csw.services.getrecords;
+
+import jeeves.server.context.ServiceContext;
+
+import org.fao.geonet.ApplicationContextHolder;
+import org.fao.geonet.NodeInfo;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.csw.common.ElementSetName;
+import org.fao.geonet.csw.common.ResultType;
+import org.fao.geonet.csw.common.exceptions.CatalogException;
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.kernel.SchemaManager;
+import org.jdom.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the use of the precomputed presentations by GetRecords.
+ */
+public class SearchControllerTest {
+    private static final String SCHEMA = "iso19139";
+    private static final String OUTPUT_SCHEMA = "ogc";
+    private static final String CHANGE_DATE = "2017-01-01T00:00:00";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ConfigurableApplicationContext previousApplicationContext;
+    private ServiceContext context;
+    private PrecomputedRecordStore store;
+    private ResultItem resultItem;
+
+    @Before
+    public void setUp() throws Exception {
+        previousApplicationContext = ApplicationContextHolder.get();
+        ConfigurableApplicationContext applicationContext = mock(ConfigurableApplicationContext.class);
+        when(applicationContext.getBean(NodeInfo.class)).thenReturn(new NodeInfo());
+        ApplicationContextHolder.set(applicationContext);
+
+        SchemaManager schemaManager = mock(SchemaManager.class);
+        when(schemaManager.getSchemaCSWPresentDir(SCHEMA)).thenReturn(folder.getRoot().toPath());
+        context = mock(ServiceContext.class);
+        when(context.getService()).thenReturn("csw");
+        when(context.getBean(SchemaManager.class)).thenReturn(schemaManager);
+
+        store = mock(PrecomputedRecordStore.class);
+        resultItem = new ResultItem("1");
+        resultItem.add(Geonet.IndexFieldNames.DATABASE_CHANGE_DATE, CHANGE_DATE);
+    }
+
+    @After
+    public void tearDown() {
+        ApplicationContextHolder.set(previousApplicationContext);
+    }
+
+    @Test
+    public void testPrecomputedPresentationIsUsed() throws Exception {
+        Element brief = new Element("BriefRecord");
+        when(store.get("1", OUTPUT_SCHEMA, ElementSetName.BRIEF, "eng", CHANGE_DATE)).thenReturn(Pair.read(SCHEMA, brief));
+
+        assertSame(brief, presentation(ElementSetName.BRIEF, null).retrieve(context, resultItem));
+        verify(context, never()).getHandlerContext(anyString());
+    }
+
+    @Test
+    public void testOutdatedPresentationIsNotUsed() throws Exception {
+        when(store.get("1", OUTPUT_SCHEMA, ElementSetName.BRIEF, "eng", CHANGE_DATE)).thenReturn(null);
+
+        assertRecordIsRead(presentation(ElementSetName.BRIEF, null));
+    }
+
+    @Test
+    public void testOnlyBriefAndSummaryWithoutElementNamesArePrecomputed() throws Exception {
+        assertRecordIsRead(presentation(ElementSetName.FULL, null));
+        assertRecordIsRead(presentation(ElementSetName.BRIEF, Collections.singleton("dc:title")));
+        verify(store, never()).get(anyString(), anyString(), any(ElementSetName.class), anyString(), anyString());
+    }
+
+    private SearchController.RecordPresentation presentation(ElementSetName elementSetName, Set<String> elementNames) {
+        return new SearchController.RecordPresentation(context, elementSetName, OUTPUT_SCHEMA, elementNames, null,
+            ResultType.RESULTS, null, "eng", store);
+    }
+
+    /**
+     * The record is read from the database, which fails here as there is none.
+     */
+    private void assertRecordIsRead(SearchController.RecordPresentation presentation) {
+        try {
+            presentation.retrieve(context, resultItem);
+            fail("The record should have been read from the database");
+        } catch (CatalogException e) {
+            verify(context, atLeastOnce()).getHandlerContext(Geonet.CONTEXT_NAME);
+        }
+    }
+}
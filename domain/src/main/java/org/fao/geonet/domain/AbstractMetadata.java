@@ -133,7 +133,9 @@ public abstract class AbstractMetadata extends GeonetEntity {
     @Column(nullable = false)
     @Lob
     @Basic(fetch = FetchType.LAZY)
-    @Type(type = "org.hibernate.type.StringClobType") // this is a work around for postgres so postgres can correctly load clobs
+    // a StringClobType, a work around for postgres so postgres can correctly load clobs, which also
+    // handles the compression of the data (see MetadataDataCodec)
+    @Type(type = "org.fao.geonet.domain.converter.MetadataDataClobType")
     public String getData() {
         return _data;
     }
@@ -190,7 +192,8 @@ public abstract class AbstractMetadata extends GeonetEntity {
     }
 
     /**
-     * Parse the data as xml and return the data.
+     * Parse the data as xml and return the data. Unless it is validated, the parsed data of a
+     * saved record is cached (see {@link ParsedMetadataCache}) and a copy is returned.
      *
      * @param validate if true validate the XML while parsing.
      * @return the parsed metadata.
@@ -199,7 +202,10 @@ public abstract class AbstractMetadata extends GeonetEntity {
      */
     @Transient
     public Element getXmlData(boolean validate) throws IOException, JDOMException {
-        return Xml.loadString(getData(), validate);
+        if (validate) {
+            return Xml.loadString(getData(), true);
+        }
+        return ParsedMetadataCache.getXmlData(this);
     }
 
     private static String replaceString(final String initialString, final String pattern, final String replacement) {
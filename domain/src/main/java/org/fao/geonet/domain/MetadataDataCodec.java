@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.domain;
+
+import org.fao.geonet.Constants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nullable;
+
+/**
+ * Storage encoding of the data of the records ({@link AbstractMetadata#getData()}).
+ *
+ * When compression is enabled with the {@link #COMPRESSION_PROPERTY} system property, records
+ * larger than {@link #MIN_LENGTH} characters are stored deflated and base64 encoded, prefixed by
+ * {@link #PREFIX}. The column keeps its type so that nothing changes for the database, and
+ * ISO 19139 records typically take 5 to 10 times less space. Stored data is always decoded, even
+ * when compression is disabled, so that compression can be turned off at any time.
+ *
+ * The encoding is applied when the data is written to and read from the database, the entities
+ * always contain the XML. Code reading or writing the column with JDBC, eg. Java database
+ * migrations, must decode and encode it too. SQL migration files, which can not, are run once
+ * the database migration has stored the data of all the records uncompressed.
+ */
+public final class MetadataDataCodec {
+    public static final String COMPRESSION_PROPERTY = "geonetwork.metadata.data.compression";
+    /**
+     * Prefix of compressed data. It can not be the start of an XML document.
+     */
+    public static final String PREFIX = "gn:deflate:";
+    /**
+     * Records smaller than this number of characters are not compressed.
+     */
+    public static final int MIN_LENGTH = 2048;
+
+    private static final boolean ENABLED = Boolean.getBoolean(COMPRESSION_PROPERTY);
+
+    private MetadataDataCodec() {
+    }
+
+    public static boolean isCompressionEnabled() {
+        return ENABLED;
+    }
+
+    public static boolean isEncoded(@Nullable String data) {
+        return data != null && data.startsWith(PREFIX);
+    }
+
+    /**
+     * @return the data to store: the compressed data if compression is enabled and makes the data
+     * smaller, the data otherwise.
+     */
+    @Nullable
+    public static String encode(@Nullable String data) {
+        if (!ENABLED || data == null || data.length() < MIN_LENGTH || isEncoded(data)) {
+            return data;
+        }
+        return compress(data);
+    }
+
+    /**
+     * Compresses the data whether compression is enabled or not.
+     *
+     * @return the compressed data or the data itself if compressing does not make it smaller.
+     */
+    public static String compress(String data) {
+        byte[] bytes = data.getBytes(Constants.CHARSET);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            String encoded = PREFIX + Base64.getEncoder().encodeToString(out.toByteArray());
+            return encoded.length() < data.length() ? encoded : data;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the XML of stored data.
+     */
+    @Nullable
+    public static String decode(@Nullable String data) {
+        if (!isEncoded(data)) {
+            return data;
+        }
+        byte[] bytes = Base64.getDecoder().decode(data.substring(PREFIX.length()));
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 6);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated compressed data");
+                }
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), Constants.CHARSET);
+        } catch (IOException | DataFormatException e) {
+            throw new IllegalStateException("Unable to decode the compressed data of a record", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -38,6 +38,7 @@ public class MetadataHarvestInfo {
     private char _harvested = Constants.YN_FALSE;
     private String _uuid;
     private String _uri;
+    private String _hash;
 
     /**
      * For backwards compatibility we need the isharvested column to be either 'n' or 'y'. This is a
@@ -127,12 +128,36 @@ public class MetadataHarvestInfo {
         return this;
     }
 
+    /**
+     * Get the hash of the harvested content, including the harvester settings applied to it.
+     *
+     * @return the hash of the harvested content or null if it was not computed when the metadata
+     * was harvested.
+     */
+    @Column(name = "harvestHash", length = 40)
+    public String getHash() {
+        return _hash;
+    }
+
+    /**
+     * Set the hash of the harvested content. Harvesters compare it with the hash of the remote
+     * content to skip the records that did not change.
+     *
+     * @param hash the hash of the harvested content.
+     * @return this harvest info object
+     */
+    public MetadataHarvestInfo setHash(String hash) {
+        this._hash = hash;
+        return this;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
         result = prime * result + _harvested;
         result = prime * result + ((_uri == null) ? 0 : _uri.hashCode());
+        result = prime * result + ((_hash == null) ? 0 : _hash.hashCode());
         result = prime * result + ((_uuid == null) ? 0 : _uuid.hashCode());
         return result;
     }
@@ -153,6 +178,11 @@ public class MetadataHarvestInfo {
                 return false;
         } else if (!_uri.equals(other._uri))
             return false;
+        if (_hash == null) {
+            if (other._hash != null)
+                return false;
+        } else if (!_hash.equals(other._hash))
+            return false;
         if (_uuid == null) {
             if (other._uuid != null)
                 return false;
@@ -164,7 +194,7 @@ public class MetadataHarvestInfo {
 	@Override
 	public String toString() {
 		return "MetadataHarvestInfo [_harvested=" + _harvested + ", " + (_uuid != null ? "_uuid=" + _uuid + ", " : "")
-				+ (_uri != null ? "_uri=" + _uri : "") + "]";
+				+ (_uri != null ? "_uri=" + _uri + ", " : "") + (_hash != null ? "_hash=" + _hash : "") + "]";
 	}
 	
 	@Override
@@ -174,6 +204,7 @@ public class MetadataHarvestInfo {
 		clon.setHarvested(this.isHarvested());
 		clon.setUri(this.getUri());
 		clon.setUuid(this.getUuid());
+		clon.setHash(this.getHash());
 		
 		return clon;
 	}
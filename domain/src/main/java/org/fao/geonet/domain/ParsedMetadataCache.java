@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.domain;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+
+import java.io.IOException;
+
+/**
+ * Cache of the parsed XML of the records, used by {@link AbstractMetadata#getXmlData(boolean)}
+ * so that a record displayed, validated and indexed in a row is only parsed once.
+ *
+ * Entries are keyed by the record id and are only used if the change date and the data of the
+ * record are the ones that were parsed, so a record updated without going through the entity
+ * listeners (eg. a bulk update query) is parsed again. The cached trees are never returned, the
+ * callers get a copy which they can modify.
+ *
+ * The cache is bounded by an estimate of the heap used by the parsed records, which can be set in
+ * MB with the {@link #MAX_SIZE_PROPERTY} system property (64 by default, 0 disables the cache).
+ */
+public final class ParsedMetadataCache {
+    public static final String MAX_SIZE_PROPERTY = "geonetwork.metadata.xmlCache.maxSize";
+
+    /**
+     * Rough number of bytes used by a parsed JDOM tree for each character of the XML document.
+     */
+    private static final int BYTES_PER_CHAR = 8;
+
+    private static final long MAX_WEIGHT = Long.getLong(MAX_SIZE_PROPERTY, 64L) * 1024 * 1024;
+
+    private static final Cache<Integer, Entry> CACHE = CacheBuilder.newBuilder()
+        .maximumWeight(MAX_WEIGHT)
+        .weigher(new Weigher<Integer, Entry>() {
+            @Override
+            public int weigh(Integer key, Entry entry) {
+                return entry.weight;
+            }
+        })
+        .recordStats()
+        .build();
+
+    private ParsedMetadataCache() {
+    }
+
+    /**
+     * Returns a copy of the parsed data of a record, parsing it if it is not cached or if the
+     * record changed.
+     */
+    static Element getXmlData(AbstractMetadata metadata) throws IOException, JDOMException {
+        final String data = metadata.getData();
+        if (MAX_WEIGHT <= 0 || data == null || metadata.getId() == 0) {
+            return Xml.loadString(data, false);
+        }
+        final String changeDate = getChangeDate(metadata);
+        Entry entry = CACHE.getIfPresent(metadata.getId());
+        if (entry == null || !entry.matches(changeDate, data)) {
+            entry = new Entry(changeDate, data, Xml.loadString(data, false));
+            CACHE.put(metadata.getId(), entry);
+        }
+        return (Element) entry.xml.clone();
+    }
+
+    private static String getChangeDate(AbstractMetadata metadata) {
+        final MetadataDataInfo dataInfo = metadata.getDataInfo();
+        if (dataInfo == null || dataInfo.getChangeDate() == null) {
+            return null;
+        }
+        return dataInfo.getChangeDate().getDateAndTime();
+    }
+
+    /**
+     * Removes the parsed data of a record from the cache.
+     */
+    public static void invalidate(int metadataId) {
+        CACHE.invalidate(metadataId);
+    }
+
+    public static void invalidateAll() {
+        CACHE.invalidateAll();
+    }
+
+    /**
+     * @return the hit, miss and eviction statistics of the cache.
+     */
+    public static CacheStats getStats() {
+        return CACHE.stats();
+    }
+
+    /**
+     * @return the number of records in the cache.
+     */
+    public static long getSize() {
+        return CACHE.size();
+    }
+
+    /**
+     * @return the estimated number of bytes used by the records in the cache.
+     */
+    public static long getWeight() {
+        long weight = 0;
+        for (Entry entry : CACHE.asMap().values()) {
+            weight += entry.weight;
+        }
+        return weight;
+    }
+
+    private static final class Entry {
+        private final String changeDate;
+        private final int dataLength;
+        private final int dataHash;
+        private final Element xml;
+        private final int weight;
+
+        private Entry(String changeDate, String data, Element xml) {
+            this.changeDate = changeDate;
+            this.dataLength = data.length();
+            this.dataHash = data.hashCode();
+            this.xml = xml;
+            this.weight = (int) Math.min(Integer.MAX_VALUE, (long) data.length() * BYTES_PER_CHAR);
+        }
+
+        private boolean matches(String changeDate, String data) {
+            return (this.changeDate == null ? changeDate == null : this.changeDate.equals(changeDate))
+                && dataLength == data.length()
+                && dataHash == data.hashCode();
+        }
+    }
+}
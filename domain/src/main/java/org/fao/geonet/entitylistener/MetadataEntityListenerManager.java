@@ -24,6 +24,7 @@
 package org.fao.geonet.entitylistener;
 
 import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.domain.ParsedMetadataCache;
 
 import javax.persistence.*;
 
@@ -48,6 +49,7 @@ public class MetadataEntityListenerManager extends AbstractEntityListenerManager
 
     @PostRemove
     public void postRemove(final Metadata entity) {
+        ParsedMetadataCache.invalidate(entity.getId());
         handleEvent(PersistentEventType.PostRemove, entity);
     }
 
@@ -58,6 +60,7 @@ public class MetadataEntityListenerManager extends AbstractEntityListenerManager
 
     @PostUpdate
     public void postUpdate(final Metadata entity) {
+        ParsedMetadataCache.invalidate(entity.getId());
         handleEvent(PersistentEventType.PostUpdate, entity);
     }
 
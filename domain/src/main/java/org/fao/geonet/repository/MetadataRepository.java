@@ -29,6 +29,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.domain.MetadataDataCodec;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -80,4 +81,28 @@ public interface MetadataRepository extends GeonetRepository<Metadata, Integer>,
     @Transactional
     @Query("UPDATE " + Metadata.TABLENAME + " m SET m.dataInfo.popularity = m.dataInfo.popularity + 1 WHERE m.id = ?1")
     void incrementPopularity(int mdId);
+
+    /**
+     * Find the ids of the metadata whose data could be stored compressed but is not (see
+     * {@link MetadataDataCodec}).
+     */
+    @Query("SELECT m.id FROM " + Metadata.TABLENAME + " m WHERE LENGTH(m.data) >= " + MetadataDataCodec.MIN_LENGTH
+        + " AND m.data NOT LIKE '" + MetadataDataCodec.PREFIX + "%'")
+    List<Integer> findAllIdsWithUncompressedData();
+
+    /**
+     * Replace the stored data of a metadata without changing its change date or triggering entity
+     * listeners. The data is only replaced if the metadata still has the change date it had when
+     * it was read, so that a concurrent change is not overwritten.
+     *
+     * @param mdId       the id of the metadata
+     * @param changeDate the change date the metadata had when it was read
+     * @param data       the data to store
+     * @return 1 if the data was replaced, 0 if the metadata changed or does not exist anymore.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE " + Metadata.TABLENAME + " m SET m.data = ?3 WHERE m.id = ?1"
+        + " AND m.dataInfo.changeDate.dateAndTime = ?2")
+    int updateStoredData(int mdId, String changeDate, String data);
 }
@@ -166,7 +166,7 @@ public class MetadataRepositoryImpl implements MetadataRepositoryCustom<Metadata
     public List<SimpleMetadata> findAllSimple(String id) {
         Query query = _entityManager.createQuery(
             "select new org.fao.geonet.repository.SimpleMetadata("
-                + "id, uuid, dataInfo.changeDate, dataInfo.type_JPAWorkaround) "
+                + "id, uuid, dataInfo.changeDate, dataInfo.type_JPAWorkaround, harvestInfo.hash) "
                 + "from Metadata where harvestInfo.uuid = :id").setParameter("id", id);
 
         //TODO paginate
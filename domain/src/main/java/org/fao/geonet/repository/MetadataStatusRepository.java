@@ -23,12 +23,14 @@
 
 package org.fao.geonet.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.annotation.Nonnull;
 
 import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.domain.MetadataStatus;
+import org.fao.geonet.domain.StatusValueType;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
@@ -53,6 +55,18 @@ public interface MetadataStatusRepository extends GeonetRepository<MetadataStatu
     @Nonnull
     List<MetadataStatus> findAllByMetadataId(int metadataId, Sort sort);
 
+    /**
+     * Find all the MetadataStatus objects of a type associated to a set of metadata.
+     *
+     * @param metadataIds the metadata ids.
+     * @param type        the type of status
+     * @param sort        how to sort the results
+     * @return all the MetadataStatus objects of the given type associated to the metadata.
+     */
+    @Nonnull
+    List<MetadataStatus> findAllByMetadataIdInAndStatusValue_Type(Collection<Integer> metadataIds,
+                                                                  StatusValueType type, Sort sort);
+
     /**
      * Find the MetadataStatus objects by the associated metadata id, status id, user id and change date.
      *
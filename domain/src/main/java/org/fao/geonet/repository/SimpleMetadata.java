@@ -8,6 +8,7 @@ public class SimpleMetadata {
     private String uuid;
     private String date;
     private String isTemplate;
+    private String hash;
 
     public SimpleMetadata(Integer id, String uuid, org.fao.geonet.domain.ISODate date, char isTemplate) {
         this.id = id.toString();
@@ -16,6 +17,11 @@ public class SimpleMetadata {
         this.isTemplate = String.valueOf(isTemplate);
     }
 
+    public SimpleMetadata(Integer id, String uuid, org.fao.geonet.domain.ISODate date, char isTemplate, String hash) {
+        this(id, uuid, date, isTemplate);
+        this.hash = hash;
+    }
+
     public String getId() {
         return id;
     }
@@ -47,4 +53,12 @@ public class SimpleMetadata {
     public void setIsTemplate(String isTemplate) {
         this.isTemplate = isTemplate;
     }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
 }
@@ -22,6 +22,7 @@
  */
 package org.fao.geonet.repository.userfeedback;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -56,6 +57,14 @@ public interface UserFeedbackRepository extends JpaRepository<UserFeedback, UUID
      */
     List<UserFeedback> findByMetadata_Uuid(String metadataUuid);
 
+    /**
+     * Find by metadata uuids.
+     *
+     * @param metadataUuids the metadata uuids
+     * @return the list
+     */
+    List<UserFeedback> findByMetadata_UuidIn(Collection<String> metadataUuids);
+
     /**
      * Find by metadata uuid and status order by date desc.
      *
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.domain;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetadataDataCodecTest {
+
+    @Test
+    public void testCompressAndDecode() {
+        StringBuilder xml = new StringBuilder("<gmd:MD_Metadata>");
+        for (int i = 0; i < 200; i++) {
+            xml.append("<gmd:keyword><gco:CharacterString>keyword ").append(i)
+                .append(" \u00e9t\u00e9</gco:CharacterString></gmd:keyword>");
+        }
+        xml.append("</gmd:MD_Metadata>");
+
+        String compressed = MetadataDataCodec.compress(xml.toString());
+        assertTrue(MetadataDataCodec.isEncoded(compressed));
+        assertTrue(compressed.length() < xml.length() / 4);
+        assertEquals(xml.toString(), MetadataDataCodec.decode(compressed));
+    }
+
+    @Test
+    public void testDecodeUncompressed() {
+        String xml = "<root/>";
+        assertFalse(MetadataDataCodec.isEncoded(xml));
+        assertSame(xml, MetadataDataCodec.decode(xml));
+        assertEquals(null, MetadataDataCodec.decode(null));
+    }
+
+    @Test
+    public void testIncompressibleDataIsKept() {
+        String data = "<a/>";
+        assertSame(data, MetadataDataCodec.compress(data));
+    }
+}
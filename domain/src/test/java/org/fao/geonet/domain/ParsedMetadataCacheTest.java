@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.domain;
+
+import org.jdom.Element;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class ParsedMetadataCacheTest {
+
+    @After
+    public void tearDown() {
+        ParsedMetadataCache.invalidateAll();
+    }
+
+    @Test
+    public void testReturnsCopies() throws Exception {
+        Metadata metadata = newMetadata(1, "<root><a/></root>");
+
+        Element first = metadata.getXmlData(false);
+        first.addContent(new Element("b"));
+        long hits = ParsedMetadataCache.getStats().hitCount();
+
+        Element second = metadata.getXmlData(false);
+        assertNotSame(first, second);
+        assertEquals(1, second.getChildren().size());
+        assertEquals(hits + 1, ParsedMetadataCache.getStats().hitCount());
+    }
+
+    @Test
+    public void testParsesChangedRecords() throws Exception {
+        Metadata metadata = newMetadata(2, "<root><a/></root>");
+        assertEquals("a", ((Element) metadata.getXmlData(false).getChildren().get(0)).getName());
+
+        metadata.setData("<root><b/></root>");
+        assertEquals("b", ((Element) metadata.getXmlData(false).getChildren().get(0)).getName());
+
+        metadata.getDataInfo().setChangeDate(new ISODate("2017-01-01T00:00:00"));
+        metadata.setData("<root><c/></root>");
+        assertEquals("c", ((Element) metadata.getXmlData(false).getChildren().get(0)).getName());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        Metadata metadata = newMetadata(3, "<root/>");
+        metadata.getXmlData(false);
+        long misses = ParsedMetadataCache.getStats().missCount();
+
+        ParsedMetadataCache.invalidate(3);
+        metadata.getXmlData(false);
+        assertEquals(misses + 1, ParsedMetadataCache.getStats().missCount());
+    }
+
+    private Metadata newMetadata(int id, String data) {
+        Metadata metadata = new Metadata();
+        metadata.setId(id);
+        metadata.setData(data);
+        metadata.getDataInfo().setChangeDate(new ISODate("2016-01-01T00:00:00"));
+        return metadata;
+    }
+}
@@ -27,11 +27,16 @@ import org.fao.geonet.domain.*;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test the MetadataValidationRepository class User: Jesse Date: 9/4/13 Time: 4:01 PM
@@ -79,6 +84,24 @@ public class MetadataValidationRepositoryTest extends AbstractSpringDataTest {
         assertEquals(val3.getId(), found.get(0).getId());
     }
 
+    @Test
+    public void testFindAllById_MetadataIdIn() throws Exception {
+        MetadataValidation val1 = _metadataValidationRepository.save(newValidation());
+        MetadataValidation val2 = _metadataValidationRepository.save(newValidation());
+        MetadataValidation val3 = _metadataValidationRepository.save(newValidation());
+
+        List<MetadataValidation> found = _metadataValidationRepository.findAllById_MetadataIdIn(
+            Arrays.asList(val1.getId().getMetadataId(), val3.getId().getMetadataId()));
+        assertEquals(2, found.size());
+        Set<MetadataValidationId> ids = new HashSet<MetadataValidationId>();
+        for (MetadataValidation validation : found) {
+            ids.add(validation.getId());
+        }
+        assertTrue(ids.contains(val1.getId()));
+        assertTrue(ids.contains(val3.getId()));
+        assertFalse(ids.contains(val2.getId()));
+    }
+
     @Test
     public void testDeleteAllById_MetadataId() throws Exception {
         MetadataValidation val1 = _metadataValidationRepository.save(newValidation());
@@ -103,6 +103,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
+import javax.annotation.Nullable;
+
 import static org.fao.geonet.repository.HarvesterSettingRepository.ID_PREFIX;
 import static org.quartz.JobKey.jobKey;
 
@@ -124,6 +126,10 @@ public abstract class AbstractHarvester<T extends HarvestResult, P extends Abstr
      * Time to wait for important operations in seconds. Patience, but don't block forever.
      */
     private static final Integer LONG_WAIT = 30;
+    /**
+     * Name of the info setting holding the date from which incremental harvests ask for changes.
+     */
+    private static final String WATERMARK = "watermark";
 
     private final ReentrantLock lock = new ReentrantLock(false);
 
@@ -914,6 +920,34 @@ public abstract class AbstractHarvester<T extends HarvestResult, P extends Abstr
      */
     protected abstract void doHarvest(Logger l) throws Exception;
 
+    /**
+     * Get the date from which an incremental harvest can ask the remote node for the records that
+     * changed. It is cleared when the harvester settings are updated, so that the next harvest
+     * is a full one.
+     *
+     * @return the watermark saved by the last successful harvest or null if there is none.
+     */
+    @Nullable
+    protected ISODate getWatermark() {
+        String watermark = harvesterSettingsManager.getValue("harvesting/id:" + id + "/info/" + WATERMARK);
+        return StringUtils.isEmpty(watermark) ? null : new ISODate(watermark);
+    }
+
+    /**
+     * Save the date from which the next incremental harvest asks for the records that changed.
+     * Only call it after a harvest without errors, otherwise failed records are not harvested
+     * again until the next full harvest.
+     */
+    protected void setWatermark(ISODate watermark) {
+        String infoPath = "harvesting/id:" + id + "/info";
+        if (harvesterSettingsManager.get(infoPath + "/" + WATERMARK, 0) == null) {
+            // Harvesters created before incremental harvesting was available
+            harvesterSettingsManager.add(infoPath, WATERMARK, watermark.toString());
+        } else {
+            harvesterSettingsManager.setValue(infoPath + "/" + WATERMARK, watermark.toString());
+        }
+    }
+
 
     /**
      * Invoked from doAdd and doUpdate.
@@ -962,6 +996,7 @@ public abstract class AbstractHarvester<T extends HarvestResult, P extends Abstr
         //--- setup stats node ----------------------------------------
 
         harvesterSettingsManager.add(ID_PREFIX + infoId, "lastRun", "");
+        harvesterSettingsManager.add(ID_PREFIX + infoId, WATERMARK, "");
 
         //--- store privileges and categories ------------------------
 
@@ -1056,6 +1091,13 @@ public abstract class AbstractHarvester<T extends HarvestResult, P extends Abstr
             add(res, "updated", result.updatedMetadata);
             add(res, "thumbnails", result.thumbnails);
             add(res, "thumbnailsFailed", result.thumbnailsFailed);
+            if (!result.stages.isEmpty()) {
+                Element stages = new Element("stages");
+                for (HarvestStageStats stage : result.stages) {
+                    stages.addContent(stage.toElement());
+                }
+                res.addContent(stages);
+            }
         } else if (this.loadedInfo != null) {
             return (Element) this.loadedInfo.clone();
         }
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.harvest.harvester;
+
+import jeeves.server.context.ServiceContext;
+
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.utils.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+/**
+ * Runs the records of a harvest through a sequence of stages, eg. fetch, transform, store and
+ * index, each stage working on other records at the same time.
+ *
+ * Each stage has its own threads and a bounded queue of records to process, so a slow stage
+ * throttles the stages feeding it instead of buffering an unbounded number of records in memory.
+ * A batch stage processes the records available in its queue together, up to a batch size, eg. to
+ * request several records at once or to store them in one transaction.
+ *
+ * Records are {@link #submit(Object) submitted} by the harvesting thread once the pipeline is
+ * {@link #start() started}, and {@link #finish()} waits until they went through every stage. An
+ * exception thrown by a stage is passed to the {@link ErrorHandler} and drops the record(s) it was
+ * processing; the other records go on.
+ *
+ * @param <T> the type of the records, usually holding the state of one record through the stages.
+ */
+public class HarvestPipeline<T> {
+
+    private static final Object END = new Object();
+
+    private final String name;
+    private final ServiceContext context;
+    private final AtomicBoolean cancelMonitor;
+    private final ErrorHandler<T> errorHandler;
+    private final List<Stage> stages = new ArrayList<Stage>();
+    private final List<Thread> threads = new ArrayList<Thread>();
+    private boolean started;
+
+    /**
+     * @param name          name of the pipeline, used to name its threads.
+     * @param context       the service context of which each stage thread gets a copy.
+     * @param cancelMonitor records are dropped by the stages once set.
+     * @param errorHandler  called with the records dropped because a stage failed to process them.
+     */
+    public HarvestPipeline(String name, @Nullable ServiceContext context, AtomicBoolean cancelMonitor,
+                           ErrorHandler<T> errorHandler) {
+        this.name = name;
+        this.context = context;
+        this.cancelMonitor = cancelMonitor;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Adds a stage processing records one by one.
+     *
+     * @param queueSize number of records waiting for the stage before it blocks the previous one.
+     */
+    public HarvestPipeline<T> addStage(String name, int threads, int queueSize, final Processor<T> processor) {
+        return addStage(new Stage(name, threads, 1, queueSize) {
+            @Override
+            Collection<T> process(List<T> records) throws Exception {
+                T record = records.get(0);
+                return processor.process(record) ? records : Collections.<T>emptyList();
+            }
+        });
+    }
+
+    /**
+     * Adds a stage processing up to batchSize records at once. Twice a batch per thread can wait
+     * for the stage before it blocks the previous one.
+     */
+    public HarvestPipeline<T> addBatchStage(String name, int threads, int batchSize, final BatchProcessor<T> processor) {
+        return addStage(new Stage(name, threads, batchSize, batchSize * threads * 2) {
+            @Override
+            Collection<T> process(List<T> records) throws Exception {
+                return processor.process(records);
+            }
+        });
+    }
+
+    private HarvestPipeline<T> addStage(Stage stage) {
+        if (started) {
+            throw new IllegalStateException("Pipeline " + name + " already started");
+        }
+        if (!stages.isEmpty()) {
+            stages.get(stages.size() - 1).next = stage;
+        }
+        stages.add(stage);
+        return this;
+    }
+
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        if (stages.isEmpty()) {
+            throw new IllegalStateException("Pipeline " + name + " has no stage");
+        }
+        started = true;
+        for (final Stage stage : stages) {
+            for (int i = 1; i <= stage.threads; i++) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (context != null) {
+                            context.createThreadContext().setAsThreadLocal();
+                        }
+                        stage.work();
+                    }
+                }, "harvest-" + name + "-" + stage.name + "-" + i);
+                thread.setDaemon(true);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Passes a record to the first stage, waiting for room in its queue.
+     */
+    public void submit(T record) throws InterruptedException {
+        if (!started) {
+            start();
+        }
+        stages.get(0).queue.put(record);
+    }
+
+    /**
+     * @return true if the pipeline was started and not finished yet.
+     */
+    public synchronized boolean isRunning() {
+        return started && !threads.isEmpty();
+    }
+
+    /**
+     * Waits until all the submitted records went through the pipeline and stops its threads.
+     *
+     * @return the statistics of each stage.
+     */
+    public synchronized List<HarvestStageStats> finish() throws InterruptedException {
+        if (started && !threads.isEmpty()) {
+            stages.get(0).end();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            threads.clear();
+        }
+        return getStats();
+    }
+
+    /**
+     * Stops the threads of the pipeline without waiting for the records being processed.
+     */
+    public synchronized void shutdown() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        threads.clear();
+    }
+
+    public List<HarvestStageStats> getStats() {
+        List<HarvestStageStats> stats = new ArrayList<HarvestStageStats>();
+        for (Stage stage : stages) {
+            stats.add(stage.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Processes one record.
+     */
+    public interface Processor<T> {
+        /**
+         * @return false if the record must not go to the next stages.
+         */
+        boolean process(T record) throws Exception;
+    }
+
+    /**
+     * Processes several records at once.
+     */
+    public interface BatchProcessor<T> {
+        /**
+         * @return the records going to the next stages.
+         */
+        Collection<T> process(List<T> records) throws Exception;
+    }
+
+    public interface ErrorHandler<T> {
+        void onError(String stage, T record, Throwable error);
+    }
+
+    private abstract class Stage {
+        private final String name;
+        private final int threads;
+        private final int batchSize;
+        private final BlockingQueue<Object> queue;
+        private final AtomicInteger runningThreads;
+        private Stage next;
+
+        private final AtomicLong received = new AtomicLong();
+        private final AtomicLong passed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicLong firstNanos = new AtomicLong();
+        private final AtomicLong lastNanos = new AtomicLong();
+
+        Stage(String name, int threads, int batchSize, int queueSize) {
+            this.name = name;
+            this.threads = Math.max(1, threads);
+            this.batchSize = Math.max(1, batchSize);
+            this.queue = new ArrayBlockingQueue<Object>(Math.max(1, queueSize));
+            this.runningThreads = new AtomicInteger(this.threads);
+        }
+
+        abstract Collection<T> process(List<T> records) throws Exception;
+
+        void end() throws InterruptedException {
+            for (int i = 0; i < threads; i++) {
+                queue.put(END);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void work() {
+            List<T> batch = new ArrayList<T>(batchSize);
+            boolean interrupted = false;
+            try {
+                boolean ended = false;
+                while (!ended) {
+                    Object record = queue.take();
+                    if (record == END) {
+                        break;
+                    }
+                    batch.add((T) record);
+                    // take what is already waiting, up to a batch, without waiting for more
+                    while (batch.size() < batchSize) {
+                        record = queue.poll();
+                        if (record == null) {
+                            break;
+                        }
+                        if (record == END) {
+                            ended = true;
+                            break;
+                        }
+                        batch.add((T) record);
+                    }
+                    handle(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+                Thread.currentThread().interrupt();
+            } finally {
+                // the next stage must end even if this thread died, otherwise finish() never returns
+                if (!interrupted && runningThreads.decrementAndGet() == 0 && next != null) {
+                    try {
+                        next.end();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        private void handle(List<T> batch) throws InterruptedException {
+            received.addAndGet(batch.size());
+            if (cancelMonitor.get()) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            firstNanos.compareAndSet(0, start);
+            Collection<T> result;
+            try {
+                result = process(batch);
+            } catch (Throwable t) {
+                failed.addAndGet(batch.size());
+                for (T record : batch) {
+                    try {
+                        errorHandler.onError(name, record, t);
+                    } catch (Throwable e) {
+                        Log.error(Geonet.HARVESTER, "Error handler of pipeline " + HarvestPipeline.this.name +
+                            " failed for a record dropped by stage " + name + ": " + e.getMessage(), e);
+                    }
+                }
+                result = Collections.emptyList();
+            }
+            long end = System.nanoTime();
+            busyNanos.addAndGet(end - start);
+            lastNanos.set(end);
+            passed.addAndGet(result.size());
+
+            if (next != null) {
+                for (T record : result) {
+                    next.queue.put(record);
+                }
+            }
+        }
+
+        HarvestStageStats getStats() {
+            return new HarvestStageStats(name, threads, received.get(), passed.get(), failed.get(),
+                busyNanos.get() / 1000000, (lastNanos.get() - firstNanos.get()) / 1000000);
+        }
+    }
+}
@@ -23,6 +23,9 @@
 
 package org.fao.geonet.kernel.harvest.harvester;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class HarvestResult {
     public int addedMetadata;            // = total
     public int atomicDatasetRecords;        // = md for atomic datasets
@@ -61,4 +64,6 @@ public class HarvestResult {
     public int thumbnailsFailed;        // = number of thumbnail creation which failed
     /** Number of metadata managed by other harvester. */
     public int managedByOtherHarvester;
+    /** Statistics of the stages of the {@link HarvestPipeline} if the harvester uses one. */
+    public List<HarvestStageStats> stages = new ArrayList<HarvestStageStats>();
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.harvest.harvester;
+
+import org.jdom.Element;
+
+import java.util.Locale;
+
+/**
+ * Statistics of one stage of a {@link HarvestPipeline}.
+ */
+public class HarvestStageStats {
+    private final String name;
+    private final int threads;
+    private final long received;
+    private final long passed;
+    private final long failed;
+    private final long busyMillis;
+    private final long elapsedMillis;
+
+    public HarvestStageStats(String name, int threads, long received, long passed, long failed, long busyMillis,
+                             long elapsedMillis) {
+        this.name = name;
+        this.threads = threads;
+        this.received = received;
+        this.passed = passed;
+        this.failed = failed;
+        this.busyMillis = busyMillis;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return the number of records which reached the stage.
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return the number of records passed to the next stage.
+     */
+    public long getPassed() {
+        return passed;
+    }
+
+    /**
+     * @return the number of records dropped because the stage failed to process them.
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the time spent processing records, summed over the threads of the stage.
+     */
+    public long getBusyMillis() {
+        return busyMillis;
+    }
+
+    /**
+     * @return the time between the first record processed and the last one.
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return the number of records processed per second while the stage was working.
+     */
+    public double getRecordsPerSecond() {
+        return elapsedMillis <= 0 ? 0 : received * 1000.0 / elapsedMillis;
+    }
+
+    public Element toElement() {
+        return new Element("stage")
+            .setAttribute("name", name)
+            .setAttribute("threads", String.valueOf(threads))
+            .setAttribute("received", String.valueOf(received))
+            .setAttribute("passed", String.valueOf(passed))
+            .setAttribute("failed", String.valueOf(failed))
+            .setAttribute("busyMillis", String.valueOf(busyMillis))
+            .setAttribute("recordsPerSecond", String.format(Locale.ROOT, "%.1f", getRecordsPerSecond()));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s: %d records (%d passed, %d failed) by %d threads, %.1f records/s, busy %d ms",
+            name, received, passed, failed, threads, getRecordsPerSecond(), busyMillis);
+    }
+}
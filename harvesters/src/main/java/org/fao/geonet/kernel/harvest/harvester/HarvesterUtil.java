@@ -24,16 +24,21 @@
 package org.fao.geonet.kernel.harvest.harvester;
 
 import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.domain.Pair;
 import org.fao.geonet.kernel.schema.MetadataSchema;
+import org.fao.geonet.util.Sha1Encoder;
 import org.fao.geonet.utils.Xml;
 import org.jdom.Element;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by francois on 3/7/14.
@@ -90,4 +95,66 @@ public class HarvesterUtil {
         }
         return md;
     }
+
+    /**
+     * Compute the hash of a remote record and of the harvester settings that change how it is
+     * stored: owner, privileges, categories, import XSLT and batch edits, plus the harvester
+     * specific settings given. A record whose hash did not change since it was last harvested
+     * does not need to be transformed, stored and indexed again.
+     *
+     * @param md       the remote record, before the harvester transforms it.
+     * @param settings harvester specific settings, eg. the XSL filter.
+     */
+    public static String computeHash(Element md, AbstractParams params, String... settings) {
+        StringBuilder content = new StringBuilder(Xml.getString(md));
+        content.append('\n').append(params.getOwnerIdUser())
+            .append('\n').append(params.getOwnerIdGroup())
+            .append('\n').append(params.getImportXslt())
+            .append('\n').append(params.getBatchEdits());
+        for (Privileges privileges : params.getPrivileges()) {
+            content.append('\n').append(privileges.getGroupId());
+            for (Integer operation : privileges.getOperations()) {
+                content.append(',').append(operation);
+            }
+        }
+        for (String category : params.getCategories()) {
+            content.append('\n').append(category);
+        }
+        for (String setting : settings) {
+            content.append('\n').append(setting);
+        }
+        return Sha1Encoder.encodeString(content.toString());
+    }
+
+    /**
+     * Compute the hash of the content of a stylesheet and of the local stylesheets it includes or
+     * imports, to be given to {@link #computeHash(Element, AbstractParams, String...)} when the
+     * harvester transforms the records with it.
+     *
+     * @return the hash, or an empty string if the stylesheet does not exist.
+     */
+    public static String getStylesheetHash(Path styleSheetPath) throws IOException {
+        if (!Files.exists(styleSheetPath)) {
+            return "";
+        }
+        StringBuilder content = new StringBuilder();
+        for (Path dependency : Xml.getStylesheetDependencies(styleSheetPath)) {
+            if (Files.isRegularFile(dependency)) {
+                content.append(new String(Files.readAllBytes(dependency), StandardCharsets.UTF_8)).append('\n');
+            }
+        }
+        return Sha1Encoder.encodeString(content.toString());
+    }
+
+    /**
+     * Compute the watermark of a harvest, the date from which the next incremental harvest asks
+     * for changes. It is the day before the harvest started, as a date without time: remote
+     * dates often have a day precision, and the changes done while harvesting or hidden by a
+     * time zone difference are harvested again instead of being missed.
+     *
+     * @param harvestStart the time the harvest started, remote server time if known.
+     */
+    public static ISODate getWatermark(long harvestStart) {
+        return new ISODate(harvestStart - TimeUnit.DAYS.toMillis(1), true);
+    }
 }
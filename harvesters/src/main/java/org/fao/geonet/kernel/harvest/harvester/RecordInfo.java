@@ -57,6 +57,9 @@ public class RecordInfo {
     //---------------------------------------------------------------------------
     public String isTemplate;
 
+    //---------------------------------------------------------------------------
+    public String hash;
+
     //-----------------------------------------------------------------------------
     private boolean dateWasNull;
     //---------------------------------------------------------------------------
@@ -93,6 +96,7 @@ public class RecordInfo {
         uuid = record.getUuid();
         isTemplate = record.getDataInfo().getType().codeString;
         changeDate = record.getDataInfo().getChangeDate().getDateAndTime();
+        hash = record.getHarvestInfo().getHash();
     }
 
     public int hashCode() {
@@ -40,6 +40,7 @@ public class UUIDMapper {
     private HashMap<String, String> hmUuidDate = new HashMap<String, String>();
     private HashMap<String, String> hmUuidId = new HashMap<String, String>();
     private HashMap<String, String> hmUuidTemplate = new HashMap<String, String>();
+    private HashMap<String, String> hmUuidHash = new HashMap<String, String>();
 
     //--------------------------------------------------------------------------
     //---
@@ -57,6 +58,7 @@ public class UUIDMapper {
             hmUuidDate.put(record.getUuid(), record.getDate());
             hmUuidId.put(record.getUuid(), record.getId());
             hmUuidTemplate.put(record.getUuid(), record.getIsTemplate());
+            hmUuidHash.put(record.getUuid(), record.getHash());
         }
     }
 
@@ -84,6 +86,15 @@ public class UUIDMapper {
 
     //--------------------------------------------------------------------------
 
+    /**
+     * @return the hash of the content the record was last harvested from or null if unknown.
+     */
+    public String getHash(String uuid) {
+        return hmUuidHash.get(uuid);
+    }
+
+    //--------------------------------------------------------------------------
+
     public Iterable<String> getUUIDs() {
         return hmUuidDate.keySet();
     }
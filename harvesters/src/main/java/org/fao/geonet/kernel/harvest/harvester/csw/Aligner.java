@@ -25,6 +25,8 @@ package org.fao.geonet.kernel.harvest.harvester.csw;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jeeves.server.context.ServiceContext;
+import jeeves.transaction.TransactionManager;
+import jeeves.transaction.TransactionTask;
 import org.apache.commons.lang.StringUtils;
 import org.fao.geonet.GeonetContext;
 import org.fao.geonet.Logger;
@@ -52,7 +54,9 @@ import org.fao.geonet.kernel.harvest.BaseAligner;
 import org.fao.geonet.kernel.harvest.harvester.CategoryMapper;
 import org.fao.geonet.kernel.harvest.harvester.GroupMapper;
 import org.fao.geonet.kernel.harvest.harvester.HarvestError;
+import org.fao.geonet.kernel.harvest.harvester.HarvestPipeline;
 import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
+import org.fao.geonet.kernel.harvest.harvester.HarvestStageStats;
 import org.fao.geonet.kernel.harvest.harvester.HarvesterUtil;
 import org.fao.geonet.kernel.harvest.harvester.RecordInfo;
 import org.fao.geonet.kernel.harvest.harvester.UUIDMapper;
@@ -66,7 +70,9 @@ import org.jdom.Element;
 import org.jdom.JDOMException;
 import org.jdom.Namespace;
 import org.jdom.xpath.XPath;
+import org.springframework.transaction.TransactionStatus;
 
+import javax.annotation.Nullable;
 import javax.transaction.Transactional;
 import javax.transaction.Transactional.TxType;
 import java.io.IOException;
@@ -77,11 +83,14 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.fao.geonet.kernel.setting.Settings.SYSTEM_CSW_TRANSACTION_XPATH_UPDATE_CREATE_NEW_ELEMENTS;
@@ -101,9 +110,20 @@ public class Aligner extends BaseAligner<CswParams> {
     private IMetadataManager metadataManager;
     private IMetadataIndexer metadataIndexer;
 
+    private static final int INDEX_BATCH_SIZE = 20;
+
     private HarvestResult result;
-    private GetRecordByIdRequest request;
+    private CswServer server;
+    private HarvestPipeline<HarvestedRecord> pipeline;
+    private final Set<String> submittedUuids = new HashSet<String>();
+    /**
+     * Resource identifiers of the records accepted so far, with their uuid, as they are only
+     * found in the index once stored and indexed.
+     */
+    private final ConcurrentMap<String, String> acceptedResources = new ConcurrentHashMap<String, String>();
+    private Collection<HarvestError> errors;
     private String processName;
+    private String processHash = "";
     private Map<String, Object> processParams = new HashMap<String, Object>();
     private Logger log;
 
@@ -126,7 +146,18 @@ public class Aligner extends BaseAligner<CswParams> {
 
         //--- setup get-record-by-id request
 
-        request = new GetRecordByIdRequest(sc);
+        this.server = server;
+        // fail early if the server has no GetRecordById DCP
+        createRequest();
+    }
+
+    /**
+     * Creates a GetRecordById request of full records for the server, using its preferred HTTP
+     * method and output schema.
+     */
+    private GetRecordByIdRequest createRequest() throws OperationAbortedEx {
+        ServiceContext context = getContext();
+        GetRecordByIdRequest request = new GetRecordByIdRequest(context);
         request.setElementSetName(ElementSetName.FULL);
 
         CswOperation oper = server.getOperation(CswServer.GET_RECORD_BY_ID);
@@ -164,6 +195,7 @@ public class Aligner extends BaseAligner<CswParams> {
             request.setCredentials(params.getUsername(), params.getPassword());
         }
 
+        return request;
     }
 
     public HarvestResult align(Collection<RecordInfo> records, Collection<HarvestError> errors) throws Exception {
@@ -172,105 +204,227 @@ public class Aligner extends BaseAligner<CswParams> {
         }
 
         log.debug("Start of alignment for : " + params.getName());
+        this.errors = errors;
 
         //-----------------------------------------------------------------------
-        //--- retrieve all local categories and groups
+        //--- retrieve all local categories and groups once, the pipeline uses them
         //--- retrieve harvested uuids for given harvesting node
 
-        localCateg = new CategoryMapper(context);
-        localGroups = new GroupMapper(context);
-        localUuids = new UUIDMapper(context.getBean(IMetadataUtils.class), params.getUuid());
+        if (pipeline == null) {
+            localCateg = new CategoryMapper(context);
+            localGroups = new GroupMapper(context);
 
-        Pair<String, Map<String, Object>> filter = HarvesterUtil.parseXSLFilter(params.xslfilter);
-        processName = filter.one();
-        processParams = filter.two();
+            Pair<String, Map<String, Object>> filter = HarvesterUtil.parseXSLFilter(params.xslfilter);
+            processName = filter.one();
+            processParams = filter.two();
+            if (!params.xslfilter.equals("")) {
+                processHash = HarvesterUtil.getStylesheetHash(getProcessPath(context, processName));
+            }
+
+            pipeline = createPipeline();
+        }
+        localUuids = new UUIDMapper(context.getBean(IMetadataUtils.class), params.getUuid());
 
-        insertOrUpdate(records, errors);
-        log.debug("End of alignment for : " + params.getName());
+        for (RecordInfo ri : records) {
+            if (cancelMonitor.get()) {
+                return result;
+            }
+            submit(ri);
+        }
+        log.debug("Records submitted for alignment for : " + params.getName());
 
         return result;
     }
 
-    private void insertOrUpdate(Collection<RecordInfo> records, Collection<HarvestError> errors) {
-        for (RecordInfo ri : records) {
+    /**
+     * Creates the pipeline retrieving, transforming, storing and indexing the records which are
+     * new or changed remotely.
+     */
+    private HarvestPipeline<HarvestedRecord> createPipeline() {
+        HarvestPipeline<HarvestedRecord> pipeline = new HarvestPipeline<HarvestedRecord>("csw", context, cancelMonitor,
+            (stage, record, error) -> {
+                if ("index".equals(stage)) {
+                    // the record is stored, only its indexing failed
+                    reportError(record.ri.uuid, error);
+                } else {
+                    fail(record, error);
+                }
+            });
+        pipeline.addBatchStage("fetch", params.maxConnections, params.recordsPerRequest, this::fetch);
+        pipeline.addStage("transform", params.transformThreads, params.transformThreads * 2, this::transform);
+        pipeline.addBatchStage("store", 1, params.storeBatchSize, this::store);
+        pipeline.addBatchStage("index", params.indexThreads, INDEX_BATCH_SIZE, this::index);
+        return pipeline;
+    }
 
-            if (cancelMonitor.get()) {
-                return;
+    /**
+     * Passes the record to the pipeline if it is new or changed remotely.
+     */
+    private void submit(RecordInfo ri) throws InterruptedException {
+        synchronized (result) {
+            result.originalMetadata++;
+            // decremented if the record fails
+            result.totalMetadata++;
+        }
+        if (!submittedUuids.add(ri.uuid)) {
+            log.debug("  - Record already aligned. uuid:" + ri.uuid);
+            synchronized (result) {
+                result.unchangedMetadata++;
             }
-            try {
-                String id = metadataUtils.getMetadataId(ri.uuid);
-
-                if (id == null) {
-                    //record doesn't exist (so it doesn't belong to this harvester)
-                    log.debug("Adding record with uuid " + ri.uuid);
-                    addMetadata(ri, ri.uuid);
-                } else if (localUuids.getID(ri.uuid) == null) {
-                    //Record does not belong to this harvester
-                    result.datasetUuidExist++;
+            return;
+        }
 
-                    switch (params.getOverrideUuid()) {
-                        case OVERRIDE:
-                            updateMetadata(ri, Integer.toString(metadataUtils.findOneByUuid(ri.uuid).getId()), true);
-                            log.debug("Overriding record with uuid " + ri.uuid);
+        try {
+            String id = metadataUtils.getMetadataId(ri.uuid);
+
+            if (id == null) {
+                //record doesn't exist (so it doesn't belong to this harvester)
+                log.debug("Adding record with uuid " + ri.uuid);
+                pipeline.submit(new HarvestedRecord(ri, ri.uuid, null, false));
+            } else if (localUuids.getID(ri.uuid) == null) {
+                //Record does not belong to this harvester
+                synchronized (result) {
+                    result.datasetUuidExist++;
+                }
 
-                            if (params.isIfRecordExistAppendPrivileges()) {
-                                addPrivileges(id, params.getPrivileges(), localGroups, context);
-                                result.privilegesAppendedOnExistingRecord++;
-                            }
-                            break;
-                        case RANDOM:
-                            log.debug("Generating random uuid for remote record with uuid " + ri.uuid);
-                            addMetadata(ri, UUID.randomUUID().toString());
-                            break;
-                        case SKIP:
-                            log.debug("Skipping record with uuid " + ri.uuid);
+                switch (params.getOverrideUuid()) {
+                    case OVERRIDE:
+                        log.debug("Overriding record with uuid " + ri.uuid);
+                        HarvestedRecord overridden = new HarvestedRecord(ri, ri.uuid,
+                            Integer.toString(metadataUtils.findOneByUuid(ri.uuid).getId()), true);
+                        overridden.appendPrivileges = params.isIfRecordExistAppendPrivileges();
+                        pipeline.submit(overridden);
+                        break;
+                    case RANDOM:
+                        log.debug("Generating random uuid for remote record with uuid " + ri.uuid);
+                        pipeline.submit(new HarvestedRecord(ri, UUID.randomUUID().toString(), null, false));
+                        break;
+                    case SKIP:
+                        log.debug("Skipping record with uuid " + ri.uuid);
+                        synchronized (result) {
                             result.uuidSkipped++;
-                        default:
-                            break;
+                        }
+                    default:
+                        break;
+                }
+            } else {
+                //record exists and belongs to this harvester
+                String date = localUuids.getChangeDate(ri.uuid);
+                HarvestedRecord record = new HarvestedRecord(ri, ri.uuid, id, false);
+                record.appendPrivileges = params.isIfRecordExistAppendPrivileges();
+
+                if (date == null) {
+                    log.debug("  - Skipped metadata managed by another harvesting node. uuid:" + ri.uuid + ", name:" + params.getName());
+                    record.store = false;
+                } else if (!ri.isMoreRecentThan(date)) {
+                    log.debug("  - Metadata XML not changed for uuid:" + ri.uuid);
+                    synchronized (result) {
+                        result.unchangedMetadata++;
                     }
+                    record.store = false;
                 } else {
-                    //record exists and belongs to this harvester
-                    updateMetadata(ri, id, false);
+                    log.debug("  - Updating local metadata for uuid:" + ri.uuid);
+                    record.localHash = localUuids.getHash(ri.uuid);
+                }
 
-                    if (params.isIfRecordExistAppendPrivileges()) {
-                        addPrivileges(id, params.getPrivileges(), localGroups, context);
-                        result.privilegesAppendedOnExistingRecord++;
-                    }
+                // the privileges are appended by the store stage, after the update if any
+                if (record.store || record.appendPrivileges) {
+                    pipeline.submit(record);
                 }
+            }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Throwable t) {
+            fail(ri.uuid, t);
+        }
+    }
 
-                context.getBean(LuceneIndexLanguageTracker.class).commit();
+    /**
+     * Drops a record which could not be processed.
+     */
+    private void fail(HarvestedRecord record, Throwable t) {
+        releaseResources(record);
+        fail(record.ri.uuid, t);
+    }
 
-                result.totalMetadata++;
-            } catch (Throwable t) {
-                errors.add(new HarvestError(this.context, t));
-                log.error("Unable to process record from csw (" + this.params.getName() + ")");
-                log.error("   Record failed: " + ri.uuid + ". Error is: " + t.getMessage());
-                log.error(t);
-            } finally {
-                result.originalMetadata++;
+    private void fail(String uuid, Throwable t) {
+        synchronized (result) {
+            result.totalMetadata--;
+        }
+        reportError(uuid, t);
+    }
+
+    private void reportError(String uuid, Throwable t) {
+        errors.add(new HarvestError(this.context, t));
+        log.error("Unable to process record from csw (" + this.params.getName() + ")");
+        log.error("   Record failed: " + uuid + ". Error is: " + t.getMessage());
+        log.error(t);
+    }
+
+    /**
+     * Marks a record as not to be stored.
+     *
+     * @return true if the record must still go to the store stage to append its privileges.
+     */
+    private boolean skip(HarvestedRecord record) {
+        record.store = false;
+        releaseResources(record);
+        return record.appendPrivileges;
+    }
+
+    /**
+     * @return the context of the pipeline stage thread or the harvester context.
+     */
+    private ServiceContext getContext() {
+        ServiceContext threadContext = ServiceContext.get();
+        return threadContext != null ? threadContext : context;
+    }
+
+    /**
+     * Waits until the records submitted so far are aligned.
+     */
+    private void finish() throws InterruptedException {
+        if (pipeline != null && pipeline.isRunning()) {
+            result.stages = pipeline.finish();
+            for (HarvestStageStats stage : result.stages) {
+                log.info("  - " + stage);
             }
         }
     }
 
+    /**
+     * Stops aligning the records not aligned yet, eg. if the harvest failed.
+     */
+    public void shutdown() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
     /**
      * Remove records no longer on the remote CSW server
      *
-     * @param records
+     * @param records the uuids of the records found on the server or null if the search only
+     *                returned the records modified since the last harvest, in which case no record
+     *                is removed.
      * @throws Exception
      */
     @Transactional(value = TxType.REQUIRES_NEW)
-    public HarvestResult cleanupRemovedRecords(Set<String> records) throws Exception {
+    public HarvestResult cleanupRemovedRecords(@Nullable Set<String> records) throws Exception {
+        finish();
 
         if (cancelMonitor.get()) {
             return result;
         }
 
-        for (String uuid : localUuids.getUUIDs()) {
-            if (!records.contains(uuid)) {
-                String id = localUuids.getID(uuid);
-                log.debug("  - Removing old metadata with local id:" + id);
-                metadataManager.deleteMetadata(context, id);
-                result.locallyRemoved++;
+        if (records != null) {
+            for (String uuid : localUuids.getUUIDs()) {
+                if (!records.contains(uuid)) {
+                    String id = localUuids.getID(uuid);
+                    log.debug("  - Removing old metadata with local id:" + id);
+                    metadataManager.deleteMetadata(context, id);
+                    result.locallyRemoved++;
+                }
             }
         }
         dataMan.forceIndexChanges();
@@ -278,57 +432,247 @@ public class Aligner extends BaseAligner<CswParams> {
         return result;
     }
 
+    /**
+     * Fetch stage: does a CSW GetRecordById request for the records, falling back to one request
+     * per record for the records missing from the response.
+     */
+    private Collection<HarvestedRecord> fetch(List<HarvestedRecord> records) throws Exception {
+        GetRecordByIdRequest request = createRequest();
+
+        List<String> uuids = new ArrayList<String>();
+        for (HarvestedRecord record : records) {
+            if (record.store) {
+                uuids.add(record.ri.uuid);
+                request.addId(record.ri.uuid);
+            }
+        }
 
-    private void addMetadata(RecordInfo ri, String uuid) throws Exception {
-        if (cancelMonitor.get()) {
-            return;
+        Map<String, Element> found = new HashMap<String, Element>();
+        if (uuids.size() > 1) {
+            try {
+                log.debug("Getting records from : " + request.getHost() + " (uuids:" + uuids + ")");
+                for (Element md : getRecords(request)) {
+                    String uuid = extractUuid(md);
+                    if (uuid != null) {
+                        found.put(uuid, md);
+                    }
+                }
+            } catch (Exception e) {
+                log.warning("Raised exception while getting records " + uuids + ", getting them one by one: " + e);
+            }
         }
 
-        Element md = retrieveMetadata(ri.uuid);
+        List<HarvestedRecord> fetched = new ArrayList<HarvestedRecord>(records.size());
+        for (HarvestedRecord record : records) {
+            if (!record.store) {
+                fetched.add(record);
+                continue;
+            }
+            record.md = found.remove(record.ri.uuid);
+            if (record.md == null) {
+                record.md = retrieveMetadata(request, record.ri.uuid);
+            }
+            if (record.md != null) {
+                fetched.add(record);
+            } else {
+                notRetrieved(record);
+                if (skip(record)) {
+                    fetched.add(record);
+                }
+            }
+        }
+        return fetched;
+    }
 
-        if (md == null) {
-            result.unretrievable++;
-            return;
+    private void notRetrieved(HarvestedRecord record) {
+        synchronized (result) {
+            if (record.isNew()) {
+                result.unretrievable++;
+            } else {
+                result.unchangedMetadata++;
+            }
+        }
+    }
+
+    /**
+     * Transform stage: validates the record and applies the harvester filters, XSL process and
+     * batch edits.
+     */
+    private boolean transform(HarvestedRecord record) throws Exception {
+        if (!record.store) {
+            return true;
+        }
+        ServiceContext context = getContext();
+        RecordInfo ri = record.ri;
+
+        record.hash = HarvesterUtil.computeHash(record.md, params, params.xslfilter, processHash, params.xpathFilter);
+        if (record.hash.equals(record.localHash)) {
+            log.debug("  - Metadata XML not changed for uuid:" + ri.uuid);
+            synchronized (result) {
+                result.unchangedMetadata++;
+            }
+            return skip(record);
+        }
+
+        if (!isAccepted(ri.uuid, record.md)) {
+            notRetrieved(record);
+            return skip(record);
         }
 
+        Element md = record.md;
         String schema = dataMan.autodetectSchema(md, null);
-        if (schema == null) {
+        if (schema == null && record.isNew()) {
             log.debug("  - Metadata skipped due to unknown schema. uuid:" + ri.uuid);
-            result.unknownSchema++;
-            return;
+            synchronized (result) {
+                result.unknownSchema++;
+            }
+            return skip(record);
         }
 
         if (StringUtils.isNotEmpty(params.xpathFilter)) {
             Object xpathResult = Xml.selectSingle(md, params.xpathFilter, new ArrayList<Namespace>(dataMan.getSchema(schema).getNamespaces()));
             boolean match = xpathResult instanceof Boolean && ((Boolean) xpathResult).booleanValue();
             if(!match) {
-                result.xpathFilterExcluded ++;
-                return;
+                synchronized (result) {
+                    result.xpathFilterExcluded++;
+                }
+                return skip(record);
+            }
+        }
+
+        // checked last, as the resource identifiers are reserved for the record until it is dropped
+        if (params.rejectDuplicateResource && foundDuplicateForResource(record)) {
+            synchronized (result) {
+                result.unchangedMetadata++;
             }
+            return skip(record);
         }
 
-        log.debug("  - Adding metadata with remote uuid:" + ri.uuid + " schema:" + schema);
+        if (record.isNew()) {
+            log.debug("  - Adding metadata with remote uuid:" + ri.uuid + " schema:" + schema);
+        }
 
-        String mdUuid = ri.uuid;
         if (!params.xslfilter.equals("")) {
             md = processMetadata(context, md, processName, processParams);
-            // Get new uuid if modified by XSLT process
-            mdUuid = metadataUtils.extractUUID(schema, md);
-            if (mdUuid == null) {
-                mdUuid = ri.uuid;
+        }
+
+        applyBatchEdits(context, ri, md, schema);
+
+        if (record.isNew() && !record.uuid.equals(ri.uuid)) {
+            md = metadataUtils.setUUID(schema, record.uuid, md);
+        }
+
+        record.md = md;
+        record.schema = schema;
+        return true;
+    }
+
+    /**
+     * Store stage: inserts or updates the records and appends the privileges of the existing
+     * records in one transaction. If it fails, they are stored one by one so only the records
+     * which can not be stored are dropped.
+     *
+     * @return the records inserted or updated, to index.
+     */
+    private Collection<HarvestedRecord> store(final List<HarvestedRecord> records) throws Exception {
+        try {
+            runInTransaction(records);
+            return countStored(records);
+        } catch (RuntimeException e) {
+            if (records.size() == 1) {
+                throw e;
+            }
+            log.debug("Storing records one by one after error: " + e.getMessage());
+        }
+
+        List<HarvestedRecord> stored = new ArrayList<HarvestedRecord>(records.size());
+        for (HarvestedRecord record : records) {
+            try {
+                List<HarvestedRecord> single = Collections.singletonList(record);
+                runInTransaction(single);
+                stored.addAll(countStored(single));
+            } catch (RuntimeException e) {
+                fail(record, e.getCause() == null ? e : e.getCause());
             }
         }
+        return stored;
+    }
 
-        applyBatchEdits(ri, md, schema);
+    private void runInTransaction(final List<HarvestedRecord> records) {
+        TransactionManager.runInTransaction("csw-harvester-store", getContext().getApplicationContext(),
+            TransactionManager.TransactionRequirement.CREATE_NEW, TransactionManager.CommitBehavior.ALWAYS_COMMIT, false,
+            new TransactionTask<Object>() {
+                @Override
+                public Object doInTransaction(TransactionStatus transaction) throws Throwable {
+                    for (HarvestedRecord record : records) {
+                        if (record.store) {
+                            if (record.isNew()) {
+                                addMetadata(record);
+                            } else {
+                                updatingLocalMetadata(record);
+                            }
+                        }
+                        if (record.appendPrivileges) {
+                            addPrivileges(record.id, params.getPrivileges(), localGroups, getContext());
+                        }
+                    }
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * Counts the records of a committed transaction.
+     *
+     * @return the records inserted or updated.
+     */
+    private List<HarvestedRecord> countStored(List<HarvestedRecord> records) {
+        List<HarvestedRecord> stored = new ArrayList<HarvestedRecord>(records.size());
+        synchronized (result) {
+            for (HarvestedRecord record : records) {
+                if (record.store) {
+                    if (record.isNew()) {
+                        result.addedMetadata++;
+                    } else {
+                        result.updatedMetadata++;
+                    }
+                    stored.add(record);
+                }
+                if (record.appendPrivileges) {
+                    result.privilegesAppendedOnExistingRecord++;
+                }
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Index stage. A record which fails to be indexed is reported but stays stored.
+     */
+    private Collection<HarvestedRecord> index(List<HarvestedRecord> records) throws Exception {
+        for (HarvestedRecord record : records) {
+            try {
+                metadataIndexer.indexMetadata(record.id, true, null);
+            } catch (Exception e) {
+                reportError(record.ri.uuid, e);
+            }
+        }
+        getContext().getBean(LuceneIndexLanguageTracker.class).commit();
+        return records;
+    }
+
+    private void addMetadata(HarvestedRecord record) throws Exception {
+        ServiceContext context = getContext();
+        RecordInfo ri = record.ri;
+        String uuid = record.uuid;
+        Element md = record.md;
+        String schema = record.schema;
 
         //
         // insert metadata
         //
         AbstractMetadata metadata = new Metadata();
         metadata.setUuid(uuid);
-        if (!uuid.equals(ri.uuid)) {
-            md = metadataUtils.setUUID(schema, uuid, md);
-        }
         Integer ownerId = getOwner();
         metadata.getDataInfo().
             setSchemaId(schema).
@@ -342,7 +686,8 @@ public class Aligner extends BaseAligner<CswParams> {
             setGroupOwner(getGroupOwner());
         metadata.getHarvestInfo().
             setHarvested(true).
-            setUuid(params.getUuid());
+            setUuid(params.getUuid()).
+            setHash(record.hash);
 
         metadata.getSourceInfo().setGroupOwner(getGroupOwner());
 
@@ -350,15 +695,12 @@ public class Aligner extends BaseAligner<CswParams> {
 
         metadata = metadataManager.insertMetadata(context, metadata, md, true, false, false, UpdateDatestamp.NO, false, false);
 
-        String id = String.valueOf(metadata.getId());
-
-        addPrivileges(id, params.getPrivileges(), localGroups, context);
+        record.id = String.valueOf(metadata.getId());
 
-        metadataIndexer.indexMetadata(id, true, null);
-        result.addedMetadata++;
+        addPrivileges(record.id, params.getPrivileges(), localGroups, context);
     }
 
-    private void applyBatchEdits(RecordInfo ri, Element md, String schema) throws JDOMException, IOException {
+    private void applyBatchEdits(ServiceContext context, RecordInfo ri, Element md, String schema) throws JDOMException, IOException {
         if (StringUtils.isNotEmpty(params.getBatchEdits())) {
             ObjectMapper mapper = new ObjectMapper();
 
@@ -404,50 +746,10 @@ public class Aligner extends BaseAligner<CswParams> {
             }
         }
     }
-    private void updateMetadata(RecordInfo ri, String id, Boolean force) throws Exception {
-        String date = localUuids.getChangeDate(ri.uuid);
-
-        if (date == null && !force) {
-            log.debug("  - Skipped metadata managed by another harvesting node. uuid:" + ri.uuid + ", name:" + params.getName());
-        } else {
-            if (!force && !ri.isMoreRecentThan(date)) {
-                log.debug("  - Metadata XML not changed for uuid:" + ri.uuid);
-                result.unchangedMetadata++;
-            } else {
-                log.debug("  - Updating local metadata for uuid:" + ri.uuid);
-                if (updatingLocalMetadata(ri, id, force)) {
-                    metadataIndexer.indexMetadata(id, true, null);
-                    result.updatedMetadata++;
-                }
-            }
-        }
-    }
-    @Transactional(value = TxType.REQUIRES_NEW)
-    private boolean updatingLocalMetadata(RecordInfo ri, String id, Boolean force) throws Exception {
-        Element md = retrieveMetadata(ri.uuid);
-
-        if (md == null) {
-            result.unchangedMetadata++;
-            return false;
-        }
-
-
-        String schema = dataMan.autodetectSchema(md, null);
-
-        if (StringUtils.isNotEmpty(params.xpathFilter)) {
-            Object xpathResult = Xml.selectSingle(md, params.xpathFilter, new ArrayList<Namespace>(dataMan.getSchema(schema).getNamespaces()));
-            boolean match = xpathResult instanceof Boolean && ((Boolean) xpathResult).booleanValue();
-            if(!match) {
-                result.xpathFilterExcluded ++;
-                return false;
-            }
-        }
-
-        if (!params.xslfilter.equals("")) {
-            md = processMetadata(context, md, processName, processParams);
-        }
-
-        applyBatchEdits(ri, md, schema);
+    private void updatingLocalMetadata(HarvestedRecord record) throws Exception {
+        ServiceContext context = getContext();
+        RecordInfo ri = record.ri;
+        String id = record.id;
 
         //
         // update metadata
@@ -457,45 +759,36 @@ public class Aligner extends BaseAligner<CswParams> {
         boolean index = false;
         String language = context.getLanguage();
 
-        final AbstractMetadata metadata = metadataManager.updateMetadata(context, id, md, validate, ufo, index, language, ri.changeDate, true);
+        final AbstractMetadata metadata = metadataManager.updateMetadata(context, id, record.md, validate, ufo, index, language, ri.changeDate, true);
 
-        if (force) {
+        metadata.getHarvestInfo().setHash(record.hash);
+        if (record.force) {
             //change ownership of metadata to new harvester
             metadata.getHarvestInfo().setUuid(params.getUuid());
             metadata.getSourceInfo().setSourceId(params.getUuid());
-
-            metadataManager.save(metadata);
         }
+        metadataManager.save(metadata);
 
         addPrivileges(id, params.getPrivileges(), localGroups, context);
 
         metadata.getCategories().clear();
         addCategories(metadata, params.getCategories(), localCateg, context, null, true);
-
-        return true;
     }
 
     /**
-     * Does CSW GetRecordById request. If validation is requested and the metadata does not
-     * validate, null is returned.
+     * Does CSW GetRecordById request of one record.
      *
      * @param uuid uuid of metadata to request
-     * @return metadata the metadata
+     * @return metadata the metadata or null if it could not be retrieved
      */
-    private Element retrieveMetadata(String uuid) {
+    private Element retrieveMetadata(GetRecordByIdRequest request, String uuid) {
         request.clearIds();
         request.addId(uuid);
 
         try {
             log.debug("Getting record from : " + request.getHost() + " (uuid:" + uuid + ")");
 
-            Element response = request.execute();
-            if (log.isDebugEnabled()) {
-                log.debug("Record got: " + Xml.getString(response) + "\n");
-            }
-
-            @SuppressWarnings("unchecked")
-            List<Element> list = response.getChildren();
+            List<Element> list = getRecords(request);
 
             //--- maybe the metadata has been removed
 
@@ -503,39 +796,56 @@ public class Aligner extends BaseAligner<CswParams> {
                 return null;
             }
 
-            response = list.get(0);
-            response = (Element) response.detach();
+            return list.get(0);
+        } catch (Exception e) {
+            log.error("Raised exception while getting record : " + e);
+            log.error(e);
+            synchronized (result) {
+                result.unretrievable++;
+            }
 
+            //--- we don't raise any exception here. Just try to go on
+            return null;
+        }
+    }
 
-            try {
-                Integer groupIdVal = null;
-                if (StringUtils.isNotEmpty(params.getOwnerIdGroup())) {
-                    groupIdVal = Integer.parseInt(params.getOwnerIdGroup());
-                }
+    /**
+     * @return the records of the response of the request, detached.
+     */
+    private List<Element> getRecords(GetRecordByIdRequest request) throws Exception {
+        Element response = request.execute();
+        if (log.isDebugEnabled()) {
+            log.debug("Record got: " + Xml.getString(response) + "\n");
+        }
 
-                params.getValidate().validate(dataMan, context, response, groupIdVal);
-            } catch (Exception e) {
-                log.debug("Ignoring invalid metadata with uuid " + uuid);
-                result.doesNotValidate++;
-                return null;
-            }
+        @SuppressWarnings("unchecked")
+        List<Element> list = new ArrayList<Element>(response.getChildren());
+        for (Element md : list) {
+            md.detach();
+        }
+        return list;
+    }
 
-            if (params.rejectDuplicateResource) {
-                if (foundDuplicateForResource(uuid, response)) {
-                    result.unchangedMetadata++;
-                    return null;
-                }
+    /**
+     * If validation is requested and the metadata does not validate, the metadata is not accepted.
+     */
+    private boolean isAccepted(String uuid, Element md) {
+        try {
+            Integer groupIdVal = null;
+            if (StringUtils.isNotEmpty(params.getOwnerIdGroup())) {
+                groupIdVal = Integer.parseInt(params.getOwnerIdGroup());
             }
 
-            return response;
+            params.getValidate().validate(dataMan, getContext(), md, groupIdVal);
         } catch (Exception e) {
-            log.error("Raised exception while getting record : " + e);
-            log.error(e);
-            result.unretrievable++;
-
-            //--- we don't raise any exception here. Just try to go on
-            return null;
+            log.debug("Ignoring invalid metadata with uuid " + uuid);
+            synchronized (result) {
+                result.doesNotValidate++;
+            }
+            return false;
         }
+
+        return true;
     }
 
     /**
@@ -550,13 +860,16 @@ public class Aligner extends BaseAligner<CswParams> {
      * <p>
      * The check is made searching the identifier field in the index using {@link
      * org.fao.geonet.kernel.search.LuceneSearcher#getAllMetadataFromIndexFor(String, String,
-     * String, java.util.Set, boolean)}
+     * String, java.util.Set, boolean)}, then among the records accepted by this harvest which
+     * are not indexed yet. If the record is accepted, its resource identifiers are reserved until
+     * it is dropped.
      *
-     * @param uuid     the metadata unique identifier
-     * @param response the XML document to check
+     * @param record the harvested record to check
      * @return true if a record with same resource identifier is found. false otherwise.
      */
-    private boolean foundDuplicateForResource(String uuid, Element response) {
+    private boolean foundDuplicateForResource(HarvestedRecord record) {
+        String uuid = record.ri.uuid;
+        Element response = record.md;
         String schema = dataMan.autodetectSchema(response);
 
         if (schema != null && schema.startsWith("iso19139")) {
@@ -590,10 +903,19 @@ public class Aligner extends BaseAligner<CswParams> {
                                 log.debug("      - UUID " + indexRecordUuid + " in index does not match harvested record UUID " + uuid);
                                 log.warning("      - Duplicates found. Skipping record with UUID " + uuid + " and resource identifier " + identifier);
 
-                                result.duplicatedResource++;
-                                return true;
+                                return duplicated(record);
                             }
                         }
+
+                        String acceptedUuid = acceptedResources.putIfAbsent(identifier, uuid);
+                        if (acceptedUuid != null && !acceptedUuid.equals(uuid)) {
+                            log.warning("      - Duplicates found in harvested records. Skipping record with UUID " + uuid +
+                                " and resource identifier " + identifier + " of record " + acceptedUuid);
+                            return duplicated(record);
+                        }
+                        if (acceptedUuid == null) {
+                            record.resourceIdentifiers.add(identifier);
+                        }
                     }
                 }
             } catch (Throwable e) {
@@ -603,6 +925,24 @@ public class Aligner extends BaseAligner<CswParams> {
         return false;
     }
 
+    private boolean duplicated(HarvestedRecord record) {
+        releaseResources(record);
+        synchronized (result) {
+            result.duplicatedResource++;
+        }
+        return true;
+    }
+
+    /**
+     * Releases the resource identifiers reserved by a record which is dropped.
+     */
+    private void releaseResources(HarvestedRecord record) {
+        for (String identifier : record.resourceIdentifiers) {
+            acceptedResources.remove(identifier, record.ri.uuid);
+        }
+        record.resourceIdentifiers.clear();
+    }
+
     /**
      * Filter the metadata if process parameter is set and corresponding XSL transformation
      * exists in xsl/conversion/import.
@@ -617,7 +957,7 @@ public class Aligner extends BaseAligner<CswParams> {
                                     Element md,
                                     String processName,
                                     Map<String, Object> processParams) {
-        Path filePath = context.getAppPath().resolve(Geonet.Path.STYLESHEETS).resolve("conversion/import").resolve(processName + ".xsl");
+        Path filePath = getProcessPath(context, processName);
         if (!Files.exists(filePath)) {
             log.debug("     processing instruction  " + processName + ". Metadata not filtered.");
         } else {
@@ -632,4 +972,52 @@ public class Aligner extends BaseAligner<CswParams> {
         }
         return md;
     }
+
+    private Path getProcessPath(ServiceContext context, String processName) {
+        return context.getAppPath().resolve(Geonet.Path.STYLESHEETS).resolve("conversion/import").resolve(processName + ".xsl");
+    }
+
+    /**
+     * State of a record going through the pipeline.
+     */
+    private static final class HarvestedRecord {
+        private final RecordInfo ri;
+        /** uuid of the local record, different from the remote one with the random uuid option */
+        private final String uuid;
+        private final boolean add;
+        private final boolean force;
+        private String id;
+        private Element md;
+        private String schema;
+        /** hash of the content the local record was harvested from, only set for updates */
+        private String localHash;
+        private String hash;
+        /** false if the record is not inserted or updated, eg. unchanged or filtered out */
+        private boolean store = true;
+        /** true to append the harvester privileges to the existing local record */
+        private boolean appendPrivileges;
+        /** resource identifiers reserved by the record when duplicate resources are rejected */
+        private final List<String> resourceIdentifiers = new ArrayList<String>();
+
+        private HarvestedRecord(RecordInfo ri, String uuid, String id, boolean force) {
+            this.ri = ri;
+            this.uuid = uuid;
+            this.id = id;
+            this.add = id == null;
+            this.force = force;
+        }
+
+        private boolean isNew() {
+            return add;
+        }
+    }
+
+    private String extractUuid(Element md) {
+        try {
+            String schema = dataMan.autodetectSchema(md, null);
+            return schema == null ? null : metadataUtils.extractUUID(schema, md);
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
@@ -55,6 +55,12 @@ public class CswHarvester extends AbstractHarvester<HarvestResult, CswParams> {
         harvesterSettingsManager.add("id:" + siteId, "rejectDuplicateResource", params.rejectDuplicateResource);
         harvesterSettingsManager.add("id:" + siteId, "queryScope", params.queryScope);
         harvesterSettingsManager.add("id:" + siteId, "hopCount", params.hopCount);
+        harvesterSettingsManager.add("id:" + siteId, "recordsPerRequest", params.recordsPerRequest);
+        harvesterSettingsManager.add("id:" + siteId, "maxConnections", params.maxConnections);
+        harvesterSettingsManager.add("id:" + siteId, "transformThreads", params.transformThreads);
+        harvesterSettingsManager.add("id:" + siteId, "storeBatchSize", params.storeBatchSize);
+        harvesterSettingsManager.add("id:" + siteId, "indexThreads", params.indexThreads);
+        harvesterSettingsManager.add("id:" + siteId, "incremental", params.incremental);
         harvesterSettingsManager.add("id:" + siteId, "xpathFilter", params.xpathFilter);
         harvesterSettingsManager.add("id:" + siteId, "xslfilter", params.xslfilter);
         harvesterSettingsManager.add("id:" + siteId, "outputSchema", params.outputSchema);
@@ -81,7 +87,10 @@ public class CswHarvester extends AbstractHarvester<HarvestResult, CswParams> {
      * @throws Exception
      */
     public void doHarvest(Logger log) throws Exception {
-        Harvester h = new Harvester(cancelMonitor, log, context, params);
+        Harvester h = new Harvester(cancelMonitor, log, context, params, params.incremental ? getWatermark() : null);
         result = h.harvest(log);
+        if (params.incremental && result != null && h.getErrors().isEmpty() && !cancelMonitor.get()) {
+            setWatermark(h.getNextWatermark());
+        }
     }
 }
@@ -25,6 +25,7 @@ package org.fao.geonet.kernel.harvest.harvester.csw;
 
 import org.fao.geonet.Util;
 import org.fao.geonet.exceptions.BadInputEx;
+import org.fao.geonet.exceptions.BadParameterEx;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.harvest.harvester.AbstractParams;
 import org.jdom.Element;
@@ -51,6 +52,39 @@ public class CswParams extends AbstractParams {
 
     public Integer hopCount;
 
+    /**
+     * Number of records requested by each GetRecordById request. 1 retrieves records one by one.
+     */
+    public int recordsPerRequest;
+
+    /**
+     * Maximum number of GetRecordById requests sent concurrently to the server while the records
+     * already retrieved are stored.
+     */
+    public int maxConnections;
+
+    /**
+     * Number of threads validating and transforming the retrieved records.
+     */
+    public int transformThreads;
+
+    /**
+     * Maximum number of records inserted or updated in one transaction.
+     */
+    public int storeBatchSize;
+
+    /**
+     * Number of threads indexing the stored records.
+     */
+    public int indexThreads;
+
+    /**
+     * If true, a harvest only searches the records modified since the previous successful
+     * harvest. Records removed from the server are then only removed by full harvests, run when
+     * the harvester settings are saved.
+     */
+    public boolean incremental;
+
     /**
      * The filter is a process (see schema/process folder) which depends on the schema. It could be
      * composed of parameter which will be sent to XSL transformation using the following syntax :
@@ -84,6 +118,12 @@ public class CswParams extends AbstractParams {
         rejectDuplicateResource = Util.getParam(site, "rejectDuplicateResource", false);
         queryScope = Util.getParam(site, "queryScope", "local");
         hopCount = Util.getParam(site, "hopCount", 2);
+        recordsPerRequest = getPositiveParam(site, "recordsPerRequest", 20);
+        maxConnections = getPositiveParam(site, "maxConnections", 4);
+        transformThreads = getPositiveParam(site, "transformThreads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        storeBatchSize = getPositiveParam(site, "storeBatchSize", 20);
+        indexThreads = getPositiveParam(site, "indexThreads", 2);
+        incremental = Util.getParam(site, "incremental", false);
         xslfilter = Util.getParam(site, "xslfilter", "");
         xpathFilter = Util.getParam(site, "xpathFilter", "");
         outputSchema = Util.getParam(site, "outputSchema", outputSchema);
@@ -115,6 +155,12 @@ public class CswParams extends AbstractParams {
         rejectDuplicateResource = Util.getParam(site, "rejectDuplicateResource", rejectDuplicateResource);
         queryScope = Util.getParam(site, "queryScope", queryScope);
         hopCount = Util.getParam(site, "hopCount", hopCount);
+        recordsPerRequest = getPositiveParam(site, "recordsPerRequest", recordsPerRequest);
+        maxConnections = getPositiveParam(site, "maxConnections", maxConnections);
+        transformThreads = getPositiveParam(site, "transformThreads", transformThreads);
+        storeBatchSize = getPositiveParam(site, "storeBatchSize", storeBatchSize);
+        indexThreads = getPositiveParam(site, "indexThreads", indexThreads);
+        incremental = Util.getParam(site, "incremental", incremental);
         xpathFilter = Util.getParam(site, "xpathFilter", "");
         xslfilter = Util.getParam(site, "xslfilter", "");
         outputSchema = Util.getParam(site, "outputSchema", outputSchema);
@@ -134,6 +180,18 @@ public class CswParams extends AbstractParams {
 
     }
 
+    /**
+     * @return the value of a site parameter which must be a positive number.
+     * @throws BadParameterEx if the value is not a positive number.
+     */
+    private static int getPositiveParam(Element site, String name, int defValue) throws BadParameterEx {
+        int value = Util.getParam(site, name, defValue);
+        if (value < 1) {
+            throw new BadParameterEx(name, value);
+        }
+        return value;
+    }
+
     /**
      *
      * @return
@@ -147,6 +205,12 @@ public class CswParams extends AbstractParams {
         copy.rejectDuplicateResource = rejectDuplicateResource;
         copy.queryScope = queryScope;
         copy.hopCount = hopCount;
+        copy.recordsPerRequest = recordsPerRequest;
+        copy.maxConnections = maxConnections;
+        copy.transformThreads = transformThreads;
+        copy.storeBatchSize = storeBatchSize;
+        copy.indexThreads = indexThreads;
+        copy.incremental = incremental;
         copy.xpathFilter = xpathFilter;
         copy.xslfilter = xslfilter;
         copy.outputSchema = outputSchema;
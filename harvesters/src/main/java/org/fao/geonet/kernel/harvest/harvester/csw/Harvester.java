@@ -25,6 +25,7 @@ package org.fao.geonet.kernel.harvest.harvester.csw;
 
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -38,6 +39,7 @@ import org.apache.commons.lang.StringUtils;
 import org.fao.geonet.GeonetContext;
 import org.fao.geonet.Logger;
 import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.csw.common.ConstraintLanguage;
 import org.fao.geonet.csw.common.Csw;
 import org.fao.geonet.csw.common.CswOperation;
@@ -54,6 +56,7 @@ import org.fao.geonet.exceptions.OperationAbortedEx;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.harvest.harvester.HarvestError;
 import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
+import org.fao.geonet.kernel.harvest.harvester.HarvesterUtil;
 import org.fao.geonet.kernel.harvest.harvester.IHarvester;
 import org.fao.geonet.kernel.harvest.harvester.RecordInfo;
 import org.fao.geonet.lib.Lib;
@@ -67,6 +70,8 @@ import org.jdom.Element;
 import jeeves.server.context.ServiceContext;
 import org.jdom.Namespace;
 
+import javax.annotation.Nullable;
+
 class Harvester implements IHarvester<HarvestResult> {
     // FIXME : Currently switch from POST to GET for testing mainly.
     public static final String PREFERRED_HTTP_METHOD = AbstractHttpRequest.Method.GET.toString();
@@ -88,22 +93,38 @@ class Harvester implements IHarvester<HarvestResult> {
     private Logger log;
     private CswParams params;
     private ServiceContext context;
+    /**
+     * If set, only the records modified since this date are searched.
+     */
+    private final ISODate modifiedFrom;
+    private ISODate nextWatermark;
 
     /**
-     * Contains a list of accumulated errors during the executing of this harvest.
+     * Contains a list of accumulated errors during the executing of this harvest. Synchronized as
+     * the aligner pipeline threads add their errors too.
      */
-    private List<HarvestError> errors = new LinkedList<HarvestError>();
+    private List<HarvestError> errors = Collections.synchronizedList(new LinkedList<HarvestError>());
 
 
-    public Harvester(AtomicBoolean cancelMonitor, Logger log, ServiceContext context, CswParams params) {
+    /**
+     * @param modifiedFrom the watermark of the last harvest for an incremental harvest, null for
+     *                     a full harvest.
+     */
+    public Harvester(AtomicBoolean cancelMonitor, Logger log, ServiceContext context, CswParams params,
+                     @Nullable ISODate modifiedFrom) {
         this.cancelMonitor = cancelMonitor;
         this.log = log;
         this.context = context;
         this.params = params;
+        this.modifiedFrom = modifiedFrom;
     }
 
     public HarvestResult harvest(Logger log) throws Exception {
         this.log = log;
+        nextWatermark = HarvesterUtil.getWatermark(System.currentTimeMillis());
+        if (modifiedFrom != null) {
+            log.info("Harvesting the records modified since " + modifiedFrom.getDateAsString());
+        }
         log.debug("Retrieving capabilities file for : " + params.getName());
 
         CswServer server = retrieveCapabilities(log);
@@ -132,10 +153,12 @@ class Harvester implements IHarvester<HarvestResult> {
         boolean error = false;
         HarvestResult result = null;
     	Set<String> uuids = new HashSet<String>();
+        Aligner aligner = null;
         try {
-            Aligner aligner = new Aligner(cancelMonitor, context, server, params, log);
+            aligner = new Aligner(cancelMonitor, context, server, params, log);
             searchAndAlign(server, s, uuids, aligner, errors);
-            result = aligner.cleanupRemovedRecords(uuids);
+            // An incremental search does not return the unchanged records, they are not removed
+            result = aligner.cleanupRemovedRecords(modifiedFrom == null ? uuids : null);
         } catch (Exception t) {
             error = true;
             log.error("Unknown error trying to harvest");
@@ -147,6 +170,10 @@ class Harvester implements IHarvester<HarvestResult> {
             log.fatal("Something unknown and terrible happened while harvesting");
             log.fatal(t.getMessage());
             errors.add(new HarvestError(context, t));
+        } finally {
+            if (aligner != null) {
+                aligner.shutdown();
+            }
         }
 
         log.info("Total records processed in all searches :" + uuids.size());
@@ -494,6 +521,10 @@ class Harvester implements IHarvester<HarvestResult> {
             log.debug("no search criterion specified, harvesting all ... ");
         }
 
+        if (modifiedFrom != null) {
+            buildFilterQueryable(queriables, "csw:Modified", modifiedFrom.getDateAsString(), "PropertyIsGreaterThanOrEqualTo");
+        }
+
 
         //--- build filter expression
 
@@ -607,6 +638,10 @@ class Harvester implements IHarvester<HarvestResult> {
         } else {
             log.debug("no search criterion specified, harvesting all ... ");
         }
+
+        if (modifiedFrom != null) {
+            buildCqlQueryable(queryables, "csw:Modified", modifiedFrom.getDateAsString(), ">=");
+        }
         //--- build CQL query
         StringBuffer sb = new StringBuffer();
 
@@ -735,6 +770,13 @@ class Harvester implements IHarvester<HarvestResult> {
 
     }
 
+    /**
+     * @return the watermark of this harvest, to be used by the next incremental harvest.
+     */
+    public ISODate getNextWatermark() {
+        return nextWatermark;
+    }
+
     public List<HarvestError> getErrors() {
         return errors;
     }
@@ -23,10 +23,12 @@
 
 package org.fao.geonet.kernel.harvest.harvester.oaipmh;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -82,6 +84,7 @@ import org.jdom.JDOMException;
 import jeeves.server.context.ServiceContext;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 //=============================================================================
 
@@ -98,16 +101,37 @@ class Harvester extends BaseAligner<OaiPmhParams> implements IHarvester<HarvestR
     private GroupMapper localGroups;
     private UUIDMapper localUuids;
 
+    /**
+     * If set, searches without a from date only list the records changed since this date.
+     */
+    private final ISODate incrementalFrom;
+    private ISODate nextWatermark;
+
+    /**
+     * Identifiers of the records reported deleted by the repository.
+     */
+    private Set<String> deletedIds = new HashSet<>();
+    /**
+     * Hash of the XSL filter of each schema, part of the hash of the records it transforms.
+     */
+    private final Map<String, String> processHashes = new HashMap<>();
+
     /**
      * Contains a list of accumulated errors during the executing of this harvest.
      */
     private List<HarvestError> errors = new LinkedList<>();
 
-    public Harvester(AtomicBoolean cancelMonitor, Logger log, ServiceContext context, OaiPmhParams params) {
+    /**
+     * @param incrementalFrom the watermark of the last harvest for an incremental harvest, null
+     *                        for a full harvest.
+     */
+    public Harvester(AtomicBoolean cancelMonitor, Logger log, ServiceContext context, OaiPmhParams params,
+                     @Nullable ISODate incrementalFrom) {
         super(cancelMonitor);
         this.log = log;
         this.context = context;
         this.params = params;
+        this.incrementalFrom = incrementalFrom;
 
         result = new HarvestResult();
 
@@ -210,7 +234,7 @@ class Harvester extends BaseAligner<OaiPmhParams> implements IHarvester<HarvestR
         //--- setup search parameters
 
         if (s.from.length() != 0) req.setFrom(new ISODate(s.from));
-        else req.setFrom(null);
+        else req.setFrom(incrementalFrom);
 
         if (s.until.length() != 0) req.setUntil(new ISODate(s.until));
         else req.setUntil(null);
@@ -229,6 +253,11 @@ class Harvester extends BaseAligner<OaiPmhParams> implements IHarvester<HarvestR
         try {
             ListIdentifiersResponse response = req.execute();
 
+            // Use the repository clock, the same as the datestamps of its records
+            if (nextWatermark == null) {
+                nextWatermark = HarvesterUtil.getWatermark(response.getResponseDate().toDate().getTime());
+            }
+
             while (response.hasNext()) {
                 if (cancelMonitor.get()) {
                     return Collections.emptySet();
@@ -238,12 +267,19 @@ class Harvester extends BaseAligner<OaiPmhParams> implements IHarvester<HarvestR
 
                 if (!h.isDeleted())
                     records.add(new RecordInfo(h, s.prefix));
+                else
+                    deletedIds.add(h.getIdentifier());
             }
 
             log.info("Records added to result list : " + records.size());
 
             return records;
         } catch (NoRecordsMatchException e) {
+            if (s.from.length() == 0 && incrementalFrom != null) {
+                // Nothing changed since the last harvest
+                log.info("No records were modified since " + incrementalFrom.getDateAsString());
+                return records;
+            }
             log.warning("No records were matched: " + e.getMessage());
             this.errors.add(new HarvestError(context, e));
             return records;
@@ -275,13 +311,20 @@ class Harvester extends BaseAligner<OaiPmhParams> implements IHarvester<HarvestR
         //-----------------------------------------------------------------------
         //--- remove old metadata
 
+        //--- an incremental harvest only lists the records changed since the last
+        //--- one, so only the records reported deleted are removed
+        Set<String> remoteIds = new HashSet<>();
+        for (RecordInfo ri : records) {
+            remoteIds.add(ri.id);
+        }
+
         for (String uuid : localUuids.getUUIDs()) {
 
             if (cancelMonitor.get()) {
                 return;
             }
 
-            if (!exists(records, uuid)) {
+            if (isRemoved(uuid, remoteIds, deletedIds, incrementalFrom != null)) {
                 String id = localUuids.getID(uuid);
 
                 if (log.isDebugEnabled())
@@ -358,15 +401,24 @@ class Harvester extends BaseAligner<OaiPmhParams> implements IHarvester<HarvestR
     }
 
     /**
-     * Return true if the uuid is present in the remote records
+     * @param incremental true if only the records changed since the last harvest were listed.
+     * @return true if the local copy of a harvested record must be removed.
      */
+    static boolean isRemoved(String uuid, Set<String> remoteIds, Set<String> deletedIds, boolean incremental) {
+        return !remoteIds.contains(uuid) && (!incremental || deletedIds.contains(uuid));
+    }
 
-    private boolean exists(Set<RecordInfo> records, String uuid) {
-        for (RecordInfo ri : records)
-            if (uuid.equals(ri.id))
-                return true;
-
-        return false;
+    private String getProcessHash(String schema, String processName) throws IOException {
+        if (StringUtils.isEmpty(params.xslfilter)) {
+            return "";
+        }
+        String hash = processHashes.get(schema);
+        if (hash == null) {
+            hash = HarvesterUtil.getStylesheetHash(
+                dataMan.getSchema(schema).getSchemaDir().resolve("process").resolve(processName + ".xsl"));
+            processHashes.put(schema, hash);
+        }
+        return hash;
     }
 
     private void addMetadata(XmlRequest t, RecordInfo ri, String processName, Map<String, Object> processParams) throws Exception {
@@ -383,6 +435,8 @@ class Harvester extends BaseAligner<OaiPmhParams> implements IHarvester<HarvestR
 
         String schema = dataMan.autodetectSchema(md);
 
+        String hash = HarvesterUtil.computeHash(md, params, params.xslfilter, getProcessHash(schema, processName));
+
         if (log.isDebugEnabled()) {
             log.debug("  - Adding metadata with remote id : " + ri.id);
         }
@@ -417,7 +471,8 @@ class Harvester extends BaseAligner<OaiPmhParams> implements IHarvester<HarvestR
             setOwner(getOwner());
         metadata.getHarvestInfo().
             setHarvested(true).
-            setUuid(params.getUuid());
+            setUuid(params.getUuid()).
+            setHash(hash);
 
         try {
             metadata.getSourceInfo().setGroupOwner(Integer.valueOf(params.getOwnerIdGroup()));
@@ -548,6 +603,15 @@ class Harvester extends BaseAligner<OaiPmhParams> implements IHarvester<HarvestR
 
             // The schema of the metadata
             String schema = dataMan.autodetectSchema(md, null);
+
+            String hash = HarvesterUtil.computeHash(md, params, params.xslfilter, getProcessHash(schema, processName));
+            if (!force && hash.equals(localUuids.getHash(ri.id))) {
+                if (log.isDebugEnabled()) {
+                    log.debug("  - Metadata XML not changed for remote id : " + ri.id);
+                }
+                result.unchangedMetadata++;
+                return;
+            }
             boolean updateSchema = false;
 
             // Apply the xsl filter chosen by UI
@@ -585,13 +649,13 @@ class Harvester extends BaseAligner<OaiPmhParams> implements IHarvester<HarvestR
 
             final AbstractMetadata metadata = metadataManager.updateMetadata(context, id, md, validate, ufo, index, language, ri.changeDate.toString(),
                 true);
+            metadata.getHarvestInfo().setHash(hash);
             if (force) {
                 //change ownership of metadata to new harvester
                 metadata.getHarvestInfo().setUuid(params.getUuid());
                 metadata.getSourceInfo().setSourceId(params.getUuid());
-
-                metadataManager.save(metadata);
             }
+            metadataManager.save(metadata);
 
             //--- the administrator could change privileges and categories using the
             //--- web interface so we have to re-set both
@@ -611,6 +675,15 @@ class Harvester extends BaseAligner<OaiPmhParams> implements IHarvester<HarvestR
         }
     }
 
+    /**
+     * @return the watermark of this harvest, to be used by the next incremental harvest, or null if
+     * the repository was not searched.
+     */
+    @Nullable
+    public ISODate getNextWatermark() {
+        return nextWatermark;
+    }
+
     public List<HarvestError> getErrors() {
         return errors;
     }
@@ -54,6 +54,7 @@ public class OaiPmhHarvester extends AbstractHarvester<HarvestResult, OaiPmhPara
         harvesterSettingsManager.add("id:" + siteId, "url", params.url);
         harvesterSettingsManager.add("id:" + siteId, "icon", params.icon);
         harvesterSettingsManager.add("id:" + siteId, "xslfilter", params.xslfilter);
+        harvesterSettingsManager.add("id:" + siteId, "incremental", params.incremental);
 
         harvesterSettingsManager.add("id:" + optionsId, "validate", params.getValidate());
 
@@ -77,7 +78,10 @@ public class OaiPmhHarvester extends AbstractHarvester<HarvestResult, OaiPmhPara
     //---------------------------------------------------------------------------
 
     public void doHarvest(Logger log) throws Exception {
-        Harvester h = new Harvester(cancelMonitor, log, context, params);
+        Harvester h = new Harvester(cancelMonitor, log, context, params, params.incremental ? getWatermark() : null);
         result = h.harvest(log);
+        if (params.incremental && h.getNextWatermark() != null && h.getErrors().isEmpty() && !cancelMonitor.get()) {
+            setWatermark(h.getNextWatermark());
+        }
     }
 }
@@ -52,6 +52,12 @@ public class OaiPmhParams extends AbstractParams {
      */
     public String  xslfilter;
 
+    /**
+     * If true, searches without a from date only list the records changed since the previous
+     * successful harvest. Only the records the repository reports deleted are then removed.
+     */
+    public boolean incremental;
+
     //---------------------------------------------------------------------------
     //---
     //--- Create : called when a new entry must be added. Reads values from the
@@ -88,6 +94,7 @@ public class OaiPmhParams extends AbstractParams {
         url = Util.getParam(site, "url", "");
         icon = Util.getParam(site, "icon", "");
         xslfilter = Util.getParam(site, "xslfilter", "");
+        incremental = Util.getParam(site, "incremental", false);
 
         addSearches(searches);
     }
@@ -103,6 +110,7 @@ public class OaiPmhParams extends AbstractParams {
         url = Util.getParam(site, "url", url);
         icon = Util.getParam(site, "icon", icon);
         xslfilter = Util.getParam(site, "xslfilter", "");
+        incremental = Util.getParam(site, "incremental", incremental);
 
         //--- if some search queries are given, we drop the previous ones and
         //--- set these new ones
@@ -138,6 +146,7 @@ public class OaiPmhParams extends AbstractParams {
         copy.url = url;
         copy.icon = icon;
         copy.xslfilter = xslfilter;
+        copy.incremental = incremental;
 
         copy.setValidate(getValidate());
 
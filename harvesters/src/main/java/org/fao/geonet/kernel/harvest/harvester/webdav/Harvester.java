@@ -45,6 +45,7 @@ import org.fao.geonet.kernel.harvest.harvester.CategoryMapper;
 import org.fao.geonet.kernel.harvest.harvester.GroupMapper;
 import org.fao.geonet.kernel.harvest.harvester.HarvestError;
 import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
+import org.fao.geonet.kernel.harvest.harvester.HarvesterUtil;
 import org.fao.geonet.kernel.harvest.harvester.IHarvester;
 import org.fao.geonet.kernel.harvest.harvester.RecordInfo;
 import org.fao.geonet.kernel.harvest.harvester.UriMapper;
@@ -57,6 +58,8 @@ import org.jdom.JDOMException;
 
 import jeeves.server.context.ServiceContext;
 
+import javax.annotation.Nullable;
+
 //=============================================================================
 
 interface RemoteRetriever {
@@ -94,12 +97,22 @@ class Harvester extends BaseAligner<WebDavParams> implements IHarvester<HarvestR
     private HarvestResult result;
     private SchemaManager schemaMan;
     private List<HarvestError> errors = new LinkedList<HarvestError>();
+    /**
+     * WAF files not modified since this date are not downloaded again.
+     */
+    private final ISODate ifModifiedSince;
+    private ISODate nextWatermark;
 
-    public Harvester(AtomicBoolean cancelMonitor, Logger log, ServiceContext context, WebDavParams params) {
+    /**
+     * @param ifModifiedSince the watermark of the last harvest or null to download all files.
+     */
+    public Harvester(AtomicBoolean cancelMonitor, Logger log, ServiceContext context, WebDavParams params,
+                     @Nullable ISODate ifModifiedSince) {
         super(cancelMonitor);
         this.log = log;
         this.context = context;
         this.params = params;
+        this.ifModifiedSince = ifModifiedSince;
 
         result = new HarvestResult();
         result.addedMetadata = 0;
@@ -122,6 +135,7 @@ class Harvester extends BaseAligner<WebDavParams> implements IHarvester<HarvestR
     @Override
     public HarvestResult harvest(Logger log) throws Exception {
         this.log = log;
+        nextWatermark = HarvesterUtil.getWatermark(System.currentTimeMillis());
         if (log.isDebugEnabled())
             log.debug("Retrieving remote metadata information for : " + params.getName());
         RemoteRetriever rr = null;
@@ -219,6 +233,7 @@ class Harvester extends BaseAligner<WebDavParams> implements IHarvester<HarvestR
         if (md == null) {
             return;
         }
+        String hash = HarvesterUtil.computeHash(md, params);
         //--- schema handled check already done
         String schema = dataMan.autodetectSchema(md);
 
@@ -321,7 +336,8 @@ class Harvester extends BaseAligner<WebDavParams> implements IHarvester<HarvestR
         metadata.getHarvestInfo().
             setHarvested(true).
             setUuid(params.getUuid()).
-            setUri(rf.getPath());
+            setUri(rf.getPath()).
+            setHash(hash);
         addCategories(metadata, params.getCategories(), localCateg, context, null, false);
 
         try {
@@ -344,6 +360,9 @@ class Harvester extends BaseAligner<WebDavParams> implements IHarvester<HarvestR
         try {
             if (log.isDebugEnabled()) log.debug("Getting remote file : " + rf.getPath());
             Element md = rf.getMetadata(schemaMan);
+            if (md == null && rf instanceof WAFRemoteFile && ((WAFRemoteFile) rf).isNotModified()) {
+                return null;
+            }
             if (log.isDebugEnabled()) {
                 log.debug("Record got:\n" + Xml.getString(md));
             }
@@ -395,11 +414,27 @@ class Harvester extends BaseAligner<WebDavParams> implements IHarvester<HarvestR
         //--- set uuid inside metadata (on metadata add it's created a new uuid ignoring fileIdentifier uuid).
         //--- In update we should use db uuid to update the xml uuid and keep in sych both.
         String schema = null;
+        String hash = null;
 
         if (rf instanceof WAFRemoteFile) {
+            WAFRemoteFile file = (WAFRemoteFile) rf;
+            file.setIfModifiedSince(force || ifModifiedSince == null ? null : ifModifiedSince.toDate());
             md = retrieveMetadata(rf);
 
             if (md == null) {
+                if (file.isNotModified()) {
+                    if (log.isDebugEnabled())
+                        log.debug("  - Metadata XML not changed for path : " + rf.getPath());
+                    result.unchangedMetadata++;
+                }
+                return;
+            }
+
+            hash = HarvesterUtil.computeHash(md, params);
+            if (!force && hash.equals(record.hash)) {
+                if (log.isDebugEnabled())
+                    log.debug("  - Metadata XML not changed for path : " + rf.getPath());
+                result.unchangedMetadata++;
                 return;
             }
 
@@ -446,6 +481,14 @@ class Harvester extends BaseAligner<WebDavParams> implements IHarvester<HarvestR
                     return;
                 }
 
+                hash = HarvesterUtil.computeHash(md, params);
+                if (!force && hash.equals(record.hash)) {
+                    if (log.isDebugEnabled())
+                        log.debug("  - Metadata XML not changed for path : " + rf.getPath());
+                    result.unchangedMetadata++;
+                    return;
+                }
+
                 try {
                     schema = dataMan.autodetectSchema(md);
 
@@ -485,13 +528,13 @@ class Harvester extends BaseAligner<WebDavParams> implements IHarvester<HarvestR
             final AbstractMetadata metadata = metadataManager.updateMetadata(context, record.id, md, validate, ufo, index, language,
                 date, false);
 
+            metadata.getHarvestInfo().setHash(hash);
             if(force) {
                 //change ownership of metadata to new harvester
                 metadata.getHarvestInfo().setUuid(params.getUuid());
                 metadata.getSourceInfo().setSourceId(params.getUuid());
-
-                context.getBean(IMetadataManager.class).save(metadata);
             }
+            context.getBean(IMetadataManager.class).save(metadata);
 
             //--- the administrator could change privileges and categories using the
             //--- web interface so we have to re-set both
@@ -508,6 +551,14 @@ class Harvester extends BaseAligner<WebDavParams> implements IHarvester<HarvestR
         }
     }
 
+    /**
+     * @return the watermark of this harvest, used by the next one to only download the WAF files
+     * modified since.
+     */
+    public ISODate getNextWatermark() {
+        return nextWatermark;
+    }
+
     public List<HarvestError> getErrors() {
         return errors;
     }
@@ -23,18 +23,26 @@
 
 package org.fao.geonet.kernel.harvest.harvester.webdav;
 
+import jeeves.server.context.ServiceContext;
+
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.kernel.SchemaManager;
+import org.fao.geonet.lib.Lib;
 import org.fao.geonet.util.Sha1Encoder;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
 import org.fao.geonet.utils.Xml;
+import org.fao.geonet.utils.XmlRequest;
 import org.jdom.Element;
 
 import java.net.URL;
 import java.nio.file.Path;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 //=============================================================================
 
 class WAFRemoteFile implements RemoteFile {
@@ -48,6 +56,9 @@ class WAFRemoteFile implements RemoteFile {
     //---------------------------------------------------------------------------
     private String path;
     private ISODate changeDate;
+    private ServiceContext context;
+    private Date ifModifiedSince;
+    private boolean notModified;
 
     //---------------------------------------------------------------------------
     //---
@@ -55,8 +66,9 @@ class WAFRemoteFile implements RemoteFile {
     //---
     //---------------------------------------------------------------------------
 
-    public WAFRemoteFile(String path) {
+    public WAFRemoteFile(String path, ServiceContext context) {
         this.path = path;
+        this.context = context;
     }
 
 
@@ -67,15 +79,43 @@ class WAFRemoteFile implements RemoteFile {
     //---------------------------------------------------------------------------
 
     public Element getMetadata(SchemaManager schemaMan) throws Exception {
+        notModified = false;
         String type = WAFRetriever.getFileType(this.path);
         if (type.equals(WAFRetriever.type_GetCapabilities))
             return getMdFromService(path, schemaMan);
         else if (type.equals(WAFRetriever.type_xml))
-            return Xml.loadFile(new URL(path));
+            return getMdFromFile(path);
         else
             return null;
     }
 
+    /**
+     * Make the retrieval of an XML file conditional: if the server answers that the file was not
+     * modified since the given date, {@link #getMetadata} returns null and {@link #isNotModified}
+     * true.
+     */
+    public void setIfModifiedSince(@Nullable Date ifModifiedSince) {
+        this.ifModifiedSince = ifModifiedSince;
+    }
+
+    /**
+     * @return true if the last {@link #getMetadata} call did not retrieve the file because it was
+     * not modified.
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    private Element getMdFromFile(String url) throws Exception {
+        XmlRequest request = context.getBean(GeonetHttpRequestFactory.class).createXmlRequest(new URL(url));
+        Lib.net.setupProxy(context, request);
+        request.setIfModifiedSince(ifModifiedSince);
+
+        Element md = request.executeIfModified();
+        notModified = md == null;
+        return md;
+    }
+
     private Element getMdFromService(String url, SchemaManager schemaMan) throws Exception {
         Element el = null;
         Path styleSheet = getStyleSheet(url, schemaMan);
@@ -55,6 +55,8 @@ class WAFRetriever implements RemoteRetriever {
     //---------------------------------------------------------------------------
     private Logger log;
 
+    private ServiceContext context;
+
     //---------------------------------------------------------------------------
     //---
     //--- check type if url is a xml file or GetCapabilities file
@@ -84,6 +86,7 @@ class WAFRetriever implements RemoteRetriever {
     public void init(AtomicBoolean cancelMonitor, Logger log, ServiceContext context, WebDavParams params) {
         this.cancelMonitor = cancelMonitor;
         this.log = log;
+        this.context = context;
         this.params = params;
     }
 
@@ -126,7 +129,7 @@ class WAFRetriever implements RemoteRetriever {
                     retrieveFiles(url);
                 }
             } else {
-                files.add(new WAFRemoteFile(url));
+                files.add(new WAFRemoteFile(url, context));
             }
         }
     }
@@ -49,6 +49,7 @@ public class WebDavHarvester extends AbstractHarvester<HarvestResult, WebDavPara
         harvesterSettingsManager.add("id:" + optionsId, "validate", params.getValidate());
         harvesterSettingsManager.add("id:" + optionsId, "recurse", params.recurse);
         harvesterSettingsManager.add("id:" + optionsId, "subtype", params.subtype);
+        harvesterSettingsManager.add("id:" + optionsId, "incremental", params.incremental);
     }
 
     //---------------------------------------------------------------------------
@@ -64,8 +65,12 @@ public class WebDavHarvester extends AbstractHarvester<HarvestResult, WebDavPara
     //---------------------------------------------------------------------------
     public void doHarvest(Logger log) throws Exception {
         log.info("WebDav doHarvest start");
-        Harvester h = new Harvester(cancelMonitor, log, context, params);
+        Harvester h = new Harvester(cancelMonitor, log, context, params, params.incremental ? getWatermark() : null);
         result = h.harvest(log);
+        // Files which could not be retrieved must be downloaded again by the next harvest
+        if (params.incremental && h.getErrors().isEmpty() && result.unretrievable == 0 && result.badFormat == 0 && !cancelMonitor.get()) {
+            setWatermark(h.getNextWatermark());
+        }
         log.info("WebDav doHarvest end");
     }
 }
@@ -74,6 +74,11 @@ public class WebDavParams extends AbstractParams {
      */
     public String subtype;
 
+    /**
+     * If true only download the files modified since the last successful harvest.
+     */
+    public boolean incremental;
+
     //---------------------------------------------------------------------------
     //---
     //--- Variables
@@ -96,6 +101,7 @@ public class WebDavParams extends AbstractParams {
         recurse = Util.getParam(opt, "recurse", false);
 
         subtype = Util.getParam(opt, "subtype", "");
+        incremental = Util.getParam(opt, "incremental", false);
     }
 
     public void update(Element node) throws BadInputEx {
@@ -109,6 +115,7 @@ public class WebDavParams extends AbstractParams {
 
         recurse = Util.getParam(opt, "recurse", recurse);
         subtype = Util.getParam(opt, "subtype", subtype);
+        incremental = Util.getParam(opt, "incremental", incremental);
     }
 
     public WebDavParams copy() {
@@ -122,6 +129,7 @@ public class WebDavParams extends AbstractParams {
         copy.recurse = recurse;
 
         copy.subtype = subtype;
+        copy.incremental = incremental;
 
         return copy;
     }
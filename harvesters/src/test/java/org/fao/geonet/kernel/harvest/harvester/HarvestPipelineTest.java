@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.harvest.harvester;
+
+import jeeves.server.context.ServiceContext;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HarvestPipelineTest {
+
+    @Test
+    public void testRecordsGoThroughEveryStage() throws Exception {
+        final Set<Integer> stored = Collections.synchronizedSet(new HashSet<Integer>());
+        final AtomicInteger maxBatch = new AtomicInteger();
+        final List<Integer> failed = Collections.synchronizedList(new ArrayList<Integer>());
+
+        HarvestPipeline<int[]> pipeline = new HarvestPipeline<int[]>("test", null, new AtomicBoolean(),
+            (stage, record, error) -> failed.add(record[0]));
+        pipeline.addStage("filter", 3, 4, record -> {
+            if (record[0] == 13) {
+                throw new IllegalStateException("Unlucky");
+            }
+            return record[0] % 10 != 0;
+        });
+        pipeline.addBatchStage("double", 2, 5, records -> {
+            maxBatch.accumulateAndGet(records.size(), Math::max);
+            for (int[] record : records) {
+                record[0] *= 2;
+            }
+            return records;
+        });
+        pipeline.addBatchStage("store", 1, 10, records -> {
+            for (int[] record : records) {
+                stored.add(record[0]);
+            }
+            return records;
+        });
+
+        for (int i = 1; i <= 100; i++) {
+            pipeline.submit(new int[]{i});
+        }
+        List<HarvestStageStats> stats = pipeline.finish();
+
+        assertEquals(89, stored.size());
+        assertTrue(stored.contains(2));
+        assertFalse(stored.contains(20));
+        assertFalse(stored.contains(26));
+        assertEquals(Collections.singletonList(13), failed);
+        assertTrue(maxBatch.get() <= 5);
+
+        assertEquals(3, stats.size());
+        assertEquals("filter", stats.get(0).getName());
+        assertEquals(100, stats.get(0).getReceived());
+        assertEquals(89, stats.get(0).getPassed());
+        assertEquals(1, stats.get(0).getFailed());
+        assertEquals(89, stats.get(1).getReceived());
+        assertEquals(89, stats.get(2).getPassed());
+        assertFalse(pipeline.isRunning());
+    }
+
+    @Test
+    public void testFailedBatchDropsItsRecords() throws Exception {
+        final List<Integer> failed = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> stored = Collections.synchronizedList(new ArrayList<Integer>());
+
+        HarvestPipeline<Integer> pipeline = new HarvestPipeline<Integer>("test", null, new AtomicBoolean(),
+            (stage, record, error) -> failed.add(record));
+        pipeline.addBatchStage("store", 1, 100, (List<Integer> records) -> {
+            if (records.contains(3)) {
+                throw new IllegalStateException("Rolled back");
+            }
+            stored.addAll(records);
+            return records;
+        });
+
+        for (int i = 1; i <= 5; i++) {
+            pipeline.submit(i);
+        }
+        pipeline.finish();
+
+        assertTrue(failed.contains(3));
+        assertEquals(5, failed.size() + stored.size());
+        assertEquals(failed.size(), pipeline.getStats().get(0).getFailed());
+    }
+
+    @Test
+    public void testCancelledRecordsAreDropped() throws Exception {
+        AtomicBoolean cancelMonitor = new AtomicBoolean(true);
+        final List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+
+        HarvestPipeline<String> pipeline = new HarvestPipeline<String>("test", null, cancelMonitor,
+            (stage, record, error) -> {
+            });
+        pipeline.addStage("process", 2, 2, record -> processed.add(record));
+
+        pipeline.submit("a");
+        pipeline.submit("b");
+        List<HarvestStageStats> stats = pipeline.finish();
+
+        assertTrue(processed.isEmpty());
+        assertEquals(2, stats.get(0).getReceived());
+        assertEquals(0, stats.get(0).getPassed());
+    }
+
+    @Test
+    public void testFinishWithoutRecords() throws Exception {
+        HarvestPipeline<String> pipeline = new HarvestPipeline<String>("test", null, new AtomicBoolean(),
+            (stage, record, error) -> {
+            });
+        pipeline.addBatchStage("process", 2, 2, (List<String> records) -> (Collection<String>) records);
+
+        assertEquals(0, pipeline.finish().get(0).getReceived());
+    }
+
+    @Test(timeout = 10000)
+    public void testFailingErrorHandlerDoesNotBlockFinish() throws Exception {
+        final List<Integer> stored = Collections.synchronizedList(new ArrayList<Integer>());
+
+        HarvestPipeline<Integer> pipeline = new HarvestPipeline<Integer>("test", null, new AtomicBoolean(),
+            (stage, record, error) -> {
+                throw new IllegalStateException("Error handler failure");
+            });
+        pipeline.addStage("filter", 1, 2, record -> {
+            if (record == 2) {
+                throw new IllegalStateException("Filter failure");
+            }
+            return true;
+        });
+        pipeline.addBatchStage("store", 1, 10, (List<Integer> records) -> {
+            stored.addAll(records);
+            return records;
+        });
+
+        for (int i = 1; i <= 3; i++) {
+            pipeline.submit(i);
+        }
+        List<HarvestStageStats> stats = pipeline.finish();
+
+        assertEquals(2, stored.size());
+        assertEquals(1, stats.get(0).getFailed());
+        assertFalse(pipeline.isRunning());
+    }
+
+    @Test
+    public void testEachThreadHasItsOwnServiceContext() throws Exception {
+        final ServiceContext context = new ServiceContext("test", null, new HashMap<String, Object>(), null);
+        final Map<String, ServiceContext> threadContexts = new ConcurrentHashMap<String, ServiceContext>();
+        // keeps both threads of a stage busy at the same time
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+
+        HarvestPipeline<Integer> pipeline = new HarvestPipeline<Integer>("test", context, new AtomicBoolean(),
+            (stage, record, error) -> {
+            });
+        pipeline.addStage("first", 2, 2, record -> {
+            threadContexts.put(Thread.currentThread().getName(), ServiceContext.get());
+            bothStarted.countDown();
+            bothStarted.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+        pipeline.addStage("second", 1, 2, record -> {
+            threadContexts.put(Thread.currentThread().getName(), ServiceContext.get());
+            return true;
+        });
+
+        pipeline.submit(1);
+        pipeline.submit(2);
+        pipeline.finish();
+
+        assertEquals(3, threadContexts.size());
+        Map<ServiceContext, Boolean> distinct = new IdentityHashMap<ServiceContext, Boolean>();
+        for (ServiceContext threadContext : threadContexts.values()) {
+            assertNotSame(context, threadContext);
+            assertSame(context.getUserSession(), threadContext.getUserSession());
+            distinct.put(threadContext, true);
+        }
+        assertEquals(3, distinct.size());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.harvest.harvester;
+
+import org.fao.geonet.kernel.harvest.harvester.webdav.WebDavParams;
+import org.jdom.Element;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class HarvesterUtilTest {
+
+    private static final String XSL_START = "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"2.0\">";
+    private static final String XSL_END = "</xsl:stylesheet>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testComputeHash() throws Exception {
+        WebDavParams params = new WebDavParams(null);
+        Element md = new Element("record").addContent(new Element("title").setText("Title"));
+        String hash = HarvesterUtil.computeHash(md, params, "filter");
+
+        assertEquals(hash, HarvesterUtil.computeHash((Element) md.clone(), params.copy(), "filter"));
+        assertNotEquals(hash, HarvesterUtil.computeHash(new Element("record").addContent(
+            new Element("title").setText("Other title")), params, "filter"));
+        assertNotEquals(hash, HarvesterUtil.computeHash(md, params, "otherFilter"));
+
+        WebDavParams otherOwner = params.copy();
+        otherOwner.setOwnerIdGroup("2");
+        assertNotEquals(hash, HarvesterUtil.computeHash(md, otherOwner, "filter"));
+
+        WebDavParams otherPrivileges = params.copy();
+        Privileges privileges = new Privileges("1");
+        privileges.add(0);
+        otherPrivileges.addPrivilege(privileges);
+        assertNotEquals(hash, HarvesterUtil.computeHash(md, otherPrivileges, "filter"));
+
+        WebDavParams otherCategories = params.copy();
+        otherCategories.addCategory("3");
+        assertNotEquals(hash, HarvesterUtil.computeHash(md, otherCategories, "filter"));
+    }
+
+    @Test
+    public void testStylesheetHash() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        Path process = dir.resolve("process.xsl");
+        Path included = dir.resolve("common").resolve("included.xsl");
+
+        assertEquals("", HarvesterUtil.getStylesheetHash(process));
+
+        Files.createDirectories(included.getParent());
+        write(included, XSL_START + "<xsl:template match=\"a\"/>" + XSL_END);
+        write(process, XSL_START + "<xsl:include href=\"common/included.xsl\"/>" + XSL_END);
+        String hash = HarvesterUtil.getStylesheetHash(process);
+        assertNotEquals("", hash);
+        assertEquals(hash, HarvesterUtil.getStylesheetHash(process));
+
+        write(included, XSL_START + "<xsl:template match=\"b\"/>" + XSL_END);
+        String includedChangedHash = HarvesterUtil.getStylesheetHash(process);
+        assertNotEquals(hash, includedChangedHash);
+
+        write(process, XSL_START + "<xsl:include href=\"common/included.xsl\"/><xsl:template match=\"c\"/>" + XSL_END);
+        assertNotEquals(includedChangedHash, HarvesterUtil.getStylesheetHash(process));
+    }
+
+    private static void write(Path file, String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
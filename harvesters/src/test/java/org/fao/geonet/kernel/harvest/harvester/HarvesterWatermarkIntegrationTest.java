@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.harvest.harvester;
+
+import jeeves.server.context.ServiceContext;
+
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.kernel.harvest.AbstractHarvesterServiceIntegrationTest;
+import org.fao.geonet.kernel.harvest.harvester.csw.CswHarvesterIntegrationTest;
+import org.jdom.Element;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test the watermark saved by the incremental harvests.
+ */
+public class HarvesterWatermarkIntegrationTest extends AbstractHarvesterServiceIntegrationTest {
+
+    @Test
+    public void testWatermarkIsSavedAndResetOnUpdate() throws Exception {
+        final ServiceContext serviceContext = createServiceContext();
+        loginAsAdmin(serviceContext);
+
+        Element params = createHarvesterParams("csw");
+        CswHarvesterIntegrationTest.addCswSpecificParams(params, CswHarvesterIntegrationTest.OUTPUT_SCHEMA);
+        final String uuid = _harvestManager.addHarvesterReturnUUID(params);
+        final AbstractHarvester<?, ?> harvester = _harvestManager.getHarvester(uuid);
+
+        assertNull(harvester.getWatermark());
+
+        ISODate watermark = HarvesterUtil.getWatermark(System.currentTimeMillis());
+        harvester.setWatermark(watermark);
+        assertEquals(watermark.getDateAsString(), harvester.getWatermark().getDateAsString());
+
+        ISODate nextWatermark = HarvesterUtil.getWatermark(System.currentTimeMillis() + 86400000L);
+        harvester.setWatermark(nextWatermark);
+        assertEquals(nextWatermark.getDateAsString(), harvester.getWatermark().getDateAsString());
+
+        // the next harvest after a change of the settings must be a full one
+        harvester.update(params);
+        assertNull(harvester.getWatermark());
+    }
+}
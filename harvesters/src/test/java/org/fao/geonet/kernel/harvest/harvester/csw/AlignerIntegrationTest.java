@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.harvest.harvester.csw;
+
+import jeeves.server.context.ServiceContext;
+
+import org.fao.geonet.Logger;
+import org.fao.geonet.MockRequestFactoryGeonet;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.csw.common.CswServer;
+import org.fao.geonet.kernel.DataManager;
+import org.fao.geonet.kernel.harvest.AbstractHarvesterServiceIntegrationTest;
+import org.fao.geonet.kernel.harvest.harvester.HarvestError;
+import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
+import org.fao.geonet.kernel.harvest.harvester.RecordInfo;
+import org.fao.geonet.repository.MetadataRepository;
+import org.fao.geonet.utils.Log;
+import org.fao.geonet.utils.MockXmlRequest;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.fao.geonet.kernel.harvest.harvester.csw.CswHarvesterIntegrationTest.OUTPUT_SCHEMA;
+import static org.fao.geonet.kernel.harvest.harvester.csw.CswHarvesterIntegrationTest.REQUEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the CSW harvester {@link Aligner} pipeline.
+ */
+@ContextConfiguration(inheritLocations = true, locations = "classpath:harvesters-repository-test-context.xml")
+public class AlignerIntegrationTest extends AbstractHarvesterServiceIntegrationTest {
+    private static final Namespace GMD = Namespace.getNamespace("gmd", "http://www.isotc211.org/2005/gmd");
+    private static final Namespace GCO = Namespace.getNamespace("gco", "http://www.isotc211.org/2005/gco");
+    private static final String UUID = "7e926fbf-00fb-4ff5-a99e-c8576027c4e7";
+    private static final String COPY_UUID = "7e926fbf-00fb-4ff5-a99e-c8576027c4e8";
+    private static final String CHANGE_DATE = "2007-11-06T12:10:47";
+
+    @Autowired
+    private MockRequestFactoryGeonet requestFactory;
+    @Autowired
+    private MetadataRepository metadataRepository;
+    @Autowired
+    private DataManager dataManager;
+
+    private ServiceContext context;
+    private CswServer server;
+    private Logger log;
+
+    @Before
+    public void setUp() throws Exception {
+        requestFactory.clear();
+        context = createServiceContext();
+        loginAsAdmin(context);
+        server = new CswServer(Xml.loadStream(fileStream("capabilities.xml")));
+        log = Log.createLogger(Geonet.HARVESTER);
+    }
+
+    @Test
+    public void testRecordsDescribingTheSameResource() throws Exception {
+        // two remote records with different uuids, both aligned at the same time
+        mockGetRecordById(withResourceIdentifier(UUID, "physiographic-map"),
+            withResourceIdentifier(COPY_UUID, "physiographic-map"));
+
+        CswParams params = createParams(false);
+        params.rejectDuplicateResource = true;
+
+        List<HarvestError> errors = Collections.synchronizedList(new ArrayList<HarvestError>());
+        Aligner aligner = new Aligner(new AtomicBoolean(), context, server, params, log);
+        aligner.align(Arrays.asList(new RecordInfo(UUID, CHANGE_DATE), new RecordInfo(COPY_UUID, CHANGE_DATE)), errors);
+        HarvestResult result = aligner.cleanupRemovedRecords(null);
+
+        assertTrue(errors.isEmpty());
+        assertEquals(1, result.duplicatedResource);
+        assertEquals(1, result.addedMetadata);
+        assertEquals(2, result.totalMetadata);
+        assertEquals(1, metadataRepository.count());
+    }
+
+    @Test
+    public void testPrivilegesAppendedToUnchangedRecords() throws Exception {
+        mockGetRecordById(withResourceIdentifier(UUID, "physiographic-map"));
+        List<RecordInfo> records = Collections.singletonList(new RecordInfo(UUID, CHANGE_DATE));
+
+        Aligner aligner = new Aligner(new AtomicBoolean(), context, server, createParams(true), log);
+        aligner.align(records, new ArrayList<HarvestError>());
+        HarvestResult result = aligner.cleanupRemovedRecords(new HashSet<String>(Collections.singleton(UUID)));
+        assertEquals(1, result.addedMetadata);
+        assertEquals(0, result.privilegesAppendedOnExistingRecord);
+
+        // the record is not changed remotely, so it is not retrieved again
+        requestFactory.clear();
+        aligner = new Aligner(new AtomicBoolean(), context, server, createParams(true), log);
+        aligner.align(records, new ArrayList<HarvestError>());
+        result = aligner.cleanupRemovedRecords(new HashSet<String>(Collections.singleton(UUID)));
+
+        assertEquals(0, result.addedMetadata);
+        assertEquals(0, result.updatedMetadata);
+        assertEquals(1, result.unchangedMetadata);
+        assertEquals(1, result.privilegesAppendedOnExistingRecord);
+        assertEquals(1, result.totalMetadata);
+    }
+
+    private CswParams createParams(boolean appendPrivileges) throws Exception {
+        Element node = createHarvesterParams("csw");
+        CswHarvesterIntegrationTest.addCswSpecificParams(node, OUTPUT_SCHEMA);
+        node.getChild("content").getChild("validate").setText("NOVALIDATION");
+        node.getChild("site")
+            .addContent(new Element("recordsPerRequest").setText("1"))
+            // the mock request is shared by the fetching threads
+            .addContent(new Element("maxConnections").setText("1"))
+            .addContent(new Element("transformThreads").setText("2"));
+        if (appendPrivileges) {
+            node.addContent(new Element("ifRecordExistAppendPrivileges").setText("true"));
+        }
+        CswParams params = new CswParams(dataManager);
+        params.create(node);
+        return params;
+    }
+
+    private void mockGetRecordById(Element... records) {
+        final MockXmlRequest cswServerRequest = new MockXmlRequest("localhost", 8080, "http");
+        final String queryString = "?request=GetRecordById&service=CSW&version=2.0.2&outputSchema=" + OUTPUT_SCHEMA + "&elementSetName=full&id=";
+        for (Element record : records) {
+            String uuid = record.getChild("fileIdentifier", GMD).getChildText("CharacterString", GCO);
+            cswServerRequest.when(REQUEST + queryString + uuid)
+                .thenReturn(new Element("GetRecordByIdResponse", "csw", "http://www.opengis.net/cat/csw/2.0.2").addContent(record));
+        }
+        requestFactory.registerRequest(true, "localhost", 8080, "http", cswServerRequest);
+    }
+
+    /**
+     * @return the record of the fixture with another uuid and a resource identifier.
+     */
+    private Element withResourceIdentifier(String uuid, String identifier) throws Exception {
+        Element response = Xml.loadStream(fileStream("GetRecordById-" + UUID + ".xml"));
+        Element md = (Element) response.getChild("MD_Metadata", GMD).detach();
+        md.getChild("fileIdentifier", GMD).getChild("CharacterString", GCO).setText(uuid);
+
+        Element citation = md.getChild("identificationInfo", GMD).getChild("MD_DataIdentification", GMD)
+            .getChild("citation", GMD).getChild("CI_Citation", GMD);
+        Element edition = citation.getChild("edition", GMD);
+        citation.addContent(citation.indexOf(edition) + 1, new Element("identifier", GMD)
+            .addContent(new Element("MD_Identifier", GMD)
+                .addContent(new Element("code", GMD)
+                    .addContent(new Element("CharacterString", GCO).setText(identifier)))));
+        return md;
+    }
+}
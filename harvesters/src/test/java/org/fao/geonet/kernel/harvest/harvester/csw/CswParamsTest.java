@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.harvest.harvester.csw;
+
+import org.fao.geonet.exceptions.BadParameterEx;
+import org.jdom.Element;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CswParamsTest {
+
+    @Test
+    public void testDefaults() throws Exception {
+        CswParams params = new CswParams(null);
+        params.create(createNode(null, null));
+
+        assertEquals(20, params.recordsPerRequest);
+        assertEquals(4, params.maxConnections);
+    }
+
+    @Test
+    public void testCreateAndUpdate() throws Exception {
+        CswParams params = new CswParams(null);
+        params.create(createNode("1", "2"));
+        assertEquals(1, params.recordsPerRequest);
+        assertEquals(2, params.maxConnections);
+
+        params.update(createNode("50", null));
+        assertEquals(50, params.recordsPerRequest);
+        assertEquals(2, params.maxConnections);
+
+        CswParams copy = params.copy();
+        assertEquals(50, copy.recordsPerRequest);
+        assertEquals(2, copy.maxConnections);
+    }
+
+    @Test
+    public void testRejectsRecordsPerRequestLowerThanOne() throws Exception {
+        assertRejected(createNode("0", null));
+        assertRejected(createNode("-5", null));
+    }
+
+    @Test
+    public void testRejectsMaxConnectionsLowerThanOne() throws Exception {
+        assertRejected(createNode(null, "0"));
+    }
+
+    private static void assertRejected(Element node) throws Exception {
+        try {
+            new CswParams(null).create(node);
+            fail("Expected BadParameterEx");
+        } catch (BadParameterEx e) {
+            // expected
+        }
+
+        CswParams params = new CswParams(null);
+        params.create(createNode(null, null));
+        try {
+            params.update(node);
+            fail("Expected BadParameterEx");
+        } catch (BadParameterEx e) {
+            // expected
+        }
+        assertEquals(20, params.recordsPerRequest);
+        assertEquals(4, params.maxConnections);
+    }
+
+    private static Element createNode(String recordsPerRequest, String maxConnections) {
+        Element site = new Element("site")
+            .addContent(new Element("name").setText("test"))
+            .addContent(new Element("capabilitiesUrl").setText("http://localhost/csw"));
+        if (recordsPerRequest != null) {
+            site.addContent(new Element("recordsPerRequest").setText(recordsPerRequest));
+        }
+        if (maxConnections != null) {
+            site.addContent(new Element("maxConnections").setText(maxConnections));
+        }
+        return new Element("node").setAttribute("type", "csw")
+            .addContent(site)
+            .addContent(new Element("options"))
+            .addContent(new Element("content"));
+    }
+}
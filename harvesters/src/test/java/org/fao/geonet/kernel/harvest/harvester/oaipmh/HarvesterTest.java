@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.harvest.harvester.oaipmh;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HarvesterTest {
+
+    private final Set<String> remoteIds = new HashSet<>(Arrays.asList("listed"));
+    private final Set<String> deletedIds = new HashSet<>(Arrays.asList("deleted"));
+
+    @Test
+    public void testFullHarvestRemovesRecordsNotListed() {
+        assertFalse(Harvester.isRemoved("listed", remoteIds, Collections.<String>emptySet(), false));
+        assertTrue(Harvester.isRemoved("deleted", remoteIds, deletedIds, false));
+        assertTrue(Harvester.isRemoved("unchanged", remoteIds, deletedIds, false));
+    }
+
+    @Test
+    public void testIncrementalHarvestOnlyRemovesDeletedRecords() {
+        assertFalse(Harvester.isRemoved("listed", remoteIds, deletedIds, true));
+        assertTrue(Harvester.isRemoved("deleted", remoteIds, deletedIds, true));
+        // not listed because it did not change since the last harvest
+        assertFalse(Harvester.isRemoved("unchanged", remoteIds, deletedIds, true));
+    }
+}
@@ -23,11 +23,7 @@
 
 package org.fao.oaipmh.responses;
 
-import java.math.BigInteger;
-import java.security.SecureRandom;
-
 import org.fao.geonet.domain.ISODate;
-import org.fao.oaipmh.util.SearchResult;
 import org.fao.oaipmh.OaiPmh;
 import org.fao.oaipmh.exceptions.BadResumptionTokenException;
 import org.fao.oaipmh.requests.TokenListRequest;
@@ -35,21 +31,24 @@ import org.jdom.Element;
 
 //=============================================================================
 
-
+/**
+ * Resumption token holding everything needed to search the next page of a list: the set, prefix,
+ * from and until of the list, the position after the last record returned and the number of
+ * records returned so far, used for the cursor of the next response. No state is kept on the server
+ * between requests.
+ */
 public class GeonetworkResumptionToken extends ResumptionToken {
 
     public static final String SEPARATOR = "/-/";
     private Integer listSize;
     private Integer cursor;
-    private Integer pos;
+    private Integer pos = 0;
     private String set = "";
     private String from = "";
     private String until = "";
     private String prefix = "";
+    private String after = "";
     private Boolean isReset = false;
-    private String randomid;
-    private SearchResult res;
-    private SecureRandom random = new SecureRandom();
 
     /**
      * Default constructor. Builds a GeonetworkResumptionToken.
@@ -59,42 +58,24 @@ public class GeonetworkResumptionToken extends ResumptionToken {
     }
 
     /**
-     * Default constructor. Builds a GeonetworkResumptionToken.
+     * Builds a GeonetworkResumptionToken from the token of the request.
      */
     public GeonetworkResumptionToken(TokenListRequest req) throws BadResumptionTokenException {
-
         String strToken = req.getResumptionToken();
+        if (strToken == null)
+            throw new BadResumptionTokenException("No resumptionToken in request");
 
-        if (strToken == null) {
-
-            if (req.getFrom() != null)
-                from = req.getFrom().toString();
-            if (req.getUntil() != null)
-                until = req.getUntil().toString();
-            if (req.getSet() != null)
-                set = req.getSet();
-            prefix = req.getMetadataPrefix();
-
-
-            randomid = generateRandomString();
-
-        } else {
-
-            parseToken(strToken);
-        }
+        parseToken(strToken);
     }
 
     /**
-     * Default constructor. Builds a GeonetworkResumptionToken.
+     * Builds the token of the first page of a list.
      */
-    public GeonetworkResumptionToken(TokenListRequest req, SearchResult res) throws BadResumptionTokenException {
-        this(req);
-        this.res = res;
-    }
-
-    public static String buildKey(TokenListRequest req) throws BadResumptionTokenException {
-        GeonetworkResumptionToken temp = new GeonetworkResumptionToken(req);
-        return temp.getKey();
+    public GeonetworkResumptionToken(String set, String prefix, String from, String until) {
+        this.set = set == null ? "" : set;
+        this.prefix = prefix;
+        this.from = from == null ? "" : from;
+        this.until = until == null ? "" : until;
     }
 
     //---------------------------------------------------------------------------
@@ -103,15 +84,11 @@ public class GeonetworkResumptionToken extends ResumptionToken {
     //---
     //---------------------------------------------------------------------------
 
-    public static int getPos(TokenListRequest req) throws BadResumptionTokenException {
-        GeonetworkResumptionToken temp = new GeonetworkResumptionToken(req);
-        return temp.getPos();
-    }
-
     public String getToken() {
         if (isReset)
             return ""; // we are at the last chunk
-        return getKey() + SEPARATOR + pos;
+        return set + SEPARATOR + prefix + SEPARATOR + from + SEPARATOR + until
+            + SEPARATOR + after + SEPARATOR + pos;
     }
 
     public void setToken(String token) {
@@ -127,6 +104,9 @@ public class GeonetworkResumptionToken extends ResumptionToken {
         return isReset;
     }
 
+    /**
+     * @return the number of records returned by the previous pages of the list.
+     */
     public int getPos() {
         return pos;
     }
@@ -135,17 +115,57 @@ public class GeonetworkResumptionToken extends ResumptionToken {
         this.pos = pos;
     }
 
-    public String getKey() {
-        return set + SEPARATOR + prefix + SEPARATOR + from + SEPARATOR + until
-            + SEPARATOR + randomid;
+    @Override
+    public Integer getCompleteListSize() {
+        return listSize;
+    }
+
+    public void setCompleteListSize(Integer listSize) {
+        this.listSize = listSize;
+    }
+
+    @Override
+    public Integer getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @param cursor the number of records returned before the response holding this token.
+     */
+    public void setCursor(Integer cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return the set of the list or an empty string.
+     */
+    public String getSet() {
+        return set;
     }
 
-    public SearchResult getRes() {
-        return res;
+    public String getPrefix() {
+        return prefix;
     }
 
-    public void setRes(SearchResult res) {
-        this.res = res;
+    /**
+     * @return the from date of the list or an empty string.
+     */
+    public String getFrom() {
+        return from;
+    }
+
+    /**
+     * @return the until date of the list or an empty string.
+     */
+    public String getUntil() {
+        return until;
+    }
+
+    /**
+     * @return the position after the last record returned or an empty string on the first page.
+     */
+    public String getAfter() {
+        return after;
     }
 
     public void reset() {
@@ -154,10 +174,17 @@ public class GeonetworkResumptionToken extends ResumptionToken {
 
     //---------------------------------------------------------------------------
 
-    public void setupToken(int newpos) {
-        if (newpos < res.getIds().size()) // update token so that it refers to the next chunk
+    /**
+     * Updates the token so that it refers to the next chunk.
+     *
+     * @param after  the position after the last record returned or null if it was the last chunk.
+     * @param newpos the number of records returned so far.
+     */
+    public void setupToken(String after, int newpos) {
+        if (after != null) {
+            this.after = after;
             setPos(newpos);
-        else {
+        } else {
             reset();    // reset token to indicate last chunk
         }
     }
@@ -203,7 +230,8 @@ public class GeonetworkResumptionToken extends ResumptionToken {
 
     private void parseToken(String strToken) throws BadResumptionTokenException {
 
-        String[] temp = strToken.split(SEPARATOR);
+        // -1 keeps the trailing empty strings
+        String[] temp = strToken.split(SEPARATOR, -1);
 
         if (temp.length != 6)
             throw new BadResumptionTokenException("unknown resumptionToken format: " + strToken);
@@ -212,13 +240,13 @@ public class GeonetworkResumptionToken extends ResumptionToken {
         prefix = temp[1];
         from = temp[2];
         until = temp[3];
-        randomid = temp[4];
-
-        pos = Integer.parseInt(temp[5]);
-    }
+        after = temp[4];
 
-    public String generateRandomString() {
-        return new BigInteger(130, random).toString(36);
+        try {
+            pos = Integer.parseInt(temp[5]);
+        } catch (NumberFormatException e) {
+            throw new BadResumptionTokenException("unknown resumptionToken format: " + strToken);
+        }
     }
 
 }
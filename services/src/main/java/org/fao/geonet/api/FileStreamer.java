@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.api;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Writes files to the response without loading them in memory.
+ * <p/>
+ * The file is copied to the response with {@link FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)} so the memory used does not depend on the file size.
+ * Conditional requests are answered using an ETag and the last modification date of the file and a
+ * single byte range can be requested with the Range header.
+ */
+public final class FileStreamer {
+    private static final String BYTES = "bytes";
+
+    private FileStreamer() {
+    }
+
+    /**
+     * Write a file to the response.
+     *
+     * @param file    the file to write.
+     * @param headers the headers to add to the response (content type, disposition, ...).
+     */
+    public static void stream(Path file, HttpHeaders headers, HttpServletRequest request,
+                              HttpServletResponse response) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            stream(channel, Files.getLastModifiedTime(file).toMillis(), headers, request, response);
+        }
+    }
+
+    /**
+     * Write the content of a channel to the response.  The channel is not closed.
+     *
+     * @param channel      the content to write.
+     * @param lastModified the last modification date of the content in milliseconds.
+     * @param headers      the headers to add to the response (content type, disposition, ...).
+     */
+    public static void stream(FileChannel channel, long lastModified, HttpHeaders headers,
+                              HttpServletRequest request, HttpServletResponse response) throws IOException {
+        final long length = channel.size();
+        final String eTag = getETag(length, lastModified);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            for (String value : header.getValue()) {
+                response.addHeader(header.getKey(), value);
+            }
+        }
+
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            // checkNotModified has set the status and the validators
+            return;
+        }
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, BYTES);
+
+        long start = 0;
+        long count = length;
+        HttpRange range = getRange(request, eTag, lastModified);
+        if (range != null) {
+            start = range.getRangeStart(length);
+            if (start >= length) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, BYTES + " */" + length);
+                response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+            long end = range.getRangeEnd(length);
+            count = end - start + 1;
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, BYTES + " " + start + "-" + end + "/" + length);
+        }
+        response.setContentLengthLong(count);
+
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+        // The servlet output stream is closed by the container
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        while (count > 0) {
+            long transferred = channel.transferTo(start, count, out);
+            if (transferred <= 0) {
+                // the file has been truncated
+                break;
+            }
+            start += transferred;
+            count -= transferred;
+        }
+        response.flushBuffer();
+    }
+
+    static String getETag(long length, long lastModified) {
+        return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+    }
+
+    /**
+     * @return the range requested or null if the whole content must be sent: no range, several
+     * ranges, an invalid range or an If-Range that does not match the current version.
+     */
+    private static HttpRange getRange(HttpServletRequest request, String eTag, long lastModified) {
+        final String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null) {
+            return null;
+        }
+        final String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(eTag)) {
+            long ifRangeDate;
+            try {
+                ifRangeDate = request.getDateHeader(HttpHeaders.IF_RANGE);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            if (ifRangeDate / 1000 != lastModified / 1000) {
+                return null;
+            }
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -54,6 +54,7 @@ import org.fao.geonet.domain.ReservedGroup;
 import org.fao.geonet.domain.User;
 import org.fao.geonet.domain.UserGroup;
 import org.fao.geonet.domain.UserGroupId_;
+import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.repository.GroupRepository;
 import org.fao.geonet.repository.LanguageRepository;
@@ -497,6 +498,9 @@ public class GroupsApi {
     @Autowired
     private DataManager dm;
 
+    @Autowired
+    private AccessManager accessManager;
+
     @ApiOperation(
         value = "Remove a group",
         notes = "Remove a group by first removing sharing settings, link to users and " +
@@ -551,6 +555,7 @@ public class GroupsApi {
             final List<Integer> users = userGroupRepository.findUserIds(where(UserGroupSpecs.hasGroupId(group.getId())));
             if (users.size() > 0 && force) {
                 userGroupRepository.deleteAllByIdAttribute(UserGroupId_.groupId, Arrays.asList(groupIdentifier));
+                accessManager.groupsChanged();
             } else if (users.size() > 0 && !force) {
                 throw new NotAllowedException(String.format(
                     "Group %s is associated with %d user(s). Add 'force' parameter to remove it or remove users associated with that group first.",
@@ -32,19 +32,18 @@ import org.fao.geonet.ApplicationContextHolder;
 import org.fao.geonet.api.API;
 import org.fao.geonet.api.ApiParams;
 import org.fao.geonet.api.ApiUtils;
+import org.fao.geonet.api.FileStreamer;
 import org.fao.geonet.domain.MetadataResource;
 import org.fao.geonet.domain.MetadataResourceVisibility;
 import org.fao.geonet.domain.MetadataResourceVisibilityConverter;
 import org.fao.geonet.events.history.AttachmentAddedEvent;
 import org.fao.geonet.events.history.AttachmentDeletedEvent;
 import org.springframework.context.ApplicationContext;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
-import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -65,6 +64,7 @@ import java.util.List;
 
 import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * Metadata resource related operations.
@@ -238,27 +238,27 @@ public class AttachmentsApi {
     @ApiOperation(value = "Get a metadata resource", nickname = "getResource")
     // @PreAuthorize("permitAll")
     @RequestMapping(value = "/{resourceId:.+}", method = RequestMethod.GET)
-    @ResponseStatus(value = HttpStatus.OK)
     @ApiResponses(value = { @ApiResponse(code = 201, message = "Record attachment."),
             @ApiResponse(code = 403, message = "Operation not allowed. "
                     + "User needs to be able to download the resource.") })
-    @ResponseBody
-    public HttpEntity<byte[]> getResource(
+    public void getResource(
             @ApiParam(value = "The metadata UUID", required = true, example = "43d7c186-2187-4bcd-8843-41e575a5ef56") @PathVariable String metadataUuid,
             @ApiParam(value = "The resource identifier (ie. filename)", required = true) @PathVariable String resourceId,
             @ApiParam(value = "Use approved version or not", example = "true") @RequestParam(required = false, defaultValue = "true") Boolean approved,
-            @ApiIgnore HttpServletRequest request) throws Exception {
+            @ApiIgnore HttpServletRequest request,
+            @ApiIgnore HttpServletResponse response) throws Exception {
         ServiceContext context = ApiUtils.createServiceContext(request);
         try (Store.ResourceHolder file = store.getResource(context, metadataUuid, resourceId, approved)) {
 
             ApiUtils.canViewRecord(metadataUuid, request);
 
-            MultiValueMap<String, String> headers = new HttpHeaders();
+            HttpHeaders headers = new HttpHeaders();
             headers.add("Content-Disposition", "inline; filename=\"" + file.getMetadata().getFilename() + "\"");
             headers.add("Cache-Control", "no-cache");
             headers.add("Content-Type", getFileContentType(file.getPath()));
 
-            return new HttpEntity<>(Files.readAllBytes(file.getPath()), headers);
+            // the file may be a temporary copy deleted when the holder is closed so it is written now
+            FileStreamer.stream(file.getPath(), headers, request, response);
         }
     }
 
@@ -34,6 +34,7 @@ import java.net.URISyntaxException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -45,6 +46,7 @@ import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 
+import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -66,6 +68,7 @@ import org.fao.geonet.Constants;
 import org.fao.geonet.SystemInfo;
 import org.fao.geonet.api.API;
 import org.fao.geonet.api.ApiUtils;
+import org.fao.geonet.api.FileStreamer;
 import org.fao.geonet.api.records.formatters.cache.CacheConfig;
 import org.fao.geonet.api.records.formatters.cache.ChangeDateValidator;
 import org.fao.geonet.api.records.formatters.cache.FormatterCache;
@@ -112,10 +115,11 @@ import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.stereotype.Controller;
 import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -124,7 +128,9 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.context.request.WebRequest;
 import org.xhtmlrenderer.pdf.ITextRenderer;
 import springfox.documentation.annotations.ApiIgnore;
@@ -412,24 +418,41 @@ public class FormatterApi extends AbstractFormatService implements ApplicationLi
      * up-to-date and if maximum performance is required.
      */
     @RequestMapping(value = "/{portal}/{lang}/md.format.public.{type}")
-    public HttpEntity<byte[]> getCachedPublicMetadata(
+    public void getCachedPublicMetadata(
         @PathVariable final String lang,
         @PathVariable final String type,
         @RequestParam(required = false) final String id,
         @RequestParam(value = "uuid", required = false) final String uuid,
-        @RequestParam(value = "xsl", required = false) final String xslid) throws Exception {
+        @RequestParam(value = "xsl", required = false) final String xslid,
+        final HttpServletRequest request,
+        final HttpServletResponse response) throws Exception {
         final FormatType formatType = FormatType.valueOf(type.toLowerCase());
 
         FormatterCache formatterCache = ApplicationContextHolder.get().getBean(FormatterCache.class);
 
         String resolvedId = resolveId(id, uuid);
         Key key = new Key(Integer.parseInt(resolvedId), lang, formatType, xslid, true, FormatterWidth._100);
-        byte[] bytes = formatterCache.getPublished(key);
 
+        Path path = formatterCache.getPublishedPath(key);
+        if (path != null) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.add("Content-Type", formatType.contentType);
+            try {
+                FileStreamer.stream(path, headers, request, response);
+                return;
+            } catch (NoSuchFileException e) {
+                // removed from the cache since it has been looked up
+            }
+        }
+
+        byte[] bytes = formatterCache.getPublished(key);
         if (bytes != null) {
-            return new HttpEntity<>(bytes);
+            response.setContentType(formatType.contentType);
+            response.setContentLength(bytes.length);
+            response.getOutputStream().write(bytes);
+        } else {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
-        return null;
     }
 
     /**
@@ -511,6 +534,39 @@ public class FormatterApi extends AbstractFormatService implements ApplicationLi
         }
     }
 
+    /**
+     * Render the html output of a formatter into the formatter cache the way an anonymous user
+     * would request it, unless the cache already holds an up-to-date output.  This is used to
+     * render the output of published records ahead of the first request.
+     *
+     * @param metadataId  the id of the metadata
+     * @param lang        ui language
+     * @param formatterId the id of the formatter
+     * @return true if the output has been rendered, false if it was up-to-date, the record is not
+     * visible to anonymous users, not indexed or the output may not be cached.
+     */
+    public boolean prerender(int metadataId, String lang, String formatterId) throws Exception {
+        final ServletContext servletContext = ApplicationContextHolder.get() instanceof WebApplicationContext ?
+            ((WebApplicationContext) ApplicationContextHolder.get()).getServletContext() : null;
+        final MockHttpServletRequest servletRequest = servletContext == null ?
+            new MockHttpServletRequest() : new MockHttpServletRequest(servletContext);
+        final NativeWebRequest request = new ServletWebRequest(servletRequest, new MockHttpServletResponse());
+
+        final String id = String.valueOf(metadataId);
+        final ServiceContext context = createServiceContext(lang, FormatType.html, servletRequest);
+        if (!context.getBean(AccessManager.class).isVisibleToAll(id)) {
+            return false;
+        }
+        ISODate changeDate = context.getBean(SearchManager.class).getDocChangeDate(id);
+        if (changeDate == null) {
+            return false;
+        }
+
+        Key key = new Key(metadataId, lang, FormatType.html, formatterId, true, FormatterWidth._100);
+        Validator validator = new ChangeDateValidator(changeDate.toDate().getTime());
+        return context.getBean(FormatterCache.class).prerender(key, validator, new FormatMetadata(context, key, request));
+    }
+
     private void writeOutResponse(ServiceContext context, String metadataUuid, String lang, HttpServletResponse response, FormatType formatType, byte[] formattedMetadata) throws Exception {
         response.setContentType(formatType.contentType);
         String filename = "metadata-" + metadataUuid + "." + formatType;
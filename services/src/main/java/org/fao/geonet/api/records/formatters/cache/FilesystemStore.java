@@ -25,6 +25,7 @@ package org.fao.geonet.api.records.formatters.cache;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.Striped;
 
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.kernel.GeonetworkDataDirectory;
@@ -36,10 +37,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -48,6 +51,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -59,6 +66,9 @@ import static org.fao.geonet.constants.Params.Access.PUBLIC;
 /**
  * A {@link org.fao.geonet.api.records.formatters.cache.PersistentStore} that saves the files to
  * disk.
+ * <p/>
+ * Accesses to the files of a key are guarded by a lock striped by key so different keys can be read
+ * and written concurrently.  Resizing and clearing the store lock the whole store.
  *
  * @author Jesse on 3/5/2015.
  */
@@ -66,6 +76,7 @@ public class FilesystemStore implements PersistentStore {
     public static final String WITHHELD_MD_DIRNAME = "withheld_md";
     public static final String FULL_MD_NAME = "full_md";
     private static final String BASE_CACHE_DIR = "formatter-cache";
+    private static final String TMP_SUFFIX = ".tmp";
     private static final String INFO_TABLE = "info";
     private static final String KEY = "keyhash";
     private static final String CHANGE_DATE = "changedate";
@@ -88,11 +99,20 @@ public class FilesystemStore implements PersistentStore {
     @Autowired
     private GeonetworkDataDirectory geonetworkDataDir;
     private boolean testing = false;
+    private static final int LOCK_STRIPES = 64;
+    private final ReadWriteLock storeLock = new ReentrantReadWriteLock();
+    private final Striped<ReadWriteLock> keyLocks = Striped.readWriteLock(LOCK_STRIPES);
     private volatile long maxSizeB = 10000;
-    private volatile long currentSize = 0;
+    private final AtomicLong currentSize = new AtomicLong();
     private volatile boolean initialized = false;
 
-    private synchronized void init() throws SQLException {
+    private void init() throws SQLException {
+        if (!initialized) {
+            doInit();
+        }
+    }
+
+    private synchronized void doInit() throws SQLException {
         if (!initialized) {
             // using a h2 database and not normal geonetwork DB to ensure that the accesses are always on localhost and therefore
             // hopefully quick.
@@ -117,7 +137,7 @@ public class FilesystemStore implements PersistentStore {
                 Statement statement = metadataDb.createStatement();
                 ResultSet rs = statement.executeQuery(QUERY_GETCURRENT_SIZE)) {
                 if (rs.next()) {
-                    this.currentSize = Long.parseLong(rs.getString(1));
+                    this.currentSize.set(Long.parseLong(rs.getString(1)));
                 }
             }
             Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
@@ -144,19 +164,39 @@ public class FilesystemStore implements PersistentStore {
     }
 
     @Override
-    public synchronized StoreInfoAndData get(@Nonnull Key key) throws IOException, SQLException {
+    public StoreInfoAndData get(@Nonnull Key key) throws IOException, SQLException {
         init();
-        StoreInfo info = getInfo(key);
-        if (info == null) {
-            return null;
+        final Lock lock = keyLocks.get(key).readLock();
+        storeLock.readLock().lock();
+        try {
+            lock.lock();
+            StoreInfo info = doGetInfo(key);
+            if (info == null) {
+                return null;
+            }
+            byte[] data = Files.readAllBytes(getPrivatePath(key));
+            return new StoreInfoAndData(info, data);
+        } finally {
+            lock.unlock();
+            storeLock.readLock().unlock();
         }
-        byte[] data = Files.readAllBytes(getPrivatePath(key));
-        return new StoreInfoAndData(info, data);
     }
 
     @Override
-    public synchronized StoreInfo getInfo(@Nonnull Key key) throws SQLException {
+    public StoreInfo getInfo(@Nonnull Key key) throws SQLException {
         init();
+        final Lock lock = keyLocks.get(key).readLock();
+        storeLock.readLock().lock();
+        try {
+            lock.lock();
+            return doGetInfo(key);
+        } finally {
+            lock.unlock();
+            storeLock.readLock().unlock();
+        }
+    }
+
+    private StoreInfo doGetInfo(@Nonnull Key key) throws SQLException {
         try (PreparedStatement statement = this.metadataDb.prepareStatement(QUERY_GET_INFO)) {
             statement.setInt(1, key.hashCode());
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -172,32 +212,71 @@ public class FilesystemStore implements PersistentStore {
     }
 
     @Override
-    public synchronized void put(@Nonnull Key key, @Nonnull StoreInfoAndData data) throws IOException, SQLException {
+    public void put(@Nonnull Key key, @Nonnull StoreInfoAndData data) throws IOException, SQLException {
         init();
-        resizeIfRequired(key, data);
+        if (isResizeRequired(key, data)) {
+            storeLock.writeLock().lock();
+            try {
+                if (isResizeRequired(key, data)) {
+                    resize();
+                }
+            } finally {
+                storeLock.writeLock().unlock();
+            }
+        }
+
+        final Lock lock = keyLocks.get(key).writeLock();
+        storeLock.readLock().lock();
+        try {
+            lock.lock();
+            doPut(key, data);
+        } finally {
+            lock.unlock();
+            storeLock.readLock().unlock();
+        }
+    }
+
+    private void doPut(@Nonnull Key key, @Nonnull StoreInfoAndData data) throws IOException, SQLException {
         final Path privatePath = getPrivatePath(key);
 
         if (Files.exists(privatePath)) {
-            currentSize -= Files.size(privatePath);
+            currentSize.addAndGet(-Files.size(privatePath));
         }
 
         Files.createDirectories(privatePath.getParent());
-        Files.write(privatePath, data.data);
-        currentSize += data.data.length;
+        // replace the file instead of rewriting it so it can be streamed while it is updated
+        final Path tmpPath = Files.createTempFile(privatePath.getParent(), privatePath.getFileName().toString(), TMP_SUFFIX);
+        try {
+            Files.write(tmpPath, data.data);
+            replace(tmpPath, privatePath);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+        currentSize.addAndGet(data.data.length);
 
         updateDbCurrentSize();
 
         Path publicPath = getPublicPath(key);
-        Files.deleteIfExists(publicPath);
         // only publish if withheld (hidden) elements are hidden.
         if (data.isPublished() && key.hideWithheld) {
             Files.createDirectories(publicPath.getParent());
+            // the public file is replaced as well so it does not disappear while it is updated
+            final Path tmpPublicPath = Files.createTempFile(publicPath.getParent(), publicPath.getFileName().toString(), TMP_SUFFIX);
             try {
-                Files.createLink(publicPath, privatePath);
-            } catch (UnsupportedOperationException | SecurityException e) {
-                // Link likely not supported on this FS use copy then.
-                Files.copy(privatePath, publicPath);
+                try {
+                    Files.delete(tmpPublicPath);
+                    Files.createLink(tmpPublicPath, privatePath);
+                } catch (UnsupportedOperationException | SecurityException e) {
+                    // Link likely not supported on this FS use copy then.
+                    Files.copy(privatePath, tmpPublicPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+                replace(tmpPublicPath, publicPath);
+            } finally {
+                // left over if the public path already was a link to the same file
+                Files.deleteIfExists(tmpPublicPath);
             }
+        } else {
+            Files.deleteIfExists(publicPath);
         }
         try (PreparedStatement statement = this.metadataDb.prepareStatement(QUERY_PUT)) {
             statement.setInt(1, key.hashCode());
@@ -208,25 +287,35 @@ public class FilesystemStore implements PersistentStore {
         }
     }
 
+    /**
+     * Moves a temporary file over a file so that readers get either the previous or the new file.
+     */
+    private static void replace(Path tmpPath, Path path) throws IOException {
+        try {
+            Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     private void updateDbCurrentSize() throws SQLException {
         try (PreparedStatement statement = this.metadataDb.prepareStatement(QUERY_SETCURRENT_SIZE)) {
-            statement.setString(1, String.valueOf(currentSize));
+            statement.setString(1, String.valueOf(currentSize.get()));
             statement.execute();
         }
     }
 
-    private void resizeIfRequired(Key key, StoreInfoAndData data) throws IOException, SQLException {
-        if (this.currentSize + data.data.length > this.maxSizeB) {
+    private boolean isResizeRequired(Key key, StoreInfoAndData data) throws IOException {
+        final long size = this.currentSize.get();
+        if (size + data.data.length > this.maxSizeB) {
             final Path privatePath = getPrivatePath(key);
             if (Files.exists(privatePath)) {
                 long fileSize = Files.size(privatePath);
-                if (currentSize - fileSize + data.data.length > this.maxSizeB) {
-                    resize();
-                }
-            } else {
-                resize();
+                return size - fileSize + data.data.length > this.maxSizeB;
             }
+            return true;
         }
+        return false;
     }
 
     private void resize() throws SQLException, IOException {
@@ -237,7 +326,7 @@ public class FilesystemStore implements PersistentStore {
             Statement statement = metadataDb.createStatement();
             ResultSet resultSet = statement.executeQuery(QUERY_GET_INFO_FOR_RESIZE);
         ) {
-            while (currentSize > targetSize && resultSet.next()) {
+            while (currentSize.get() > targetSize && resultSet.next()) {
                 Path path = IO.toPath(new URI(resultSet.getString(PATH)));
                 doRemove(path, resultSet.getInt(KEY), false);
             }
@@ -256,19 +345,47 @@ public class FilesystemStore implements PersistentStore {
             throw new Error(e);
         }
         final Path publicPath = getPublicPath(key);
-        if (Files.exists(publicPath)) {
-            return Files.readAllBytes(publicPath);
-        } else {
-            return null;
+        final Lock lock = keyLocks.get(key).readLock();
+        storeLock.readLock().lock();
+        try {
+            lock.lock();
+            if (Files.exists(publicPath)) {
+                return Files.readAllBytes(publicPath);
+            } else {
+                return null;
+            }
+        } finally {
+            lock.unlock();
+            storeLock.readLock().unlock();
+        }
+    }
+
+    @Nullable
+    @Override
+    public Path getPublishedPath(@Nonnull Key key) throws IOException {
+        try {
+            init();
+        } catch (SQLException e) {
+            throw new Error(e);
         }
+        final Path publicPath = getPublicPath(key);
+        return Files.exists(publicPath) ? publicPath : null;
     }
 
     @Override
-    public synchronized void remove(@Nonnull Key key) throws IOException, SQLException {
+    public void remove(@Nonnull Key key) throws IOException, SQLException {
         init();
         final Path path = getPrivatePath(key);
         final int keyHashCode = key.hashCode();
-        doRemove(path, keyHashCode, true);
+        final Lock lock = keyLocks.get(key).writeLock();
+        storeLock.readLock().lock();
+        try {
+            lock.lock();
+            doRemove(path, keyHashCode, true);
+        } finally {
+            lock.unlock();
+            storeLock.readLock().unlock();
+        }
     }
 
     @Override
@@ -287,6 +404,9 @@ public class FilesystemStore implements PersistentStore {
 
                 @Override
                 public FileVisitResult visitFile(Path privatePath, BasicFileAttributes attrs) throws IOException {
+                    if (privatePath.getFileName().toString().endsWith(TMP_SUFFIX)) {
+                        return FileVisitResult.CONTINUE;
+                    }
                     final Path publicPath = toPublicPath(privatePath);
                     if (published) {
                         if (!Files.exists(publicPath)) {
@@ -307,10 +427,11 @@ public class FilesystemStore implements PersistentStore {
     @Override
     public void clear() throws SQLException, IOException {
         init();
+        storeLock.writeLock().lock();
         try (Statement statement = this.metadataDb.createStatement()) {
             statement.execute(QUERY_CLEAR_INFO);
             statement.execute(QUERY_CLEAR_STATS);
-            currentSize = 0;
+            currentSize.set(0);
             Files.walkFileTree(getBaseCacheDir(), new SimpleFileVisitor<Path>() {
                 @Override
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
@@ -332,13 +453,15 @@ public class FilesystemStore implements PersistentStore {
                     return super.postVisitDirectory(dir, exc);
                 }
             });
+        } finally {
+            storeLock.writeLock().unlock();
         }
     }
 
     private void doRemove(Path privatePath, int keyHashCode, boolean updateDbCurrentSize) throws IOException, SQLException {
         try {
             if (Files.exists(privatePath)) {
-                currentSize -= Files.size(privatePath);
+                currentSize.addAndGet(-Files.size(privatePath));
                 Files.delete(privatePath);
             }
         } finally {
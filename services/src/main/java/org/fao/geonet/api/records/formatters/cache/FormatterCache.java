@@ -26,23 +26,28 @@ package org.fao.geonet.api.records.formatters.cache;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
 
 import org.fao.geonet.domain.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
-import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -64,6 +69,10 @@ import javax.annotation.PreDestroy;
  * parallel with writing to the cache.
  * <p/>
  * Note: The Persistent cache used can be configured.
+ * <p/>
+ * Values are rendered without holding any lock.  When several requests miss the cache for the same
+ * key, only the first one renders the value and the others wait for its result.  The lock is only
+ * held exclusively while removing values from the cache.
  *
  * @author Jesse on 3/5/2015.
  */
@@ -71,7 +80,8 @@ public class FormatterCache {
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
     private final PersistentStore persistentStore;
     private final Cache<Key, StoreInfoAndData> memoryCache;
-    private final Multimap<Integer, Pair<Key, StoreInfoAndData>> mdIdIndex = ArrayListMultimap.create();
+    private final ConcurrentMap<Integer, Set<Key>> mdIdIndex = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Key, FutureTask<StoreInfoAndDataLoadResult>> loading = new ConcurrentHashMap<>();
     private final ExecutorService executor;
     private final BlockingQueue<Pair<Key, StoreInfoAndDataLoadResult>> storeRequests;
     @Autowired
@@ -120,6 +130,7 @@ public class FormatterCache {
         final Lock writeLock = lock.writeLock();
         try {
             writeLock.lock();
+            this.loading.remove(key);
             this.memoryCache.invalidate(key);
             this.persistentStore.remove(key);
         } finally {
@@ -144,14 +155,14 @@ public class FormatterCache {
     @Nullable
     public byte[] get(Key key, Validator validator, Callable<StoreInfoAndDataLoadResult> loader,
                       boolean writeToStoreInCurrentThread) throws Exception {
+        if (!cacheConfig.allowCaching(key)) {
+            return loader.call().data;
+        }
+
         final Lock readLock = lock.readLock();
         StoreInfoAndData cached;
         try {
             readLock.lock();
-            if (!cacheConfig.allowCaching(key)) {
-                return loader.call().data;
-            }
-
             cached = memoryCache.getIfPresent(key);
             boolean invalid = false;
             if (cached != null && !validator.isCacheVersionValid(cached)) {
@@ -162,34 +173,115 @@ public class FormatterCache {
             if (!invalid && cached == null) {
                 cached = loadFromPersistentCache(key, validator);
             }
-
         } finally {
             readLock.unlock();
         }
-        final Lock writeLock = lock.writeLock();
+
         if (cached == null) {
-            try {
-                writeLock.lock();
-                StoreInfoAndDataLoadResult loaded = loader.call();
-                cached = loaded;
-                push(key, loaded, writeToStoreInCurrentThread);
-            } finally {
-                writeLock.unlock();
-            }
+            cached = load(key, loader, writeToStoreInCurrentThread, true);
         }
 
         return cached.data;
 
     }
 
-    private void push(Key key, StoreInfoAndDataLoadResult cached,
-                      boolean writeToStoreInCurrentThread) throws IOException, SQLException {
-        final Lock writeLock = lock.writeLock();
+    /**
+     * Load a value and write it to the persistent store unless an up-to-date value is already
+     * cached.  Unlike {@link #get(Key, Validator, Callable, boolean)} the value is not added to
+     * the memory cache so that rendering values ahead of time does not evict the values users are
+     * actually requesting.
+     *
+     * @param key       the lookup/store key
+     * @param validator a strategy for checking if the cached value is out-of-date
+     * @param loader    the strategy to use for loading the value
+     * @return true if the value has been loaded, false if it was up-to-date or may not be cached.
+     */
+    public boolean prerender(Key key, Validator validator, Callable<StoreInfoAndDataLoadResult> loader)
+        throws Exception {
+        if (!cacheConfig.allowCaching(key)) {
+            return false;
+        }
+
+        final Lock readLock = lock.readLock();
         try {
-            writeLock.lock();
+            readLock.lock();
+            final StoreInfoAndData cached = memoryCache.getIfPresent(key);
+            if (cached != null && validator.isCacheVersionValid(cached)) {
+                return false;
+            }
+            final StoreInfo info = persistentStore.getInfo(key);
+            if (info != null && validator.isCacheVersionValid(info)) {
+                return false;
+            }
+        } finally {
+            readLock.unlock();
+        }
+
+        load(key, loader, true, false);
+        return true;
+    }
+
+    /**
+     * Load the value with the loader unless another thread is already loading the value of the same
+     * key, in which case wait for its result.  No lock is held while loading.
+     */
+    private StoreInfoAndDataLoadResult load(Key key, Callable<StoreInfoAndDataLoadResult> loader,
+                                            boolean writeToStoreInCurrentThread, boolean keepInMemory)
+        throws Exception {
+        final FutureTask<StoreInfoAndDataLoadResult> task = new FutureTask<>(loader);
+        final FutureTask<StoreInfoAndDataLoadResult> running = this.loading.putIfAbsent(key, task);
+        if (running != null) {
+            return getLoadResult(running);
+        }
+        try {
+            task.run();
+            StoreInfoAndDataLoadResult loaded = getLoadResult(task);
+            push(key, task, loaded, writeToStoreInCurrentThread, keepInMemory);
+            return loaded;
+        } finally {
+            this.loading.remove(key, task);
+        }
+    }
+
+    private static StoreInfoAndDataLoadResult getLoadResult(FutureTask<StoreInfoAndDataLoadResult> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
 
-            this.memoryCache.put(key, cached);
-            this.mdIdIndex.put(key.mdId, Pair.read(key, (StoreInfoAndData) cached));
+    private void push(Key key, FutureTask<StoreInfoAndDataLoadResult> task, StoreInfoAndDataLoadResult cached,
+                      boolean writeToStoreInCurrentThread, boolean keepInMemory) throws IOException, SQLException {
+        final Lock readLock = lock.readLock();
+        try {
+            readLock.lock();
+            if (this.loading.get(key) != task) {
+                // the value has been removed from the cache while it was loaded so it may be out-of-date
+                return;
+            }
+            if (keepInMemory) {
+                this.memoryCache.put(key, cached);
+            }
+            // the key is indexed even if the value is only in the persistent store so removeAll can find it
+            this.mdIdIndex.compute(key.mdId, (mdId, keys) -> {
+                if (keys == null) {
+                    keys = new HashSet<>();
+                }
+                keys.add(key);
+                return keys;
+            });
+        } finally {
+            readLock.unlock();
+        }
+
+        try {
             if (writeToStoreInCurrentThread) {
                 createPersistentStoreRunnable(storeRequests, persistentStore).processStoreRequest(Pair.read(key, cached));
             } else {
@@ -199,21 +291,13 @@ public class FormatterCache {
             }
         } catch (InterruptedException e) {
             // return
-        } finally {
-            writeLock.unlock();
         }
     }
 
     private StoreInfoAndData loadFromPersistentCache(Key key, Validator validator) throws IOException, SQLException {
-        final Lock readLock = lock.readLock();
-        try {
-            readLock.lock();
-            final StoreInfo info = persistentStore.getInfo(key);
-            if (info != null && validator.isCacheVersionValid(info)) {
-                return persistentStore.get(key);
-            }
-        } finally {
-            readLock.unlock();
+        final StoreInfo info = persistentStore.getInfo(key);
+        if (info != null && validator.isCacheVersionValid(info)) {
+            return persistentStore.get(key);
         }
         return null;
     }
@@ -232,13 +316,20 @@ public class FormatterCache {
      */
     @Nullable
     public byte[] getPublished(Key key) throws IOException, SQLException {
-        final Lock readLock = lock.readLock();
-        try {
-            readLock.lock();
-            return this.persistentStore.getPublished(key);
-        } finally {
-            readLock.unlock();
-        }
+        return this.persistentStore.getPublished(key);
+    }
+
+    /**
+     * Get the file of a pre-cached public value so it can be sent without loading it in memory.
+     * Returns null if the value is not pre-cached, not public or if the persistent store does not
+     * keep values in files.
+     *
+     * @param key the lookup key
+     * @see #getPublished(Key)
+     */
+    @Nullable
+    public Path getPublishedPath(Key key) throws IOException {
+        return this.persistentStore.getPublishedPath(key);
     }
 
     /**
@@ -260,13 +351,16 @@ public class FormatterCache {
     /**
      * Remove all cached values related to the metadataId.
      */
-    public synchronized void removeAll(int metadataId) throws IOException, SQLException {
+    public void removeAll(int metadataId) throws IOException, SQLException {
         final Lock writeLock = lock.writeLock();
         try {
             writeLock.lock();
-            Collection<Pair<Key, StoreInfoAndData>> storeInfoAndDatas = this.mdIdIndex.removeAll(metadataId);
-            for (Pair<Key, StoreInfoAndData> storeInfoAndData : storeInfoAndDatas) {
-                final Key key = storeInfoAndData.one();
+            Set<Key> keys = this.mdIdIndex.remove(metadataId);
+            if (keys == null) {
+                return;
+            }
+            for (Key key : keys) {
+                this.loading.remove(key);
                 this.memoryCache.invalidate(key);
                 this.persistentStore.remove(key);
             }
@@ -282,7 +376,9 @@ public class FormatterCache {
         final Lock writeLock = lock.writeLock();
         try {
             writeLock.lock();
+            this.loading.clear();
             this.memoryCache.invalidateAll();
+            this.mdIdIndex.clear();
             this.persistentStore.clear();
         } finally {
             writeLock.unlock();
@@ -292,7 +388,14 @@ public class FormatterCache {
     private class RemoveFromIndexListener implements RemovalListener<Key, StoreInfoAndData> {
         @Override
         public void onRemoval(RemovalNotification<Key, StoreInfoAndData> notification) {
-            mdIdIndex.remove(notification.getKey().mdId, notification.getValue());
+            if (notification.getCause() == RemovalCause.REPLACED) {
+                return;
+            }
+            final Key key = notification.getKey();
+            mdIdIndex.computeIfPresent(key.mdId, (mdId, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
         }
     }
 }
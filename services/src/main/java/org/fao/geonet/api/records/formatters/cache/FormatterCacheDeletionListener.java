@@ -39,10 +39,15 @@ import java.sql.SQLException;
 public class FormatterCacheDeletionListener implements ApplicationListener<MetadataRemove> {
     @Autowired
     private FormatterCache formatterCache;
+    @Autowired(required = false)
+    private FormatterPrerenderer formatterPrerenderer;
 
     @Override
     public synchronized void onApplicationEvent(MetadataRemove event) {
         final int metadataId = event.getMd().getId();
+        if (formatterPrerenderer != null) {
+            formatterPrerenderer.cancel(metadataId);
+        }
         try {
             formatterCache.removeAll(metadataId);
         } catch (SQLException | IOException e) {
@@ -40,13 +40,16 @@ import static org.springframework.data.jpa.domain.Specifications.where;
 
 /**
  * This class is responsible for listening for metadata index events and updating the cache's
- * publication values so that it stays in sync with the actual metadata.
+ * publication values so that it stays in sync with the actual metadata. Published metadata are
+ * also scheduled for pre-rendering if a {@link FormatterPrerenderer} is configured.
  *
  * @author Jesse on 3/6/2015.
  */
 public class FormatterCachePublishListener implements ApplicationListener<MetadataIndexCompleted> {
     @Autowired
     private FormatterCache formatterCache;
+    @Autowired(required = false)
+    private FormatterPrerenderer formatterPrerenderer;
 
     @Override
     public synchronized void onApplicationEvent(MetadataIndexCompleted event) {
@@ -60,6 +63,13 @@ public class FormatterCachePublishListener implements ApplicationListener<Metada
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        if (formatterPrerenderer != null) {
+            if (one != null) {
+                formatterPrerenderer.schedule(event.getMd());
+            } else {
+                formatterPrerenderer.cancel(metadataId);
+            }
+        }
 
     }
 }
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.api.records.formatters.cache;
+
+import org.fao.geonet.ApplicationContextHolder;
+import org.fao.geonet.NodeInfo;
+import org.fao.geonet.api.records.formatters.FormatterApi;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.AbstractMetadata;
+import org.fao.geonet.utils.Log;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+import javax.management.ObjectName;
+
+/**
+ * Renders the formatter output of published records into the {@link FormatterCache} in the
+ * background so that the first visitor (or crawler) of a record does not wait for the formatter.
+ *
+ * Records are scheduled by {@link FormatterCachePublishListener} each time a published record is
+ * indexed. Each record is rendered with all the configured formatters and languages, the way
+ * an anonymous user requests them, by a small pool of low priority threads. Popular records are
+ * rendered first and, for the same popularity, the most recently scheduled ones. Scheduling a
+ * record already waiting only updates its priority. When the queue is full new records are
+ * dropped: they will be rendered on their first request as before.
+ *
+ * Nothing is rendered unless at least one formatter is configured.
+ */
+@ManagedResource(description = "Background pre-rendering of the formatter output of published records")
+public class FormatterPrerenderer {
+    private static final int RATE_WINDOW_SECONDS = 60;
+
+    private List<String> formatters = Collections.emptyList();
+    private List<String> languages = Collections.singletonList(Geonet.DEFAULT_LANGUAGE);
+    private int threads = 1;
+    private int maxQueueSize = 10000;
+
+    private final PriorityBlockingQueue<Task> queue = new PriorityBlockingQueue<>();
+    /**
+     * The task waiting in the queue for each record. Both are only updated together, holding the
+     * lock of the pre-renderer, so that a cancelled or replaced task is removed from the queue.
+     */
+    private final ConcurrentMap<Integer, Task> pending = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong upToDate = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final long[] renderCounts = new long[RATE_WINDOW_SECONDS];
+    private final long[] renderSeconds = new long[RATE_WINDOW_SECONDS];
+
+    private ExecutorService executor;
+    private ObjectName probeName;
+
+    /**
+     * @param formatters the ids of the formatters to render, none by default.
+     */
+    public void setFormatters(List<String> formatters) {
+        this.formatters = formatters;
+    }
+
+    /**
+     * @param languages the ui languages to render each formatter in, the default language by
+     *                  default.
+     */
+    public void setLanguages(List<String> languages) {
+        this.languages = languages;
+    }
+
+    /**
+     * @param threads the number of records rendered concurrently, 1 by default.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param maxQueueSize the maximum number of records waiting to be rendered, 10000 by default.
+     */
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public boolean isEnabled() {
+        return !formatters.isEmpty() && !languages.isEmpty();
+    }
+
+    /**
+     * Schedule the rendering of a published record.
+     */
+    public void schedule(AbstractMetadata metadata) {
+        schedule(metadata.getId(), metadata.getDataInfo().getPopularity());
+    }
+
+    /**
+     * Schedule the rendering of a published record or update its priority if it is already
+     * waiting.
+     *
+     * @param metadataId the id of the record
+     * @param popularity the popularity of the record, more popular records are rendered first
+     */
+    public synchronized void schedule(int metadataId, int popularity) {
+        if (!isEnabled()) {
+            return;
+        }
+        final Task previous = pending.get(metadataId);
+        if (previous == null && pending.size() >= maxQueueSize) {
+            dropped.incrementAndGet();
+            return;
+        }
+        final Task task = new Task(metadataId, popularity, sequence.incrementAndGet());
+        pending.put(metadataId, task);
+        if (previous != null) {
+            queue.remove(previous);
+        }
+        queue.add(task);
+        start();
+    }
+
+    /**
+     * Cancel the rendering of a record if it has not started yet, for example because it is
+     * not published anymore.
+     */
+    public synchronized void cancel(int metadataId) {
+        final Task task = pending.remove(metadataId);
+        if (task != null) {
+            queue.remove(task);
+        }
+    }
+
+    private synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory();
+        threadFactory.setDaemon(true);
+        threadFactory.setThreadPriority(Thread.MIN_PRIORITY);
+        threadFactory.setThreadNamePrefix("FormatterPrerenderer-");
+        executor = Executors.newFixedThreadPool(threads, threadFactory);
+        final ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+        for (int i = 0; i < threads; i++) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (applicationContext != null) {
+                        ApplicationContextHolder.set(applicationContext);
+                    }
+                    renderQueuedRecords();
+                }
+            });
+        }
+        registerProbe(applicationContext);
+    }
+
+    private void registerProbe(ConfigurableApplicationContext applicationContext) {
+        if (applicationContext == null) {
+            return;
+        }
+        try {
+            String nodeId = applicationContext.getBean(NodeInfo.class).getId();
+            probeName = new ObjectName(String.format("geonetwork:name=formatter-prerendering,node=%s", nodeId));
+            applicationContext.getBean(MBeanExporter.class).registerManagedResource(this, probeName);
+        } catch (Exception e) {
+            probeName = null;
+            Log.warning(Geonet.FORMATTER, "Formatter pre-rendering metrics not available through JMX: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+            if (probeName != null && applicationContext != null) {
+                applicationContext.getBean(MBeanExporter.class).unregisterManagedResource(probeName);
+            }
+            executor = null;
+        }
+        pending.clear();
+        queue.clear();
+    }
+
+    private void renderQueuedRecords() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final Task task = queue.take();
+                synchronized (this) {
+                    // cancelled or replaced while it was taken
+                    if (!pending.remove(task.metadataId, task)) {
+                        continue;
+                    }
+                }
+                for (String language : languages) {
+                    for (String formatter : formatters) {
+                        renderAndCount(task.metadataId, language, formatter);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // shutdown
+        }
+    }
+
+    private void renderAndCount(int metadataId, String language, String formatter) {
+        try {
+            if (render(metadataId, language, formatter)) {
+                rendered.incrementAndGet();
+                countRender(System.currentTimeMillis() / 1000);
+            } else {
+                upToDate.incrementAndGet();
+            }
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            Log.warning(Geonet.FORMATTER, String.format("Error while pre-rendering record %d with formatter %s in %s: %s",
+                metadataId, formatter, language, e.getMessage()));
+        }
+    }
+
+    /**
+     * Render one formatter output of a record in the cache.
+     *
+     * @return true if the output has been rendered, false if there was nothing to render.
+     */
+    protected boolean render(int metadataId, String language, String formatter) throws Exception {
+        return ApplicationContextHolder.get().getBean(FormatterApi.class).prerender(metadataId, language, formatter);
+    }
+
+    private synchronized void countRender(long second) {
+        final int i = (int) (second % RATE_WINDOW_SECONDS);
+        if (renderSeconds[i] != second) {
+            renderSeconds[i] = second;
+            renderCounts[i] = 0;
+        }
+        renderCounts[i]++;
+    }
+
+    @ManagedAttribute(description = "Number of records waiting to be rendered")
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @ManagedAttribute(description = "Number of formatter outputs rendered")
+    public long getRendered() {
+        return rendered.get();
+    }
+
+    @ManagedAttribute(description = "Number of formatter outputs already up-to-date or not cacheable")
+    public long getUpToDate() {
+        return upToDate.get();
+    }
+
+    @ManagedAttribute(description = "Number of formatter outputs that could not be rendered")
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @ManagedAttribute(description = "Number of records not scheduled because the queue was full")
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @ManagedAttribute(description = "Formatter outputs rendered per second over the last minute")
+    public double getRenderRate() {
+        return getRenderRate(System.currentTimeMillis() / 1000);
+    }
+
+    synchronized double getRenderRate(long second) {
+        long count = 0;
+        for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+            if (renderSeconds[i] > second - RATE_WINDOW_SECONDS && renderSeconds[i] <= second) {
+                count += renderCounts[i];
+            }
+        }
+        return (double) count / RATE_WINDOW_SECONDS;
+    }
+
+    private static final class Task implements Comparable<Task> {
+        private final int metadataId;
+        private final int popularity;
+        private final long sequence;
+
+        private Task(int metadataId, int popularity, long sequence) {
+            this.metadataId = metadataId;
+            this.popularity = popularity;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (popularity != other.popularity) {
+                return popularity > other.popularity ? -1 : 1;
+            }
+            return Long.compare(other.sequence, sequence);
+        }
+    }
+}
@@ -24,6 +24,7 @@
 package org.fao.geonet.api.records.formatters.cache;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
 
 import javax.annotation.Nonnull;
@@ -68,6 +69,17 @@ public interface PersistentStore {
     @Nullable
     byte[] getPublished(@Nonnull Key key) throws IOException, SQLException;
 
+    /**
+     * Return the file of the cached value if it has been cached and is public, otherwise null.
+     * Stores which do not keep the values in files always return null.
+     * <p/>
+     * A file returned may be removed before it is read but it is never partially rewritten.
+     *
+     * @param key the lookup key.
+     */
+    @Nullable
+    Path getPublishedPath(@Nonnull Key key) throws IOException;
+
     /**
      * Remove values with the key from the cache.
      *
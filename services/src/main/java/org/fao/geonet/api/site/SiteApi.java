@@ -54,8 +54,10 @@ import org.fao.geonet.domain.Setting;
 import org.fao.geonet.domain.SettingDataType;
 import org.fao.geonet.domain.Source;
 import org.fao.geonet.exceptions.OperationAbortedEx;
+import org.fao.geonet.kernel.BatchIndexingProgress;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.GeonetworkDataDirectory;
+import org.fao.geonet.kernel.datamanager.IMetadataIndexer;
 import org.fao.geonet.kernel.datamanager.IMetadataManager;
 import org.fao.geonet.kernel.harvest.HarvestManager;
 import org.fao.geonet.kernel.search.EsSearchManager;
@@ -564,6 +566,24 @@ public class SiteApi {
         return ApplicationContextHolder.get().getBean(DataManager.class).isIndexing();
     }
 
+    @ApiOperation(
+        value = "Indexing progress",
+        notes = "Progress of the batch indexing in progress (or of the last one): " +
+            "number of records processed and failed, records per second and estimated time remaining.",
+        nickname = "getIndexingProgress")
+    @RequestMapping(
+        path = "/indexing/progress",
+        produces = MediaType.APPLICATION_JSON_VALUE,
+        method = RequestMethod.GET)
+    @ResponseStatus(value = HttpStatus.OK)
+    @ResponseBody
+    public BatchIndexingProgress getIndexingProgress(
+        HttpServletRequest request
+    ) throws Exception {
+        ApiUtils.createServiceContext(request);
+        return ApplicationContextHolder.get().getBean(IMetadataIndexer.class).getBatchIndexingProgress();
+    }
+
     @ApiOperation(
         value = "Index",
         notes = "",
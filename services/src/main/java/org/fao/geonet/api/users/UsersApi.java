@@ -35,6 +35,7 @@ import org.fao.geonet.api.users.model.UserDto;
 import org.fao.geonet.constants.Params;
 import org.fao.geonet.domain.*;
 import org.fao.geonet.exceptions.UserNotFoundEx;
+import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
 import org.fao.geonet.kernel.setting.SettingManager;
@@ -102,6 +103,9 @@ public class UsersApi {
     @Autowired
     DataManager dataManager;
 
+    @Autowired
+    AccessManager accessManager;
+
     private BufferedImage pixel;
 
     public UsersApi() {
@@ -323,6 +327,7 @@ public class UsersApi {
 
         userGroupRepository.deleteAllByIdAttribute(UserGroupId_.userId,
             Arrays.asList(userIdentifier));
+        accessManager.groupsChanged();
 
         userSavedSelectionRepository.deleteAllByUser(userIdentifier);
 
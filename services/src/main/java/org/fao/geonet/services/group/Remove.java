@@ -36,6 +36,7 @@ import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.constants.Params;
 import org.fao.geonet.domain.OperationAllowedId_;
 import org.fao.geonet.domain.UserGroupId_;
+import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.repository.GroupRepository;
 import org.fao.geonet.repository.OperationAllowedRepository;
@@ -76,6 +77,7 @@ public class Remove extends NotInReadOnlyModeService {
 
         operationAllowedRepo.deleteAllByGroupId(iId);
         userGroupRepo.deleteAllByIdAttribute(UserGroupId_.groupId, Arrays.asList(iId));
+        context.getBean(AccessManager.class).groupsChanged();
         groupRepo.delete(iId);
         //--- reindex affected metadata
 
@@ -31,6 +31,7 @@ import org.fao.geonet.ApplicationContextHolder;
 import org.fao.geonet.constants.Params;
 import org.fao.geonet.domain.Profile;
 import org.fao.geonet.domain.UserGroupId_;
+import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.repository.UserGroupRepository;
 import org.fao.geonet.repository.UserRepository;
@@ -115,6 +116,7 @@ public class Remove {
 
             userGroupRepository.deleteAllByIdAttribute(UserGroupId_.userId,
                 Arrays.asList(iId));
+            ApplicationContextHolder.get().getBean(AccessManager.class).groupsChanged();
             userRepository.delete(iId);
 
         } else {
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.api;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FileStreamerTest {
+    private static final String CONTENT = "0123456789";
+    private static final long LAST_MODIFIED = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.newFile("test.txt").toPath();
+        Files.write(file, CONTENT.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(LAST_MODIFIED));
+    }
+
+    @Test
+    public void testStreamWholeFile() throws Exception {
+        MockHttpServletResponse response = stream(new MockHttpServletRequest("GET", "/test.txt"));
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+        assertEquals(CONTENT.length(), response.getContentLength());
+        assertEquals("text/plain", response.getHeader("Content-Type"));
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertEquals(FileStreamer.getETag(CONTENT.length(), LAST_MODIFIED), response.getHeader("ETag"));
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/test.txt");
+        request.addHeader("If-None-Match", FileStreamer.getETag(CONTENT.length(), LAST_MODIFIED));
+        MockHttpServletResponse response = stream(request);
+
+        assertEquals(304, response.getStatus());
+        assertEquals("", response.getContentAsString());
+
+        request = new MockHttpServletRequest("GET", "/test.txt");
+        request.addHeader("If-Modified-Since", LAST_MODIFIED);
+        response = stream(request);
+
+        assertEquals(304, response.getStatus());
+        assertEquals("", response.getContentAsString());
+    }
+
+    @Test
+    public void testModified() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/test.txt");
+        request.addHeader("If-None-Match", FileStreamer.getETag(CONTENT.length(), LAST_MODIFIED - 1000));
+        MockHttpServletResponse response = stream(request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/test.txt");
+        request.addHeader("Range", "bytes=2-5");
+        MockHttpServletResponse response = stream(request);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", response.getContentAsString());
+        assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+
+        request = new MockHttpServletRequest("GET", "/test.txt");
+        request.addHeader("Range", "bytes=-3");
+        response = stream(request);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("789", response.getContentAsString());
+        assertEquals("bytes 7-9/10", response.getHeader("Content-Range"));
+
+        request = new MockHttpServletRequest("GET", "/test.txt");
+        request.addHeader("Range", "bytes=8-");
+        response = stream(request);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("89", response.getContentAsString());
+    }
+
+    @Test
+    public void testRangeNotSatisfiable() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/test.txt");
+        request.addHeader("Range", "bytes=20-30");
+        MockHttpServletResponse response = stream(request);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    public void testRangeIgnored() throws Exception {
+        // several ranges
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/test.txt");
+        request.addHeader("Range", "bytes=0-1,4-5");
+        MockHttpServletResponse response = stream(request);
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+
+        // the file changed since the first part was downloaded
+        request = new MockHttpServletRequest("GET", "/test.txt");
+        request.addHeader("Range", "bytes=2-5");
+        request.addHeader("If-Range", "\"other\"");
+        response = stream(request);
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+        assertNull(response.getHeader("Content-Range"));
+
+        // the file did not change
+        request = new MockHttpServletRequest("GET", "/test.txt");
+        request.addHeader("Range", "bytes=2-5");
+        request.addHeader("If-Range", FileStreamer.getETag(CONTENT.length(), LAST_MODIFIED));
+        response = stream(request);
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    public void testHead() throws Exception {
+        MockHttpServletResponse response = stream(new MockHttpServletRequest("HEAD", "/test.txt"));
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT.length(), response.getContentLength());
+        assertEquals("", response.getContentAsString());
+    }
+
+    private MockHttpServletResponse stream(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Type", "text/plain");
+        FileStreamer.stream(file, headers, request, response);
+        return response;
+    }
+}
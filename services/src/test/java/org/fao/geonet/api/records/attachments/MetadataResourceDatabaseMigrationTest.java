@@ -27,6 +27,7 @@ import com.google.common.collect.Lists;
 
 import org.fao.geonet.AbstractCoreIntegrationTest;
 import org.fao.geonet.MetadataResourceDatabaseMigration;
+import org.fao.geonet.domain.MetadataDataCodec;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.services.AbstractServiceIntegrationTest;
 import org.fao.geonet.utils.Xml;
@@ -36,6 +37,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -107,6 +113,35 @@ public class MetadataResourceDatabaseMigrationTest extends AbstractServiceIntegr
     }
     
     
+    @Test
+    public void testMigrateCompressedData() throws Exception {
+        File metadataFile = new File(resources, "record-with-old-links.xml");
+        String data = Xml.getString(Xml.loadStream(new FileInputStream(metadataFile)));
+
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:resourcemigration")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE metadata (id INT, uuid VARCHAR(255), isharvested CHAR(1), data CLOB)");
+            }
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO metadata VALUES (1, ?, 'n', ?)")) {
+                insert.setString(1, "da165110-88fd-11da-a88f-000d939bc5d8");
+                insert.setString(2, MetadataDataCodec.compress(data));
+                insert.executeUpdate();
+            }
+
+            MetadataResourceDatabaseMigration migration = new MetadataResourceDatabaseMigration();
+            migration.setContext(_applicationContext);
+            migration.update(connection);
+
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT data FROM metadata WHERE id = 1")) {
+                assertTrue(resultSet.next());
+                Element migrated = Xml.loadString(MetadataDataCodec.decode(resultSet.getString(1)), false);
+                assertEquals(0, Xml.selectNodes(migrated, XPATH).size());
+                assertEquals(4, Xml.selectNodes(migrated, XPATH_AFTER_UPDATE).size());
+            }
+        }
+    }
+
     @Test
     public void testMetadataResourceThumbnailMigration() throws Exception {
         final String fileName = "record-with-external-url-for-thumbnails.xml";
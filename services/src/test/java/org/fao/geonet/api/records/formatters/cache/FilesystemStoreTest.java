@@ -26,6 +26,7 @@ package org.fao.geonet.api.records.formatters.cache;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Sets;
 import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Feature;
 import com.google.common.jimfs.Jimfs;
 
 import org.fao.geonet.api.records.formatters.FormatType;
@@ -37,6 +38,8 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -131,6 +134,52 @@ public class FilesystemStoreTest {
         assertEquals(3, countFiles(geonetworkDataDirectory.getHtmlCacheDir()));
     }
 
+    @Test
+    public void testGetPublishedPath() throws Exception {
+        Key key = new Key(1, "eng", FormatType.html, "full_view", true, FormatterWidth._100);
+        store.put(key, new StoreInfoAndData("result", 10000, false));
+        assertNull(store.getPublishedPath(key));
+
+        store.put(key, new StoreInfoAndData("published", 10000, true));
+        Path path = store.getPublishedPath(key);
+        assertNotNull(path);
+        assertEquals("published", new String(Files.readAllBytes(path), "UTF-8"));
+
+        // an update replaces the file so the content of the previous version is not modified
+        try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+            store.put(key, new StoreInfoAndData("updated", 10000, true));
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            channel.read(buffer);
+            assertEquals("published", new String(buffer.array(), 0, buffer.position(), "UTF-8"));
+        }
+        assertEquals("updated", new String(Files.readAllBytes(store.getPublishedPath(key)), "UTF-8"));
+        assertEquals(2, countFiles(geonetworkDataDirectory.getHtmlCacheDir()));
+    }
+
+    @Test
+    public void testPublishWithoutLinks() throws Exception {
+        store.close();
+        fileSystem.close();
+        // without hard links the published file is a copy
+        this.fileSystem = Jimfs.newFileSystem("nolinks", Configuration.unix().toBuilder()
+            .setSupportedFeatures(Feature.FILE_CHANNEL).build());
+        Mockito.when(geonetworkDataDirectory.getHtmlCacheDir()).thenReturn(fileSystem.getPath("/html"));
+        initStore();
+
+        Key key = new Key(1, "eng", FormatType.html, "full_view", true, FormatterWidth._100);
+        store.put(key, new StoreInfoAndData("published", 10000, true));
+        assertEquals("published", new String(Files.readAllBytes(store.getPublishedPath(key)), "UTF-8"));
+
+        store.put(key, new StoreInfoAndData("updated", 10000, true));
+        assertEquals("updated", new String(Files.readAllBytes(store.getPublishedPath(key)), "UTF-8"));
+        // no temporary file is left
+        assertEquals(2, countFiles(geonetworkDataDirectory.getHtmlCacheDir()));
+
+        store.put(key, new StoreInfoAndData("unpublished", 10000, false));
+        assertNull(store.getPublishedPath(key));
+        assertEquals(1, countFiles(geonetworkDataDirectory.getHtmlCacheDir()));
+    }
+
     @Test
     public void testDoNotPublishMdWithWithheld() throws IOException, SQLException {
 
@@ -38,19 +38,28 @@ import org.mockito.Mockito;
 import org.springframework.context.ConfigurableApplicationContext;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.Date;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class FormatterCacheTest {
 
@@ -215,6 +224,12 @@ public class FormatterCacheTest {
                 throw new UnsupportedOperationException("to implement");
             }
 
+            @Nullable
+            @Override
+            public Path getPublishedPath(@Nonnull Key key) {
+                throw new UnsupportedOperationException("to implement");
+            }
+
             @Override
             public void remove(@Nonnull Key key) throws IOException, SQLException {
                 // ignore
@@ -282,4 +297,135 @@ public class FormatterCacheTest {
         assertNotNull(persistentStore.get(key));
     }
 
+    @Test(timeout = 5000L)
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        final MemoryPersistentStore persistentStore = new MemoryPersistentStore();
+        this.formatterCache = new FormatterCache(persistentStore, 100, 5000);
+
+        final long changeDate = new Date().getTime();
+        final Key key = new Key(1, "eng", FormatType.html, "full_view", true, FormatterWidth._100);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch allowLoad = new CountDownLatch(1);
+        final Callable<StoreInfoAndDataLoadResult> loader = new Callable<StoreInfoAndDataLoadResult>() {
+            @Override
+            public StoreInfoAndDataLoadResult call() throws Exception {
+                loads.incrementAndGet();
+                allowLoad.await();
+                return new TestLoader("result", changeDate, false).call();
+            }
+        };
+
+        final int nbRequests = 8;
+        ExecutorService requests = Executors.newFixedThreadPool(nbRequests);
+        try {
+            Future<?>[] results = new Future<?>[nbRequests];
+            for (int i = 0; i < nbRequests; i++) {
+                results[i] = requests.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return getAsString(key, changeDate, loader);
+                    }
+                });
+            }
+            while (loads.get() == 0) {
+                Thread.sleep(10);
+            }
+            allowLoad.countDown();
+            for (Future<?> result : results) {
+                assertEquals("result", result.get());
+            }
+        } finally {
+            requests.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test(timeout = 5000L)
+    public void testLoadDoesNotBlockOtherKeys() throws Exception {
+        final MemoryPersistentStore persistentStore = new MemoryPersistentStore();
+        this.formatterCache = new FormatterCache(persistentStore, 100, 5000);
+
+        final long changeDate = new Date().getTime();
+        final Key slowKey = new Key(1, "eng", FormatType.html, "full_view", true, FormatterWidth._100);
+        final Key cachedKey = new Key(2, "eng", FormatType.html, "full_view", true, FormatterWidth._100);
+        getAsString(cachedKey, changeDate, new TestLoader("cached", changeDate, false));
+
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch allowLoad = new CountDownLatch(1);
+        ExecutorService requests = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> slow = requests.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return getAsString(slowKey, changeDate, new Callable<StoreInfoAndDataLoadResult>() {
+                        @Override
+                        public StoreInfoAndDataLoadResult call() throws Exception {
+                            loadStarted.countDown();
+                            allowLoad.await();
+                            return new TestLoader("slow", changeDate, false).call();
+                        }
+                    });
+                }
+            });
+            assertTrue(loadStarted.await(1, TimeUnit.SECONDS));
+
+            assertEquals("cached", getAsString(cachedKey, changeDate, new TestLoader("reloaded", changeDate, false)));
+            assertEquals("other", getAsString(new Key(3, "eng", FormatType.html, "full_view", true, FormatterWidth._100),
+                changeDate, new TestLoader("other", changeDate, false)));
+
+            allowLoad.countDown();
+            assertEquals("slow", slow.get());
+        } finally {
+            requests.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRemoveAll() throws Exception {
+        final MemoryPersistentStore persistentStore = new MemoryPersistentStore();
+        this.formatterCache = new FormatterCache(persistentStore, 100, 5000);
+
+        final long changeDate = new Date().getTime();
+        final Key key = new Key(1, "eng", FormatType.html, "full_view", true, FormatterWidth._100);
+        final Key key2 = new Key(1, "fre", FormatType.html, "full_view", true, FormatterWidth._100);
+        final Key otherKey = new Key(2, "eng", FormatType.html, "full_view", true, FormatterWidth._100);
+        getAsString(key, changeDate, new TestLoader("result", changeDate, false));
+        getAsString(key2, changeDate, new TestLoader("result", changeDate, false));
+        getAsString(otherKey, changeDate, new TestLoader("result", changeDate, false));
+
+        formatterCache.removeAll(1);
+
+        assertNull(persistentStore.get(key));
+        assertNull(persistentStore.get(key2));
+        assertNotNull(persistentStore.get(otherKey));
+        assertEquals("newVal", getAsString(key, changeDate, new TestLoader("newVal", changeDate, false)));
+        assertEquals("result", getAsString(otherKey, changeDate, new TestLoader("newVal", changeDate, false)));
+    }
+
+    @Test
+    public void testPrerender() throws Exception {
+        final MemoryPersistentStore persistentStore = new MemoryPersistentStore();
+        this.formatterCache = new FormatterCache(persistentStore, 100, 5000);
+
+        final long changeDate = new Date().getTime();
+        final Key key = new Key(1, "eng", FormatType.html, "full_view", true, FormatterWidth._100);
+        assertTrue(formatterCache.prerender(key, new ChangeDateValidator(changeDate), new TestLoader("result", changeDate, true)));
+        assertEquals("result", persistentStore.get(key).getDataAsString());
+        assertArrayEquals("result".getBytes(Constants.CHARSET), formatterCache.getPublished(key));
+
+        assertFalse(formatterCache.prerender(key, new ChangeDateValidator(changeDate), new TestLoader("newVal", changeDate, true)));
+        assertTrue(formatterCache.prerender(key, new ChangeDateValidator(changeDate + 1000),
+            new TestLoader("updated", changeDate + 1000, true)));
+        assertEquals("updated", persistentStore.get(key).getDataAsString());
+
+        // not kept in memory
+        persistentStore.remove(key);
+        assertEquals("newVal", getAsString(key, changeDate, new TestLoader("newVal", changeDate, false)));
+
+        final Key otherKey = new Key(2, "eng", FormatType.html, "full_view", true, FormatterWidth._100);
+        formatterCache.prerender(otherKey, new ChangeDateValidator(changeDate), new TestLoader("result", changeDate, true));
+        formatterCache.removeAll(2);
+        assertNull(persistentStore.get(otherKey));
+    }
+
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.api.records.formatters.cache;
+
+import com.google.common.collect.Lists;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FormatterPrerendererTest {
+
+    private TestPrerenderer prerenderer;
+
+    @Before
+    public void setUp() throws Exception {
+        prerenderer = new TestPrerenderer();
+        prerenderer.setFormatters(Collections.singletonList("full_view"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        prerenderer.allowRender.countDown();
+        prerenderer.shutdown();
+    }
+
+    @Test(timeout = 5000L)
+    public void testPopularAndRecentRecordsFirst() throws Exception {
+        prerenderer.schedule(1, 0);
+        assertEquals("1", prerenderer.renderStarted.take());
+
+        prerenderer.schedule(2, 0);
+        prerenderer.schedule(3, 5);
+        prerenderer.schedule(4, 0);
+        prerenderer.schedule(5, 0);
+        // rescheduled with a higher popularity
+        prerenderer.schedule(2, 1);
+        assertEquals(4, prerenderer.getQueueDepth());
+
+        prerenderer.allowRender.countDown();
+        assertEquals(Arrays.asList("1/eng/full_view", "3/eng/full_view", "2/eng/full_view", "5/eng/full_view",
+            "4/eng/full_view"), prerenderer.takeRendered(5));
+        assertEquals(0, prerenderer.getQueueDepth());
+        awaitCompleted(5);
+        assertEquals(5, prerenderer.getRendered());
+    }
+
+    @Test(timeout = 5000L)
+    public void testAllFormattersAndLanguages() throws Exception {
+        prerenderer.setFormatters(Arrays.asList("full_view", "xsl-view"));
+        prerenderer.setLanguages(Arrays.asList("eng", "fre"));
+        prerenderer.allowRender.countDown();
+
+        prerenderer.schedule(1, 0);
+        assertEquals(Arrays.asList("1/eng/full_view", "1/eng/xsl-view", "1/fre/full_view", "1/fre/xsl-view"),
+            prerenderer.takeRendered(4));
+    }
+
+    @Test(timeout = 5000L)
+    public void testCancel() throws Exception {
+        prerenderer.schedule(1, 0);
+        assertEquals("1", prerenderer.renderStarted.take());
+        prerenderer.schedule(2, 0);
+        prerenderer.schedule(3, 0);
+        prerenderer.cancel(3);
+        assertEquals(1, prerenderer.getQueueDepth());
+
+        prerenderer.allowRender.countDown();
+        assertEquals(Arrays.asList("1/eng/full_view", "2/eng/full_view"), prerenderer.takeRendered(2));
+        assertNull(prerenderer.rendered.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 5000L)
+    public void testQueueIsBounded() throws Exception {
+        prerenderer.setMaxQueueSize(2);
+        prerenderer.schedule(1, 0);
+        assertEquals("1", prerenderer.renderStarted.take());
+
+        prerenderer.schedule(2, 0);
+        prerenderer.schedule(3, 0);
+        prerenderer.schedule(4, 0);
+        assertEquals(1, prerenderer.getDropped());
+        prerenderer.schedule(2, 3);
+        assertEquals(1, prerenderer.getDropped());
+        assertEquals(2, prerenderer.getQueueDepth());
+    }
+
+    @Test(timeout = 5000L)
+    public void testRescheduleAndCancelDoNotGrowQueue() throws Exception {
+        prerenderer.setMaxQueueSize(2);
+        prerenderer.schedule(1, 0);
+        assertEquals("1", prerenderer.renderStarted.take());
+
+        for (int i = 0; i < 100; i++) {
+            prerenderer.schedule(2, i);
+            prerenderer.schedule(3, 0);
+            prerenderer.cancel(3);
+        }
+        assertEquals(1, prerenderer.getQueueDepth());
+        assertEquals(0, prerenderer.getDropped());
+
+        prerenderer.allowRender.countDown();
+        assertEquals(Arrays.asList("1/eng/full_view", "2/eng/full_view"), prerenderer.takeRendered(2));
+        assertNull(prerenderer.rendered.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, prerenderer.getQueueDepth());
+    }
+
+    @Test
+    public void testDisabledWithoutFormatters() throws Exception {
+        prerenderer.setFormatters(Collections.<String>emptyList());
+        assertFalse(prerenderer.isEnabled());
+        prerenderer.schedule(1, 0);
+        assertEquals(0, prerenderer.getQueueDepth());
+    }
+
+    @Test(timeout = 5000L)
+    public void testMetrics() throws Exception {
+        prerenderer.allowRender.countDown();
+        prerenderer.upToDateIds.add(2);
+        prerenderer.failingIds.add(3);
+        prerenderer.schedule(1, 0);
+        prerenderer.schedule(2, 0);
+        prerenderer.schedule(3, 0);
+        awaitCompleted(3);
+
+        assertEquals(1, prerenderer.getRendered());
+        assertEquals(1, prerenderer.getUpToDate());
+        assertEquals(1, prerenderer.getFailed());
+        assertTrue(prerenderer.getRenderRate() > 0);
+        assertEquals(0, prerenderer.getRenderRate(System.currentTimeMillis() / 1000 + 120), 0);
+    }
+
+    private void awaitCompleted(long count) throws InterruptedException {
+        while (prerenderer.getRendered() + prerenderer.getUpToDate() + prerenderer.getFailed() < count) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static class TestPrerenderer extends FormatterPrerenderer {
+        final CountDownLatch allowRender = new CountDownLatch(1);
+        final BlockingQueue<String> renderStarted = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> rendered = new LinkedBlockingQueue<>();
+        final List<Integer> upToDateIds = Lists.newCopyOnWriteArrayList();
+        final List<Integer> failingIds = Lists.newCopyOnWriteArrayList();
+
+        @Override
+        protected boolean render(int metadataId, String language, String formatter) throws Exception {
+            renderStarted.add(String.valueOf(metadataId));
+            allowRender.await();
+            rendered.add(metadataId + "/" + language + "/" + formatter);
+            if (failingIds.contains(metadataId)) {
+                throw new IllegalArgumentException("The bundle cannot format metadata");
+            }
+            return !upToDateIds.contains(metadataId);
+        }
+
+        List<String> takeRendered(int count) throws InterruptedException {
+            List<String> result = Lists.newArrayList();
+            for (int i = 0; i < count; i++) {
+                result.add(rendered.take());
+            }
+            return result;
+        }
+    }
+}
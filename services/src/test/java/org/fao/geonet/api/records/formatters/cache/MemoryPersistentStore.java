@@ -26,9 +26,10 @@ package org.fao.geonet.api.records.formatters.cache;
 import com.google.common.collect.Lists;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -37,7 +38,7 @@ import javax.annotation.Nullable;
  * @author Jesse on 3/5/2015.
  */
 public class MemoryPersistentStore implements PersistentStore {
-    Map<Key, StoreInfoAndData> dataMap = new HashMap<>();
+    Map<Key, StoreInfoAndData> dataMap = new ConcurrentHashMap<>();
 
     @Override
     public StoreInfoAndData get(@Nonnull Key key) {
@@ -64,6 +65,12 @@ public class MemoryPersistentStore implements PersistentStore {
         return null;
     }
 
+    @Nullable
+    @Override
+    public Path getPublishedPath(@Nonnull Key key) {
+        return null;
+    }
+
     @Override
     public void remove(@Nonnull Key key) throws IOException, SQLException {
         this.dataMap.remove(key);
@@ -147,6 +147,21 @@ public class SiteApiTest extends AbstractServiceIntegrationTest {
         Assert.assertTrue(result.getResponse().getContentAsString().equals("false"));
     }
 
+    @Test
+    public void getIndexingProgress() throws Exception {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+
+        this.mockHttpSession = loginAsAdmin();
+
+        this.mockMvc.perform(get("/srv/api/site/indexing/progress")
+            .session(this.mockHttpSession)
+            .accept(MediaType.parseMediaType("application/json")))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(API_JSON_EXPECTED_ENCODING))
+            .andExpect(jsonPath("$.running", is(false)))
+            .andExpect(jsonPath("$.failed", is(0)));
+    }
+
     @Test
     public void getSystemInfo() throws Exception {
         this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
@@ -24,6 +24,7 @@ package org.fao.geonet.api.users;
 
 
 import com.google.gson.Gson;
+import jeeves.server.UserSession;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.fao.geonet.api.users.model.UserDto;
@@ -31,6 +32,7 @@ import org.fao.geonet.domain.Group;
 import org.fao.geonet.domain.Profile;
 import org.fao.geonet.domain.User;
 import org.fao.geonet.domain.UserGroup;
+import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.services.AbstractServiceIntegrationTest;
 import org.junit.Assert;
 import org.junit.Before;
@@ -65,6 +67,9 @@ public class UsersApiTest extends AbstractServiceIntegrationTest {
     @Autowired
     private WebApplicationContext wac;
 
+    @Autowired
+    private AccessManager accessManager;
+
     private MockMvc mockMvc;
 
     private MockHttpSession mockHttpSession;
@@ -151,6 +156,26 @@ public class UsersApiTest extends AbstractServiceIntegrationTest {
         Assert.assertNull(userToDelete);
     }
 
+    @Test
+    public void deleteExistingUserRevokesCachedGroups() throws Exception {
+        final User userToDelete = _userRepo.findOneByUsername("testuser-editor");
+        final Group sampleGroup = _groupRepo.findByName("sample");
+        final UserSession userSession = new UserSession();
+        userSession.loginAs(userToDelete);
+        Assert.assertTrue(accessManager.getUserGroups(userSession, Profile.Editor).contains(sampleGroup.getId()));
+
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+
+        this.mockHttpSession = loginAsAdmin();
+
+        this.mockMvc.perform(delete("/srv/api/users/" + userToDelete.getId())
+            .session(this.mockHttpSession)
+            .accept(MediaType.parseMediaType("application/json")))
+            .andExpect(status().is(204));
+
+        Assert.assertTrue(accessManager.getUserGroups(userSession, Profile.Editor).isEmpty());
+    }
+
     @Test
     public void deleteNonExistingUser() throws Exception {
         User userToDelete = _userRepo.findOne(222);
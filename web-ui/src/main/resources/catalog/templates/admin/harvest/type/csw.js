@@ -20,10 +20,16 @@ var gnHarvestercsw = {
         "capabilitiesUrl" : "http://",
         "xpathFilter" : "",
         "rejectDuplicateResource" : false,
+        "incremental" : false,
         "xslfilter": [],
         "outputSchema": "http://www.isotc211.org/2005/gmd",
         "queryScope": "local",
-        "hopCount": 2
+        "hopCount": 2,
+        "recordsPerRequest": 20,
+        "maxConnections": 4,
+        "transformThreads": 2,
+        "storeBatchSize": 20,
+        "indexThreads": 2
       },
       "content" : {
         "validate" : "NOVALIDATION",
@@ -80,6 +86,7 @@ var gnHarvestercsw = {
       + '  <site>'
       + '    <name>' + h.site.name + '</name>'
       + '    <rejectDuplicateResource>' + h.site.rejectDuplicateResource + '</rejectDuplicateResource>'
+      + '    <incremental>' + h.site.incremental + '</incremental>'
       + '    <capabilitiesUrl>' + h.site.capabilitiesUrl.replace(/&/g, '&amp;') + '</capabilitiesUrl>'
       + '    <icon>' + h.site.icon + '</icon>'
       + '    <account>'
@@ -92,6 +99,11 @@ var gnHarvestercsw = {
       + '    <outputSchema>' + h.site.outputSchema + '</outputSchema>'
       + '    <queryScope>' + h.site.queryScope + '</queryScope>'
       + '    <hopCount>' + h.site.hopCount + '</hopCount>'
+      + '    <recordsPerRequest>' + h.site.recordsPerRequest + '</recordsPerRequest>'
+      + '    <maxConnections>' + h.site.maxConnections + '</maxConnections>'
+      + '    <transformThreads>' + h.site.transformThreads + '</transformThreads>'
+      + '    <storeBatchSize>' + h.site.storeBatchSize + '</storeBatchSize>'
+      + '    <indexThreads>' + h.site.indexThreads + '</indexThreads>'
       + '  </site>'
       + gnHarvestercsw.buildResponseCSWSearch($scope)
       + '  <options>'
@@ -18,7 +18,8 @@ var gnHarvesteroaipmh = {
               },
               "xslfilter": [],
               "url": "",
-              "icon" : "blank.png"
+              "icon" : "blank.png",
+              "incremental": false
             },
             "content":   {
               "validate": "NOVALIDATION",
@@ -58,6 +59,7 @@ var gnHarvesteroaipmh = {
                 + '    <name>' + h.site.name + '</name>'
                 + '    <url>' + h.site.url.replace(/&/g, '&amp;') + '</url>'
                 + '    <icon>' + h.site.icon + '</icon>'
+                + '    <incremental>' + h.site.incremental + '</incremental>'
                 + '    <xslfilter>'
                 + (h.site.xslfilter[0] ? h.site.xslfilter.replace(/&/g, '&amp;') : '')
                 + '    </xslfilter>'
@@ -29,7 +29,8 @@ var gnHarvesterwebdav = {
                 "status" : "active",
                 "recurse" : true,
                 "overrideUuid" : "SKIP",
-                "subtype" : "waf"
+                "subtype" : "waf",
+                "incremental" : false
             },
             "ifRecordExistAppendPrivileges": false,
             "privileges" : [ {
@@ -69,6 +70,7 @@ var gnHarvesterwebdav = {
                 + '    <status>' + h.options.status + '</status>'
                 + '    <recurse>' + h.options.recurse + '</recurse>'
                 + '    <subtype>' + h.options.subtype + '</subtype>'
+                + '    <incremental>' + h.options.incremental + '</incremental>'
                 + '  </options>'
                 + '  <content>'
                 + '    <validate>' + h.content.validate + '</validate>'
@@ -27,6 +27,7 @@ import com.google.common.util.concurrent.Callables;
 import org.locationtech.jts.util.Assert;
 import jeeves.server.sources.http.ServletPathFinder;
 import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.MetadataDataCodec;
 import org.fao.geonet.domain.Pair;
 import org.fao.geonet.kernel.setting.Settings;
 import org.fao.geonet.lib.DatabaseType;
@@ -47,6 +48,7 @@ import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.file.Path;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -199,6 +201,7 @@ public class DatabaseMigration implements BeanPostProcessor {
                 break;
             case -1:
                 boolean anyMigrationAction = false;
+                boolean dataDecompressed = false;
 
                 // Migrating from 2.0 to 2.5 could be done 2.0 -> 2.3 -> 2.4 -> 2.5
                 String dbType = DatabaseType.lookup(conn).toString();
@@ -222,6 +225,10 @@ public class DatabaseMigration implements BeanPostProcessor {
                                 anyMigrationAction = true;
                                 _logger.info("         - SQL migration file:" + filePath + " prefix:" + filePrefix + " ...");
                                 try {
+                                    if (!dataDecompressed) {
+                                        decompressMetadataData(conn);
+                                        dataDecompressed = true;
+                                    }
                                     Lib.db.insertData(servletContext, statement, path, filePath, filePrefix);
                                 } catch (Exception e) {
                                     _logger.info("          Errors occurs during SQL migration file: " + e.getMessage());
@@ -308,6 +315,34 @@ public class DatabaseMigration implements BeanPostProcessor {
         }
     }
 
+    /**
+     * SQL migration files rewrite the data of the records with REPLACE and LIKE, which do not see
+     * the XML of the records stored compressed (see {@link MetadataDataCodec}). Their data is
+     * stored uncompressed before the files are run, {@link org.fao.geonet.kernel.MetadataDataCompressionJob}
+     * compresses it again after startup if compression is enabled.
+     */
+    private void decompressMetadataData(Connection conn) throws SQLException {
+        int count = 0;
+        try (PreparedStatement update = conn.prepareStatement("UPDATE Metadata SET data=? WHERE id=?");
+             Statement select = conn.createStatement();
+             ResultSet resultSet = select.executeQuery(
+                 "SELECT id, data FROM Metadata WHERE data LIKE '" + MetadataDataCodec.PREFIX + "%'")) {
+            while (resultSet.next()) {
+                update.setString(1, MetadataDataCodec.decode(resultSet.getString(2)));
+                update.setInt(2, resultSet.getInt(1));
+                update.addBatch();
+                count++;
+                if (count % 200 == 0) {
+                    update.executeBatch();
+                }
+            }
+            update.executeBatch();
+        }
+        if (count > 0) {
+            _logger.info("         - Stored the data of " + count + " compressed records uncompressed for the SQL migration files");
+        }
+    }
+
     private void formatSqlException(SQLException e, StringBuilder error) {
         error.append("\n    SQLState: ").append(e.getSQLState());
         error.append("\n    Error Code: ").append(e.getErrorCode());
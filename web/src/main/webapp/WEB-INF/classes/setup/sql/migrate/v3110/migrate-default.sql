@@ -7,6 +7,10 @@ ALTER TABLE Validation ALTER COLUMN valType TYPE varchar(128);
 
 ALTER TABLE usersearch ALTER COLUMN url TYPE text;
 
+-- OAI-PMH resumption tokens are not cached anymore
+DELETE FROM Settings WHERE name = 'system/oai/tokentimeout';
+DELETE FROM Settings WHERE name = 'system/oai/cachesize';
+
 INSERT INTO StatusValues (id, name, reserved, displayorder, type, notificationLevel) VALUES  (63,'recordrestored','y', 63, 'event', null);
 INSERT INTO StatusValuesDes  (iddes, langid, label) VALUES (63,'ara','Record restored.');
 INSERT INTO StatusValuesDes  (iddes, langid, label) VALUES (63,'cat','Record restored.');
@@ -10,6 +10,10 @@ ALTER TABLE usersearch SET tempurl = url, url = null;
 ALTER TABLE usersearch DROP COLUMN url;
 ALTER TABLE usersearch RENAME COLUMN tempurl to url;
 
+-- OAI-PMH resumption tokens are not cached anymore
+DELETE FROM Settings WHERE name = 'system/oai/tokentimeout';
+DELETE FROM Settings WHERE name = 'system/oai/cachesize';
+
 INSERT INTO StatusValues (id, name, reserved, displayorder, type, notificationLevel) VALUES  (63,'recordrestored','y', 63, 'event', null);
 INSERT INTO StatusValuesDes  (iddes, langid, label) VALUES (63,'ara','Record restored.');
 INSERT INTO StatusValuesDes  (iddes, langid, label) VALUES (63,'cat','Record restored.');
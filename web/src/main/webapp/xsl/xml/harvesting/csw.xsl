@@ -16,6 +16,21 @@
     <hopCount>
       <xsl:value-of select="hopCount/value"/>
     </hopCount>
+    <recordsPerRequest>
+      <xsl:value-of select="recordsPerRequest/value"/>
+    </recordsPerRequest>
+    <maxConnections>
+      <xsl:value-of select="maxConnections/value"/>
+    </maxConnections>
+    <transformThreads>
+      <xsl:value-of select="transformThreads/value"/>
+    </transformThreads>
+    <storeBatchSize>
+      <xsl:value-of select="storeBatchSize/value"/>
+    </storeBatchSize>
+    <indexThreads>
+      <xsl:value-of select="indexThreads/value"/>
+    </indexThreads>
     <xpathFilter>
       <xsl:value-of select="xpathFilter/value"/>
     </xpathFilter>
@@ -28,6 +43,9 @@
     <outputSchema>
       <xsl:value-of select="outputSchema/value"/>
     </outputSchema>
+    <incremental>
+      <xsl:value-of select="incremental/value"/>
+    </incremental>
   </xsl:template>
 
 
@@ -20,6 +20,9 @@
     <xslfilter>
       <xsl:value-of select="xslfilter"/>
     </xslfilter>
+    <incremental>
+      <xsl:value-of select="incremental/value"/>
+    </incremental>
   </xsl:template>
 
   <!-- ============================================================================================= -->
@@ -31,6 +31,9 @@
     <subtype>
       <xsl:value-of select="subtype/value"/>
     </subtype>
+    <incremental>
+      <xsl:value-of select="incremental/value"/>
+    </incremental>
   </xsl:template>
 
   <!-- ============================================================================================= -->